@@ -24,6 +24,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 import android.util.Pair;
@@ -79,7 +80,7 @@ public class TrackerWear extends DefaultTrackerComponent
     private HashSet<Node> connectedNodes = new HashSet<Node>();
     private String wearNode;
 
-    private final Handler handler = new Handler();
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private Bundle lastCreatedWorkoutEvent;
     private Bundle lastSentWorkoutEvent;
     private long tickFrequency = 1000;
@@ -222,8 +223,21 @@ public class TrackerWear extends DefaultTrackerComponent
                 });
     }
 
+    /**
+     * Called on live logger thread, events are handled on main thread that owns
+     *   the bundles and sends them
+     */
     @Override
-    public void workoutEvent(WorkoutInfo workoutInfo, int type) {
+    public void workoutEvent(final WorkoutInfo workoutInfo, final int type) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                onWorkoutEvent(workoutInfo, type);
+            }
+        });
+    }
+
+    private void onWorkoutEvent(WorkoutInfo workoutInfo, int type) {
         switch (type) {
             case DB.LOCATION.TYPE_START:
             case DB.LOCATION.TYPE_RESUME:
@@ -263,7 +277,8 @@ public class TrackerWear extends DefaultTrackerComponent
 
             Dimension dim = currentStep.getDurationType();
             if (dim != null) {
-                double remaining = tracker.getWorkout().getRemaining(Scope.STEP, dim);
+                double remaining = tracker.getWorkout().getSnapshot()
+                        .getRemaining(Scope.STEP, dim);
                 if (remaining < 0) {
                     remaining = 0;
                 }
@@ -21,144 +21,256 @@ import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.location.Location;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.util.Log;
 
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants;
+import org.runnerup.common.util.Geodesic;
 
 import java.util.ArrayList;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class ActivityCleaner implements Constants {
-    long _totalSumHr = 0;
-    int _totalCount = 0;
-    int _totalMaxHr = 0;
 
     /**
-     * recompute laps aggregates based on locations
+     * Location types that close a segment, i.e that contribute to aggregates
      */
-    private void recomputeLaps(SQLiteDatabase db, long activityId) {
-        final String[] cols = new String[] {
-                DB.LAP.LAP
-        };
+    private static final String SEGMENT_TYPES = "(" + DB.LOCATION.TYPE_GPS + ", "
+            + DB.LOCATION.TYPE_PAUSE + ", " + DB.LOCATION.TYPE_END + ")";
 
-        ArrayList<Long> laps = new ArrayList<Long>();
-        Cursor c = db.query(DB.LAP.TABLE, cols, DB.LAP.ACTIVITY + " = " + activityId,
-                null, null, null, "_id", null);
-        if (c.moveToFirst()) {
-            do {
-                laps.add(c.getLong(0));
-            } while (c.moveToNext());
+    /**
+     * Per lap running aggregates, reused for all laps (no per location allocation)
+     */
+    private long lap;
+    private boolean havePrev;
+    private double prevLat;
+    private double prevLon;
+    private long prevTime;
+    private double lapDistance;
+    private long lapTime;
+    private long lapSumHr;
+    private int lapCountHr;
+    private int lapMaxHr;
+    private long lapSumCadence;
+    private int lapCountCadence;
+
+    private double totalDistance;
+    private long totalTime;
+    private long totalSumHr;
+    private int totalCountHr;
+    private int totalMaxHr;
+    private long totalSumCadence;
+    private int totalCountCadence;
+
+    private void resetLap(long lap) {
+        this.lap = lap;
+        havePrev = false;
+        lapDistance = 0;
+        lapTime = 0;
+        lapSumHr = 0;
+        lapCountHr = 0;
+        lapMaxHr = 0;
+        lapSumCadence = 0;
+        lapCountCadence = 0;
+    }
+
+    /**
+     * Add a location to current lap
+     */
+    private void addLocation(int type, long time, double lat, double lon, int hr, int cadence) {
+        switch (type) {
+            case DB.LOCATION.TYPE_START:
+            case DB.LOCATION.TYPE_RESUME:
+                break;
+            case DB.LOCATION.TYPE_END:
+            case DB.LOCATION.TYPE_PAUSE:
+            case DB.LOCATION.TYPE_GPS:
+                if (hr > 0) {
+                    lapSumHr += hr;
+                    lapCountHr++;
+                    lapMaxHr = Math.max(lapMaxHr, hr);
+                }
+                if (cadence > 0) {
+                    lapSumCadence += cadence;
+                    lapCountCadence++;
+                }
+                if (!havePrev) {
+                    break;
+                }
+                lapDistance += Geodesic.distance(prevLat, prevLon, lat, lon);
+                lapTime += time - prevTime;
+                break;
+            default:
+                return;
         }
-        c.close();
+        havePrev = true;
+        prevLat = lat;
+        prevLon = lon;
+        prevTime = time;
+    }
 
-        for (long lap : laps) {
-            recomputeLap(db, activityId, lap);
+    /**
+     * Write current lap and add it to activity totals
+     */
+    private void flushLap(SQLiteStatement update, long activityId) {
+        long time = lapTime / 1000;
+        update.clearBindings();
+        update.bindDouble(1, lapDistance);
+        update.bindLong(2, time);
+        if (lapCountHr > 0) {
+            update.bindLong(3, Math.round((double) lapSumHr / lapCountHr));
+            update.bindLong(4, lapMaxHr);
         }
+        if (lapCountCadence > 0) {
+            update.bindLong(5, Math.round((double) lapSumCadence / lapCountCadence));
+        }
+        update.bindLong(6, activityId);
+        update.bindLong(7, lap);
+        update.execute();
+
+        totalDistance += lapDistance;
+        totalTime += time;
+        totalSumHr += lapSumHr;
+        totalCountHr += lapCountHr;
+        totalMaxHr = Math.max(totalMaxHr, lapMaxHr);
+        totalSumCadence += lapSumCadence;
+        totalCountCadence += lapCountCadence;
     }
 
     /**
-     * recompute a lap aggregate based on locations
+     * Load activity totals for laps before firstLap, i.e the part that is not recomputed
      */
-    private void recomputeLap(SQLiteDatabase db, long activityId, long lap) {
-        long sum_time = 0;
-        long sum_hr = 0;
-        double sum_distance = 0;
-        int count = 0;
-        int max_hr = 0;
-        final String[] cols = new String[] {
-                DB.LOCATION.TIME,
-                DB.LOCATION.LATITUDE,
-                DB.LOCATION.LONGITUDE,
-                DB.LOCATION.TYPE,
-                DB.LOCATION.HR,
-                "_id"
+    private void loadPrefix(SQLiteDatabase db, long activityId, long firstLap) {
+        String args[] = {
+                Long.toString(activityId), Long.toString(firstLap)
         };
-
-        Cursor c = db.query(DB.LOCATION.TABLE, cols, DB.LOCATION.ACTIVITY + " = " + activityId
-                + " and " + DB.LOCATION.LAP + " = " + lap,
-                null, null, null, "_id", null);
+        Cursor c = db.rawQuery("SELECT TOTAL(" + DB.LAP.DISTANCE + "), TOTAL(" + DB.LAP.TIME + ")"
+                + " FROM " + DB.LAP.TABLE
+                + " WHERE " + DB.LAP.ACTIVITY + " = ? AND " + DB.LAP.LAP + " < ?", args);
         if (c.moveToFirst()) {
-            Location lastLocation = null;
-            do {
-                Location l = new Location("Dill poh");
-                l.setTime(c.getLong(0));
-                l.setLatitude(c.getDouble(1));
-                l.setLongitude(c.getDouble(2));
-                l.setProvider("" + c.getLong(3));
-
-                int type = c.getInt(3);
-                switch (type) {
-                    case DB.LOCATION.TYPE_START:
-                    case DB.LOCATION.TYPE_RESUME:
-                        lastLocation = l;
-                        break;
-                    case DB.LOCATION.TYPE_END:
-                    case DB.LOCATION.TYPE_PAUSE:
-                    case DB.LOCATION.TYPE_GPS:
-                        if (lastLocation == null) {
-                            lastLocation = l;
-                            break;
-                        }
-
-                        sum_distance += l.distanceTo(lastLocation);
-                        sum_time += l.getTime() - lastLocation.getTime();
-                        int hr = c.getInt(4);
-                        sum_hr += hr;
-                        max_hr = Math.max(max_hr, hr);
-                        _totalMaxHr = Math.max(_totalMaxHr, hr);
-                        count++;
-                        _totalCount++;
-                        _totalSumHr += hr;
-                        lastLocation = l;
-                        break;
-                }
-            } while (c.moveToNext());
+            totalDistance = c.getDouble(0);
+            totalTime = c.getLong(1);
         }
         c.close();
 
-        ContentValues tmp = new ContentValues();
-        tmp.put(DB.LAP.DISTANCE, sum_distance);
-        tmp.put(DB.LAP.TIME, (sum_time / 1000));
-        if (sum_hr > 0) {
-            int hr = Math.round(sum_hr / count);
-            tmp.put(DB.LAP.AVG_HR, hr);
-            tmp.put(DB.LAP.MAX_HR, max_hr);
+        c = db.rawQuery("SELECT"
+                + " TOTAL(CASE WHEN " + DB.LOCATION.HR + " > 0 THEN " + DB.LOCATION.HR + " END),"
+                + " COUNT(CASE WHEN " + DB.LOCATION.HR + " > 0 THEN 1 END),"
+                + " MAX(" + DB.LOCATION.HR + "),"
+                + " TOTAL(CASE WHEN " + DB.LOCATION.CADENCE + " > 0 THEN " + DB.LOCATION.CADENCE + " END),"
+                + " COUNT(CASE WHEN " + DB.LOCATION.CADENCE + " > 0 THEN 1 END)"
+                + " FROM " + DB.LOCATION.TABLE
+                + " WHERE " + DB.LOCATION.ACTIVITY + " = ? AND " + DB.LOCATION.LAP + " < ?"
+                + " AND " + DB.LOCATION.TYPE + " IN " + SEGMENT_TYPES, args);
+        if (c.moveToFirst()) {
+            totalSumHr = c.getLong(0);
+            totalCountHr = c.getInt(1);
+            totalMaxHr = c.getInt(2);
+            totalSumCadence = c.getLong(3);
+            totalCountCadence = c.getInt(4);
         }
-        db.update(DB.LAP.TABLE, tmp, DB.LAP.ACTIVITY + " = " + activityId + " and " + DB.LAP.LAP
-                + " = " + lap, null);
+        c.close();
+    }
+
+    private void resetTotals() {
+        totalDistance = 0;
+        totalTime = 0;
+        totalSumHr = 0;
+        totalCountHr = 0;
+        totalMaxHr = 0;
+        totalSumCadence = 0;
+        totalCountCadence = 0;
     }
 
     /**
-     * recompute an activity summary based on laps
+     * Recompute laps and activity summary from locations, in a single pass
+     *   over the locations (ordered by lap, _id)
+     *
+     * @param fromLocationId only recompute laps containing locations with _id >= fromLocationId,
+     *                       earlier laps are assumed to be up to date. 0 means whole activity.
+     *                       Archived activities (no location ids) are always fully recomputed.
      */
-    private void recomputeSummary(SQLiteDatabase db, long activityId) {
-        long sum_time = 0;
-        double sum_distance = 0;
+    public void recompute(SQLiteDatabase db, long activityId, long fromLocationId) {
+        resetTotals();
+        db.beginTransaction();
+        try {
+            long firstLap = Long.MIN_VALUE;
+            if (fromLocationId > 0 && !TrackArchive.isArchived(db, activityId)) {
+                SQLiteStatement stmt = db.compileStatement("SELECT IFNULL(MIN(" + DB.LOCATION.LAP
+                        + "), " + Long.MAX_VALUE + ") FROM " + DB.LOCATION.TABLE
+                        + " WHERE " + DB.LOCATION.ACTIVITY + " = ? AND _id >= ?");
+                stmt.bindLong(1, activityId);
+                stmt.bindLong(2, fromLocationId);
+                firstLap = stmt.simpleQueryForLong();
+                stmt.close();
+                loadPrefix(db, activityId, firstLap);
+            }
 
-        final String[] cols = new String[] {
-                DB.LAP.DISTANCE,
-                DB.LAP.TIME
-        };
-        Cursor c = db.query(DB.LAP.TABLE, cols, DB.LAP.ACTIVITY + " = " + activityId,
-                null, null, null, "_id", null);
-        if (c.moveToFirst()) {
-            do {
-                sum_distance += c.getDouble(0);
-                sum_time += c.getLong(1);
-            } while (c.moveToNext());
+            /** laps without locations are cleared */
+            ContentValues tmp = new ContentValues();
+            tmp.put(DB.LAP.DISTANCE, 0);
+            tmp.put(DB.LAP.TIME, 0);
+            tmp.putNull(DB.LAP.AVG_HR);
+            tmp.putNull(DB.LAP.MAX_HR);
+            tmp.putNull(DB.LAP.AVG_CADENCE);
+            String args[] = {
+                    Long.toString(activityId), Long.toString(firstLap)
+            };
+            db.update(DB.LAP.TABLE, tmp, DB.LAP.ACTIVITY + " = ? AND " + DB.LAP.LAP + " >= ?",
+                    args);
+
+            SQLiteStatement update = db.compileStatement("UPDATE " + DB.LAP.TABLE + " SET "
+                    + DB.LAP.DISTANCE + " = ?, " + DB.LAP.TIME + " = ?, "
+                    + DB.LAP.AVG_HR + " = ?, " + DB.LAP.MAX_HR + " = ?, "
+                    + DB.LAP.AVG_CADENCE + " = ?"
+                    + " WHERE " + DB.LAP.ACTIVITY + " = ? AND " + DB.LAP.LAP + " = ?");
+
+            LocationReader c = LocationReader.open(db, activityId, firstLap);
+            if (c.moveToNext()) {
+                resetLap(c.getLap());
+                do {
+                    long l = c.getLap();
+                    if (l != lap) {
+                        flushLap(update, activityId);
+                        resetLap(l);
+                    }
+                    addLocation(c.getType(), c.getTime(), c.getLatitude(), c.getLongitude(),
+                            c.getInt(CompactTrack.HR), c.getInt(CompactTrack.CADENCE));
+                } while (c.moveToNext());
+                flushLap(update, activityId);
+            }
+            c.close();
+            update.close();
+
+            updateSummary(db, activityId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        c.close();
+    }
 
+    /**
+     * write activity summary
+     */
+    private void updateSummary(SQLiteDatabase db, long activityId) {
         ContentValues tmp = new ContentValues();
-        if (_totalSumHr > 0) {
-            int hr = Math.round(_totalSumHr / _totalCount);
-            tmp.put(DB.ACTIVITY.AVG_HR, hr);
-            tmp.put(DB.ACTIVITY.MAX_HR, _totalMaxHr);
+        if (totalCountHr > 0) {
+            tmp.put(DB.ACTIVITY.AVG_HR, Math.round((double) totalSumHr / totalCountHr));
+            tmp.put(DB.ACTIVITY.MAX_HR, totalMaxHr);
+        } else {
+            tmp.putNull(DB.ACTIVITY.AVG_HR);
+            tmp.putNull(DB.ACTIVITY.MAX_HR);
+        }
+        if (totalCountCadence > 0) {
+            tmp.put(DB.ACTIVITY.AVG_CADENCE,
+                    Math.round((double) totalSumCadence / totalCountCadence));
+        } else {
+            tmp.putNull(DB.ACTIVITY.AVG_CADENCE);
         }
-        tmp.put(DB.ACTIVITY.DISTANCE, sum_distance);
-        tmp.put(DB.ACTIVITY.TIME, sum_time); // also used as a flag for conditionalRecompute
+        tmp.put(DB.ACTIVITY.DISTANCE, totalDistance);
+        tmp.put(DB.ACTIVITY.TIME, totalTime); // also used as a flag for conditionalRecompute
 
         db.update(DB.ACTIVITY.TABLE, tmp, "_id = " + activityId, null);
     }
@@ -179,8 +291,7 @@ public class ActivityCleaner implements Constants {
     }
 
     public void recompute(SQLiteDatabase db, long activityId) {
-        recomputeLaps(db, activityId);
-        recomputeSummary(db, activityId);
+        recompute(db, activityId, 0);
     }
 
     public static void trim(SQLiteDatabase db, long activityId) {
@@ -208,59 +319,51 @@ public class ActivityCleaner implements Constants {
 
     private static int trimLap(SQLiteDatabase db, long activityId, long lap) {
         int cnt = 0;
-        final String[] cols = new String[] {
-                DB.LOCATION.TIME,
-                DB.LOCATION.LATITUDE,
-                DB.LOCATION.LONGITUDE,
-                DB.LOCATION.TYPE,
-                "_id"
-        };
+        LocationReader c = LocationReader.open(db, activityId, lap);
+        /** p[0] and p[1] as lat/lon pairs */
+        double lat[] = { 0, 0 };
+        double lon[] = { 0, 0 };
+        int cntP = 0;
+        while (c.moveToNext() && c.getLap() == lap) {
+            double lat0 = c.getLatitude();
+            double lon0 = c.getLongitude();
 
-        Cursor c = db.query(DB.LOCATION.TABLE, cols, DB.LOCATION.ACTIVITY + " = " + activityId
-                + " and " + DB.LOCATION.LAP + " = " + lap,
-                null, null, null, "_id", null);
-        if (c.moveToFirst()) {
-            Location p[] = {
-                    null, null
-            };
-            do {
-                Location l = new Location("Dill poh");
-                l.setTime(c.getLong(0));
-                l.setLatitude(c.getDouble(1));
-                l.setLongitude(c.getDouble(2));
-                l.setProvider("" + c.getLong(3));
-
-                int type = c.getInt(3);
-                switch (type) {
-                    case DB.LOCATION.TYPE_START:
-                    case DB.LOCATION.TYPE_RESUME:
-                        p[0] = l;
-                        p[1] = null;
+            int type = c.getType();
+            switch (type) {
+                case DB.LOCATION.TYPE_START:
+                case DB.LOCATION.TYPE_RESUME:
+                    lat[0] = lat0;
+                    lon[0] = lon0;
+                    cntP = 1;
+                    break;
+                case DB.LOCATION.TYPE_END:
+                case DB.LOCATION.TYPE_PAUSE:
+                case DB.LOCATION.TYPE_GPS:
+                    if (cntP == 0) {
+                        lat[0] = lat0;
+                        lon[0] = lon0;
+                        cntP = 1;
                         break;
-                    case DB.LOCATION.TYPE_END:
-                    case DB.LOCATION.TYPE_PAUSE:
-                    case DB.LOCATION.TYPE_GPS:
-                        if (p[0] == null) {
-                            p[0] = l;
-                            p[1] = null;
-                            break;
-                        } else if (p[1] == null) {
-                            p[1] = l;
+                    } else if (cntP == 1) {
+                        lat[1] = lat0;
+                        lon[1] = lon0;
+                        cntP = 2;
+                    } else {
+                        double d1 = Geodesic.distance(lat[0], lon[0], lat[1], lon[1]);
+                        double d2 = Geodesic.distance(lat[0], lon[0], lat0, lon0);
+                        if (Math.abs(d1 - d2) <= MIN_DISTANCE) {
+                            // p[1] is redundant...prune it
+                            lat[1] = lat0;
+                            lon[1] = lon0;
+                            cnt++;
                         } else {
-                            float d1 = p[0].distanceTo(p[1]);
-                            float d2 = p[0].distanceTo(l);
-                            if (Math.abs(d1 - d2) <= MIN_DISTANCE) {
-                                // p[1] is redundant...prune it
-                                p[1] = l;
-                                cnt++;
-                            } else {
-                                p[0] = p[1];
-                                p[1] = null;
-                            }
+                            lat[0] = lat[1];
+                            lon[0] = lon[1];
+                            cntP = 1;
                         }
-                        break;
-                }
-            } while (c.moveToNext());
+                    }
+                    break;
+            }
         }
         c.close();
         return cnt;
@@ -33,6 +33,8 @@ import android.util.Log;
 
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
+import org.runnerup.db.entities.AbstractEntity;
+import org.runnerup.db.entities.BulkInserter;
 import org.runnerup.db.entities.DBEntity;
 import org.runnerup.export.DigifitSynchronizer;
 import org.runnerup.export.EndomondoSynchronizer;
@@ -62,10 +64,10 @@ import java.util.List;
 public class DBHelper extends SQLiteOpenHelper implements
         Constants {
 
-    private static final int DBVERSION = 29;
+    private static final int DBVERSION = 33;
     private static final String DBNAME = "runnerup.db";
 
-    private static final String CREATE_TABLE_ACTIVITY = "create table "
+    static final String CREATE_TABLE_ACTIVITY = "create table "
             + DB.ACTIVITY.TABLE + " ( "
             + ("_id integer primary key autoincrement, ")
             + (DB.ACTIVITY.START_TIME + " integer not null default (strftime('%s','now')),")
@@ -80,7 +82,7 @@ public class DBHelper extends SQLiteOpenHelper implements
             + ("deleted integer not null default 0, ")
             + "nullColumnHack text null" + ");";
 
-    private static final String CREATE_TABLE_LOCATION = "create table "
+    static final String CREATE_TABLE_LOCATION = "create table "
             + DB.LOCATION.TABLE + " ( "
             + ("_id integer primary key autoincrement, ")
             + (DB.LOCATION.ACTIVITY + " integer not null, ")
@@ -97,7 +99,7 @@ public class DBHelper extends SQLiteOpenHelper implements
             + (DB.LOCATION.CADENCE + " integer ")
             + ");";
 
-    private static final String CREATE_TABLE_LAP = "create table "
+    static final String CREATE_TABLE_LAP = "create table "
             + DB.LAP.TABLE + " ( "
             + ("_id integer primary key autoincrement, ")
             + (DB.LAP.ACTIVITY + " integer not null, ")
@@ -128,13 +130,42 @@ public class DBHelper extends SQLiteOpenHelper implements
             + (DB.ACCOUNT.ICON + " integer null, ")
             + "UNIQUE (" + DB.ACCOUNT.NAME + ")" + ");";
 
-    private static final String CREATE_TABLE_REPORT = "create table "
+    static final String CREATE_TABLE_REPORT = "create table "
             + DB.EXPORT.TABLE + " ( "
             + "_id integer primary key autoincrement, " + DB.EXPORT.ACTIVITY
             + " integer not null, " + DB.EXPORT.ACCOUNT + " integer not null, "
             + DB.EXPORT.STATUS + " text, " + DB.EXPORT.EXTERNAL_ID + " text, "
             + DB.EXPORT.EXTRA + " integer not null default 1" + ");";
 
+    static final String CREATE_TABLE_TRACK = "create table "
+            + DB.TRACK.TABLE + " ( "
+            + ("_id integer primary key autoincrement, ")
+            + (DB.TRACK.ACTIVITY + " integer not null, ")
+            + (DB.TRACK.LAP + " integer not null, ")
+            + (DB.TRACK.DATA + " blob not null, ")
+            + ("unique (" + DB.TRACK.ACTIVITY + ", " + DB.TRACK.LAP + ")")
+            + ");";
+
+    static final String CREATE_TABLE_SENSOR_SAMPLE = "create table "
+            + DB.SENSOR_SAMPLE.TABLE + " ( "
+            + ("_id integer primary key autoincrement, ")
+            + (DB.SENSOR_SAMPLE.ACTIVITY + " integer not null, ")
+            + (DB.SENSOR_SAMPLE.TIME + " integer not null, ")
+            + (DB.SENSOR_SAMPLE.TYPE + " integer not null, ")
+            + (DB.SENSOR_SAMPLE.VALUE + " integer not null")
+            + ");";
+
+    static final String CREATE_TABLE_UPLOAD_QUEUE = "create table "
+            + DB.UPLOAD_QUEUE.TABLE + " ( "
+            + ("_id integer primary key autoincrement, ")
+            + (DB.UPLOAD_QUEUE.ACTIVITY + " integer not null, ")
+            + (DB.UPLOAD_QUEUE.ACCOUNT + " integer not null, ")
+            + (DB.UPLOAD_QUEUE.ATTEMPTS + " integer not null default 0, ")
+            + (DB.UPLOAD_QUEUE.NEXT_ATTEMPT + " integer not null default 0, ")
+            + (DB.UPLOAD_QUEUE.LAST_ERROR + " text, ")
+            + ("unique (" + DB.UPLOAD_QUEUE.ACCOUNT + ", " + DB.UPLOAD_QUEUE.ACTIVITY + ")")
+            + ");";
+
     private static final String CREATE_TABLE_AUDIO_SCHEMES = "create table "
             + DB.AUDIO_SCHEMES.TABLE + " ( "
             + ("_id integer primary key autoincrement, ")
@@ -167,6 +198,25 @@ public class DBHelper extends SQLiteOpenHelper implements
     private static final String CREATE_INDEX_FEED = "create index if not exists FEED_START_TIME " +
             (" on " + DB.FEED.TABLE + " (" + DB.FEED.START_TIME + ")");
 
+    static final String CREATE_INDEX_LOCATION = "create index if not exists LOCATION_ACTIVITY_LAP " +
+            (" on " + DB.LOCATION.TABLE + " (" + DB.LOCATION.ACTIVITY + ", " + DB.LOCATION.LAP + ")");
+
+    static final String CREATE_INDEX_LAP = "create index if not exists LAP_ACTIVITY_LAP " +
+            (" on " + DB.LAP.TABLE + " (" + DB.LAP.ACTIVITY + ", " + DB.LAP.LAP + ")");
+
+    static final String CREATE_INDEX_REPORT = "create index if not exists REPORT_ACTIVITY_ACCOUNT " +
+            (" on " + DB.EXPORT.TABLE + " (" + DB.EXPORT.ACTIVITY + ", " + DB.EXPORT.ACCOUNT + ")");
+
+    static final String CREATE_INDEX_SENSOR_SAMPLE = "create index if not exists SENSOR_SAMPLE_ACTIVITY_TYPE_TIME " +
+            (" on " + DB.SENSOR_SAMPLE.TABLE + " (" + DB.SENSOR_SAMPLE.ACTIVITY + ", "
+                    + DB.SENSOR_SAMPLE.TYPE + ", " + DB.SENSOR_SAMPLE.TIME + ")");
+
+    static final String CREATE_INDEXES[] = {
+            CREATE_INDEX_LOCATION,
+            CREATE_INDEX_LAP,
+            CREATE_INDEX_REPORT
+    };
+
     private static DBHelper sInstance = null;
 
     private static synchronized DBHelper getHelper(Context context) {
@@ -188,6 +238,19 @@ public class DBHelper extends SQLiteOpenHelper implements
     private static SQLiteDatabase sReadableDB = null;
     private static SQLiteDatabase sWritableDB = null;
 
+    /**
+     * WAL auto checkpoint (pages) while recording, i.e normally no checkpoints
+     *   are done by the inserts of the tracker. Instead the tracker checkpoints
+     *   on pause and after completeActivity.
+     */
+    public static final int RECORDING_WAL_AUTOCHECKPOINT = 4000;
+
+    /**
+     * With write-ahead logging (API 16+) the database has one writer (primary)
+     *   connection and a small pool of reader connections. Queries outside of
+     *   transactions (UI, export, sync) are run on the readers and do not wait
+     *   for the inserts of the tracker.
+     */
     public static synchronized SQLiteDatabase getReadableDatabase(Context context) {
         if (sReadableDB == null) {
             sReadableDB =getHelper(context).getReadableDatabase();
@@ -197,7 +260,7 @@ public class DBHelper extends SQLiteOpenHelper implements
 
     public static synchronized SQLiteDatabase getWritableDatabase(Context context) {
         if (sWritableDB == null) {
-            sWritableDB =getHelper(context).getReadableDatabase();
+            sWritableDB =getHelper(context).getWritableDatabase();
         }
         return sWritableDB;
     }
@@ -205,8 +268,65 @@ public class DBHelper extends SQLiteOpenHelper implements
     public static synchronized void closeDB(SQLiteDatabase db) {
     }
 
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     private DBHelper(Context context, int a) {
         super(context, DBNAME, null, DBVERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public static boolean isWriteAheadLogging(SQLiteDatabase db) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN &&
+                db.isWriteAheadLoggingEnabled();
+    }
+
+    /**
+     * Set WAL auto checkpoint of the writer connection
+     *
+     * @return previous value, -1 if not using WAL
+     */
+    public static int setWalAutoCheckpoint(SQLiteDatabase db, int pages) {
+        if (!isWriteAheadLogging(db))
+            return -1;
+
+        int prev = -1;
+        // statements in a transaction are run on the writer connection
+        db.beginTransaction();
+        try {
+            Cursor c = db.rawQuery("PRAGMA wal_autocheckpoint", null);
+            if (c.moveToFirst())
+                prev = c.getInt(0);
+            c.close();
+            c = db.rawQuery("PRAGMA wal_autocheckpoint = " + pages, null);
+            c.moveToFirst();
+            c.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return prev;
+    }
+
+    /**
+     * Passive WAL checkpoint, i.e copy committed pages into the database
+     *   file without waiting for readers
+     *
+     * @return true if the complete WAL was checkpointed (or not using WAL)
+     */
+    public static boolean checkpoint(SQLiteDatabase db) {
+        if (!isWriteAheadLogging(db))
+            return true;
+
+        boolean res = false;
+        Cursor c = db.rawQuery("PRAGMA wal_checkpoint", null);
+        if (c.moveToFirst()) {
+            // busy, pages in wal, pages checkpointed
+            res = c.getInt(0) == 0 && c.getInt(1) == c.getInt(2);
+        }
+        c.close();
+        return res;
     }
 
     @Override
@@ -216,9 +336,14 @@ public class DBHelper extends SQLiteOpenHelper implements
         arg0.execSQL(CREATE_TABLE_LOCATION);
         arg0.execSQL(CREATE_TABLE_ACCOUNT);
         arg0.execSQL(CREATE_TABLE_REPORT);
+        arg0.execSQL(CREATE_TABLE_UPLOAD_QUEUE);
+        arg0.execSQL(CREATE_TABLE_TRACK);
+        arg0.execSQL(CREATE_TABLE_SENSOR_SAMPLE);
+        arg0.execSQL(CREATE_INDEX_SENSOR_SAMPLE);
         arg0.execSQL(CREATE_TABLE_AUDIO_SCHEMES);
         arg0.execSQL(CREATE_TABLE_FEED);
         arg0.execSQL(CREATE_INDEX_FEED);
+        createIndexes(arg0);
 
         onUpgrade(arg0, 0, DBVERSION);
     }
@@ -291,6 +416,23 @@ public class DBHelper extends SQLiteOpenHelper implements
                     + " integer");
         }
 
+        if (oldVersion > 0 && oldVersion < 30 && newVersion >= 30) {
+            createIndexes(arg0);
+        }
+
+        if (oldVersion > 0 && oldVersion < 31 && newVersion >= 31) {
+            echoDo(arg0, CREATE_TABLE_UPLOAD_QUEUE);
+        }
+
+        if (oldVersion > 0 && oldVersion < 32 && newVersion >= 32) {
+            echoDo(arg0, CREATE_TABLE_TRACK);
+        }
+
+        if (oldVersion > 0 && oldVersion < 33 && newVersion >= 33) {
+            echoDo(arg0, CREATE_TABLE_SENSOR_SAMPLE);
+            echoDo(arg0, CREATE_INDEX_SENSOR_SAMPLE);
+        }
+
         insertAccounts(arg0);
     }
 
@@ -299,6 +441,22 @@ public class DBHelper extends SQLiteOpenHelper implements
         arg0.execSQL(str);
     }
 
+    /**
+     * Create lookup indexes for location/lap/report
+     *
+     * onCreate/onUpgrade are already run inside a transaction by SQLiteOpenHelper,
+     *   so either all indexes are created or none.
+     * Building the location index on a large database can take a while, hence progress is logged.
+     */
+    private static void createIndexes(SQLiteDatabase arg0) {
+        for (int i = 0; i < CREATE_INDEXES.length; i++) {
+            long start = System.currentTimeMillis();
+            echoDo(arg0, CREATE_INDEXES[i]);
+            Log.e("DBHelper", "createIndexes: " + (i + 1) + "/" + CREATE_INDEXES.length
+                    + " done in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
     private void recreateAccount(SQLiteDatabase arg0) {
         Cursor c = null;
         try {
@@ -560,7 +718,10 @@ public class DBHelper extends SQLiteOpenHelper implements
                 Long.toString(id)
         };
         db.delete(DB.EXPORT.TABLE, DB.EXPORT.ACTIVITY + " = ?", args);
+        db.delete(DB.UPLOAD_QUEUE.TABLE, DB.UPLOAD_QUEUE.ACTIVITY + " = ?", args);
         db.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = ?", args);
+        db.delete(DB.TRACK.TABLE, DB.TRACK.ACTIVITY + " = ?", args);
+        db.delete(DB.SENSOR_SAMPLE.TABLE, DB.SENSOR_SAMPLE.ACTIVITY + " = ?", args);
         db.delete(DB.LAP.TABLE, DB.LAP.ACTIVITY + " = ?", args);
         db.delete(DB.ACTIVITY.TABLE, "_id = ?", args);
     }
@@ -568,8 +729,7 @@ public class DBHelper extends SQLiteOpenHelper implements
     public static void purgeDeletedActivities(Context ctx, final ProgressDialog dialog,
                                               final Runnable onComplete) {
 
-        final DBHelper mDBHelper = DBHelper.getHelper(ctx);
-        final SQLiteDatabase db = mDBHelper.getWritableDatabase();
+        final SQLiteDatabase db = DBHelper.getWritableDatabase(ctx);
         String from[] = { "_id" };
         Cursor c = db.query(DB.ACTIVITY.TABLE, from, "deleted <> 0",
                 null, null, null, null, null);
@@ -601,15 +761,13 @@ public class DBHelper extends SQLiteOpenHelper implements
 
                 @Override
                 protected void onPostExecute(Void aVoid) {
-                    db.close();
-                    mDBHelper.close();
+                    closeDB(db);
                     if (onComplete != null)
                         onComplete.run();
                 }
             }.execute((long) 2);
         } else {
-            db.close();
-            mDBHelper.close();
+            closeDB(db);
             if (onComplete != null)
                 onComplete.run();
         }
@@ -617,15 +775,37 @@ public class DBHelper extends SQLiteOpenHelper implements
 
     public static int bulkInsert(List<? extends DBEntity> objectList, SQLiteDatabase db) {
         int result = 0;
+        BulkInserter inserter = null;
         for (DBEntity obj : objectList) {
-            long id = obj.insert(db);
+            long id;
+            if (obj instanceof AbstractEntity) {
+                if (inserter == null) {
+                    inserter = new BulkInserter(db, (AbstractEntity) obj);
+                }
+                id = inserter.add((AbstractEntity) obj);
+            } else {
+                id = obj.insert(db);
+            }
             if (id != -1) {
                 result++;
             }
         }
+        if (inserter != null) {
+            inserter.close();
+        }
         return result;
     }
 
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void disableWriteAheadLogging(SQLiteDatabase db) {
+        db.disableWriteAheadLogging();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void enableWriteAheadLogging(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
     public static String getDbPath(Context ctx) {
         return ctx.getFilesDir().getPath() + "/../databases/runnerup.db";
     }
@@ -641,13 +821,28 @@ public class DBHelper extends SQLiteOpenHelper implements
 
         };
         String to = getDbPath(ctx);
+        SQLiteDatabase db = getWritableDatabase(ctx);
+        boolean wal = isWriteAheadLogging(db);
         try {
+            if (wal) {
+                // move WAL into db and remove it, else it is applied to the imported file
+                disableWriteAheadLogging(db);
+            }
             int cnt = FileUtil.copyFile(to, from);
             builder.setMessage("Copied " + cnt + " bytes");
             builder.setPositiveButton(ctx.getString(R.string.Great), listener);
         } catch (IOException e) {
             builder.setMessage("Exception: " + e.toString());
             builder.setNegativeButton(ctx.getString(R.string.Darn), listener);
+        } catch (IllegalStateException e) {
+            // WAL could not be disabled, e.g database in use
+            builder.setMessage("Exception: " + e.toString());
+            builder.setNegativeButton(ctx.getString(R.string.Darn), listener);
+            wal = false;
+        } finally {
+            if (wal) {
+                enableWriteAheadLogging(db);
+            }
         }
         builder.show();
     }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.db;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import org.runnerup.common.util.CompactTrack;
+import org.runnerup.common.util.Constants.DB;
+
+/**
+ * Sequential reader of the locations of an activity, ordered by (lap, _id)
+ *
+ * Reads either the location table or, for archived activities, the compact
+ *   per lap blobs in the track table (see {@link TrackArchive}).
+ *
+ * Optional columns are accessed using the CompactTrack column constants
+ *   (ALTITUDE, ACCURACY, SPEED, BEARING, HR, CADENCE).
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public abstract class LocationReader {
+
+    public abstract boolean moveToNext();
+
+    public abstract long getLap();
+
+    public abstract int getType();
+
+    public abstract long getTime();
+
+    public abstract double getLatitude();
+
+    public abstract double getLongitude();
+
+    public abstract boolean isNull(int col);
+
+    public abstract double getDouble(int col);
+
+    public abstract int getInt(int col);
+
+    public abstract void close();
+
+    public static LocationReader open(SQLiteDatabase db, long activityId) {
+        return open(db, activityId, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param fromLap only read locations with lap >= fromLap
+     */
+    public static LocationReader open(SQLiteDatabase db, long activityId, long fromLap) {
+        String args[] = {
+                Long.toString(activityId), Long.toString(fromLap)
+        };
+        if (TrackArchive.isArchived(db, activityId)) {
+            String cols[] = {
+                    DB.TRACK.LAP, DB.TRACK.DATA
+            };
+            Cursor c = db.query(DB.TRACK.TABLE, cols, DB.TRACK.ACTIVITY + " = ? AND "
+                    + DB.TRACK.LAP + " >= ?", args, null, null, DB.TRACK.LAP);
+            return new ArchiveReader(c);
+        }
+
+        Cursor c = db.query(DB.LOCATION.TABLE, CursorReader.COLUMNS, DB.LOCATION.ACTIVITY
+                + " = ? AND " + DB.LOCATION.LAP + " >= ?", args, null, null,
+                DB.LOCATION.LAP + ", _id");
+        return new CursorReader(c);
+    }
+
+    /**
+     * Copy of the required columns of one location
+     */
+    public static class Point {
+        public int type;
+        public long time;
+        public double latitude;
+        public double longitude;
+        public double altitude; // NaN if null
+
+        public void set(LocationReader c) {
+            type = c.getType();
+            time = c.getTime();
+            latitude = c.getLatitude();
+            longitude = c.getLongitude();
+            altitude = c.getDouble(CompactTrack.ALTITUDE);
+        }
+    }
+
+    /**
+     * Read first (or last) location of a lap
+     *
+     * @return false if lap has no locations
+     */
+    public static boolean read(SQLiteDatabase db, long activityId, long lap, boolean last,
+                               Point p) {
+        boolean found = false;
+        LocationReader c = open(db, activityId, lap);
+        try {
+            while (c.moveToNext() && c.getLap() == lap) {
+                p.set(c);
+                found = true;
+                if (!last)
+                    break;
+            }
+        } finally {
+            c.close();
+        }
+        return found;
+    }
+
+    /**
+     * @return CompactTrack column of a location table column, -1 if unknown
+     */
+    public static int getColumn(String name) {
+        for (int i = 0; i < CompactTrack.COLUMNS; i++) {
+            if (CursorReader.COLUMNS[1 + i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private static class CursorReader extends LocationReader {
+        /** column index is CompactTrack column + 1 */
+        static final String COLUMNS[] = {
+                DB.LOCATION.LAP,
+                DB.LOCATION.TYPE,
+                DB.LOCATION.TIME,
+                DB.LOCATION.LATITUDE,
+                DB.LOCATION.LONGITUDE,
+                DB.LOCATION.ALTITUDE,
+                DB.LOCATION.ACCURANCY,
+                DB.LOCATION.SPEED,
+                DB.LOCATION.BEARING,
+                DB.LOCATION.HR,
+                DB.LOCATION.CADENCE
+        };
+
+        final Cursor c;
+
+        CursorReader(Cursor c) {
+            this.c = c;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return c.moveToNext();
+        }
+
+        @Override
+        public long getLap() {
+            return c.getLong(0);
+        }
+
+        @Override
+        public int getType() {
+            return c.getInt(1 + CompactTrack.TYPE);
+        }
+
+        @Override
+        public long getTime() {
+            return c.getLong(1 + CompactTrack.TIME);
+        }
+
+        @Override
+        public double getLatitude() {
+            return c.getDouble(1 + CompactTrack.LATITUDE);
+        }
+
+        @Override
+        public double getLongitude() {
+            return c.getDouble(1 + CompactTrack.LONGITUDE);
+        }
+
+        @Override
+        public boolean isNull(int col) {
+            return c.isNull(1 + col);
+        }
+
+        @Override
+        public double getDouble(int col) {
+            return c.isNull(1 + col) ? Double.NaN : c.getDouble(1 + col);
+        }
+
+        @Override
+        public int getInt(int col) {
+            return c.isNull(1 + col) ? CompactTrack.NULL_INT : c.getInt(1 + col);
+        }
+
+        @Override
+        public void close() {
+            c.close();
+        }
+    }
+
+    private static class ArchiveReader extends LocationReader {
+        final Cursor c;
+        long lap;
+        CompactTrack.Decoder decoder = null;
+
+        ArchiveReader(Cursor c) {
+            this.c = c;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            while (decoder == null || !decoder.moveToNext()) {
+                if (!c.moveToNext()) {
+                    return false;
+                }
+                lap = c.getLong(0);
+                decoder = new CompactTrack.Decoder(c.getBlob(1));
+            }
+            return true;
+        }
+
+        @Override
+        public long getLap() {
+            return lap;
+        }
+
+        @Override
+        public int getType() {
+            return decoder.getType();
+        }
+
+        @Override
+        public long getTime() {
+            return decoder.getTime();
+        }
+
+        @Override
+        public double getLatitude() {
+            return decoder.getLatitude();
+        }
+
+        @Override
+        public double getLongitude() {
+            return decoder.getLongitude();
+        }
+
+        @Override
+        public boolean isNull(int col) {
+            return decoder.isNull(col);
+        }
+
+        @Override
+        public double getDouble(int col) {
+            return decoder.getDouble(col);
+        }
+
+        @Override
+        public int getInt(int col) {
+            return decoder.getInt(col);
+        }
+
+        @Override
+        public void close() {
+            c.close();
+        }
+    }
+}
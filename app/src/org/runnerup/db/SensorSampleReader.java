@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.db;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import org.runnerup.common.util.Constants.DB;
+
+/**
+ * Merge-join of the sensor samples of one type with the locations of an activity
+ *
+ * Samples are read in time order and getValue() is expected to be called with
+ *   (mostly) non decreasing times, i.e while iterating a {@link LocationReader},
+ *   so that each sample row is only read once.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class SensorSampleReader {
+
+    public static final long MAX_AGE = 5000; // ms, older samples are not used
+
+    private Cursor mCursor;
+    private boolean mHasNext = false;
+    private boolean mHasCurrent = false;
+    private long mCurrentTime = 0;
+    private int mCurrentValue = 0;
+
+    private SensorSampleReader(Cursor c) {
+        mCursor = c;
+        mHasNext = c.moveToFirst();
+        if (!mHasNext) {
+            close();
+        }
+    }
+
+    public static SensorSampleReader open(SQLiteDatabase db, long activityId, int type) {
+        String cols[] = {
+                DB.SENSOR_SAMPLE.TIME, DB.SENSOR_SAMPLE.VALUE
+        };
+        String args[] = {
+                Long.toString(activityId), Integer.toString(type)
+        };
+        Cursor c = db.query(DB.SENSOR_SAMPLE.TABLE, cols, DB.SENSOR_SAMPLE.ACTIVITY + " = ? AND "
+                + DB.SENSOR_SAMPLE.TYPE + " = ?", args, null, null, DB.SENSOR_SAMPLE.TIME);
+        return new SensorSampleReader(c);
+    }
+
+    /**
+     * @return true if activity has no samples of this type
+     */
+    public boolean isEmpty() {
+        return !mHasNext && !mHasCurrent;
+    }
+
+    /**
+     * @return value of latest sample at or before time, or defaultValue if there
+     *   is no such sample within MAX_AGE
+     */
+    public int getValue(long time, int defaultValue) {
+        while (mHasNext && mCursor.getLong(0) <= time) {
+            mHasCurrent = true;
+            mCurrentTime = mCursor.getLong(0);
+            mCurrentValue = mCursor.getInt(1);
+            mHasNext = mCursor.moveToNext();
+        }
+        if (mHasCurrent && time >= mCurrentTime && time - mCurrentTime <= MAX_AGE)
+            return mCurrentValue;
+        return defaultValue;
+    }
+
+    public void close() {
+        if (mCursor != null) {
+            mCursor.close();
+            mCursor = null;
+        }
+        mHasNext = false;
+    }
+}
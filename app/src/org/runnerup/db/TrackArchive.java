@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.db;
+
+import android.annotation.TargetApi;
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.Log;
+
+import org.runnerup.common.util.CompactTrack;
+import org.runnerup.common.util.Constants.DB;
+
+import java.util.ArrayList;
+
+/**
+ * Archival storage of finished activities
+ *
+ * The locations of an activity are moved from the location table into one
+ *   CompactTrack encoded blob per lap in the track table.
+ * Read archived locations using {@link LocationReader}.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class TrackArchive {
+
+    public static final long ARCHIVE_AGE = 30L * 24 * 60 * 60; // s, 30 days
+
+    public static boolean isArchived(SQLiteDatabase db, long activityId) {
+        SQLiteStatement stmt = db.compileStatement("SELECT COUNT(*) FROM " + DB.TRACK.TABLE
+                + " WHERE " + DB.TRACK.ACTIVITY + " = ?");
+        stmt.bindLong(1, activityId);
+        long cnt = stmt.simpleQueryForLong();
+        stmt.close();
+        return cnt > 0;
+    }
+
+    /**
+     * Move locations of an activity into the track table
+     *
+     * @return number of locations archived
+     */
+    public static int archive(SQLiteDatabase db, long activityId) {
+        if (isArchived(db, activityId)) {
+            return 0;
+        }
+
+        int cnt = 0;
+        db.beginTransaction();
+        try {
+            LocationReader reader = LocationReader.open(db, activityId);
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + DB.TRACK.TABLE
+                    + " (" + DB.TRACK.ACTIVITY + ", " + DB.TRACK.LAP + ", " + DB.TRACK.DATA + ")"
+                    + " VALUES (?, ?, ?)");
+            CompactTrack.Encoder encoder = null;
+            long lap = 0;
+            while (reader.moveToNext()) {
+                if (encoder != null && reader.getLap() != lap) {
+                    insertLap(insert, activityId, lap, encoder);
+                    encoder = null;
+                }
+                if (encoder == null) {
+                    encoder = new CompactTrack.Encoder();
+                    lap = reader.getLap();
+                }
+                encoder.add(reader.getType(), reader.getTime(),
+                        reader.getLatitude(), reader.getLongitude(),
+                        reader.getDouble(CompactTrack.ALTITUDE),
+                        reader.getDouble(CompactTrack.ACCURACY),
+                        reader.getDouble(CompactTrack.SPEED),
+                        reader.getDouble(CompactTrack.BEARING),
+                        reader.getInt(CompactTrack.HR),
+                        reader.getInt(CompactTrack.CADENCE));
+                cnt++;
+            }
+            if (encoder != null) {
+                insertLap(insert, activityId, lap, encoder);
+            }
+            reader.close();
+            insert.close();
+
+            String args[] = {
+                    Long.toString(activityId)
+            };
+            db.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return cnt;
+    }
+
+    private static void insertLap(SQLiteStatement insert, long activityId, long lap,
+                                  CompactTrack.Encoder encoder) {
+        insert.bindLong(1, activityId);
+        insert.bindLong(2, lap);
+        insert.bindBlob(3, encoder.toByteArray());
+        insert.executeInsert();
+    }
+
+    /**
+     * Archive all (not deleted) activities older than ARCHIVE_AGE
+     */
+    public static void archiveOldActivities(Context ctx, final ProgressDialog dialog,
+                                            final Runnable onComplete) {
+        final SQLiteDatabase db = DBHelper.getWritableDatabase(ctx);
+        String from[] = { "_id" };
+        String args[] = {
+                Long.toString(System.currentTimeMillis() / 1000 - ARCHIVE_AGE)
+        };
+        Cursor c = db.query(DB.ACTIVITY.TABLE, from, "deleted = 0 and "
+                + DB.ACTIVITY.START_TIME + " < ? and _id not in (select distinct "
+                + DB.TRACK.ACTIVITY + " from " + DB.TRACK.TABLE + ")",
+                args, null, null, null, null);
+        final ArrayList<Long> list = new ArrayList<Long>(10);
+        if (c.moveToFirst()) {
+            do {
+                list.add(c.getLong(0));
+            } while (c.moveToNext());
+        }
+        c.close();
+
+        if (list.size() > 0) {
+            new AsyncTask<Long, Void, Void>() {
+
+                @Override
+                protected void onPreExecute() {
+                    dialog.setMax(list.size());
+                    super.onPreExecute();
+                }
+
+                @Override
+                protected Void doInBackground(Long... args) {
+                    for (Long id : list) {
+                        int cnt = archive(db, id);
+                        Log.i("TrackArchive", "activity " + id + " archived " + cnt + " locations");
+                        dialog.incrementProgressBy(1);
+                    }
+                    return null;
+                }
+
+                @Override
+                protected void onPostExecute(Void aVoid) {
+                    if (onComplete != null)
+                        onComplete.run();
+                }
+            }.execute((long) 2);
+        } else {
+            if (onComplete != null)
+                onComplete.run();
+        }
+    }
+}
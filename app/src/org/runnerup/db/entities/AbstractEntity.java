@@ -53,6 +53,13 @@ public abstract class AbstractEntity implements DBEntity {
         return mContentValues;
     }
 
+    /**
+     * Remove all values, so that the entity can be reused for another row
+     */
+    public void clear() {
+        mContentValues.clear();
+    }
+
     public Long getId() {
         if (mContentValues.containsKey(Constants.DB.PRIMARY_KEY)) {
             return mContentValues.getAsLong(Constants.DB.PRIMARY_KEY);
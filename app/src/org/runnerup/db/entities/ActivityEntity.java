@@ -27,6 +27,7 @@ import org.runnerup.workout.Sport;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -40,6 +41,8 @@ public class ActivityEntity extends AbstractEntity {
 
     private List<LocationEntity> locationPoints;
 
+    private Iterator<LocationEntity> locationPointSource;
+
     public ActivityEntity() {
         super();
         laps = new ArrayList<LapEntity>();
@@ -295,4 +298,17 @@ public class ActivityEntity extends AbstractEntity {
     public List<LocationEntity> getLocationPoints() {
         return locationPoints;
     }
+
+    /**
+     * Points produced while the activity is persisted, instead of a list
+     *   that holds all of them. The source may reuse one entity for every point
+     *   and may update the activity and its laps until it is exhausted.
+     */
+    public void setLocationPointSource(Iterator<LocationEntity> source) {
+        this.locationPointSource = source;
+    }
+
+    public Iterator<LocationEntity> getLocationPointSource() {
+        return locationPointSource;
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.db.entities;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.runnerup.common.util.Constants;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bulk insert of entities of one table using compiled statements
+ *
+ * Values are bound directly from the entity into a reused {@link SQLiteStatement},
+ *   instead of db.insert() that builds sql and a statement for every row.
+ *   A statement is compiled per distinct set of present columns, so that
+ *   absent columns still get their default value while columns put as null
+ *   are stored as NULL (as db.insert() does).
+ *
+ * The caller owns the transaction, entities can be added one by one as they
+ *   are parsed, see {@link #add(AbstractEntity)}.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class BulkInserter {
+
+    private static final int MAX_STATEMENTS = 4;
+
+    private final SQLiteDatabase mDB;
+    private final String mTable;
+    private final String mColumns[];
+
+    private final long mMasks[] = new long[MAX_STATEMENTS];
+    private final SQLiteStatement mStatements[] = new SQLiteStatement[MAX_STATEMENTS];
+    private int mStatementCount = 0;
+
+    private int mRows = 0;
+    private int mFailed = 0;
+    private final long mStartTime;
+
+    public BulkInserter(SQLiteDatabase db, AbstractEntity prototype) {
+        this.mDB = db;
+        this.mTable = prototype.getTableName();
+        List<String> valid = prototype.getValidColumns();
+        int count = 0;
+        for (String column : valid) {
+            if (!Constants.DB.PRIMARY_KEY.equals(column))
+                count++;
+        }
+        mColumns = new String[count];
+        count = 0;
+        for (String column : valid) {
+            if (!Constants.DB.PRIMARY_KEY.equals(column))
+                mColumns[count++] = column;
+        }
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Insert entity and set its primary key
+     *
+     * @return primary key of the new row, or -1 on failure
+     */
+    public long add(AbstractEntity entity) {
+        long id;
+        if (!mTable.equals(entity.getTableName()) || mColumns.length > 64) {
+            id = entity.insert(mDB);
+        } else {
+            ContentValues values = entity.values();
+            long mask = 0;
+            for (int i = 0; i < mColumns.length; i++) {
+                if (values.containsKey(mColumns[i]))
+                    mask |= 1L << i;
+            }
+            SQLiteStatement stmt = getStatement(mask);
+            int index = 1;
+            for (int i = 0; i < mColumns.length; i++) {
+                if ((mask & (1L << i)) != 0) {
+                    bind(stmt, index++, values.get(mColumns[i]));
+                }
+            }
+            try {
+                id = stmt.executeInsert();
+            } catch (RuntimeException ex) {
+                Log.e(getClass().getName(), "add: " + ex.toString());
+                id = -1;
+            }
+            entity.setId(id);
+        }
+        if (id == -1)
+            mFailed++;
+        else
+            mRows++;
+        return id;
+    }
+
+    /**
+     * Insert entities as the iterator produces them
+     *
+     * @return number of rows inserted
+     */
+    public int addAll(Iterator<? extends AbstractEntity> entities) {
+        int result = 0;
+        while (entities.hasNext()) {
+            if (add(entities.next()) != -1)
+                result++;
+        }
+        return result;
+    }
+
+    public int getRowCount() {
+        return mRows;
+    }
+
+    public int getFailedCount() {
+        return mFailed;
+    }
+
+    public long getRowsPerSecond() {
+        long elapsed = SystemClock.elapsedRealtime() - mStartTime;
+        return elapsed > 0 ? (1000L * mRows) / elapsed : mRows;
+    }
+
+    /**
+     * Release compiled statements and log throughput
+     */
+    public void close() {
+        for (int i = 0; i < mStatementCount; i++) {
+            mStatements[i].close();
+            mStatements[i] = null;
+        }
+        mStatementCount = 0;
+        if (mRows + mFailed > 0) {
+            Log.i(getClass().getName(), mTable + ": " + mRows + " rows (" + mFailed + " failed), "
+                    + getRowsPerSecond() + " rows/s");
+        }
+    }
+
+    private SQLiteStatement getStatement(long mask) {
+        for (int i = 0; i < mStatementCount; i++) {
+            if (mMasks[i] == mask)
+                return mStatements[i];
+        }
+
+        StringBuilder sql = new StringBuilder("insert into ").append(mTable);
+        StringBuilder args = new StringBuilder();
+        for (int i = 0; i < mColumns.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                sql.append(args.length() == 0 ? " (" : ", ").append(mColumns[i]);
+                args.append(args.length() == 0 ? "?" : ", ?");
+            }
+        }
+        if (args.length() == 0) {
+            sql.append(" default values");
+        } else {
+            sql.append(") values (").append(args).append(')');
+        }
+        SQLiteStatement stmt = mDB.compileStatement(sql.toString());
+
+        int slot = mStatementCount;
+        if (slot == MAX_STATEMENTS) {
+            // unusual mix of columns, replace the last one
+            slot = MAX_STATEMENTS - 1;
+            mStatements[slot].close();
+        } else {
+            mStatementCount++;
+        }
+        mMasks[slot] = mask;
+        mStatements[slot] = stmt;
+        return stmt;
+    }
+
+    private static void bind(SQLiteStatement stmt, int index, Object value) {
+        if (value == null) {
+            stmt.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            stmt.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            stmt.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            stmt.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            stmt.bindBlob(index, (byte[]) value);
+        } else {
+            stmt.bindString(index, value.toString());
+        }
+    }
+}
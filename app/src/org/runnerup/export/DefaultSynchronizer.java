@@ -29,8 +29,13 @@ import android.util.Pair;
 import org.runnerup.common.util.Constants;
 import org.runnerup.db.DBHelper;
 import org.runnerup.db.entities.ActivityEntity;
+import org.runnerup.db.entities.BulkInserter;
 import org.runnerup.db.entities.LapEntity;
 import org.runnerup.db.entities.LocationEntity;
+import org.runnerup.export.format.GPX;
+import org.runnerup.export.format.TCX;
+import org.runnerup.export.util.ExportCache;
+import org.runnerup.export.util.ExportWritable;
 import org.runnerup.export.util.FormValues;
 import org.runnerup.export.util.SyncHelper;
 import org.runnerup.feed.FeedList.FeedUpdater;
@@ -41,8 +46,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,6 +59,7 @@ public abstract class DefaultSynchronizer implements Synchronizer {
     protected final FormValues formValues = new FormValues();
 
     private Integer authNotice;
+    private ExportCache exportCache = null;
 
     public DefaultSynchronizer() {
         super();
@@ -111,6 +117,29 @@ public abstract class DefaultSynchronizer implements Synchronizer {
         return s;
     }
 
+    /**
+     * Set cache used to share exports between synchronizers uploading same activity
+     */
+    public void setExportCache(ExportCache cache) {
+        exportCache = cache;
+    }
+
+    /**
+     * Get export (tcx/gpx) of activity to be used when uploading
+     *   if an export cache is set, the export is generated once and shared
+     *   otherwise it's exported directly into the output stream when written
+     */
+    protected ExportWritable getExportWritable(SQLiteDatabase db, long mID, String format)
+            throws IOException {
+        if (exportCache != null) {
+            return new ExportWritable(exportCache.get(db, mID, format));
+        }
+        if (ExportCache.FORMAT_GPX.equals(format)) {
+            return new ExportWritable(new GPX(db), mID);
+        }
+        return new ExportWritable(new TCX(db), mID);
+    }
+
     public boolean checkSupport(Synchronizer.Feature f) {
         return false;
     }
@@ -148,28 +177,53 @@ public abstract class DefaultSynchronizer implements Synchronizer {
         }
 
         db.beginTransaction();
-        if (activity.insert(db) == SyncManager.ERROR_ACTIVITY_ID) {
+        try {
+            if (activity.insert(db) == SyncManager.ERROR_ACTIVITY_ID) {
+                return Status.ERROR;
+            }
+
+            // insert locations with activity id, as the source parses them
+            Iterator<LocationEntity> points = activity.getLocationPointSource();
+            if (points == null) {
+                points = activity.getLocationPoints().iterator();
+            }
+            BulkInserter inserter = null;
+            try {
+                while (points.hasNext()) {
+                    LocationEntity point = points.next();
+                    if (inserter == null) {
+                        inserter = new BulkInserter(db, point);
+                    }
+                    point.setActivityId(activity.getId());
+                    if (inserter.add(point) == -1) {
+                        // end transaction unsuccessfully
+                        return Status.ERROR;
+                    }
+                }
+            } finally {
+                if (inserter != null) {
+                    inserter.close();
+                }
+            }
+            // points are in db, no need to keep them around
+            activity.getLocationPoints().clear();
+            if (activity.getLocationPointSource() != null) {
+                // source has updated the activity (e.g. hr) while parsing
+                activity.setLocationPointSource(null);
+                activity.update(db);
+            }
+
+            // insert all lap objects
+            for (LapEntity lap : activity.getLaps()) {
+                lap.setActivityId(activity.getId());
+            }
+            if (DBHelper.bulkInsert(activity.getLaps(), db) != activity.getLaps().size()) {
+                return Status.ERROR;
+            }
+            db.setTransactionSuccessful();
+        } finally {
             db.endTransaction();
-            return Status.ERROR;
-        }
-
-        //update with activity id
-        activity.putPoints(new ArrayList<LocationEntity>(activity.getLocationPoints()));
-        // insert location and end transaction unsuccessfully
-        if (DBHelper.bulkInsert(activity.getLocationPoints(), db) != activity.getLocationPoints().size()) {
-            db.endTransaction();
-            return Status.ERROR;
-        }
-
-        //update with activity id
-        activity.putLaps(new ArrayList<LapEntity>(activity.getLaps()));
-        // insert all lap objects
-        if (DBHelper.bulkInsert(activity.getLaps(), db) != activity.getLaps().size()) {
-            db.endTransaction();
-            return Status.ERROR;
         }
-        db.setTransactionSuccessful();
-        db.endTransaction();
 
         Status s = Status.OK;
         s.activityId = activity.getId();
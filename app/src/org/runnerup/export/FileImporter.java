@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.export;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.common.util.Geodesic;
+import org.runnerup.db.entities.ActivityEntity;
+import org.runnerup.db.entities.LapEntity;
+import org.runnerup.tracker.replay.ReplayTrack;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Bulk import of GPX/TCX files (the counterpart of {@link FileSynchronizer})
+ *
+ * Files are parsed in parallel on a bounded pool of worker threads, and the
+ *   parsed tracks are funneled through a bounded queue to the calling thread
+ *   that is the only db writer. Activities are written in batched transactions,
+ *   locations using a compiled statement. The rows of a file that fails to be
+ *   written are deleted again, so the rest of the batch can be committed.
+ *
+ * An activity is a duplicate if an activity with start time within
+ *   DUPLICATE_START_TIME and similar distance exists (in db or earlier in the import).
+ *
+ * Each file becomes one activity with one lap, gpx trkseg/tcx Track are
+ *   kept as pause/resume.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class FileImporter {
+
+    public interface ProgressListener {
+        /**
+         * Called on the importing thread when files are done (imported, duplicate or failed)
+         */
+        void onProgress(FileImporter importer, int done, int total);
+    }
+
+    static final long DUPLICATE_START_TIME = 60; // s
+    static final float DUPLICATE_DISTANCE = 50; // m, or 2%
+
+    private static final int MAX_THREADS = 4;
+    private static final int QUEUE_SIZE = 8; // parsed tracks waiting for the writer
+    private static final int BATCH_ACTIVITIES = 16;
+    private static final int BATCH_LOCATIONS = 50000;
+
+    private final SQLiteDatabase mDB;
+    private final int mThreads;
+    private int mSport = DB.ACTIVITY.SPORT_RUNNING;
+    private ProgressListener mListener = null;
+    private volatile boolean mCancelled = false;
+
+    // start time -> distances of activities starting then
+    private final TreeMap<Long, List<Float>> mExisting = new TreeMap<Long, List<Float>>();
+    private SQLiteStatement mInsertLocation = null;
+
+    private int mImported = 0;
+    private int mDuplicates = 0;
+    private int mFailed = 0;
+    private long mLocations = 0;
+    private final List<String> mErrors = new ArrayList<String>();
+
+    public FileImporter(SQLiteDatabase db) {
+        this(db, Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public FileImporter(SQLiteDatabase db, int threads) {
+        this.mDB = db;
+        this.mThreads = threads;
+    }
+
+    /**
+     * Sport of imported activities without a sport (GPX, or TCX with unknown Sport)
+     */
+    public void setSport(int sport) {
+        mSport = sport;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Stop the import (from any thread), committed activities are kept
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public int getImportedCount() {
+        return mImported;
+    }
+
+    public int getDuplicateCount() {
+        return mDuplicates;
+    }
+
+    public int getFailedCount() {
+        return mFailed;
+    }
+
+    /**
+     * @return "file: error" for failed files
+     */
+    public List<String> getErrors() {
+        return mErrors;
+    }
+
+    /**
+     * Import all .gpx/.tcx files in a directory (recursive), a zip file or a single file
+     *
+     * Blocks until done or cancelled, must not be called on the ui thread.
+     *
+     * @return number of imported activities
+     */
+    public int importFiles(File src) throws IOException {
+        List<Source> sources = new ArrayList<Source>();
+        ZipFile zip = null;
+        try {
+            if (src.isDirectory()) {
+                listFiles(src, sources);
+            } else if (src.getName().toLowerCase(Locale.US).endsWith(".zip")) {
+                zip = new ZipFile(src);
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && isTrackFile(entry.getName()))
+                        sources.add(new Source(entry.getName(), null, zip, entry));
+                }
+            } else {
+                sources.add(new Source(src.getName(), src, null, null));
+            }
+            return importSources(sources);
+        } finally {
+            if (zip != null) {
+                zip.close();
+            }
+        }
+    }
+
+    private static void listFiles(File dir, List<Source> sources) {
+        File files[] = dir.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (f.isDirectory()) {
+                listFiles(f, sources);
+            } else if (isTrackFile(f.getName())) {
+                sources.add(new Source(f.getName(), f, null, null));
+            }
+        }
+    }
+
+    static boolean isTrackFile(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        return lower.endsWith(".gpx") || lower.endsWith(".tcx");
+    }
+
+    private int importSources(List<Source> sources) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final int total = sources.size();
+        final BlockingQueue<Parsed> queue = new ArrayBlockingQueue<Parsed>(QUEUE_SIZE);
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+        for (final Source source : sources) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Parsed p;
+                    try {
+                        p = parse(source);
+                    } catch (Throwable t) {
+                        // the writer waits for one result per file
+                        p = new Parsed(source.name);
+                        p.error = t.toString();
+                    }
+                    try {
+                        queue.put(p);
+                    } catch (InterruptedException e) {
+                        // cancelled
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+
+        loadExisting();
+        int done = 0;
+        try {
+            while (done < total && !mCancelled) {
+                Parsed p = queue.take();
+                int locations = 0;
+                mDB.beginTransaction();
+                try {
+                    for (int batch = 1; ; batch++) {
+                        done++;
+                        locations += write(p);
+                        if (done == total || mCancelled || batch == BATCH_ACTIVITIES ||
+                                locations >= BATCH_LOCATIONS)
+                            break;
+                        p = queue.poll();
+                        if (p == null)
+                            break;
+                    }
+                    mDB.setTransactionSuccessful();
+                } finally {
+                    mDB.endTransaction();
+                }
+                if (mListener != null) {
+                    mListener.onProgress(this, done, total);
+                }
+            }
+        } catch (InterruptedException e) {
+            mCancelled = true;
+        } finally {
+            pool.shutdownNow();
+            if (mInsertLocation != null) {
+                mInsertLocation.close();
+                mInsertLocation = null;
+            }
+        }
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        Log.i(getClass().getName(), "imported " + mImported + "/" + total + " files ("
+                + mDuplicates + " duplicates, " + mFailed + " failed"
+                + (mCancelled ? ", cancelled" : "") + "), " + mLocations + " locations in "
+                + elapsed + " ms");
+        return mImported;
+    }
+
+    /**
+     * Parse file and compute activity summary, run on worker threads
+     */
+    private Parsed parse(Source source) {
+        Parsed p = new Parsed(source.name);
+        if (mCancelled)
+            return p;
+        InputStream in = null;
+        try {
+            in = source.open();
+            if (source.name.toLowerCase(Locale.US).endsWith(".tcx")) {
+                p.track = ReplayTrack.parseTCX(in);
+            } else {
+                p.track = ReplayTrack.parseGPX(in);
+            }
+            if (p.track.size() < 2) {
+                p.error = "no track";
+                p.track = null;
+            } else {
+                p.summarize();
+            }
+        } catch (IOException ex) {
+            p.error = ex.toString();
+        } catch (RuntimeException ex) {
+            p.error = ex.toString();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    // ignore
+                }
+            }
+        }
+        return p;
+    }
+
+    private void loadExisting() {
+        Cursor c = mDB.query(DB.ACTIVITY.TABLE,
+                new String[]{DB.ACTIVITY.START_TIME, DB.ACTIVITY.DISTANCE},
+                "deleted == 0", null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                addExisting(mExisting, c.getLong(0), c.isNull(1) ? 0f : c.getFloat(1));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    static void addExisting(SortedMap<Long, List<Float>> existing, long startTime, float distance) {
+        List<Float> distances = existing.get(startTime);
+        if (distances == null) {
+            distances = new ArrayList<Float>(1);
+            existing.put(startTime, distances);
+        }
+        distances.add(distance);
+    }
+
+    static boolean isDuplicate(SortedMap<Long, List<Float>> existing, long startTime, float distance) {
+        for (List<Float> distances : existing.subMap(startTime - DUPLICATE_START_TIME,
+                startTime + DUPLICATE_START_TIME + 1).values()) {
+            for (Float d : distances) {
+                if (Math.abs(d - distance) <= Math.max(DUPLICATE_DISTANCE, 0.02f * distance))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return db sport of TCX Sport attribute, or the configured sport
+     */
+    private int getSport(ReplayTrack track) {
+        String sport = track.getSport();
+        if ("Running".equals(sport))
+            return DB.ACTIVITY.SPORT_RUNNING;
+        if ("Biking".equals(sport))
+            return DB.ACTIVITY.SPORT_BIKING;
+        if ("Other".equals(sport))
+            return DB.ACTIVITY.SPORT_OTHER;
+        return mSport;
+    }
+
+    /**
+     * Write one parsed file, run on the writer (calling) thread inside a transaction
+     *
+     * @return number of locations written
+     */
+    private int write(Parsed p) {
+        if (p.track == null) {
+            if (p.error != null) {
+                mFailed++;
+                mErrors.add(p.name + ": " + p.error);
+            }
+            return 0;
+        }
+        long startTime = p.track.getTime(0) / 1000;
+        if (isDuplicate(mExisting, startTime, p.distance)) {
+            mDuplicates++;
+            return 0;
+        }
+
+        long activityId = -1;
+        try {
+            ActivityEntity activity = new ActivityEntity();
+            activity.setStartTime(new Date(p.track.getTime(0)));
+            activity.setDistance((float) p.distance);
+            activity.setTime(p.time / 1000);
+            activity.setSport(getSport(p.track));
+            if (p.maxHr > 0) {
+                activity.setAvgHr(p.avgHr);
+                activity.setMaxHr(p.maxHr);
+            }
+            activityId = activity.insert(mDB);
+            if (activityId == -1)
+                throw new SQLException("insert activity failed");
+
+            LapEntity lap = new LapEntity();
+            lap.setActivityId(activityId);
+            lap.setLap(0);
+            lap.setDistance((float) p.distance);
+            lap.setTime((int) (p.time / 1000));
+            if (p.maxHr > 0) {
+                lap.setAvgHr(p.avgHr);
+                lap.setMaxHr(p.maxHr);
+            }
+            if (lap.insert(mDB) == -1)
+                throw new SQLException("insert lap failed");
+
+            writeLocations(activityId, p.track);
+        } catch (SQLException ex) {
+            if (activityId != -1) {
+                // the batch is still committed, remove what was written of this file
+                delete(activityId);
+            }
+            mFailed++;
+            mErrors.add(p.name + ": " + ex.toString());
+            return 0;
+        }
+        addExisting(mExisting, startTime, p.distance);
+        mImported++;
+        mLocations += p.track.size();
+        return p.track.size();
+    }
+
+    private void delete(long activityId) {
+        String args[] = {
+                Long.toString(activityId)
+        };
+        mDB.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = ?", args);
+        mDB.delete(DB.LAP.TABLE, DB.LAP.ACTIVITY + " = ?", args);
+        mDB.delete(DB.ACTIVITY.TABLE, "_id = ?", args);
+    }
+
+    private void writeLocations(long activityId, ReplayTrack track) {
+        if (mInsertLocation == null) {
+            mInsertLocation = mDB.compileStatement("insert into " + DB.LOCATION.TABLE + " ("
+                    + DB.LOCATION.ACTIVITY + ", "
+                    + DB.LOCATION.LAP + ", "
+                    + DB.LOCATION.TYPE + ", "
+                    + DB.LOCATION.TIME + ", "
+                    + DB.LOCATION.LATITUDE + ", "
+                    + DB.LOCATION.LONGITUDE + ", "
+                    + DB.LOCATION.ALTITUDE + ", "
+                    + DB.LOCATION.HR + ") "
+                    + "values (?, 0, ?, ?, ?, ?, ?, ?)");
+        }
+        final SQLiteStatement stmt = mInsertLocation;
+        for (int i = 0; i < track.size(); i++) {
+            stmt.bindLong(1, activityId);
+            stmt.bindLong(2, track.getType(i));
+            stmt.bindLong(3, track.getTime(i));
+            stmt.bindDouble(4, track.getLatitude(i));
+            stmt.bindDouble(5, track.getLongitude(i));
+            if (Double.isNaN(track.getAltitude(i)))
+                stmt.bindNull(6);
+            else
+                stmt.bindDouble(6, track.getAltitude(i));
+            if (track.getHR(i) > 0)
+                stmt.bindLong(7, track.getHR(i));
+            else
+                stmt.bindNull(7);
+            stmt.executeInsert();
+        }
+    }
+
+    private static class Source {
+        final String name;
+        final File file;
+        final ZipFile zip;
+        final ZipEntry entry;
+
+        Source(String name, File file, ZipFile zip, ZipEntry entry) {
+            this.name = name;
+            this.file = file;
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        InputStream open() throws IOException {
+            if (zip != null)
+                return zip.getInputStream(entry);
+            return new FileInputStream(file);
+        }
+    }
+
+    /**
+     * Parsed file with activity summary
+     */
+    private static class Parsed {
+        final String name;
+        ReplayTrack track = null;
+        String error = null;
+
+        float distance = 0; // m, pauses excluded
+        long time = 0; // ms, pauses excluded
+        int avgHr = 0;
+        int maxHr = 0;
+
+        Parsed(String name) {
+            this.name = name;
+        }
+
+        void summarize() {
+            long sumHr = 0;
+            int cntHr = 0;
+            for (int i = 0; i < track.size(); i++) {
+                if (track.getHR(i) > 0) {
+                    sumHr += track.getHR(i);
+                    cntHr++;
+                    maxHr = Math.max(maxHr, track.getHR(i));
+                }
+                if (i == 0)
+                    continue;
+                int type = track.getType(i);
+                if (type == DB.LOCATION.TYPE_START || type == DB.LOCATION.TYPE_RESUME)
+                    continue; // i.e previous was pause
+                distance += (float) Geodesic.distance(track.getLatitude(i - 1),
+                        track.getLongitude(i - 1), track.getLatitude(i), track.getLongitude(i));
+                time += track.getTime(i) - track.getTime(i - 1);
+            }
+            if (cntHr > 0) {
+                avgHr = (int) (sumHr / cntHr);
+            }
+        }
+    }
+}
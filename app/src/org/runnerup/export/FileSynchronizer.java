@@ -27,12 +27,11 @@ import org.runnerup.common.util.Constants.DB;
 import org.runnerup.export.format.GPX;
 import org.runnerup.export.format.TCX;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Locale;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
@@ -112,17 +111,24 @@ public class FileSynchronizer extends DefaultSynchronizer {
         try {
             String fileBase = new File(mPath).getAbsolutePath() + File.separator +
             String.format(Locale.getDefault(), "RunnerUp_%04d.", mID);
+            // TCX/GPX buffer in FastXmlWriter, no need for a BufferedOutputStream
             if (format.contains("tcx")) {
                 TCX tcx = new TCX(db);
-                File file = new File(fileBase + "tcx");
-                OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
-                tcx.export(mID, new OutputStreamWriter(out));
+                Writer out = new OutputStreamWriter(new FileOutputStream(fileBase + "tcx"), "UTF-8");
+                try {
+                    tcx.export(mID, out);
+                } finally {
+                    out.close();
+                }
             }
             if (format.contains("gpx")) {
                 GPX gpx = new GPX(db, true);
-                File file = new File(fileBase + "gpx");
-                OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
-                gpx.export(mID, new OutputStreamWriter(out));
+                Writer out = new OutputStreamWriter(new FileOutputStream(fileBase + "gpx"), "UTF-8");
+                try {
+                    gpx.export(mID, out);
+                } finally {
+                    out.close();
+                }
             }
             s = Status.OK;
         } catch (IOException e) {
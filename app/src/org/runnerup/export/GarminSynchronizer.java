@@ -19,6 +19,7 @@ package org.runnerup.export;
 
 import android.annotation.TargetApi;
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.util.Log;
@@ -28,10 +29,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.common.util.Constants.DB;
-import org.runnerup.export.format.TCX;
+import org.runnerup.export.util.ExportCache;
+import org.runnerup.export.util.ExportWritable;
 import org.runnerup.export.util.FormValues;
 import org.runnerup.export.util.Part;
-import org.runnerup.export.util.StringWritable;
 import org.runnerup.export.util.SyncHelper;
 import org.runnerup.workout.Sport;
 
@@ -44,7 +45,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -413,6 +413,17 @@ public class GarminSynchronizer extends DefaultSynchronizer {
         }
     }
 
+    private static Sport getSport(SQLiteDatabase db, long mID) {
+        String cols[] = { DB.ACTIVITY.SPORT };
+        Cursor c = db.query(DB.ACTIVITY.TABLE, cols, "_id = " + mID, null, null, null, null);
+        Sport sport = Sport.RUNNING; // TCX exports missing sport as Running
+        if (c.moveToFirst() && !c.isNull(0)) {
+            sport = Sport.valueOf(c.getInt(0));
+        }
+        c.close();
+        return sport;
+    }
+
     @Override
     public Status upload(SQLiteDatabase db, long mID) {
         Status s;
@@ -420,27 +431,23 @@ public class GarminSynchronizer extends DefaultSynchronizer {
             return s;
         }
 
-        TCX tcx = new TCX(db);
         HttpURLConnection conn = null;
         Exception ex = null;
         try {
-            StringWriter writer = new StringWriter();
-            tcx.export(mID, writer);
-
             conn = (HttpURLConnection) new URL(UPLOAD_URL).openConnection();
             conn.setDoOutput(true);
             conn.setRequestMethod(RequestMethod.POST.name());
             addCookies(conn);
 
-            Part<StringWritable> part2 = new Part<StringWritable>("data",
-                    new StringWritable(writer.toString()));
+            Part<ExportWritable> part2 = new Part<ExportWritable>("data",
+                    getExportWritable(db, mID, ExportCache.FORMAT_TCX));
             part2.setFilename("RunnerUp.tcx");
             part2.setContentType("application/octet-stream");
             Part<?> parts[] = {
                 part2
             };
 
-            SyncHelper.postMulti(conn, parts);
+            SyncHelper.postMultiChunked(conn, parts);
             int responseCode = conn.getResponseCode();
             String amsg = conn.getResponseMessage();
             if (responseCode == HttpURLConnection.HTTP_OK) {
@@ -453,7 +460,7 @@ public class GarminSynchronizer extends DefaultSynchronizer {
                     s = Status.OK;
                     s.activityId = mID;
                     String garminID = successes.getJSONObject(0).getString("internalId");
-                    setWorkoutType(tcx.getSport(), garminID);
+                    setWorkoutType(getSport(db, mID), garminID);
                     return s;
                 } else {
                     JSONArray failures = result.getJSONArray("failures");
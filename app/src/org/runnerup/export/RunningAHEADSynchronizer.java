@@ -28,9 +28,9 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.common.util.Constants.DB;
-import org.runnerup.export.format.TCX;
 import org.runnerup.export.oauth2client.OAuth2Activity;
 import org.runnerup.export.oauth2client.OAuth2Server;
+import org.runnerup.export.util.ExportCache;
 import org.runnerup.export.util.SyncHelper;
 
 import java.io.BufferedOutputStream;
@@ -38,10 +38,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.zip.GZIPOutputStream;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class RunningAHEADSynchronizer extends DefaultSynchronizer implements OAuth2Server {
@@ -197,19 +195,16 @@ public class RunningAHEADSynchronizer extends DefaultSynchronizer implements OAu
         }
 
         String URL = IMPORT_URL + "?access_token=" + access_token;
-        TCX tcx = new TCX(db);
         HttpURLConnection conn = null;
         Exception ex = null;
         try {
-            StringWriter writer = new StringWriter();
-            tcx.export(mID, writer);
             conn = (HttpURLConnection) new URL(URL).openConnection();
             conn.setDoOutput(true);
             conn.setRequestMethod(RequestMethod.POST.name());
             conn.addRequestProperty("Content-Encoding", "gzip");
-            OutputStream out = new GZIPOutputStream(
-                    new BufferedOutputStream(conn.getOutputStream()));
-            out.write(writer.toString().getBytes());
+            conn.setChunkedStreamingMode(0);
+            OutputStream out = new BufferedOutputStream(conn.getOutputStream());
+            getExportWritable(db, mID, ExportCache.FORMAT_TCX).setGzip(true).write(out);
             out.flush();
             out.close();
             int responseCode = conn.getResponseCode();
@@ -28,9 +28,10 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.common.util.Constants.DB;
-import org.runnerup.export.format.TCX;
 import org.runnerup.export.oauth2client.OAuth2Activity;
 import org.runnerup.export.oauth2client.OAuth2Server;
+import org.runnerup.export.util.ExportCache;
+import org.runnerup.export.util.ExportWritable;
 import org.runnerup.export.util.Part;
 import org.runnerup.export.util.StringWritable;
 import org.runnerup.export.util.SyncHelper;
@@ -38,7 +39,6 @@ import org.runnerup.export.util.SyncHelper;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
@@ -195,12 +195,9 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
         }
 
         String URL = REST_URL;
-        TCX tcx = new TCX(db);
         HttpURLConnection conn = null;
         Exception ex = null;
         try {
-            StringWriter writer = new StringWriter();
-            tcx.export(mID, writer);
             conn = (HttpURLConnection) new URL(URL).openConnection();
             conn.setDoOutput(true);
             conn.setRequestMethod(RequestMethod.POST.name());
@@ -208,15 +205,15 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
             Part<StringWritable> part0 = new Part<StringWritable>("access_token",
                     new StringWritable(access_token));
             Part<StringWritable> part1 = new Part<StringWritable>("data_type",
-                    new StringWritable("tcx"));
-            Part<StringWritable> part2 = new Part<StringWritable>("file",
-                    new StringWritable(writer.toString()));
-            part2.setFilename("RunnerUp.tcx");
+                    new StringWritable("tcx.gz"));
+            Part<ExportWritable> part2 = new Part<ExportWritable>("file",
+                    getExportWritable(db, mID, ExportCache.FORMAT_TCX).setGzip(true));
+            part2.setFilename("RunnerUp.tcx.gz");
             part2.setContentType("application/octet-stream");
             Part<?> parts[] = {
                     part0, part1, part2
             };
-            SyncHelper.postMulti(conn, parts);
+            SyncHelper.postMultiChunked(conn, parts);
 
             int responseCode = conn.getResponseCode();
             String amsg = conn.getResponseMessage();
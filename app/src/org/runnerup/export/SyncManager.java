@@ -34,6 +34,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
@@ -58,6 +60,7 @@ import org.runnerup.common.util.Constants.DB;
 import org.runnerup.db.DBHelper;
 import org.runnerup.export.Synchronizer.AuthMethod;
 import org.runnerup.export.Synchronizer.Status;
+import org.runnerup.export.util.ExportCache;
 import org.runnerup.feed.FeedList;
 import org.runnerup.feedwidget.FeedWidgetProvider;
 import org.runnerup.tracker.WorkoutObserver;
@@ -78,6 +81,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class SyncManager {
@@ -116,7 +122,9 @@ public class SyncManager {
         this.mContext = context;
         mDB = DBHelper.getWritableDatabase(context);
         mSpinner = spinner;
-        mSpinner.setCancelable(false);
+        if (mSpinner != null) {
+            mSpinner.setCancelable(false);
+        }
     }
     public SyncManager(Activity activity) {
         init(activity, activity, new ProgressDialog(activity));
@@ -589,110 +597,318 @@ public class SyncManager {
         return result;
     }
 
+    private static final int MAX_PARALLEL_UPLOADS = 3;
+    private static final long UPLOAD_TIMEOUT = 5 * 60 * 1000; // 5 min per synchronizer
+
     private long mID = 0;
     private Callback uploadCallback = null;
     private HashSet<String> pendingSynchronizers = null;
 
+    /**
+     * Uploads to different synchronizers are run concurrently on uploadExecutor,
+     *   results are handled on main thread. Authentication (which needs UI)
+     *   is done one synchronizer at a time.
+     */
+    private ExecutorService uploadExecutor = null;
+    private ExportCache uploadExportCache = null;
+    private Handler uploadHandler = null;
+    private final HashMap<String, RunningUpload> runningUploads = new HashMap<>();
+    private int uploadWorkers = 0; // uploads not yet returned, incl timed out
+    private final ArrayList<ExportCache> releasedExportCaches = new ArrayList<>();
+    private final ArrayList<Pair<Synchronizer, AuthMethod>> pendingUploadAuth = new ArrayList<>();
+    private boolean uploadAuthInProgress = false;
+
+    /**
+     * Account/activity of uploads started by any SyncManager and not yet returned,
+     *   so that UploadService does not upload the same activity concurrently
+     */
+    private static final HashSet<Pair<Long, Long>> uploadsInFlight = new HashSet<>();
+
+    static boolean isUploading(long accountId, long activityId) {
+        synchronized (uploadsInFlight) {
+            return uploadsInFlight.contains(new Pair<>(accountId, activityId));
+        }
+    }
+
+    private static void setUploading(RunningUpload upload, boolean uploading) {
+        Pair<Long, Long> key = new Pair<>(upload.synchronizer.getId(), upload.id);
+        synchronized (uploadsInFlight) {
+            if (uploading)
+                uploadsInFlight.add(key);
+            else
+                uploadsInFlight.remove(key);
+        }
+    }
+
+    /**
+     * An upload running on uploadExecutor. A timed out upload is reported as done
+     *   to the user, but its result is persisted (uploaded or queued for retry)
+     *   first when the worker has actually returned.
+     */
+    private static class RunningUpload {
+        final Synchronizer synchronizer;
+        final SQLiteDatabase db;
+        final long id;
+        Runnable timeout = null;
+        Future<?> future = null;
+        boolean started = false; // guarded by this
+        boolean timedOut = false; // guarded by this
+
+        RunningUpload(Synchronizer synchronizer, SQLiteDatabase db, long id) {
+            this.synchronizer = synchronizer;
+            this.db = db;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Result of one upload, copied from the shared Status singleton on the worker
+     *   right when upload() returns, as other workers may overwrite its fields
+     *   before the result is handled on main thread.
+     */
+    private static class UploadResult {
+        final Synchronizer.Status status;
+        final AuthMethod authMethod;
+        final Exception ex;
+        final Long activityId;
+
+        UploadResult(Synchronizer.Status status) {
+            this.status = status;
+            this.authMethod = status.authMethod;
+            this.ex = status.ex;
+            this.activityId = status.activityId;
+        }
+
+        UploadResult(Exception ex) {
+            this.status = Synchronizer.Status.ERROR;
+            this.authMethod = null;
+            this.ex = ex;
+            this.activityId = SyncManager.ERROR_ACTIVITY_ID;
+        }
+    }
+
     public void startUploading(Callback callback, HashSet<String> synchronizers, long id) {
         mID = id;
         uploadCallback = callback;
         pendingSynchronizers = synchronizers;
+        uploadHandler = new Handler(Looper.getMainLooper());
+        uploadExecutor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(MAX_PARALLEL_UPLOADS, pendingSynchronizers.size())));
+        uploadExportCache = new ExportCache(mContext.getCacheDir());
         mSpinner.setTitle("Uploading (" + pendingSynchronizers.size() + ")");
         mSpinner.show();
-        nextSynchronizer();
-    }
 
-    private void nextSynchronizer() {
         if (pendingSynchronizers.isEmpty()) {
             doneUploading();
             return;
         }
 
+        for (String name : new ArrayList<>(pendingSynchronizers)) {
+            doUpload(this.synchronizers.get(name));
+        }
+    }
+
+    private void updateUploadSpinner() {
         mSpinner.setTitle("Uploading (" + pendingSynchronizers.size() + ")");
-        final Synchronizer synchronizer = synchronizers.get(pendingSynchronizers.iterator().next());
-        pendingSynchronizers.remove(synchronizer.getName());
-        doUpload(synchronizer);
+        if (!runningUploads.isEmpty()) {
+            mSpinner.setMessage(getResources().getString(SyncMode.UPLOAD.getTextId(),
+                    TextUtils.join(", ", runningUploads.keySet())));
+        }
     }
 
     private void doUpload(final Synchronizer synchronizer) {
-        final ProgressDialog copySpinner = mSpinner;
+        final String name = synchronizer.getName();
         final SQLiteDatabase copyDB = DBHelper.getWritableDatabase(mContext);
+        final long id = mID;
 
-        copySpinner.setMessage(getResources().getString(SyncMode.UPLOAD.getTextId(), synchronizer.getName()));
-
-        new AsyncTask<Synchronizer, String, Synchronizer.Status>() {
+        if (synchronizer instanceof DefaultSynchronizer) {
+            ((DefaultSynchronizer) synchronizer).setExportCache(uploadExportCache);
+        }
 
+        final RunningUpload upload = new RunningUpload(synchronizer, copyDB, id);
+        upload.timeout = new Runnable() {
             @Override
-            protected Synchronizer.Status doInBackground(Synchronizer... params) {
+            public void run() {
+                onUploadTimeout(upload);
+            }
+        };
+        runningUploads.put(name, upload);
+        setUploading(upload, true);
+        uploadWorkers++;
+        uploadHandler.postDelayed(upload.timeout, UPLOAD_TIMEOUT);
+        updateUploadSpinner();
+
+        final Handler handler = uploadHandler;
+        upload.future = uploadExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (upload) {
+                    if (upload.timedOut)
+                        return;
+                    upload.started = true;
+                }
+                UploadResult res;
                 try {
-                    return params[0].upload(copyDB, mID);
+                    res = new UploadResult(synchronizer.upload(copyDB, id));
                 } catch (Exception ex) {
                     ex.printStackTrace();
-                    return Synchronizer.Status.ERROR;
+                    res = new UploadResult(ex);
                 }
+                final UploadResult result = res;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onUploadResult(upload, result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onUploadTimeout(RunningUpload upload) {
+        final String name = upload.synchronizer.getName();
+        if (runningUploads.get(name) != upload)
+            return;
+
+        Log.e(getClass().getName(), "upload to " + name + " timed out");
+        runningUploads.remove(name);
+        boolean started;
+        synchronized (upload) {
+            upload.timedOut = true;
+            started = upload.started;
+        }
+        upload.future.cancel(true);
+        if (!started) {
+            // worker will never run, retry in background
+            uploadWorkers--;
+            setUploading(upload, false);
+            queueRetry(upload);
+            releaseExportCaches();
+        }
+        // else result is handled by onUploadResult() when the worker returns
+        uploadFinished(name);
+    }
+
+    private void onUploadResult(RunningUpload upload, UploadResult result) {
+        final Synchronizer synchronizer = upload.synchronizer;
+        uploadWorkers--;
+        setUploading(upload, false);
+        if (upload.timedOut) {
+            // already reported as timed out, just persist the late result
+            if (result.status == Synchronizer.Status.OK) {
+                UploadQueue.markUploaded(upload.db, synchronizer.getId(), upload.id);
+            } else {
+                queueRetry(upload);
             }
+            releaseExportCaches();
+            return;
+        }
+        runningUploads.remove(synchronizer.getName());
+        uploadHandler.removeCallbacks(upload.timeout);
 
+        if (result.ex != null) {
+            Log.e(getClass().getName(), "upload to " + synchronizer.getName() + ": " + result.ex.toString());
+        }
+        switch (result.status) {
+            case CANCEL:
+                disableSynchronizer(disableSynchronizerCallback, synchronizer, false);
+                return;
+            case OK:
+                syncOK(synchronizer, mSpinner, upload.db, upload.id);
+                uploadFinished(synchronizer.getName());
+                return;
+            case NEED_AUTH: // should be handled inside connect "loop"
+                pendingUploadAuth.add(new Pair<>(synchronizer, result.authMethod));
+                nextUploadAuth();
+                return;
+            case ERROR:
+                /** e.g no coverage, let UploadService retry in background */
+                queueRetry(upload);
+                uploadFinished(synchronizer.getName());
+                return;
+            case SKIP:
+            case INCORRECT_USAGE:
+            case NEED_REFRESH:
+                uploadFinished(synchronizer.getName());
+                return;
+        }
+    }
+
+    private void queueRetry(RunningUpload upload) {
+        UploadQueue.enqueue(upload.db, upload.synchronizer.getId(), upload.id);
+        UploadService.schedule(mContext, upload.db);
+    }
+
+    private void nextUploadAuth() {
+        if (uploadAuthInProgress || pendingUploadAuth.isEmpty())
+            return;
+
+        uploadAuthInProgress = true;
+        Pair<Synchronizer, AuthMethod> next = pendingUploadAuth.remove(0);
+        final Synchronizer synchronizer = next.first;
+        handleAuth(new Callback() {
             @Override
-            protected void onPostExecute(Synchronizer.Status result) {
-                switch (result) {
+            public void run(String synchronizerName,
+                            Synchronizer.Status status) {
+                uploadAuthInProgress = false;
+                switch (status) {
                     case CANCEL:
                         disableSynchronizer(disableSynchronizerCallback, synchronizer, false);
-                        return;
+                        break;
                     case SKIP:
                     case ERROR:
                     case INCORRECT_USAGE:
-                        nextSynchronizer();
-                        return;
+                    case NEED_REFRESH:
+                    case NEED_AUTH: // should be handled inside
+                                    // connect "loop"
+                        uploadFinished(synchronizer.getName());
+                        break;
                     case OK:
-                        syncOK(synchronizer, copySpinner, copyDB, mID);
-                        nextSynchronizer();
-                        return;
-                    case NEED_AUTH: // should be handled inside connect "loop"
-                        handleAuth(new Callback() {
-                            @Override
-                            public void run(String synchronizerName,
-                                    Synchronizer.Status status) {
-                                switch (status) {
-                                    case CANCEL:
-                                        disableSynchronizer(disableSynchronizerCallback, synchronizer, false);
-                                        return;
-                                    case SKIP:
-                                    case ERROR:
-                                    case INCORRECT_USAGE:
-                                    case NEED_AUTH: // should be handled inside
-                                                    // connect "loop"
-                                        nextSynchronizer();
-                                        return;
-                                    case OK:
-                                        doUpload(synchronizer);
-                                        return;
-                                }
-                            }
-                        }, synchronizer, result.authMethod);
-                        return;
+                        doUpload(synchronizer);
+                        break;
                 }
+                nextUploadAuth();
             }
-        }.execute(synchronizer);
+        }, synchronizer, next.second);
     }
 
     private final Callback disableSynchronizerCallback = new Callback() {
         @Override
         public void run(String synchronizerName, Status status) {
-            nextSynchronizer();
+            uploadFinished(synchronizerName);
         }
     };
 
+    private void uploadFinished(String synchronizerName) {
+        pendingSynchronizers.remove(synchronizerName);
+        updateUploadSpinner();
+        if (runningUploads.isEmpty() && pendingUploadAuth.isEmpty() && !uploadAuthInProgress) {
+            doneUploading();
+        }
+    }
+
     private void syncOK(Synchronizer synchronizer, ProgressDialog copySpinner, SQLiteDatabase copyDB,
                         long id) {
         copySpinner.setMessage(getResources().getString(R.string.Saving));
-        ContentValues tmp = new ContentValues();
-        tmp.put(DB.EXPORT.ACCOUNT, synchronizer.getId());
-        tmp.put(DB.EXPORT.ACTIVITY, id);
-        tmp.put(DB.EXPORT.STATUS, 0);
-        copyDB.insert(DB.EXPORT.TABLE, null, tmp);
+        UploadQueue.markUploaded(copyDB, synchronizer.getId(), id);
     }
 
     private void doneUploading() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+            uploadExecutor = null;
+        }
+        if (uploadExportCache != null) {
+            for (Synchronizer synchronizer : synchronizers.values()) {
+                if (synchronizer instanceof DefaultSynchronizer) {
+                    ((DefaultSynchronizer) synchronizer).setExportCache(null);
+                }
+            }
+            // timed out uploads might still read from it
+            releasedExportCaches.add(uploadExportCache);
+            uploadExportCache = null;
+            releaseExportCaches();
+        }
         mSpinner.dismiss();
         final Callback cb = uploadCallback;
         uploadCallback = null;
@@ -701,6 +917,15 @@ public class SyncManager {
 
     }
 
+    private void releaseExportCaches() {
+        if (uploadWorkers > 0)
+            return;
+        for (ExportCache cache : releasedExportCaches) {
+            cache.clear();
+        }
+        releasedExportCaches.clear();
+    }
+
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode != CONFIGURE_REQUEST)
             return;
@@ -727,6 +952,7 @@ public class SyncManager {
         if (clearUploads) {
             mDB.delete(DB.EXPORT.TABLE, DB.EXPORT.ACCOUNT + " = ?", args);
         }
+        UploadQueue.removeAccount(mDB, synchronizer.getId());
 
         synchronizer.reset();
         callback.run(synchronizer.getName(), Synchronizer.Status.OK);
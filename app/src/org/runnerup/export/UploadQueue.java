@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.export;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+import org.runnerup.common.util.Constants.DB;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Durable queue of uploads that failed (or could not be started) and should be retried
+ *   in the background by {@link UploadService}.
+ *
+ * A job is one (account, activity) pair, so queueing the same upload twice is a no-op.
+ * Retries use exponential backoff with jitter, jobs are dropped after MAX_ATTEMPTS.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class UploadQueue {
+
+    static final long BACKOFF_BASE = 60 * 1000; // 1 min
+    static final long BACKOFF_MAX = 6 * 60 * 60 * 1000; // 6h
+    static final int MAX_ATTEMPTS = 12;
+
+    private static final Random random = new Random();
+
+    /**
+     * Queue an upload, to be retried as soon as possible
+     */
+    public static void enqueue(SQLiteDatabase db, long accountId, long activityId) {
+        ContentValues tmp = new ContentValues();
+        tmp.put(DB.UPLOAD_QUEUE.ACCOUNT, accountId);
+        tmp.put(DB.UPLOAD_QUEUE.ACTIVITY, activityId);
+        tmp.put(DB.UPLOAD_QUEUE.ATTEMPTS, 0);
+        tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, System.currentTimeMillis());
+        db.insertWithOnConflict(DB.UPLOAD_QUEUE.TABLE, null, tmp, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    public static void remove(SQLiteDatabase db, long accountId, long activityId) {
+        String args[] = {
+                Long.toString(accountId), Long.toString(activityId)
+        };
+        db.delete(DB.UPLOAD_QUEUE.TABLE, DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND "
+                + DB.UPLOAD_QUEUE.ACTIVITY + " = ?", args);
+    }
+
+    /**
+     * Record successful upload (in report table) and remove job
+     */
+    public static void markUploaded(SQLiteDatabase db, long accountId, long activityId) {
+        ContentValues tmp = new ContentValues();
+        tmp.put(DB.EXPORT.ACCOUNT, accountId);
+        tmp.put(DB.EXPORT.ACTIVITY, activityId);
+        tmp.put(DB.EXPORT.STATUS, 0);
+        db.insert(DB.EXPORT.TABLE, null, tmp);
+        remove(db, accountId, activityId);
+    }
+
+    public static void removeAccount(SQLiteDatabase db, long accountId) {
+        String args[] = {
+                Long.toString(accountId)
+        };
+        db.delete(DB.UPLOAD_QUEUE.TABLE, DB.UPLOAD_QUEUE.ACCOUNT + " = ?", args);
+    }
+
+    /**
+     * Record a failed attempt and push next attempt into the future
+     *
+     * @return false if job was dropped as it has failed too many times
+     */
+    public static boolean retryLater(SQLiteDatabase db, long accountId, long activityId,
+                                     String error) {
+        String args[] = {
+                Long.toString(accountId), Long.toString(activityId)
+        };
+        String where = DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.ACTIVITY + " = ?";
+        String cols[] = {
+                DB.UPLOAD_QUEUE.ATTEMPTS
+        };
+        int attempts = 0;
+        Cursor c = db.query(DB.UPLOAD_QUEUE.TABLE, cols, where, args, null, null, null);
+        if (c.moveToFirst()) {
+            attempts = c.getInt(0);
+        }
+        c.close();
+
+        attempts++;
+        if (attempts >= MAX_ATTEMPTS) {
+            Log.e("UploadQueue", "giving up upload of activity " + activityId + " to account "
+                    + accountId + " after " + attempts + " attempts");
+            db.delete(DB.UPLOAD_QUEUE.TABLE, where, args);
+            return false;
+        }
+
+        ContentValues tmp = new ContentValues();
+        tmp.put(DB.UPLOAD_QUEUE.ATTEMPTS, attempts);
+        tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT,
+                System.currentTimeMillis() + getBackoff(attempts, random));
+        tmp.put(DB.UPLOAD_QUEUE.LAST_ERROR, error);
+        db.update(DB.UPLOAD_QUEUE.TABLE, tmp, where, args);
+        return true;
+    }
+
+    /**
+     * Push one job to until, without counting an attempt (e.g when it is being uploaded
+     *   in the foreground)
+     */
+    public static void postpone(SQLiteDatabase db, long accountId, long activityId, long until) {
+        ContentValues tmp = new ContentValues();
+        tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, until);
+        String args[] = {
+                Long.toString(accountId), Long.toString(activityId)
+        };
+        db.update(DB.UPLOAD_QUEUE.TABLE, tmp, DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND "
+                + DB.UPLOAD_QUEUE.ACTIVITY + " = ?", args);
+    }
+
+    /**
+     * Delay before attempt number attempts + 1
+     *
+     * Exponential in attempts, capped at BACKOFF_MAX, with "equal jitter"
+     *   (i.e a random value in [delay/2, delay]) so that jobs that failed
+     *   together (e.g when coverage was lost) are not all retried at the same time.
+     */
+    static long getBackoff(int attempts, Random rnd) {
+        long delay = BACKOFF_MAX;
+        if (attempts < 30) {
+            delay = Math.min(BACKOFF_MAX, BACKOFF_BASE << Math.max(0, attempts - 1));
+        }
+        long half = delay / 2;
+        return half + (long) (rnd.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Get jobs that are due, coalesced per account
+     *
+     * @return account id -> list of activity ids (oldest first)
+     */
+    public static Map<Long, List<Long>> getDue(SQLiteDatabase db, long now) {
+        Map<Long, List<Long>> jobs = new LinkedHashMap<>();
+        String cols[] = {
+                DB.UPLOAD_QUEUE.ACCOUNT, DB.UPLOAD_QUEUE.ACTIVITY
+        };
+        String args[] = {
+                Long.toString(now)
+        };
+        Cursor c = db.query(DB.UPLOAD_QUEUE.TABLE, cols, DB.UPLOAD_QUEUE.NEXT_ATTEMPT + " <= ?",
+                args, null, null, DB.UPLOAD_QUEUE.ACCOUNT + ", " + DB.UPLOAD_QUEUE.ACTIVITY);
+        if (c.moveToFirst()) {
+            do {
+                long account = c.getLong(0);
+                List<Long> list = jobs.get(account);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    jobs.put(account, list);
+                }
+                list.add(c.getLong(1));
+            } while (c.moveToNext());
+        }
+        c.close();
+        return jobs;
+    }
+
+    /**
+     * @return time of next (earliest) pending attempt or 0 if queue is empty
+     */
+    public static long getNextAttempt(SQLiteDatabase db) {
+        long next = 0;
+        Cursor c = db.rawQuery("SELECT MIN(" + DB.UPLOAD_QUEUE.NEXT_ATTEMPT + ") FROM "
+                + DB.UPLOAD_QUEUE.TABLE, null);
+        if (c.moveToFirst() && !c.isNull(0)) {
+            next = c.getLong(0);
+        }
+        c.close();
+        return next;
+    }
+}
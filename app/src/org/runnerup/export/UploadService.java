@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.export;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.util.Log;
+
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.DBHelper;
+import org.runnerup.export.util.ExportCache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Background worker retrying uploads in {@link UploadQueue}
+ *
+ * Jobs are coalesced per account: connect once, then upload all due activities
+ *   for that account in the same session. When done the service schedules itself
+ *   for the earliest pending retry: on API 21+ with a persisted UploadJobService
+ *   job that also waits for network, before that with an alarm and
+ *   ConnectivityReceiver (enabled only while the queue is non-empty) that
+ *   restarts the service when connectivity is regained or after a reboot.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class UploadService extends IntentService {
+
+    static final long OFFLINE_RETRY = 30 * 60 * 1000; // in case connectivity is not reported
+    static final long IN_FLIGHT_RETRY = 60 * 1000; // activity is being uploaded by SyncManager
+
+    public UploadService() {
+        super("UploadService");
+    }
+
+    public static void start(Context context) {
+        context.startService(new Intent(context, UploadService.class));
+    }
+
+    /**
+     * (Re)schedule service for next pending job, or cancel if queue is empty
+     */
+    public static void schedule(Context context, SQLiteDatabase db) {
+        schedule(context, UploadQueue.getNextAttempt(db));
+    }
+
+    /**
+     * @param next time of next attempt, 0 to cancel
+     */
+    private static void schedule(Context context, long next) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            UploadJobService.schedule(context, next);
+        } else {
+            AlarmManager alarm = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            PendingIntent pi = PendingIntent.getService(context, 0,
+                    new Intent(context, UploadService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+            if (next == 0) {
+                alarm.cancel(pi);
+            } else {
+                /** not a wakeup alarm, no point in waking device just to upload */
+                alarm.set(AlarmManager.RTC, next, pi);
+            }
+            setReceiverEnabled(context, next != 0);
+        }
+    }
+
+    /**
+     * Only listen for connectivity/boot while there is something to upload
+     */
+    private static void setReceiverEnabled(Context context, boolean enabled) {
+        PackageManager pm = context.getPackageManager();
+        ComponentName receiver = new ComponentName(context, ConnectivityReceiver.class);
+        int state = enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED :
+                PackageManager.COMPONENT_ENABLED_STATE_DISABLED;
+        if (pm.getComponentEnabledSetting(receiver) != state) {
+            pm.setComponentEnabledSetting(receiver, state, PackageManager.DONT_KILL_APP);
+        }
+    }
+
+    static boolean isConnected(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        SQLiteDatabase db = DBHelper.getWritableDatabase(this);
+        if (!isConnected(this)) {
+            /** don't burn attempts (or spin on alarms) while offline, wait for connectivity */
+            long next = UploadQueue.getNextAttempt(db);
+            if (next != 0 && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                next = Math.max(next, System.currentTimeMillis() + OFFLINE_RETRY);
+            }
+            schedule(this, next);
+            return;
+        }
+
+        Map<Long, List<Long>> jobs = UploadQueue.getDue(db, System.currentTimeMillis());
+        if (!jobs.isEmpty()) {
+            SyncManager syncManager = new SyncManager(getApplicationContext(), null);
+            ExportCache cache = new ExportCache(getCacheDir());
+            for (Map.Entry<Long, List<Long>> e : jobs.entrySet()) {
+                uploadAccount(db, syncManager, cache, e.getKey(), e.getValue());
+            }
+            cache.clear();
+            syncManager.close();
+        }
+        schedule(this, db);
+    }
+
+    private void uploadAccount(SQLiteDatabase db, SyncManager syncManager, ExportCache cache,
+                               long accountId, List<Long> activities) {
+        Synchronizer synchronizer = loadSynchronizer(db, syncManager, accountId);
+        if (synchronizer == null || !synchronizer.isConfigured()) {
+            Log.e(getClass().getName(), "account " + accountId + " no longer configured, dropping "
+                    + activities.size() + " queued uploads");
+            UploadQueue.removeAccount(db, accountId);
+            return;
+        }
+
+        Synchronizer.Status status = synchronizer.connect();
+        if (status == Synchronizer.Status.NEED_REFRESH) {
+            status = synchronizer.refreshToken();
+        }
+        if (status != Synchronizer.Status.OK) {
+            /** e.g NEED_AUTH, requires user interaction, try again later */
+            for (Long id : activities) {
+                UploadQueue.retryLater(db, accountId, id, "connect: " + status);
+            }
+            return;
+        }
+
+        if (synchronizer instanceof DefaultSynchronizer) {
+            ((DefaultSynchronizer) synchronizer).setExportCache(cache);
+        }
+        for (Long id : activities) {
+            if (SyncManager.isUploading(accountId, id)) {
+                /** don't send it twice, SyncManager queues it again if it fails */
+                UploadQueue.postpone(db, accountId, id,
+                        System.currentTimeMillis() + IN_FLIGHT_RETRY);
+                continue;
+            }
+            /** Status values are shared, don't report an error of an earlier attempt */
+            for (Synchronizer.Status s : Synchronizer.Status.values()) {
+                s.ex = null;
+            }
+            try {
+                status = synchronizer.upload(db, id);
+                if (status == Synchronizer.Status.NEED_REFRESH &&
+                        synchronizer.refreshToken() == Synchronizer.Status.OK) {
+                    status = synchronizer.upload(db, id);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                status = Synchronizer.Status.ERROR;
+                status.ex = ex;
+            }
+
+            switch (status) {
+                case OK:
+                    UploadQueue.markUploaded(db, accountId, id);
+                    break;
+                case SKIP:
+                case INCORRECT_USAGE:
+                    UploadQueue.remove(db, accountId, id);
+                    break;
+                case CANCEL:
+                case ERROR:
+                case NEED_AUTH:
+                case NEED_REFRESH:
+                    UploadQueue.retryLater(db, accountId, id, status.ex != null ?
+                            status.ex.toString() : status.toString());
+                    break;
+            }
+        }
+        if (synchronizer instanceof DefaultSynchronizer) {
+            ((DefaultSynchronizer) synchronizer).setExportCache(null);
+        }
+    }
+
+    private Synchronizer loadSynchronizer(SQLiteDatabase db, SyncManager syncManager,
+                                          long accountId) {
+        String cols[] = {
+                DB.ACCOUNT.NAME
+        };
+        String args[] = {
+                Long.toString(accountId)
+        };
+        String name = null;
+        Cursor c = db.query(DB.ACCOUNT.TABLE, cols, "_id = ?", args, null, null, null);
+        if (c.moveToFirst()) {
+            name = c.getString(0);
+        }
+        c.close();
+        if (name == null || syncManager.load(name) == -1) {
+            return null;
+        }
+        return syncManager.getSynchronizerByName(name);
+    }
+
+    /**
+     * Restarts the service when connected or after a reboot (alarms are lost), used
+     *   before API 21. Disabled in manifest, enabled while the queue is non-empty.
+     */
+    public static class ConnectivityReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()) || isConnected(context)) {
+                UploadService.start(context);
+            }
+        }
+    }
+
+    /**
+     * Job that starts UploadService at next attempt when a network is available,
+     *   persisted across reboots
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static class UploadJobService extends JobService {
+        private static final int JOB_ID = 1;
+
+        static void schedule(Context context, long next) {
+            JobScheduler scheduler = (JobScheduler) context
+                    .getSystemService(Context.JOB_SCHEDULER_SERVICE);
+            if (next == 0) {
+                scheduler.cancel(JOB_ID);
+                return;
+            }
+            scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                    new ComponentName(context, UploadJobService.class))
+                    .setMinimumLatency(Math.max(0, next - System.currentTimeMillis()))
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                    .setPersisted(true)
+                    .build());
+        }
+
+        @Override
+        public boolean onStartJob(JobParameters params) {
+            UploadService.start(this);
+            return false;
+        }
+
+        @Override
+        public boolean onStopJob(JobParameters params) {
+            return false;
+        }
+    }
+}
@@ -23,7 +23,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
 import android.os.Build;
 
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
 import org.runnerup.export.EndomondoSynchronizer;
 import org.runnerup.workout.Sport;
 
@@ -90,86 +92,72 @@ public class EndomondoTrack {
     }
 
     private void emitWaypoints(final long activityId, final Writer writer) throws IOException {
-        final String[] pColumns = {
-                DB.LOCATION.LAP, // 0
-                DB.LOCATION.TIME, // 1
-                DB.LOCATION.LATITUDE, // 2
-                DB.LOCATION.LONGITUDE, // 3
-                DB.LOCATION.ALTITUDE, // 4
-                DB.LOCATION.TYPE, // 5
-                DB.LOCATION.HR // 6
-        };
-
-        final Cursor c = mDB.query(DB.LOCATION.TABLE, pColumns, DB.LOCATION.ACTIVITY
-                + " = " + activityId, null, null, null, null);
+        final LocationReader c = LocationReader.open(mDB, activityId);
 
         double distance = 0;
         Location lastLoc = null;
         try {
-            if (c.moveToFirst()) {
-                do {
-                    Location l = new Location("Dill");
-                    l.setLatitude(c.getDouble(2));
-                    l.setLongitude(c.getDouble(3));
-                    if (lastLoc != null) {
-                        distance += l.distanceTo(lastLoc);
-                    }
-                    lastLoc = l;
-
-                    // # timestamp;
-                    // # type (2=start, 3=end, 0=pause, 1=resume);
-                    // # latitude;
-                    // # longitude;
-                    // #;
-                    // #;
-                    // # alt;
-                    // # hr;
-
-                    writer.write(simpleDateFormat.format(new Date(c.getLong(1))));
-                    final int type = c.getInt(5);
-                    switch (type) {
-                        case DB.LOCATION.TYPE_START:
-                            writer.write(";2;");
-                            break;
-                        case DB.LOCATION.TYPE_END:
-                            lastLoc = null;
-                            writer.write(";3;");
-                            break;
-                        case DB.LOCATION.TYPE_PAUSE:
-                            lastLoc = null;
-                            writer.write(";0;");
-                            break;
-                        case DB.LOCATION.TYPE_RESUME:
-                            writer.write(";1;");
-                            break;
-                        case DB.LOCATION.TYPE_GPS:
-                        default:
-                            writer.write(";;");
-                    }
-                    writer.write(Double.toString(c.getDouble(2)));
-                    writer.write(';');
-                    writer.write(Double.toString(c.getDouble(3)));
-                    writer.write(';');
-                    writer.write(Double.toString(distance / 1000)); // in km
-                    writer.write(';');
-                    // unknown
-                    writer.write(';');
-                    // alt
-                    if (!c.isNull(4)) {
-                        writer.write(Double.toString(c.getDouble(4)));
-                    }
-                    writer.write(';');
-                    // hr
-                    if (!c.isNull(6)) {
-                        writer.write(Integer.toString(c.getInt(6)));
-                    }
-                    writer.write(';');
-                    writer.append('\n');
-                } while (c.moveToNext());
+            while (c.moveToNext()) {
+                Location l = new Location("Dill");
+                l.setLatitude(c.getLatitude());
+                l.setLongitude(c.getLongitude());
+                if (lastLoc != null) {
+                    distance += l.distanceTo(lastLoc);
+                }
+                lastLoc = l;
+
+                // # timestamp;
+                // # type (2=start, 3=end, 0=pause, 1=resume);
+                // # latitude;
+                // # longitude;
+                // #;
+                // #;
+                // # alt;
+                // # hr;
+
+                writer.write(simpleDateFormat.format(new Date(c.getTime())));
+                final int type = c.getType();
+                switch (type) {
+                    case DB.LOCATION.TYPE_START:
+                        writer.write(";2;");
+                        break;
+                    case DB.LOCATION.TYPE_END:
+                        lastLoc = null;
+                        writer.write(";3;");
+                        break;
+                    case DB.LOCATION.TYPE_PAUSE:
+                        lastLoc = null;
+                        writer.write(";0;");
+                        break;
+                    case DB.LOCATION.TYPE_RESUME:
+                        writer.write(";1;");
+                        break;
+                    case DB.LOCATION.TYPE_GPS:
+                    default:
+                        writer.write(";;");
+                }
+                writer.write(Double.toString(c.getLatitude()));
+                writer.write(';');
+                writer.write(Double.toString(c.getLongitude()));
+                writer.write(';');
+                writer.write(Double.toString(distance / 1000)); // in km
+                writer.write(';');
+                // unknown
+                writer.write(';');
+                // alt
+                if (!c.isNull(CompactTrack.ALTITUDE)) {
+                    writer.write(Double.toString(c.getDouble(CompactTrack.ALTITUDE)));
+                }
+                writer.write(';');
+                // hr
+                if (!c.isNull(CompactTrack.HR)) {
+                    writer.write(Integer.toString(c.getInt(CompactTrack.HR)));
+                }
+                writer.write(';');
+                writer.append('\n');
             }
         } finally {
-            if (c != null)
-                c.close();
+            c.close();
         }
     }
 }
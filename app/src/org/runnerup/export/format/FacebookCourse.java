@@ -27,7 +27,9 @@ import android.os.Build;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
 import org.runnerup.util.Formatter;
 
 import java.io.IOException;
@@ -125,27 +127,24 @@ public class FacebookCourse {
     }
 
     private JSONArray trail(long activityId) throws JSONException {
-        final String cols[] = {
-                DB.LOCATION.TYPE, DB.LOCATION.LATITUDE,
-                DB.LOCATION.LONGITUDE, DB.LOCATION.TIME, DB.LOCATION.SPEED
-        };
-        Cursor c = mDB.query(DB.LOCATION.TABLE, cols, DB.LOCATION.ACTIVITY
-                + " = " + activityId, null, null, null, null);
-        if (c.moveToFirst()) {
+        LocationReader c = LocationReader.open(mDB, activityId);
+        try {
             Location prev = null, last = null;
             double sumDist = 0;
             long sumTime = 0;
             double accTime = 0;
             final double period = 30;
-            JSONArray arr = new JSONArray();
-            do {
-                switch (c.getInt(0)) {
+            JSONArray arr = null;
+            while (c.moveToNext()) {
+                if (arr == null)
+                    arr = new JSONArray();
+                switch (c.getType()) {
                     case DB.LOCATION.TYPE_START:
                     case DB.LOCATION.TYPE_RESUME:
                         last = new Location("Dill");
-                        last.setLatitude(c.getDouble(1));
-                        last.setLongitude(c.getDouble(2));
-                        last.setTime(c.getLong(3));
+                        last.setLatitude(c.getLatitude());
+                        last.setLongitude(c.getLongitude());
+                        last.setTime(c.getTime());
                         accTime = period * 1000; // always emit first point
                                                  // start/resume
                         break;
@@ -154,11 +153,11 @@ public class FacebookCourse {
                     case DB.LOCATION.TYPE_GPS:
                     case DB.LOCATION.TYPE_PAUSE:
                         Location l = new Location("Sill");
-                        l.setLatitude(c.getDouble(1));
-                        l.setLongitude(c.getDouble(2));
-                        l.setTime(c.getLong(3));
-                        if (!c.isNull(4))
-                            l.setSpeed(c.getFloat(4));
+                        l.setLatitude(c.getLatitude());
+                        l.setLongitude(c.getLongitude());
+                        l.setTime(c.getTime());
+                        if (!c.isNull(CompactTrack.SPEED))
+                            l.setSpeed((float) c.getDouble(CompactTrack.SPEED));
                         if (last != null) {
                             sumDist += l.distanceTo(last);
                             sumTime += l.getTime() - last.getTime();
@@ -171,12 +170,11 @@ public class FacebookCourse {
                     arr.put(point(prev, last, sumTime, sumDist));
                     accTime -= period * 1000;
                 }
-            } while (c.moveToNext());
-            c.close();
+            }
             return arr;
+        } finally {
+            c.close();
         }
-        c.close();
-        return null;
     }
 
     private JSONObject point(Location prev, Location last, long sumTime, double sumDist)
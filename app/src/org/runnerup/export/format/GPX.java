@@ -22,15 +22,15 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants.DB;
-import org.runnerup.util.KXmlSerializer;
+import org.runnerup.db.LocationReader;
+import org.runnerup.db.SensorSampleReader;
+import org.runnerup.util.CharFormatter;
+import org.runnerup.util.FastXmlWriter;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class GPX {
@@ -44,11 +44,24 @@ public class GPX {
 
     final RestLapMode restLapMode = RestLapMode.START_STOP_TRKSEG;
 
+    // GPX 1.1 and TrackPointExtension v1 elements written per track point
+    private static final FastXmlWriter.Tag TRKPT = new FastXmlWriter.Tag("trkpt");
+    private static final FastXmlWriter.Tag ELE = new FastXmlWriter.Tag("ele");
+    private static final FastXmlWriter.Tag TIME = new FastXmlWriter.Tag("time");
+    private static final FastXmlWriter.Tag EXTENSIONS = new FastXmlWriter.Tag("extensions");
+    private static final FastXmlWriter.Tag TRACK_POINT_EXTENSION =
+            new FastXmlWriter.Tag("gpxtpx:TrackPointExtension");
+    private static final FastXmlWriter.Tag ACCURACY = new FastXmlWriter.Tag("accuracy");
+    private static final FastXmlWriter.Tag BEARING = new FastXmlWriter.Tag("bearing");
+    private static final FastXmlWriter.Tag SPEED = new FastXmlWriter.Tag("speed");
+    private static final FastXmlWriter.Tag HR = new FastXmlWriter.Tag("gpxtpx:hr");
+    private static final FastXmlWriter.Tag CAD = new FastXmlWriter.Tag("gpxtpx:cad");
+
     long mID = 0;
     SQLiteDatabase mDB = null;
-    KXmlSerializer mXML = null;
+    FastXmlWriter mXML = null;
     String notes = null;
-    SimpleDateFormat simpleDateFormat = null;
+    final CharFormatter fmt = new CharFormatter();
     private final boolean mPrivateExtensions;
 
     public GPX(SQLiteDatabase mDB) {
@@ -57,13 +70,11 @@ public class GPX {
 
     public GPX(SQLiteDatabase mDB, boolean privateExtensions) {
         this.mDB = mDB;
-        simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         this.mPrivateExtensions = privateExtensions;
     }
 
     String formatTime(long time) {
-        return simpleDateFormat.format(new Date(time));
+        return fmt.isoTime(time).toString();
     }
 
     /**
@@ -83,41 +94,40 @@ public class GPX {
 
         long startTime = cursor.getLong(2); // epoch
         try {
-            mXML = new KXmlSerializer();
-            mXML.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
-            mXML.setOutput(writer);
+            mXML = new FastXmlWriter(writer);
+            mXML.setIndent(true);
             mXML.startDocument("UTF-8", true);
-            mXML.startTag("", "gpx");
-            mXML.attribute("", "version", "1.1");
-            mXML.attribute("", "creator", "RunnerUp");
-            mXML.attribute("", "xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
-            mXML.attribute("", "xmlns", "http://www.topografix.com/GPX/1/1");
-            mXML.attribute("", "xsi:schemaLocation",
+            mXML.startTag("gpx");
+            mXML.attribute("version", "1.1");
+            mXML.attribute("creator", "RunnerUp");
+            mXML.attribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+            mXML.attribute("xmlns", "http://www.topografix.com/GPX/1/1");
+            mXML.attribute("xsi:schemaLocation",
                     "http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd");
-            mXML.attribute("", "xmlns:gpxtpx",
+            mXML.attribute("xmlns:gpxtpx",
                     "http://www.garmin.com/xmlschemas/TrackPointExtension/v1");
 
-            mXML.startTag("", "metadata");
-            mXML.startTag("", "time");
+            mXML.startTag("metadata");
+            mXML.startTag("time");
             final String time = formatTime(startTime * 1000);
             mXML.text(time);
-            mXML.endTag("", "time");
-            mXML.endTag("", "metadata");
+            mXML.endTag("time");
+            mXML.endTag("metadata");
 
-            mXML.startTag("", "trk");
-            mXML.startTag("", "name");
+            mXML.startTag("trk");
+            mXML.startTag("name");
             mXML.text("Untitled");
-            mXML.endTag("", "name");
+            mXML.endTag("name");
             if (!cursor.isNull(1)) {
                 notes = cursor.getString(1);
-                mXML.startTag("", "desc");
+                mXML.startTag("desc");
                 mXML.text(notes);
-                mXML.endTag("", "desc");
+                mXML.endTag("desc");
             }
 
             exportLaps(activityId, startTime * 1000);
-            mXML.endTag("", "trk");
-            mXML.endTag("", "gpx");
+            mXML.endTag("trk");
+            mXML.endTag("gpx");
             mXML.flush();
             mXML.endDocument();
             mXML = null;
@@ -139,101 +149,77 @@ public class GPX {
         Cursor cLap = mDB.query(DB.LAP.TABLE, lColumns, "( " + DB.LAP.DISTANCE + " > 0 or "
                 + DB.LAP.TIME + " > 0) and "
                 + DB.LAP.ACTIVITY + " = " + activityId, null, null, null, null);
-        String[] pColumns = {
-                DB.LOCATION.LAP, DB.LOCATION.TIME,
-                DB.LOCATION.LATITUDE, DB.LOCATION.LONGITUDE,
-                DB.LOCATION.ALTITUDE, DB.LOCATION.TYPE,
-                DB.LOCATION.ACCURANCY, DB.LOCATION.BEARING, DB.LOCATION.SPEED,
-                DB.LOCATION.HR, DB.LOCATION.CADENCE
-        };
-        Cursor cLocation = mDB.query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null,
-                null);
+        LocationReader cLocation = LocationReader.open(mDB, activityId);
+        SensorSampleReader cHR = SensorSampleReader.open(mDB, activityId,
+                DB.SENSOR_SAMPLE.TYPE_HR);
         boolean lok = cLap.moveToFirst();
-        boolean pok = cLocation.moveToFirst();
+        boolean pok = cLocation.moveToNext();
 
         while (lok) {
             if (cLap.getFloat(1) != 0 && cLap.getLong(2) != 0) {
                 long lap = cLap.getLong(0);
-                while (pok && cLocation.getLong(0) != lap) {
+                while (pok && cLocation.getLap() != lap) {
                     pok = cLocation.moveToNext();
                 }
-                mXML.startTag("", "trkseg");
-                if (pok && cLocation.getLong(0) == lap) {
+                mXML.startTag("trkseg");
+                if (pok && cLocation.getLap() == lap) {
                     float last_lat = 0;
                     float last_longi = 0;
                     long last_time = 0;
-                    while (pok && cLocation.getLong(0) == lap) {
-                        long time = cLocation.getLong(1);
-                        float lat = cLocation.getFloat(2);
-                        float longi = cLocation.getFloat(3);
+                    while (pok && cLocation.getLap() == lap) {
+                        long time = cLocation.getTime();
+                        float lat = (float) cLocation.getLatitude();
+                        float longi = (float) cLocation.getLongitude();
                         if (!(time == last_time && lat == last_lat && longi != last_longi)) {
-                            mXML.startTag("", "trkpt");
-                            mXML.attribute("", "lon", Float.toString(longi));
-                            mXML.attribute("", "lat", Float.toString(lat));
-                            if (!cLocation.isNull(4)) {
-                                mXML.startTag("", "ele");
-                                mXML.text("" + cLocation.getLong(4));
-                                mXML.endTag("", "ele");
+                            mXML.startTag(TRKPT);
+                            mXML.attribute("lon", fmt.decimal(longi));
+                            mXML.attribute("lat", fmt.decimal(lat));
+                            if (!cLocation.isNull(CompactTrack.ALTITUDE)) {
+                                mXML.element(ELE, fmt.number((long) cLocation.getDouble(CompactTrack.ALTITUDE)));
                             }
-                            mXML.startTag("", "time");
-                            mXML.text(formatTime(time));
-                            mXML.endTag("", "time");
+                            mXML.element(TIME, fmt.isoTime(time));
 
                             {
                                 //Garmin's GPX extensions for non standard data (other variants exists too, like Cluetrust)
                                 //Check app specific like Strava: https://strava.github.io/api/v3/uploads/
                                 //mIncludeAccuracy is 
-                                boolean isAccuracy = !cLocation.isNull(6) && mPrivateExtensions;
-                                boolean isBearing = !cLocation.isNull(7) && mPrivateExtensions;
-                                boolean isSpeed = !cLocation.isNull(8) && mPrivateExtensions;
-                                boolean isHr = !cLocation.isNull(9);
-                                boolean isCad = !cLocation.isNull(10);
+                                boolean isAccuracy = !cLocation.isNull(CompactTrack.ACCURACY) && mPrivateExtensions;
+                                boolean isBearing = !cLocation.isNull(CompactTrack.BEARING) && mPrivateExtensions;
+                                boolean isSpeed = !cLocation.isNull(CompactTrack.SPEED) && mPrivateExtensions;
+                                int hr = cHR.getValue(time, cLocation.isNull(CompactTrack.HR) ?
+                                        0 : cLocation.getInt(CompactTrack.HR));
+                                boolean isHr = hr > 0;
+                                boolean isCad = !cLocation.isNull(CompactTrack.CADENCE);
                                 boolean isAny = isAccuracy || isBearing || isSpeed || isHr || isCad;
                                 if (isAny) {
-                                    mXML.startTag("", "extensions");
-                                    mXML.startTag("", "gpxtpx:TrackPointExtension");
+                                    mXML.startTag(EXTENSIONS);
+                                    mXML.startTag(TRACK_POINT_EXTENSION);
                                 }
 
                                 if (isAccuracy) {
-                                    mXML.startTag("", "accuracy");
-                                    String val = Float.toString(cLocation.getFloat(6));
-                                    mXML.text(val);
-                                    mXML.endTag("", "accuracy");
+                                    mXML.element(ACCURACY, fmt.decimal((float) cLocation.getDouble(CompactTrack.ACCURACY)));
                                 }
                                 if (isBearing) {
-                                    mXML.startTag("", "bearing");
-                                    String val = Float.toString(cLocation.getFloat(7));
-                                    mXML.text(val);
-                                    mXML.endTag("", "bearing");
+                                    mXML.element(BEARING, fmt.decimal((float) cLocation.getDouble(CompactTrack.BEARING)));
                                 }
                                 if (isSpeed) {
-                                    mXML.startTag("", "speed");
-                                    String val = Float.toString(cLocation.getFloat(8));
-                                    mXML.text(val);
-                                    mXML.endTag("", "speed");
+                                    mXML.element(SPEED, fmt.decimal((float) cLocation.getDouble(CompactTrack.SPEED)));
                                 }
                                 if (isHr) {
-                                    mXML.startTag("", "gpxtpx:hr");
-                                    String bpm = Integer.toString(cLocation.getInt(9));
-                                    mXML.text(bpm);
-                                    mXML.endTag("", "gpxtpx:hr");
+                                    mXML.element(HR, fmt.number(hr));
                                 }
                                 if (isCad) {
                                     //Not supported by Strava?
-                                    mXML.startTag("", "gpxtpx:cad");
-                                    String val = Float.toString(cLocation.getFloat(10));
-                                    mXML.text(val);
-                                    mXML.endTag("", "gpxtpx:cad");
+                                    mXML.element(CAD, fmt.decimal((float) cLocation.getDouble(CompactTrack.CADENCE)));
                                 }
 
                                 if (isAny) {
-                                    mXML.endTag("", "gpxtpx:TrackPointExtension");
-                                    mXML.endTag("", "extensions");
+                                    mXML.endTag(TRACK_POINT_EXTENSION);
+                                    mXML.endTag(EXTENSIONS);
                                 }
                             }
 
-                            mXML.endTag("", "trkpt");
+                            mXML.endTag(TRKPT);
                             last_time = time;
                             last_lat = lat;
                             last_longi = longi;
@@ -241,66 +227,24 @@ public class GPX {
                         pok = cLocation.moveToNext();
                     }
                 }
-                mXML.endTag("", "trkseg");
+                mXML.endTag("trkseg");
             } else if (export_rest_laps && (cLap.getFloat(1) != 0 || cLap.getLong(2) != 0)) {
                 long lap = cLap.getLong(0);
                 if (restLapMode == RestLapMode.START_STOP_TRKSEG) {
                     if (lap > 0 && !cLap.isLast()) {
-                        Cursor cStart = mDB.query(DB.LOCATION.TABLE, pColumns,
-                                DB.LOCATION.ACTIVITY + " = " + activityId + " and "
-                                        + DB.LOCATION.LAP + " = " + (lap - 1), null, null, null,
-                                "_id desc", "1");
-                        Cursor cEnd = mDB.query(DB.LOCATION.TABLE, pColumns,
-                                DB.LOCATION.ACTIVITY + " = " + activityId + " and "
-                                        + DB.LOCATION.LAP + " = " + (lap + 1), null, null, null,
-                                "_id asc", "1");
-
-                        if (cStart.moveToFirst() && cEnd.moveToFirst()) {
-                            mXML.startTag("", "trkseg");
-
-                            long time_0 = cStart.getLong(1);
-                            float lat_0 = cStart.getFloat(2);
-                            float longi_0 = cStart.getFloat(3);
-
-                            long time_1 = cEnd.getLong(1);
-                            float lat_1 = cEnd.getFloat(2);
-                            float longi_1 = cEnd.getFloat(3);
-
-                            mXML.startTag("", "trkpt");
-                            mXML.attribute("", "lon", Float.toString(longi_0));
-                            mXML.attribute("", "lat", Float.toString(lat_0));
-                            if (!cStart.isNull(4)) {
-                                mXML.startTag("", "ele");
-                                mXML.text("" + cStart.getLong(4));
-                                mXML.endTag("", "ele");
-                            }
-                            mXML.startTag("", "time");
-                            mXML.text(formatTime(time_0));
-                            mXML.endTag("", "time");
-                            mXML.endTag("", "trkpt");
-
-                            mXML.startTag("", "trkpt");
-                            mXML.attribute("", "lon", Float.toString(longi_1));
-                            mXML.attribute("", "lat", Float.toString(lat_1));
-                            if (!cEnd.isNull(4)) {
-                                mXML.startTag("", "ele");
-                                mXML.text("" + cEnd.getLong(4));
-                                mXML.endTag("", "ele");
-                            }
-                            mXML.startTag("", "time");
-                            mXML.text(formatTime(time_1));
-                            mXML.endTag("", "time");
-                            mXML.endTag("", "trkpt");
-
-                            mXML.endTag("", "trkseg");
+                        LocationReader.Point start = new LocationReader.Point();
+                        LocationReader.Point end = new LocationReader.Point();
+                        if (LocationReader.read(mDB, activityId, lap - 1, true, start) &&
+                                LocationReader.read(mDB, activityId, lap + 1, false, end)) {
+                            mXML.startTag("trkseg");
+                            emitPoint(start);
+                            emitPoint(end);
+                            mXML.endTag("trkseg");
                         }
-
-                        cStart.close();
-                        cEnd.close();
                     }
                 } else if (restLapMode == RestLapMode.EMPTY_TRKSEG) {
-                    mXML.startTag("", "trkseg");
-                    mXML.endTag("", "trkseg");
+                    mXML.startTag("trkseg");
+                    mXML.endTag("trkseg");
                 }
             }
 
@@ -308,6 +252,25 @@ public class GPX {
         }
         cLap.close();
         cLocation.close();
+        cHR.close();
+    }
+
+    /**
+     * trkpt with time and elevation (rest lap start/stop segment)
+     */
+    private void emitPoint(LocationReader.Point p) throws IOException {
+        mXML.startTag("trkpt");
+        mXML.attribute("lon", fmt.decimal((float) p.longitude));
+        mXML.attribute("lat", fmt.decimal((float) p.latitude));
+        if (!Double.isNaN(p.altitude)) {
+            mXML.startTag("ele");
+            mXML.text(fmt.number((long) p.altitude));
+            mXML.endTag("ele");
+        }
+        mXML.startTag("time");
+        mXML.text(fmt.isoTime(p.time));
+        mXML.endTag("time");
+        mXML.endTag("trkpt");
     }
 
     public String getNotes() {
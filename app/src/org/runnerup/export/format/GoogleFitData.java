@@ -26,8 +26,11 @@ import android.util.Log;
 import android.util.Pair;
 
 import org.runnerup.R;
+import org.runnerup.common.util.CompactTrack;
+import org.runnerup.db.LocationReader;
 import org.runnerup.export.GoogleFitSynchronizer;
 import org.runnerup.export.util.SyncHelper;
+import org.runnerup.util.CharFormatter;
 import org.runnerup.util.JsonWriter;
 
 import java.io.IOException;
@@ -116,6 +119,7 @@ public class GoogleFitData {
     private final Context mContext;
     private final String mProjectId;
     private SQLiteDatabase mDB = null;
+    private final CharFormatter fmt = new CharFormatter();
 
     public GoogleFitData(final SQLiteDatabase db, String project, Context ctx) {
         this.mDB = db;
@@ -135,39 +139,34 @@ public class GoogleFitData {
     public final List<DataSourceType> getActivityDataSourceTypes(long activityId) {
         List<DataSourceType> neededSources = new ArrayList<DataSourceType>();
 
-        String[] pColumns = {DB.LOCATION.TIME};
+        boolean hasLocation = false;
+        boolean hasHR = false;
+        boolean hasSpeed = false;
+        LocationReader c = LocationReader.open(getDB(), activityId);
+        while (c.moveToNext() && !(hasLocation && hasHR && hasSpeed)) {
+            hasLocation = true;
+            hasHR |= !c.isNull(CompactTrack.HR);
+            hasSpeed |= !c.isNull(CompactTrack.SPEED);
+        }
+        c.close();
 
         // First we export the location
-        Cursor cursor = getDB().query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId + " AND " + DB.LOCATION.LATITUDE + " IS NOT NULL", null, null, null,
-                null);
-
-        if (cursor.getCount() > 0) {
+        if (hasLocation) {
             neededSources.add(DataSourceType.ACTIVITY_LOCATION);
             neededSources.add(DataSourceType.LOCATION_SUMMARY);
         }
-        cursor.close();
 
         // Than if present the heart rate
-        cursor = getDB().query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId + " AND " + DB.LOCATION.HR + " IS NOT NULL", null, null, null,
-                null);
-
-        if (cursor.getCount() > 0) {
+        if (hasHR) {
             neededSources.add(DataSourceType.ACTIVITY_HEARTRATE);
             neededSources.add(DataSourceType.HEARTRATE_SUMMARY);
         }
-        cursor.close();
 
         // Next will be the speed
-        cursor = getDB().query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId + " AND " + DB.LOCATION.SPEED + " IS NOT NULL", null, null, null,
-                null);
-        if (cursor.getCount() > 0) {
+        if (hasSpeed) {
             neededSources.add(DataSourceType.ACTIVITY_SPEED);
             neededSources.add(DataSourceType.SPEED_SUMMARY);
         }
-        cursor.close();
 
         // At last the segments and summary
         neededSources.add(DataSourceType.ACTIVITY_SEGMENT);
@@ -266,25 +265,54 @@ public class GoogleFitData {
 
     private String exportSourceDataPoints(DataSourceType source, long activityId, StringWriter writer) {
 
-        ArrayList<String> pColumns = new ArrayList<String>();
-        pColumns.add("MIN(" + DB.LOCATION.TIME + ") AS MIN");
-        pColumns.add("MAX(" + DB.LOCATION.TIME + ")");
-        Cursor minMaxTime = getDB().query(DB.LOCATION.TABLE, pColumns.toArray(new String[pColumns.size()]), DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null, null);
-        minMaxTime.moveToFirst();
-
-        pColumns = new ArrayList<String>();
-        pColumns.add(DB.LOCATION.TIME);
         List<DataTypeField> fields = DATA_TYPE_FIELDS.get(source);
-        for (DataTypeField field : fields) {
-            pColumns.add(field.getColumn());
+        int columns[] = new int[fields.size()];
+        String aggregates[] = new String[fields.size()];
+        for (int i = 0; i < columns.length; i++) {
+            // summaries are aggregates like MAX(hr)
+            String column = fields.get(i).getColumn();
+            int paren = column.indexOf('(');
+            if (paren > 0) {
+                aggregates[i] = column.substring(0, paren);
+                column = column.substring(paren + 1, column.length() - 1);
+            }
+            columns[i] = LocationReader.getColumn(column);
+        }
+        boolean summary = aggregates.length > 0 && aggregates[0] != null;
+
+        // first pass for time span and aggregates
+        long minTime = Long.MAX_VALUE;
+        long maxTime = 0;
+        double values[] = new double[columns.length];
+        int counts[] = new int[columns.length];
+        LocationReader c = LocationReader.open(getDB(), activityId);
+        while (c.moveToNext()) {
+            long time = c.getTime();
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            for (int i = 0; summary && i < columns.length; i++) {
+                double val = c.getDouble(columns[i]);
+                if (Double.isNaN(val))
+                    continue;
+                if (counts[i] == 0 || "AVG".equals(aggregates[i]))
+                    values[i] = counts[i] == 0 ? val : values[i] + val;
+                else if ("MAX".equals(aggregates[i]))
+                    values[i] = Math.max(values[i], val);
+                else if ("MIN".equals(aggregates[i]))
+                    values[i] = Math.min(values[i], val);
+                counts[i]++;
+            }
+        }
+        c.close();
+        if (minTime == Long.MAX_VALUE)
+            minTime = 0;
+        for (int i = 0; summary && i < columns.length; i++) {
+            if ("AVG".equals(aggregates[i]) && counts[i] > 0)
+                values[i] /= counts[i];
         }
 
-        Cursor cursor = getDB().query(DB.LOCATION.TABLE, pColumns.toArray(new String[pColumns.size()]), DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null, null);
-        cursor.moveToFirst();
-
-        long startTime = minMaxTime.getLong(0) * MICRO_TO_NANOS;
-        long endTime = minMaxTime.getLong(1) * MICRO_TO_NANOS;
-        minMaxTime.close();
+        long startTime = minTime * MICRO_TO_NANOS;
+        long endTime = maxTime * MICRO_TO_NANOS;
 
         JsonWriter w = new JsonWriter(writer);
         try {
@@ -296,38 +324,59 @@ public class GoogleFitData {
             w.beginArray();
 
             //export points
-            do {
-                w.beginObject();
-                w.name("startTimeNanos").value(cursor.getLong(cursor.getColumnIndex(DB.LOCATION.TIME)) * MICRO_TO_NANOS);
-                if (!cursor.isLast()) {
-                    cursor.moveToNext();
-                    w.name("endTimeNanos").value(cursor.getLong(cursor.getColumnIndex(DB.LOCATION.TIME)) * MICRO_TO_NANOS);
-                    cursor.moveToPrevious();
-                } else {
-                    w.name("endTimeNanos").value(endTime);
+            if (summary) {
+                writeDataPoint(source, fields, startTime, endTime, values, w);
+            } else {
+                // a point ends where the next starts, so write it one row late
+                long time = -1;
+                c = LocationReader.open(getDB(), activityId);
+                while (c.moveToNext()) {
+                    if (time != -1)
+                        writeDataPoint(source, fields, time, c.getTime() * MICRO_TO_NANOS, values, w);
+                    time = c.getTime() * MICRO_TO_NANOS;
+                    for (int i = 0; i < columns.length; i++) {
+                        double val = c.getDouble(columns[i]);
+                        values[i] = Double.isNaN(val) ? 0 : val;
+                    }
                 }
-                w.name("originDataSourceId").value(source.getDataStreamId(this)
-
-                );
-                w.name("dataTypeName").value(source.getDataType());
-                w.name("value");
-                w.beginArray();
-                writeDataPointValues(fields, cursor, w);
-                w.endArray();
-                w.name("rawTimestampNanos").value(cursor.getLong(cursor.getColumnIndex(DB.LOCATION.TIME)) * MICRO_TO_NANOS);
-                w.name("computationTimeMillis").value(System.currentTimeMillis());
-                w.endObject();
-            } while (cursor.moveToNext());
+                c.close();
+                if (time != -1)
+                    writeDataPoint(source, fields, time, endTime, values, w);
+            }
             //end export points
             w.endArray();
             w.endObject();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        cursor.close();
         return getDataSetURLSuffix(source, startTime, endTime);
     }
 
+    private void writeDataPoint(DataSourceType source, List<DataTypeField> fields, long startTime,
+                                long endTime, double values[], JsonWriter w) throws IOException {
+        w.beginObject();
+        w.name("startTimeNanos").value(startTime);
+        w.name("endTimeNanos").value(endTime);
+        w.name("originDataSourceId").value(source.getDataStreamId(this));
+        w.name("dataTypeName").value(source.getDataType());
+        w.name("value");
+        w.beginArray();
+        for (int i = 0; i < values.length; i++) {
+            w.beginObject();
+            w.name(fields.get(i).getFormatDataPointValue());
+            if (fields.get(i).getFormatDataPointValue().equals("intVal")) {
+                w.value((int) values[i]);
+            } else if (fields.get(i).getFormatDataPointValue().equals("fpVal")) {
+                fmt.decimal(values[i]).value(w);
+            }
+            w.endObject();
+        }
+        w.endArray();
+        w.name("rawTimestampNanos").value(startTime);
+        w.name("computationTimeMillis").value(System.currentTimeMillis());
+        w.endObject();
+    }
+
     private String exportActivitySummary(DataSourceType source, long activityId, StringWriter writer) {
 
         ArrayList<String> pColumns = new ArrayList<String>();
@@ -398,7 +447,7 @@ public class GoogleFitData {
             if (field.getFormatDataPointValue().equals("intVal")) {
                 w.value(cursor.getInt(cursor.getColumnIndex(field.getColumn())));
             } else if (field.getFormatDataPointValue().equals("fpVal")) {
-                w.value(cursor.getDouble(cursor.getColumnIndex(field.getColumn())));
+                fmt.decimal(cursor.getDouble(cursor.getColumnIndex(field.getColumn()))).value(w);
             }
             w.endObject();
         }
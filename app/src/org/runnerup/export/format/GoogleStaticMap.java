@@ -18,15 +18,15 @@
 package org.runnerup.export.format;
 
 import android.annotation.TargetApi;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.util.Log;
 
-import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.HashSet;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class GoogleStaticMap {
@@ -73,19 +73,40 @@ public class GoogleStaticMap {
         encode(dst, longitude1 - longitude0);
     }
 
-    public long countLocations(long activityId) {
-        long count = 0;
-        String[] args = {
-            Long.toString(activityId)
-        };
-        Cursor c = mDB.rawQuery("SELECT COUNT (DISTINCT round(" + DB.LOCATION.LATITUDE
-                + "* 10000000000 + " + DB.LOCATION.LONGITUDE + "*100000)) FROM "
-                + DB.LOCATION.TABLE + " WHERE " + DB.LOCATION.ACTIVITY + " = ?", args);
-        if (c.moveToFirst()) {
-            count = c.getLong(0);
+    /**
+     * Distinct locations of activity (rounded to 1e-5 degrees) in track order
+     *
+     * @return lat0, lon0, lat1, lon1...
+     */
+    long[] loadLocations(long activityId) {
+        long res[] = new long[512];
+        int n = 0;
+        HashSet<Long> seen = new HashSet<Long>();
+        LocationReader c = LocationReader.open(mDB, activityId);
+        try {
+            while (c.moveToNext()) {
+                long lat = Math.round(c.getLatitude() * 100000);
+                long longi = Math.round(c.getLongitude() * 100000);
+                if (!seen.add((lat << 32) ^ (longi & 0xffffffffL)))
+                    continue;
+                if (n == res.length) {
+                    long tmp[] = new long[2 * n];
+                    System.arraycopy(res, 0, tmp, 0, n);
+                    res = tmp;
+                }
+                res[n++] = lat;
+                res[n++] = longi;
+            }
+        } finally {
+            c.close();
         }
-        c.close();
-        return count;
+        long tmp[] = new long[n];
+        System.arraycopy(res, 0, tmp, 0, n);
+        return tmp;
+    }
+
+    public long countLocations(long activityId) {
+        return loadLocations(activityId).length / 2;
     }
 
     /**
@@ -93,7 +114,8 @@ public class GoogleStaticMap {
      */
     public String export(long activityId, final int maxLen) {
 
-        long count = countLocations(activityId);
+        final long locations[] = loadLocations(activityId);
+        final long count = locations.length / 2;
         int avgLen = 6; // in this encoding 1 location "normally" takes 9 chars
         StringBuffer dst = null;
         do {
@@ -104,25 +126,15 @@ public class GoogleStaticMap {
             final int points = maxLen / avgLen;
             final int skip = (int) (1 + count / points);
 
-            String[] args = {
-                Long.toString(activityId)
-            };
-            Cursor c = mDB.rawQuery("SELECT DISTINCT cast(round(" + DB.LOCATION.LATITUDE
-                    + "*100000) as integer), cast(round(" + DB.LOCATION.LONGITUDE
-                    + "*100000) as integer) FROM " + DB.LOCATION.TABLE + " WHERE "
-                    + DB.LOCATION.ACTIVITY + " = ?", args);
-            if (c.moveToFirst()) {
-                long lat0 = 0;
-                long long0 = 0;
-                do {
-                    long lat = c.getLong(0);
-                    long longi = c.getLong(1);
-                    encode(dst, lat, longi, lat0, long0);
-                    lat0 = lat;
-                    long0 = longi;
-                } while (c.move(skip));
+            long lat0 = 0;
+            long long0 = 0;
+            for (int i = 0; i < count; i += skip) {
+                long lat = locations[2 * i];
+                long longi = locations[2 * i + 1];
+                encode(dst, lat, longi, lat0, long0);
+                lat0 = lat;
+                long0 = longi;
             }
-            c.close();
 
             String res;
             try {
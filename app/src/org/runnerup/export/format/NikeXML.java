@@ -23,7 +23,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
 import android.os.Build;
 
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
+import org.runnerup.util.CharFormatter;
 import org.runnerup.util.Formatter;
 import org.runnerup.util.KXmlSerializer;
 
@@ -46,6 +49,7 @@ public class NikeXML {
     SQLiteDatabase mDB = null;
     KXmlSerializer mXML = null;
     SimpleDateFormat simpleDateFormat = null;
+    final CharFormatter fmt = new CharFormatter();
 
     public NikeXML(final SQLiteDatabase db) {
         mDB = db;
@@ -206,19 +210,23 @@ public class NikeXML {
 
     private boolean emitHeartrateStats(long mID) throws IllegalArgumentException,
             IllegalStateException, IOException {
-        String args[] = {
-            Long.toString(mID)
-        };
-        Cursor c = mDB.rawQuery("select min(" + DB.LOCATION.HR + "), max(" + DB.LOCATION.HR
-                + "), avg(" + DB.LOCATION.HR + ") FROM " + DB.LOCATION.TABLE + " WHERE "
-                + DB.LOCATION.ACTIVITY + " = ?", args);
-        if (c.moveToFirst() &&
-                !(c.isNull(0) || c.isNull(1) || c.isNull(2))) {
-
-            int minHR = c.getInt(0);
-            int maxHR = c.getInt(1);
-            int avgHR = c.getInt(2);
-            c.close();
+        int minHR = Integer.MAX_VALUE;
+        int maxHR = 0;
+        long sumHR = 0;
+        int cntHR = 0;
+        LocationReader c = LocationReader.open(mDB, mID);
+        while (c.moveToNext()) {
+            if (!c.isNull(CompactTrack.HR)) {
+                int hr = c.getInt(CompactTrack.HR);
+                minHR = Math.min(minHR, hr);
+                maxHR = Math.max(maxHR, hr);
+                sumHR += hr;
+                cntHR++;
+            }
+        }
+        c.close();
+        if (cntHR > 0) {
+            int avgHR = (int) (sumHR / cntHR);
 
             mXML.startTag("", "heartrate");
             mXML.startTag("", "average");
@@ -231,67 +239,45 @@ public class NikeXML {
 
             return true;
         }
-        c.close();
         return false;
     }
 
     private void emitHRPosition(long mID, String string, int hrVal)
             throws IllegalArgumentException, IllegalStateException, IOException {
-        long _id = 0;
-        { // 1 find a point with specified value
-            String args[] = {
-                    Long.toString(mID), Integer.toString(hrVal)
-            };
-            Cursor c = mDB.rawQuery(
-                    "select min(_id) from location where activity_id = ? and hr = ? limit 1", args);
-            if (!c.moveToFirst()) {
-                c.close();
-                return;
+        // iterate from start to first point with specified value
+        LocationReader c = LocationReader.open(mDB, mID);
+        boolean found = false;
+        Location last = null;
+        double sumDist = 0;
+        long sumTime = 0;
+        while (!found && c.moveToNext()) {
+            switch (c.getType()) {
+                case DB.LOCATION.TYPE_START:
+                case DB.LOCATION.TYPE_RESUME:
+                    last = new Location("Dill");
+                    last.setLatitude(c.getLatitude());
+                    last.setLongitude(c.getLongitude());
+                    last.setTime(c.getTime());
+                    break;
+                case DB.LOCATION.TYPE_PAUSE:
+                case DB.LOCATION.TYPE_END:
+                    last = null;
+                    break;
+                case DB.LOCATION.TYPE_GPS:
+                    Location l = new Location("Sill");
+                    l.setLatitude(c.getLatitude());
+                    l.setLongitude(c.getLongitude());
+                    l.setTime(c.getTime());
+                    if (!c.isNull(CompactTrack.SPEED))
+                        l.setSpeed((float) c.getDouble(CompactTrack.SPEED));
+                    sumDist += l.distanceTo(last);
+                    sumTime += l.getTime() - last.getTime();
+                    last = l;
             }
-            _id = c.getLong(0);
-            c.close();
+            found = !c.isNull(CompactTrack.HR) && c.getInt(CompactTrack.HR) == hrVal;
         }
-
-        // 2 iterate to that position from start...
-        String cols[] = {
-                DB.LOCATION.TYPE, DB.LOCATION.LATITUDE, DB.LOCATION.LONGITUDE, DB.LOCATION.TIME,
-                DB.LOCATION.SPEED
-        };
-        String args[] = {
-                Long.toString(mID), Long.toString(_id)
-        };
-        Cursor c = mDB.query(DB.LOCATION.TABLE, cols,
-                DB.LOCATION.ACTIVITY + " = ? AND _id <= ?", args, null, null, "_id");
-
-        if (c.moveToFirst()) {
-            Location last = null;
-            double sumDist = 0;
-            long sumTime = 0;
-            do {
-                switch (c.getInt(0)) {
-                    case DB.LOCATION.TYPE_START:
-                    case DB.LOCATION.TYPE_RESUME:
-                        last = new Location("Dill");
-                        last.setLatitude(c.getDouble(1));
-                        last.setLongitude(c.getDouble(2));
-                        last.setTime(c.getLong(3));
-                        break;
-                    case DB.LOCATION.TYPE_PAUSE:
-                    case DB.LOCATION.TYPE_END:
-                        last = null;
-                        break;
-                    case DB.LOCATION.TYPE_GPS:
-                        Location l = new Location("Sill");
-                        l.setLatitude(c.getDouble(1));
-                        l.setLongitude(c.getDouble(2));
-                        l.setTime(c.getLong(3));
-                        if (!c.isNull(4))
-                            l.setSpeed(c.getFloat(4));
-                        sumDist += l.distanceTo(last);
-                        sumTime += l.getTime() - last.getTime();
-                        last = l;
-                }
-            } while (c.moveToNext());
+        c.close();
+        if (found) {
             mXML.startTag("", string);
             mXML.startTag("", "duration");
             mXML.text(Long.toString(sumTime)); // ms
@@ -318,7 +304,6 @@ public class NikeXML {
 
             mXML.endTag("", string);
         }
-        c.close();
     }
 
     abstract class Emitter {
@@ -393,7 +378,7 @@ public class NikeXML {
                 throws Exception {
             if (d == Dim.DISTANCE) {
                 buf.append(' ');
-                buf.append(Double.toString(Math.round(1000.0 * p.sumDistance / 1000.0) / 1000.0d));
+                fmt.decimal(Math.round(1000.0 * p.sumDistance / 1000.0) / 1000.0d).appendTo(buf);
             } else if (d == Dim.SPEED) {
                 double deltaTime = p.sumTime;
                 double deltaDist = p.sumDistance;
@@ -406,7 +391,7 @@ public class NikeXML {
                     speed = deltaDist / deltaTime;
                 }
                 buf.append(' ');
-                buf.append(Double.toString(speed));
+                fmt.decimal(speed).appendTo(buf);
             } else if (d == Dim.HR) {
                 double deltaTime = p.sumTime;
                 double deltaHR = p.sumHR;
@@ -419,7 +404,7 @@ public class NikeXML {
                     avgHR = deltaHR / deltaTime;
                 }
                 buf.append(' ');
-                buf.append(Long.toString(Math.round(avgHR)));
+                fmt.number(Math.round(avgHR)).appendTo(buf);
             }
         }
     }
@@ -442,114 +427,100 @@ public class NikeXML {
     private void emitList(final long activityId, final Dim d, final double add, final Emitter out)
             throws Exception {
         double first = add;
-        final String[] pColumns = {
-                DB.LOCATION.LAP, // 0
-                DB.LOCATION.TIME, // 1
-                DB.LOCATION.LATITUDE, // 2
-                DB.LOCATION.LONGITUDE,// 3
-                DB.LOCATION.ALTITUDE, // 4
-                DB.LOCATION.TYPE, // 5
-                DB.LOCATION.HR
-        }; // 6
-
-        final Cursor c = mDB.query(DB.LOCATION.TABLE, pColumns, DB.LOCATION.ACTIVITY
-                + " = " + activityId, null, null, null, null);
+        final LocationReader c = LocationReader.open(mDB, activityId);
 
         try {
             final Pos p = new Pos();
             int lastLap = 0;
             final Vector<Location> locHist = new Vector<Location>();
             final Vector<Pos> posHist = new Vector<Pos>();
-            if (c.moveToFirst()) {
-                do {
-                    final int type = c.getInt(5);
-                    if (type == DB.LOCATION.TYPE_RESUME) {
-                        locHist.clear();
-                        continue;
-                    }
+            while (c.moveToNext()) {
+                final int type = c.getType();
+                if (type == DB.LOCATION.TYPE_RESUME) {
+                    locHist.clear();
+                    continue;
+                }
 
-                    final Location l = new Location("Sill E Dill");
-                    final int lap = c.getInt(0);
-                    l.setTime(c.getLong(1));
-                    l.setLatitude(c.getDouble(2));
-                    l.setLongitude(c.getDouble(3));
-                    l.setProvider("" + c.getLong(3));
+                final Location l = new Location("Sill E Dill");
+                final int lap = (int) c.getLap();
+                l.setTime(c.getTime());
+                l.setLatitude(c.getLatitude());
+                l.setLongitude(c.getLongitude());
+                l.setProvider("" + (long) c.getLongitude());
 
-                    long hr = 0;
-                    if (!c.isNull(6)) {
-                        hr = c.getLong(6);
-                    }
+                long hr = 0;
+                if (!c.isNull(CompactTrack.HR)) {
+                    hr = c.getInt(CompactTrack.HR);
+                }
 
-                    long deltaTime = 0;
-                    double deltaDist = 0;
-                    double bearing = 0;
-                    if (!locHist.isEmpty()) {
-                        deltaTime = l.getTime()
-                                - locHist.lastElement().getTime();
-                        deltaDist = l.distanceTo(locHist.lastElement());
-                        bearing = locHist.lastElement().bearingTo(l);
+                long deltaTime = 0;
+                double deltaDist = 0;
+                double bearing = 0;
+                if (!locHist.isEmpty()) {
+                    deltaTime = l.getTime()
+                            - locHist.lastElement().getTime();
+                    deltaDist = l.distanceTo(locHist.lastElement());
+                    bearing = locHist.lastElement().bearingTo(l);
+                }
+
+                while ((d == Dim.DISTANCE && p.sumDistance + deltaDist >= first)
+                        || (d == Dim.TIME && p.sumTime + deltaTime >= first)) {
+
+                    double diffTime = 0;
+                    double diffDist = 0;
+                    double pct = 0;
+                    if (d == Dim.DISTANCE) {
+                        diffDist = first - p.sumDistance;
+                        pct = diffDist / deltaDist;
+                        diffTime = deltaTime * pct;
+                    } else {
+                        diffTime = first - p.sumTime;
+                        pct = diffTime / deltaTime;
+                        diffDist = deltaDist * pct;
                     }
 
-                    while ((d == Dim.DISTANCE && p.sumDistance + deltaDist >= first)
-                            || (d == Dim.TIME && p.sumTime + deltaTime >= first)) {
-
-                        double diffTime = 0;
-                        double diffDist = 0;
-                        double pct = 0;
-                        if (d == Dim.DISTANCE) {
-                            diffDist = first - p.sumDistance;
-                            pct = diffDist / deltaDist;
-                            diffTime = deltaTime * pct;
-                        } else {
-                            diffTime = first - p.sumTime;
-                            pct = diffTime / deltaTime;
-                            diffDist = deltaDist * pct;
-                        }
-
-                        final Location tmp = new Location(locHist.lastElement());
-                        move(tmp, bearing, diffDist); // move location
-                        tmp.setTime((long) (tmp.getTime() + diffTime)); // move
-                                                                        // time
-
-                        locHist.add(tmp);
-
-                        p.sumDistance += diffDist;
-                        p.sumTime += diffTime;
-                        p.sumHR += diffTime * hr;
-                        out.emit(p, posHist, locHist);
-                        posHist.add(new Pos(p));
+                    final Location tmp = new Location(locHist.lastElement());
+                    move(tmp, bearing, diffDist); // move location
+                    tmp.setTime((long) (tmp.getTime() + diffTime)); // move
+                                                                    // time
 
-                        locHist.remove(locHist.size() - 1); // remove synthetic
-                                                            // location
+                    locHist.add(tmp);
 
-                        deltaTime -= diffTime;
-                        deltaDist -= diffDist;
-                        first += add;
-                    }
-                    if (d == Dim.LAP && lastLap != lap) {
-                        lastLap = lap;
-                        if ((posHist.isEmpty() && p.sumTime > 0 && p.sumDistance > 0)
-                                || (!posHist.isEmpty() && p.sumTime > posHist.lastElement().sumTime && p.sumDistance > posHist
-                                        .lastElement().sumDistance)) {
-                            out.emit(p, posHist, locHist);
-                            posHist.add(new Pos(p));
-                        } else {
-                            continue;
-                        }
-                    }
+                    p.sumDistance += diffDist;
+                    p.sumTime += diffTime;
+                    p.sumHR += diffTime * hr;
+                    out.emit(p, posHist, locHist);
+                    posHist.add(new Pos(p));
+
+                    locHist.remove(locHist.size() - 1); // remove synthetic
+                                                        // location
 
-                    locHist.add(l);
-                    if (locHist.size() == 6) {
-                        locHist.remove(0);
+                    deltaTime -= diffTime;
+                    deltaDist -= diffDist;
+                    first += add;
+                }
+                if (d == Dim.LAP && lastLap != lap) {
+                    lastLap = lap;
+                    if ((posHist.isEmpty() && p.sumTime > 0 && p.sumDistance > 0)
+                            || (!posHist.isEmpty() && p.sumTime > posHist.lastElement().sumTime && p.sumDistance > posHist
+                                    .lastElement().sumDistance)) {
+                        out.emit(p, posHist, locHist);
+                        posHist.add(new Pos(p));
+                    } else {
+                        continue;
                     }
-                    p.sumTime += deltaTime;
-                    p.sumDistance += deltaDist;
-                    p.sumHR += hr * deltaTime;
-                } while (c.moveToNext());
+                }
+
+                locHist.add(l);
+                if (locHist.size() == 6) {
+                    locHist.remove(0);
+                }
+                p.sumTime += deltaTime;
+                p.sumDistance += deltaDist;
+                p.sumHR += hr * deltaTime;
             }
         } finally {
-            if (c != null)
-                c.close();
+            c.close();
         }
     }
 
@@ -18,7 +18,6 @@
 package org.runnerup.export.format;
 
 import android.annotation.TargetApi;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.util.Log;
@@ -26,12 +25,15 @@ import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
 import org.runnerup.db.entities.ActivityEntity;
 import org.runnerup.db.entities.LapEntity;
 import org.runnerup.db.entities.LocationEntity;
 import org.runnerup.export.RunKeeperSynchronizer;
+import org.runnerup.util.CharFormatter;
 import org.runnerup.util.JsonWriter;
 import org.runnerup.workout.Sport;
 
@@ -47,6 +49,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
@@ -61,6 +64,7 @@ public class RunKeeper {
 
     long mID = 0;
     SQLiteDatabase mDB = null;
+    final CharFormatter fmt = new CharFormatter();
 
     public RunKeeper(SQLiteDatabase db) {
         mDB = db;
@@ -112,67 +116,73 @@ public class RunKeeper {
 
     private void exportHeartRate(long activityId, long startTime, JsonWriter w)
             throws IOException {
-        String[] pColumns = {
-                DB.LOCATION.TIME, DB.LOCATION.HR
-        };
-        Cursor cursor = mDB.query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null,
-                null);
-        if (cursor.moveToFirst()) {
-            startTime = cursor.getLong(0);
-            do {
-                if (!cursor.isNull(1)) {
+        LocationReader c = LocationReader.open(mDB, activityId);
+        try {
+            boolean first = true;
+            while (c.moveToNext()) {
+                if (first) {
+                    startTime = c.getTime();
+                    first = false;
+                }
+                if (!c.isNull(CompactTrack.HR)) {
                     w.beginObject();
                     w.name("timestamp").value(
-                            (cursor.getLong(0) - startTime) / 1000);
-                    w.name("heart_rate").value(Integer.toString(cursor.getInt(1)));
+                            (c.getTime() - startTime) / 1000);
+                    w.name("heart_rate");
+                    fmt.number(c.getInt(CompactTrack.HR)).stringValue(w);
                     w.endObject();
                 }
-            } while (cursor.moveToNext());
+            }
+        } finally {
+            c.close();
         }
-        cursor.close();
     }
 
     private void exportPath(String name, long activityId, long startTime, JsonWriter w)
             throws IOException {
-        String[] pColumns = {
-                DB.LOCATION.TIME, DB.LOCATION.LATITUDE,
-                DB.LOCATION.LONGITUDE, DB.LOCATION.ALTITUDE, DB.LOCATION.TYPE
-        };
-        Cursor cursor = mDB.query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null,
-                null);
-        if (cursor.moveToFirst()) {
-            w.name(name);
-            w.beginArray();
-            startTime = cursor.getLong(0);
-            do {
+        LocationReader c = LocationReader.open(mDB, activityId);
+        try {
+            boolean first = true;
+            while (c.moveToNext()) {
+                if (first) {
+                    w.name(name);
+                    w.beginArray();
+                    startTime = c.getTime();
+                    first = false;
+                }
                 w.beginObject();
                 w.name("timestamp").value(
-                        (cursor.getLong(0) - startTime) / 1000);
-                w.name("latitude").value(cursor.getDouble(1));
-                w.name("longitude").value(cursor.getDouble(2));
-                if (!cursor.isNull(3)) {
-                    w.name("altitude").value(cursor.getDouble(3));
+                        (c.getTime() - startTime) / 1000);
+                w.name("latitude");
+                fmt.decimal(c.getLatitude()).value(w);
+                w.name("longitude");
+                fmt.decimal(c.getLongitude()).value(w);
+                if (!c.isNull(CompactTrack.ALTITUDE)) {
+                    w.name("altitude");
+                    fmt.decimal(c.getDouble(CompactTrack.ALTITUDE)).value(w);
                 }
-                if (cursor.getLong(4) == DB.LOCATION.TYPE_START) {
+                final int type = c.getType();
+                if (type == DB.LOCATION.TYPE_START) {
                     w.name("type").value("start");
-                } else if (cursor.getLong(4) == DB.LOCATION.TYPE_END) {
+                } else if (type == DB.LOCATION.TYPE_END) {
                     w.name("type").value("end");
-                } else if (cursor.getLong(4) == DB.LOCATION.TYPE_PAUSE) {
+                } else if (type == DB.LOCATION.TYPE_PAUSE) {
                     w.name("type").value("pause");
-                } else if (cursor.getLong(4) == DB.LOCATION.TYPE_RESUME) {
+                } else if (type == DB.LOCATION.TYPE_RESUME) {
                     w.name("type").value("resume");
-                } else if (cursor.getLong(4) == DB.LOCATION.TYPE_GPS) {
+                } else if (type == DB.LOCATION.TYPE_GPS) {
                     w.name("type").value("gps");
                 } else {
                     w.name("type").value("manual");
                 }
                 w.endObject();
-            } while (cursor.moveToNext());
-            w.endArray();
+            }
+            if (!first) {
+                w.endArray();
+            }
+        } finally {
+            c.close();
         }
-        cursor.close();
     }
 
     public static ActivityEntity parseToActivity(JSONObject response, double unitMeters) throws JSONException {
@@ -193,39 +203,102 @@ public class RunKeeper {
             return null;
         }
 
-        List<LapEntity> laps = new ArrayList<LapEntity>();
-        List<LocationEntity> locations = new ArrayList<LocationEntity>();
-
         JSONArray distance = response.getJSONArray("distance");
         JSONArray path = response.getJSONArray("path");
         JSONArray hr = response.getJSONArray("heart_rate");
 
         SortedMap<Long, HashMap<String, String>> pointsValueMap = createPointsMap(distance, path, hr);
-        Iterator<Map.Entry<Long, HashMap<String, String>>> points = pointsValueMap.entrySet().iterator();
+        // points are parsed while they are inserted, laps and hr are set when done
+        newActivity.setLocationPointSource(new PointSource(newActivity, pointsValueMap, hr, unitMeters));
+
+        return newActivity;
+    }
+
+    /**
+     * Location points of a downloaded activity, parsed one at a time into a
+     *   single reused entity. Laps and hr of the activity are updated as the
+     *   points are parsed and are complete when hasNext() returns false.
+     */
+    private static class PointSource implements Iterator<LocationEntity> {
+        private final ActivityEntity newActivity;
+        private final SortedMap<Long, HashMap<String, String>> pointsValueMap;
+        private final Iterator<Map.Entry<Long, HashMap<String, String>>> points;
+        private final JSONArray hr;
+        private final double unitMeters;
+
+        private final List<LapEntity> laps = new ArrayList<LapEntity>();
+        private final LocationEntity lv = new LocationEntity();
+        private boolean pending = false;
+        private boolean done = false;
 
         //lap hr
-        int maxHr = 0;
-        int sumHr = 0;
-        int count = 0;
+        private int maxHr = 0;
+        private int sumHr = 0;
+        private int count = 0;
         //point speed
-        long time = 0;
-        float meters = 0.0f;
+        private long time = 0;
+        private float meters = 0.0f;
         //activity hr
-        int maxHrOverall = 0;
-        int sumHrOverall = 0;
-        int countOverall = 0;
+        private int maxHrOverall = 0;
+        private int sumHrOverall = 0;
+        private int countOverall = 0;
+
+        PointSource(ActivityEntity newActivity, SortedMap<Long, HashMap<String, String>> pointsValueMap,
+                    JSONArray hr, double unitMeters) {
+            this.newActivity = newActivity;
+            this.pointsValueMap = pointsValueMap;
+            this.points = pointsValueMap.entrySet().iterator();
+            this.hr = hr;
+            this.unitMeters = unitMeters;
+        }
 
-        while (points.hasNext()) {
-            Map.Entry<Long, HashMap<String, String>> timePoint = points.next();
+        @Override
+        public boolean hasNext() {
+            while (!pending && points.hasNext()) {
+                pending = parse(points.next());
+            }
+            if (!pending && !done) {
+                done = true;
+                // calculate avg and max hr
+                // update the activity
+                newActivity.setMaxHr(maxHrOverall);
+                if (countOverall > 0) {
+                    newActivity.setAvgHr(sumHrOverall / countOverall);
+                }
+                newActivity.putLaps(laps);
+            }
+            return pending;
+        }
+
+        @Override
+        public LocationEntity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pending = false;
+            return lv;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Parse point into the reused entity
+         *
+         * @return false if the point is skipped
+         */
+        private boolean parse(Map.Entry<Long, HashMap<String, String>> timePoint) {
             HashMap<String, String> values = timePoint.getValue();
 
-            LocationEntity lv = new LocationEntity();
+            lv.clear();
             lv.setActivityId(newActivity.getId());
             lv.setTime(TimeUnit.SECONDS.toMillis(newActivity.getStartTime()) + timePoint.getKey());
 
             String dist = values.get("distance");
             if (dist == null) {
-                continue;
+                return false;
             }
             String lat = values.get("latitude");
             String lon = values.get("longitude");
@@ -234,7 +307,7 @@ public class RunKeeper {
             String type = values.get("type");
 
             if (lat == null || lon == null) {
-                continue;
+                return false;
             } else {
                 lv.setLatitude(Double.valueOf(lat));
                 lv.setLongitude(Double.valueOf(lon));
@@ -308,20 +381,8 @@ public class RunKeeper {
             }
 
             lv.setLap(laps.size()-1);
-
-            locations.add(lv);
-        }
-        // calculate avg and max hr
-        // update the activity
-        newActivity.setMaxHr(maxHrOverall);
-        if (countOverall > 0) {
-            newActivity.setAvgHr(sumHrOverall / countOverall);
+            return true;
         }
-
-        newActivity.putPoints(locations);
-        newActivity.putLaps(laps);
-
-        return newActivity;
     }
 
     private static SortedMap<Long, HashMap<String, String>> createPointsMap(JSONArray distance, JSONArray path, JSONArray hr) throws JSONException {
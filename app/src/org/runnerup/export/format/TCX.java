@@ -20,20 +20,20 @@ package org.runnerup.export.format;
 import android.annotation.TargetApi;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.location.Location;
 import android.os.Build;
 import android.util.Pair;
 
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants.DB;
-import org.runnerup.util.KXmlSerializer;
+import org.runnerup.common.util.Geodesic;
+import org.runnerup.db.LocationReader;
+import org.runnerup.db.SensorSampleReader;
+import org.runnerup.util.CharFormatter;
+import org.runnerup.util.FastXmlWriter;
 import org.runnerup.workout.Sport;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 /**
  * TCX - export an activity in TCX format
  *
@@ -47,23 +47,32 @@ import java.util.TimeZone;
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class TCX {
 
+    // TrainingCenterDatabase v2 elements written per track point
+    private static final FastXmlWriter.Tag TRACKPOINT = new FastXmlWriter.Tag("Trackpoint");
+    private static final FastXmlWriter.Tag TIME = new FastXmlWriter.Tag("Time");
+    private static final FastXmlWriter.Tag POSITION = new FastXmlWriter.Tag("Position");
+    private static final FastXmlWriter.Tag LATITUDE = new FastXmlWriter.Tag("LatitudeDegrees");
+    private static final FastXmlWriter.Tag LONGITUDE = new FastXmlWriter.Tag("LongitudeDegrees");
+    private static final FastXmlWriter.Tag ALTITUDE = new FastXmlWriter.Tag("AltitudeMeters");
+    private static final FastXmlWriter.Tag DISTANCE = new FastXmlWriter.Tag("DistanceMeters");
+    private static final FastXmlWriter.Tag HEART_RATE = new FastXmlWriter.Tag("HeartRateBpm");
+    private static final FastXmlWriter.Tag VALUE = new FastXmlWriter.Tag("Value");
+
     long mID = 0;
     SQLiteDatabase mDB = null;
-    KXmlSerializer mXML = null;
+    FastXmlWriter mXML = null;
     String notes = null;
-    SimpleDateFormat simpleDateFormat = null;
+    final CharFormatter fmt = new CharFormatter();
     Sport sport = null;
 
     private boolean addGratuitousTrack = false;
 
     public TCX(SQLiteDatabase mDB) {
         this.mDB = mDB;
-        simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
     String formatTime(long time) {
-        return simpleDateFormat.format(new Date(time));
+        return fmt.isoTime(time).toString();
     }
 
     public String export(long activityId, Writer writer) throws IOException {
@@ -89,47 +98,46 @@ public class TCX {
 
         long startTime = cursor.getLong(2); // epoch
         try {
-            mXML = new KXmlSerializer();
-            mXML.setOutput(writer);
+            mXML = new FastXmlWriter(writer);
             mXML.startDocument("UTF-8", true);
-            mXML.startTag("", "TrainingCenterDatabase");
-            mXML.attribute("", "xmlns:ext",
+            mXML.startTag("TrainingCenterDatabase");
+            mXML.attribute("xmlns:ext",
                     "http://www.garmin.com/xmlschemas/ActivityExtension/v2");
-            mXML.attribute("", "xmlns",
+            mXML.attribute("xmlns",
                     "http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2");
-            mXML.startTag("", "Activities");
-            mXML.startTag("", "Activity");
+            mXML.startTag("Activities");
+            mXML.startTag("Activity");
             if (cursor.isNull(3)) {
-                mXML.attribute("", "Sport", "Running");
+                mXML.attribute("Sport", "Running");
             } else {
                 // TCX supports only these 3 sports...(cf http://www8.garmin.com/xmlschemas/TrainingCenterDatabasev2.xsd)
                 sport = Sport.valueOf(cursor.getInt(3));
                 switch (sport.getDbValue()) {
                     case DB.ACTIVITY.SPORT_RUNNING:
-                        mXML.attribute("", "Sport", "Running");
+                        mXML.attribute("Sport", "Running");
                         break;
                     case DB.ACTIVITY.SPORT_BIKING:
-                        mXML.attribute("", "Sport", "Biking");
+                        mXML.attribute("Sport", "Biking");
                         break;
                     default:
-                        mXML.attribute("", "Sport", "Other");
+                        mXML.attribute("Sport", "Other");
                         break;
                 }
             }
-            mXML.startTag("", "Id");
+            mXML.startTag("Id");
             String id = formatTime(startTime * 1000);
             mXML.text(id);
-            mXML.endTag("", "Id");
+            mXML.endTag("Id");
             exportLaps(activityId, startTime * 1000);
             if (!cursor.isNull(1)) {
                 notes = cursor.getString(1);
-                mXML.startTag("", "Notes");
+                mXML.startTag("Notes");
                 mXML.text(notes);
-                mXML.endTag("", "Notes");
+                mXML.endTag("Notes");
             }
-            mXML.endTag("", "Activity");
-            mXML.endTag("", "Activities");
-            mXML.endTag("", "TrainingCenterDatabase");
+            mXML.endTag("Activity");
+            mXML.endTag("Activities");
+            mXML.endTag("TrainingCenterDatabase");
             mXML.flush();
             mXML.endDocument();
             mXML = null;
@@ -150,146 +158,126 @@ public class TCX {
 
         Cursor cLap = mDB.query(DB.LAP.TABLE, lColumns, DB.LAP.DISTANCE + " > 0 and "
                 + DB.LAP.ACTIVITY + " = " + activityId, null, null, null, null);
-        String[] pColumns = {
-                DB.LOCATION.LAP, DB.LOCATION.TIME,
-                DB.LOCATION.LATITUDE, DB.LOCATION.LONGITUDE,
-                DB.LOCATION.ALTITUDE, DB.LOCATION.TYPE, DB.LOCATION.HR
-        };
-        Cursor cLocation = mDB.query(DB.LOCATION.TABLE, pColumns,
-                DB.LOCATION.ACTIVITY + " = " + activityId, null, null, null,
-                null);
+        LocationReader cLocation = LocationReader.open(mDB, activityId);
+        SensorSampleReader cHR = SensorSampleReader.open(mDB, activityId,
+                DB.SENSOR_SAMPLE.TYPE_HR);
         boolean lok = cLap.moveToFirst();
-        boolean pok = cLocation.moveToFirst();
+        boolean pok = cLocation.moveToNext();
 
         float totalDistance = 0;
         while (lok) {
             if (cLap.getFloat(1) != 0 && cLap.getLong(2) != 0) {
                 long lap = cLap.getLong(0);
-                while (pok && cLocation.getLong(0) != lap) {
+                while (pok && cLocation.getLap() != lap) {
                     pok = cLocation.moveToNext();
                 }
-                mXML.startTag("", "Lap");
-                if (pok && cLocation.getLong(0) == lap) {
-                    mXML.attribute("", "StartTime", formatTime(cLocation.getLong(1)));
+                mXML.startTag("Lap");
+                if (pok && cLocation.getLap() == lap) {
+                    mXML.attribute("StartTime", fmt.isoTime(cLocation.getTime()));
                 } else {
-                    mXML.attribute("", "StartTime", formatTime(startTime));
+                    mXML.attribute("StartTime", fmt.isoTime(startTime));
                 }
-                mXML.startTag("", "TotalTimeSeconds");
-                mXML.text("" + cLap.getLong(2));
-                mXML.endTag("", "TotalTimeSeconds");
-                mXML.startTag("", "DistanceMeters");
+                mXML.startTag("TotalTimeSeconds");
+                mXML.text(fmt.number(cLap.getLong(2)));
+                mXML.endTag("TotalTimeSeconds");
+                mXML.startTag("DistanceMeters");
                 mXML.text("" + cLap.getFloat(1));
-                mXML.endTag("", "DistanceMeters");
-                mXML.startTag("", "Calories");
+                mXML.endTag("DistanceMeters");
+                mXML.startTag("Calories");
                 mXML.text("0");
-                mXML.endTag("", "Calories");
-                mXML.startTag("", "Intensity");
+                mXML.endTag("Calories");
+                mXML.startTag("Intensity");
                 mXML.text("Active");
-                mXML.endTag("", "Intensity");
-                mXML.startTag("", "TriggerMethod");
+                mXML.endTag("Intensity");
+                mXML.startTag("TriggerMethod");
                 mXML.text("Manual");
-                mXML.endTag("", "TriggerMethod");
+                mXML.endTag("TriggerMethod");
                 int maxHR = 0;
                 long sumHR = 0;
                 long cntHR = 0;
                 int cntTrackpoints = 0;
 
-                if (pok && cLocation.getLong(0) == lap) {
-                    mXML.startTag("", "Track");
+                if (pok && cLocation.getLap() == lap) {
+                    mXML.startTag("Track");
                     float last_lat = 0;
                     float last_longi = 0;
                     long last_time = 0;
-                    while (pok && cLocation.getLong(0) == lap) {
-                        long time = cLocation.getLong(1);
-                        float lat = cLocation.getFloat(2);
-                        float longi = cLocation.getFloat(3);
+                    while (pok && cLocation.getLap() == lap) {
+                        long time = cLocation.getTime();
+                        float lat = (float) cLocation.getLatitude();
+                        float longi = (float) cLocation.getLongitude();
                         if (!(time == last_time && lat == last_lat && longi != last_longi)) {
                             cntTrackpoints++;
 
-                            mXML.startTag("", "Trackpoint");
-                            mXML.startTag("", "Time");
-                            mXML.text(formatTime(time));
-                            mXML.endTag("", "Time");
-                            mXML.startTag("", "Position");
-                            mXML.startTag("", "LatitudeDegrees");
-                            mXML.text("" + lat);
-                            mXML.endTag("", "LatitudeDegrees");
-                            mXML.startTag("", "LongitudeDegrees");
-                            mXML.text("" + longi);
-                            mXML.endTag("", "LongitudeDegrees");
-                            mXML.endTag("", "Position");
-                            if (!cLocation.isNull(4)) {
-                                mXML.startTag("", "AltitudeMeters");
-                                mXML.text("" + cLocation.getLong(4));
-                                mXML.endTag("", "AltitudeMeters");
+                            mXML.startTag(TRACKPOINT);
+                            mXML.element(TIME, fmt.isoTime(time));
+                            mXML.startTag(POSITION);
+                            mXML.element(LATITUDE, fmt.decimal(lat));
+                            mXML.element(LONGITUDE, fmt.decimal(longi));
+                            mXML.endTag(POSITION);
+                            if (!cLocation.isNull(CompactTrack.ALTITUDE)) {
+                                mXML.element(ALTITUDE, fmt.number((long) cLocation.getDouble(CompactTrack.ALTITUDE)));
                             }
-                            float d[] = {
-                                0
-                            };
                             if (!(last_lat == 0 && last_longi == 0)) {
-                                Location.distanceBetween(last_lat, last_longi,
-                                        lat, longi, d);
+                                totalDistance += (float) Geodesic.distance(last_lat, last_longi,
+                                        lat, longi);
                             }
-                            totalDistance += d[0];
-                            mXML.startTag("", "DistanceMeters");
-                            mXML.text("" + totalDistance);
-                            mXML.endTag("", "DistanceMeters");
-                            if (!cLocation.isNull(6)) {
-                                int hr = cLocation.getInt(6);
+                            mXML.element(DISTANCE, fmt.decimal(totalDistance));
+                            {
+                                int hr = cHR.getValue(time, cLocation.isNull(CompactTrack.HR) ?
+                                        0 : cLocation.getInt(CompactTrack.HR));
                                 if (hr > 0) {
                                     maxHR = hr > maxHR ? hr : maxHR;
                                     sumHR += hr;
                                     cntHR++;
 
-                                    mXML.startTag("", "HeartRateBpm");
-                                    mXML.startTag("", "Value");
-                                    String bpm = Integer.toString(hr);
-                                    mXML.text(bpm);
-                                    mXML.endTag("", "Value");
-                                    mXML.endTag("", "HeartRateBpm");
+                                    mXML.startTag(HEART_RATE);
+                                    mXML.element(VALUE, fmt.number(hr));
+                                    mXML.endTag(HEART_RATE);
                                 }
                             }
-                            mXML.endTag("", "Trackpoint");
+                            mXML.endTag(TRACKPOINT);
                             last_time = time;
                             last_lat = lat;
                             last_longi = longi;
                         }
                         pok = cLocation.moveToNext();
                     }
-                    mXML.endTag("", "Track");
+                    mXML.endTag("Track");
                 }
                 // Digifit chokes if there isn't at least *1* trackpoint, but is
                 // ok
                 // even if it's empty.
                 if (cntTrackpoints == 0 && addGratuitousTrack) {
-                    mXML.startTag("", "Track");
-                    mXML.startTag("", "Trackpoint");
-                    mXML.startTag("", "Time");
+                    mXML.startTag("Track");
+                    mXML.startTag("Trackpoint");
+                    mXML.startTag("Time");
                     mXML.text(formatTime(startTime));
-                    mXML.endTag("", "Time");
-                    mXML.endTag("", "Trackpoint");
-                    mXML.endTag("", "Track");
+                    mXML.endTag("Time");
+                    mXML.endTag("Trackpoint");
+                    mXML.endTag("Track");
                 }
 
                 if (cntHR > 0) {
-                    mXML.startTag("", "AverageHeartRateBpm");
-                    mXML.startTag("", "Value");
+                    mXML.startTag("AverageHeartRateBpm");
+                    mXML.startTag("Value");
                     mXML.text(Integer.toString((int) (sumHR / cntHR)));
-                    mXML.endTag("", "Value");
-                    mXML.endTag("", "AverageHeartRateBpm");
+                    mXML.endTag("Value");
+                    mXML.endTag("AverageHeartRateBpm");
 
-                    mXML.startTag("", "MaximumHeartRateBpm");
-                    mXML.startTag("", "Value");
+                    mXML.startTag("MaximumHeartRateBpm");
+                    mXML.startTag("Value");
                     mXML.text(Integer.toString(maxHR));
-                    mXML.endTag("", "Value");
-                    mXML.endTag("", "MaximumHeartRateBpm");
+                    mXML.endTag("Value");
+                    mXML.endTag("MaximumHeartRateBpm");
                 }
-                mXML.endTag("", "Lap");
+                mXML.endTag("Lap");
             }
             lok = cLap.moveToNext();
         }
         cLap.close();
         cLocation.close();
+        cHR.close();
     }
 
     public String getNotes() {
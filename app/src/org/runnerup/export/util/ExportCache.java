@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.export.util;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import org.runnerup.export.format.GPX;
+import org.runnerup.export.format.TCX;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * Cache of activity exports (tcx, gpx) shared between synchronizers
+ *   uploading the same activity, so that each format is only generated once.
+ *
+ * Exports are stored as files in dir, and removed by clear().
+ * Thread safe, concurrent requests for same export waits for the first one.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class ExportCache {
+
+    public static final String FORMAT_TCX = "tcx";
+    public static final String FORMAT_GPX = "gpx";
+
+    private final File dir;
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    private static class Entry {
+        File file = null;
+    }
+
+    public ExportCache(File dir) {
+        this.dir = dir;
+    }
+
+    public static boolean isSupported(String format) {
+        return FORMAT_TCX.equals(format) || FORMAT_GPX.equals(format);
+    }
+
+    public File get(SQLiteDatabase db, long activityId, String format) throws IOException {
+        if (!isSupported(format))
+            throw new IllegalArgumentException("Unsupported export format: " + format);
+
+        final String key = activityId + "." + format;
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+        }
+
+        synchronized (entry) {
+            if (entry.file == null) {
+                File file = File.createTempFile("export-" + activityId + "-", "." + format, dir);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file), "UTF-8"));
+                try {
+                    if (FORMAT_TCX.equals(format)) {
+                        new TCX(db).export(activityId, writer);
+                    } else {
+                        new GPX(db).export(activityId, writer);
+                    }
+                    writer.close();
+                } catch (IOException e) {
+                    writer.close();
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                    throw e;
+                }
+                entry.file = file;
+            }
+            return entry.file;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (entry.file != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    entry.file.delete();
+                }
+            }
+            entries.clear();
+        }
+    }
+}
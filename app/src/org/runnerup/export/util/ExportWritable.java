@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.export.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.runnerup.export.format.GPX;
+import org.runnerup.export.format.TCX;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writable that exports an activity (TCX or GPX) directly into output stream
+ *   i.e without first creating the whole document in memory,
+ *   or streams an already exported file (see ExportCache).
+ *
+ * Optionally gzip compresses the export.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class ExportWritable implements Writable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final long activityId;
+    private final TCX tcx;
+    private final GPX gpx;
+    private final File file;
+    private boolean gzip = false;
+
+    public ExportWritable(TCX tcx, long activityId) {
+        this.tcx = tcx;
+        this.gpx = null;
+        this.file = null;
+        this.activityId = activityId;
+    }
+
+    public ExportWritable(GPX gpx, long activityId) {
+        this.tcx = null;
+        this.gpx = gpx;
+        this.file = null;
+        this.activityId = activityId;
+    }
+
+    public ExportWritable(File file) {
+        this.tcx = null;
+        this.gpx = null;
+        this.file = file;
+        this.activityId = 0;
+    }
+
+    public ExportWritable setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        /**
+         * The stream belongs to caller (e.g multipart post), so don't close it
+         */
+        OutputStream os = new NonClosingOutputStream(out);
+        GZIPOutputStream zos = null;
+        if (gzip) {
+            zos = new GZIPOutputStream(os, BUFFER_SIZE);
+            os = zos;
+        }
+        if (file != null) {
+            copyFile(os);
+        } else {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"),
+                    BUFFER_SIZE);
+            if (tcx != null) {
+                tcx.export(activityId, writer);
+            } else {
+                gpx.export(activityId, writer);
+            }
+            writer.flush();
+        }
+        if (zos != null) {
+            zos.finish();
+        }
+        os.flush();
+    }
+
+    private void copyFile(OutputStream os) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte buf[] = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                os.write(buf, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
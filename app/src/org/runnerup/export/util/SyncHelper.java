@@ -75,7 +75,7 @@ public final class SyncHelper {
         conn.setRequestProperty("Content-Type",
                 "multipart/form-data; boundary=" + boundary);
         DataOutputStream outputStream = new DataOutputStream(
-                conn.getOutputStream());
+                new BufferedOutputStream(conn.getOutputStream()));
         for (Part<?> part : parts) {
             outputStream.writeBytes(twoHyphens + boundary + lineEnd);
             outputStream.writeBytes("Content-Disposition: form-data; name=\""
@@ -100,6 +100,16 @@ public final class SyncHelper {
         outputStream.close();
     }
 
+    /**
+     * Post multipart using chunked transfer encoding,
+     *   so that (large) parts can be streamed without knowing their length up front
+     */
+    public static void postMultiChunked(HttpURLConnection conn, Part<?> parts[])
+            throws IOException {
+        conn.setChunkedStreamingMode(0);
+        postMulti(conn, parts);
+    }
+
     public static Map<String, String> parseAttributes(String attributesStr) {
         Map<String, String> attributes = new HashMap<String, String>();
         Matcher matcher = attributePattern.matcher(attributesStr);
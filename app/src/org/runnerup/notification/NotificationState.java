@@ -6,5 +6,9 @@ import android.os.Build;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public interface NotificationState {
+    /**
+     * @return notification for current state, the same instance may be returned
+     *   if nothing changed since previous call (which makes NotificationStateManager skip it)
+     */
     Notification createNotification();
 }
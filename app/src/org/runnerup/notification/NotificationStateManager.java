@@ -3,12 +3,49 @@ package org.runnerup.notification;
 import android.annotation.TargetApi;
 import android.app.Notification;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class NotificationStateManager {
     private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Don't update same state more often than this (ms)
+     */
+    private static final long MIN_UPDATE_INTERVAL = 1000;
+
+    /**
+     * Unchanged notifications are reposted this often (ms) anyway, as another
+     * NotificationStateManager might have replaced or cancelled it
+     */
+    private static final long REFRESH_INTERVAL = 10000;
+
     private final NotificationDisplayStrategy strategy;
 
+    private NotificationState lastState = null;
+    private Notification lastNotification = null;
+    private long lastUpdate = 0;
+    private long lastNotify = 0;
+
+    /**
+     * A throttled update is not lost, the latest state is displayed
+     *   once the interval has passed
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private NotificationState pendingState = null;
+    private final Runnable trailingUpdate = new Runnable() {
+        @Override
+        public void run() {
+            NotificationState state = pendingState;
+            pendingState = null;
+            if (state != null) {
+                displayNotificationState(state);
+            }
+        }
+    };
+
     public NotificationStateManager(NotificationDisplayStrategy strategy) {
         this.strategy = strategy;
     }
@@ -16,11 +53,37 @@ public class NotificationStateManager {
     public void displayNotificationState(NotificationState state) {
         if (state == null) throw new IllegalArgumentException("state is null");
 
+        long now = SystemClock.elapsedRealtime();
+        if (state == lastState && now - lastUpdate < MIN_UPDATE_INTERVAL) {
+            if (pendingState == null) {
+                handler.postDelayed(trailingUpdate, MIN_UPDATE_INTERVAL - (now - lastUpdate));
+            }
+            pendingState = state;
+            return;
+        }
+        if (pendingState != null) {
+            pendingState = null;
+            handler.removeCallbacks(trailingUpdate);
+        }
+        lastUpdate = now;
+
         Notification notification = state.createNotification();
+        if (state == lastState && notification == lastNotification &&
+                now - lastNotify < REFRESH_INTERVAL) {
+            /** nothing changed */
+            return;
+        }
+        lastState = state;
+        lastNotification = notification;
+        lastNotify = now;
         strategy.notify(NOTIFICATION_ID, notification);
     }
 
     public void cancelNotification() {
+        pendingState = null;
+        handler.removeCallbacks(trailingUpdate);
+        lastState = null;
+        lastNotification = null;
         strategy.cancel(NOTIFICATION_ID);
     }
 }
@@ -13,19 +13,34 @@ import org.runnerup.common.util.Constants;
 import org.runnerup.util.Formatter;
 import org.runnerup.view.RunActivity;
 import org.runnerup.workout.Scope;
+import org.runnerup.workout.Workout;
 import org.runnerup.workout.WorkoutInfo;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class OngoingState implements NotificationState {
     private final Formatter formatter;
-    private final WorkoutInfo workoutInfo;
-    private final Context context;
+    private final Workout workout;
     private final NotificationCompat.Builder builder;
+    private final NotificationCompat.BigTextStyle bigTextStyle;
 
-    public OngoingState(Formatter formatter, WorkoutInfo workoutInfo, Context context) {
+    /**
+     * labels are looked up once, texts are built in reused buffers
+     *   and notification only rebuilt if text changed
+     */
+    private final String distanceLabel;
+    private final String timeLabel;
+    private final String paceLabel;
+    private final StringBuilder content = new StringBuilder(64);
+    private final StringBuilder bigText = new StringBuilder(64);
+    private String lastContent = null;
+    private Notification notification = null;
+
+    public OngoingState(Formatter formatter, Workout workout, Context context) {
         this.formatter = formatter;
-        this.workoutInfo = workoutInfo;
-        this.context = context;
+        this.workout = workout;
+        this.distanceLabel = context.getString(R.string.distance);
+        this.timeLabel = context.getString(R.string.time);
+        this.paceLabel = context.getString(R.string.pace);
 
         builder = new NotificationCompat.Builder(context);
         Intent i = new Intent(context, RunActivity.class);
@@ -42,10 +57,15 @@ public class OngoingState implements NotificationState {
         org.runnerup.util.NotificationCompat.setLocalOnly(builder);
         org.runnerup.util.NotificationCompat.setVisibility(builder);
         org.runnerup.util.NotificationCompat.setCategory(builder);
+
+        bigTextStyle = new NotificationCompat.BigTextStyle(builder);
+        bigTextStyle.setBigContentTitle(context.getString(R.string.Activity_ongoing));
+        builder.setStyle(bigTextStyle);
     }
 
     @Override
     public Notification createNotification() {
+        WorkoutInfo workoutInfo = workout.getSnapshot();
         String distance = formatter.formatDistance(Formatter.TXT_SHORT,
                 Math.round(workoutInfo.getDistance(Scope.ACTIVITY)));
         String time = formatter.formatElapsedTime(Formatter.TXT_LONG,
@@ -53,20 +73,23 @@ public class OngoingState implements NotificationState {
         String pace = formatter.formatPace(Formatter.TXT_SHORT,
                 workoutInfo.getPace(Scope.ACTIVITY));
 
-        String content = String.format("%s: %s %s: %s %s: %s",
-                context.getString(R.string.distance), distance,
-                context.getString(R.string.time), time,
-                context.getString(R.string.pace), pace);
-        builder.setContentText(content);
+        content.setLength(0);
+        content.append(distanceLabel).append(": ").append(distance)
+                .append(' ').append(timeLabel).append(": ").append(time)
+                .append(' ').append(paceLabel).append(": ").append(pace);
+        if (notification != null && lastContent.contentEquals(content)) {
+            return notification;
+        }
+        lastContent = content.toString();
+        builder.setContentText(lastContent);
 
-        NotificationCompat.BigTextStyle bigTextStyle = new NotificationCompat.BigTextStyle(builder);
-        bigTextStyle.setBigContentTitle(context.getString(R.string.Activity_ongoing));
-        bigTextStyle.bigText(String.format("%s: %s,\n%s: %s\n%s: %s",
-                context.getString(R.string.distance), distance,
-                context.getString(R.string.time), time,
-                context.getString(R.string.pace), pace));
-        builder.setStyle(bigTextStyle);
+        bigText.setLength(0);
+        bigText.append(distanceLabel).append(": ").append(distance).append(",\n")
+                .append(timeLabel).append(": ").append(time).append('\n')
+                .append(paceLabel).append(": ").append(pace);
+        bigTextStyle.bigText(bigText.toString());
 
-        return builder.build();
+        notification = builder.build();
+        return notification;
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+
+/**
+ * Monotonic, pause aware stopwatch for elapsed activity time
+ *
+ * Based on SystemClock.elapsedRealtimeNanos (elapsedRealtime on pre JB-MR1),
+ *   i.e it keeps counting in deep sleep and is not affected by wall clock
+ *   or GPS time changes. The time source can be replaced by a virtual clock,
+ *   see {@link org.runnerup.tracker.replay.VirtualClock}.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+public class ElapsedClock {
+
+    public interface TimeSource {
+        long elapsedRealtimeNanos();
+
+        long currentTimeMillis();
+    }
+
+    private static volatile TimeSource sTimeSource = null;
+
+    private long mAccumulated = 0; // ns, from previous running periods
+    private long mStartedAt = 0; // ns, 0 if not running
+
+    /**
+     * Use source instead of system clock for all ElapsedClock's, null restores system clock
+     */
+    public static void setTimeSource(TimeSource source) {
+        sTimeSource = source;
+    }
+
+    static long now() {
+        final TimeSource source = sTimeSource;
+        if (source != null) {
+            return source.elapsedRealtimeNanos();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+        return SystemClock.elapsedRealtime() * 1000000L;
+    }
+
+    /**
+     * @return wall clock time in ms, of the time source if set
+     */
+    public static long currentTimeMillis() {
+        final TimeSource source = sTimeSource;
+        if (source != null) {
+            return source.currentTimeMillis();
+        }
+        return System.currentTimeMillis();
+    }
+
+    public void reset() {
+        mAccumulated = 0;
+        mStartedAt = 0;
+    }
+
+    public void start() {
+        if (mStartedAt == 0) {
+            mStartedAt = now();
+        }
+    }
+
+    public void stop() {
+        if (mStartedAt != 0) {
+            mAccumulated += now() - mStartedAt;
+            mStartedAt = 0;
+        }
+    }
+
+    public boolean isRunning() {
+        return mStartedAt != 0;
+    }
+
+    public long getElapsedNanos() {
+        if (mStartedAt == 0)
+            return mAccumulated;
+        return mAccumulated + now() - mStartedAt;
+    }
+
+    public long getElapsedMillis() {
+        return getElapsedNanos() / 1000000L;
+    }
+
+    /**
+     * @return elapsed time in seconds (with sub second precision)
+     */
+    public double getElapsedSeconds() {
+        return getElapsedNanos() / 1e9;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.runnerup.common.util.Constants;
+import org.runnerup.workout.WorkoutInfo;
+
+import java.util.List;
+
+/**
+ * Delivers workout events to live loggers on a dedicated thread
+ *
+ * Live loggers format and send data (network, bluetooth), which shall not delay
+ *   the thread that handles locations. Events are queued in a fixed ring of slots
+ *   with the (immutable) workout values they were posted with.
+ *
+ * When loggers fall a full ring behind, a new GPS event is dropped (loggers rate
+ *   limit those anyway). Other (start, pause, end...) events are never dropped,
+ *   they take the place of the oldest queued GPS event or the ring grows.
+ *
+ * post() shall be called from one thread only.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class LiveEventDispatcher<T extends WorkoutInfo> implements Runnable, Constants {
+
+    private final String mName;
+
+    /** slots, guarded by this */
+    private T mInfo[];
+    private int mType[];
+    private WorkoutObserver mObservers[][];
+    private int mHead = 0;
+    private int mCount = 0;
+    private boolean mRunning = false;
+    private int mDropped = 0;
+
+    private static final WorkoutObserver NO_OBSERVERS[] = new WorkoutObserver[0];
+    private volatile WorkoutObserver mCurrent[] = NO_OBSERVERS;
+
+    @SuppressWarnings("unchecked")
+    public LiveEventDispatcher(String name, int slots) {
+        mName = name;
+        mInfo = (T[]) new WorkoutInfo[slots];
+        mType = new int[slots];
+        mObservers = new WorkoutObserver[slots][];
+    }
+
+    public synchronized void start() {
+        if (mRunning)
+            return;
+        mRunning = true;
+        new Thread(this, mName).start();
+    }
+
+    /**
+     * Deliver queued events and stop thread
+     */
+    public synchronized void stop() {
+        mRunning = false;
+        notifyAll();
+    }
+
+    /**
+     * Observers of posted events, queued events are delivered to the observers
+     *   set when they were posted
+     */
+    public void setObservers(List<WorkoutObserver> observers) {
+        mCurrent = observers.toArray(new WorkoutObserver[observers.size()]);
+    }
+
+    public synchronized int getDroppedCount() {
+        return mDropped;
+    }
+
+    public boolean hasObservers() {
+        return mCurrent.length > 0;
+    }
+
+    /**
+     * @param info values of the event, must not be modified once posted
+     * @return false if event was dropped
+     */
+    public boolean post(int type, T info) {
+        WorkoutObserver observers[] = mCurrent;
+        if (observers.length == 0)
+            return false;
+
+        synchronized (this) {
+            if (mCount == mInfo.length) {
+                if (type == DB.LOCATION.TYPE_GPS) {
+                    mDropped++;
+                    return false;
+                }
+                if (!removeQueuedGps()) {
+                    grow();
+                }
+            }
+            int slot = (mHead + mCount) % mInfo.length;
+            mCount++;
+            mInfo[slot] = info;
+            mType[slot] = type;
+            mObservers[slot] = observers;
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Remove oldest queued GPS event, except at head that may be being delivered
+     */
+    private boolean removeQueuedGps() {
+        final int n = mInfo.length;
+        for (int k = 1; k < mCount; k++) {
+            if (mType[(mHead + k) % n] != DB.LOCATION.TYPE_GPS)
+                continue;
+            mDropped++;
+            for (int j = k; j < mCount - 1; j++) {
+                int dst = (mHead + j) % n;
+                int src = (mHead + j + 1) % n;
+                mInfo[dst] = mInfo[src];
+                mType[dst] = mType[src];
+                mObservers[dst] = mObservers[src];
+            }
+            mCount--;
+            int last = (mHead + mCount) % n;
+            mInfo[last] = null;
+            mObservers[last] = null;
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        final int n = mInfo.length;
+        T info[] = (T[]) new WorkoutInfo[2 * n];
+        int type[] = new int[2 * n];
+        WorkoutObserver observers[][] = new WorkoutObserver[2 * n][];
+        for (int k = 0; k < mCount; k++) {
+            int i = (mHead + k) % n;
+            info[k] = mInfo[i];
+            type[k] = mType[i];
+            observers[k] = mObservers[i];
+        }
+        mInfo = info;
+        mType = type;
+        mObservers = observers;
+        mHead = 0;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            WorkoutObserver observers[];
+            T info;
+            int type;
+            synchronized (this) {
+                while (mCount == 0 && mRunning) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mCount == 0)
+                    return;
+                // head is not removed (but may move when growing) until released below
+                observers = mObservers[mHead];
+                info = mInfo[mHead];
+                type = mType[mHead];
+            }
+
+            for (WorkoutObserver l : observers) {
+                try {
+                    l.workoutEvent(info, type);
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+
+            synchronized (this) {
+                mObservers[mHead] = null;
+                mInfo[mHead] = null;
+                mHead = (mHead + 1) % mInfo.length;
+                mCount--;
+            }
+        }
+    }
+}
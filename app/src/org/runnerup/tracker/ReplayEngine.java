@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker;
+
+import android.annotation.TargetApi;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Build;
+
+import org.runnerup.common.tracker.TrackerState;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.hr.HRData;
+import org.runnerup.hr.ReplayHRProvider;
+import org.runnerup.tracker.replay.ReplayStats;
+import org.runnerup.tracker.replay.ReplayTrack;
+import org.runnerup.tracker.replay.VirtualClock;
+import org.runnerup.workout.Workout;
+
+/**
+ * Replay of a recorded track through Tracker and Workout
+ *
+ * Components (gps, hrm, tts...) are bypassed: locations are given to
+ *   Tracker.onLocationChanged(), hr is pushed through a {@link ReplayHRProvider}
+ *   and ticks are run by the engine. Elapsed time follows a {@link VirtualClock}
+ *   set to the time of each sample, so results do not depend on replay speed.
+ *
+ * Results are deterministic only under Robolectric, where nothing posted to the
+ *   tracker's handler runs until the replay is done. On a device, posted messages
+ *   (hr measurements, the tracker's own ticks) and other threads (live loggers,
+ *   db checkpoint) interleave with the replay.
+ *
+ * Must be called on the thread of the tracker's handler, with the tracker in state INIT.
+ *   run() replays as fast as possible and returns when done. start() replays at speed
+ *   by posting each sample to the tracker's handler when due, so the looper is never
+ *   blocked waiting.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class ReplayEngine {
+
+    public interface Listener {
+        void onReplayDone(ReplayStats stats);
+    }
+
+    private final Tracker tracker;
+    private final ReplayTrack track;
+    private final double speed;
+    private final ReplayHRProvider hrProvider = new ReplayHRProvider();
+
+    /** state of ongoing replay */
+    private ReplayStats stats;
+    private VirtualClock clock;
+    private long startTime;
+    private long wallStart;
+    private long nextTick;
+    private int next;
+    private Listener listener;
+
+    /**
+     * @param speed replay speed relative to recording for start(), e.g 10 for 10x
+     */
+    public ReplayEngine(Tracker tracker, ReplayTrack track, double speed) {
+        this.tracker = tracker;
+        this.track = track;
+        this.speed = speed;
+    }
+
+    /**
+     * Replay whole track as fast as possible
+     */
+    public ReplayStats run(Workout workout) {
+        begin(workout);
+        try {
+            while (step()) {
+            }
+            return complete();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Replay track at speed, listener is called on tracker's handler when done
+     */
+    public void start(Workout workout, Listener listener) {
+        if (speed <= 0)
+            throw new IllegalArgumentException("speed: " + speed);
+        begin(workout);
+        this.listener = listener;
+        tracker.handler.post(stepRunnable);
+    }
+
+    private final Runnable stepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            boolean more = false;
+            ReplayStats result = null;
+            try {
+                more = step();
+                if (!more)
+                    result = complete();
+            } finally {
+                if (!more)
+                    end();
+            }
+            if (more) {
+                long replayed = track.getTime(next) - startTime;
+                long due = wallStart + (long) (replayed * 1e6 / speed);
+                tracker.handler.postDelayed(this,
+                        Math.max(0, (due - System.nanoTime()) / 1000000));
+            } else {
+                listener.onReplayDone(result);
+            }
+        }
+    };
+
+    private void begin(Workout workout) {
+        if (tracker.getState() != TrackerState.INIT)
+            throw new IllegalStateException("tracker not in INIT: " + tracker.getState());
+        if (track.size() == 0)
+            throw new IllegalArgumentException("empty track");
+
+        stats = new ReplayStats();
+        startTime = track.getTime(0);
+        clock = new VirtualClock(startTime);
+        wallStart = System.nanoTime();
+        next = 0;
+        ElapsedClock.setTimeSource(clock);
+        try {
+            tracker.trackerHRM.setHrProvider(hrProvider);
+            tracker.state.set(TrackerState.CONNECTED);
+            tracker.setWorkout(workout);
+
+            long t0 = System.nanoTime();
+            tracker.start();
+            stats.add(ReplayStats.Stage.LIFECYCLE, System.nanoTime() - t0);
+        } catch (RuntimeException ex) {
+            end();
+            throw ex;
+        }
+        nextTick = startTime + tracker.mTickInterval;
+    }
+
+    /**
+     * Replay ticks up to and sample next
+     *
+     * @return true if there are more samples to replay
+     */
+    private boolean step() {
+        if (next < 0 || next >= track.size())
+            return false;
+
+        final int i = next++;
+        final long time = track.getTime(i);
+        long t0;
+        while (nextTick <= time) {
+            if (!isRunning())
+                break;
+            clock.advanceTo(nextTick);
+            t0 = System.nanoTime();
+            tracker.onTick();
+            stats.add(ReplayStats.Stage.TICK, System.nanoTime() - t0);
+            nextTick += tracker.getState() == TrackerState.PAUSED ?
+                    tracker.mPausedTickInterval : tracker.mTickInterval;
+        }
+        if (!isRunning())
+            return false; // e.g workout finished
+        clock.advanceTo(time);
+
+        final int type = track.getType(i);
+        if (type == DB.LOCATION.TYPE_RESUME &&
+                tracker.getState() == TrackerState.PAUSED) {
+            t0 = System.nanoTime();
+            tracker.resume();
+            stats.add(ReplayStats.Stage.LIFECYCLE, System.nanoTime() - t0);
+        }
+
+        if (track.getHR(i) > 0) {
+            t0 = System.nanoTime();
+            hrProvider.push(new HRData().setHeartRate(track.getHR(i))
+                    .setTimestampEstimate(time));
+            stats.add(ReplayStats.Stage.HR, System.nanoTime() - t0);
+        }
+
+        t0 = System.nanoTime();
+        tracker.onLocationChanged(createLocation(i));
+        stats.add(ReplayStats.Stage.LOCATION, System.nanoTime() - t0);
+
+        if (type == DB.LOCATION.TYPE_PAUSE &&
+                tracker.getState() == TrackerState.STARTED) {
+            t0 = System.nanoTime();
+            tracker.pause();
+            stats.add(ReplayStats.Stage.LIFECYCLE, System.nanoTime() - t0);
+        }
+        return next < track.size();
+    }
+
+    /**
+     * Stop and save activity
+     */
+    private ReplayStats complete() {
+        long t0 = System.nanoTime();
+        if (tracker.getState() == TrackerState.STARTED)
+            tracker.stop();
+        long activityId = tracker.getActivityId();
+        if (tracker.getState() == TrackerState.PAUSED ||
+                tracker.getState() == TrackerState.STOPPED) {
+            tracker.completeActivity(true);
+        }
+        stats.add(ReplayStats.Stage.LIFECYCLE, System.nanoTime() - t0);
+
+        stats.setResult(System.nanoTime() - wallStart,
+                clock.currentTimeMillis() - startTime, activityId);
+        return stats;
+    }
+
+    private void end() {
+        next = -1;
+        tracker.trackerHRM.setHrProvider(null);
+        ElapsedClock.setTimeSource(null);
+    }
+
+    private boolean isRunning() {
+        TrackerState s = tracker.getState();
+        return s == TrackerState.STARTED || s == TrackerState.PAUSED;
+    }
+
+    private Location createLocation(int i) {
+        Location l = new Location(LocationManager.GPS_PROVIDER);
+        l.setTime(track.getTime(i));
+        l.setLatitude(track.getLatitude(i));
+        l.setLongitude(track.getLongitude(i));
+        if (!Double.isNaN(track.getAltitude(i)))
+            l.setAltitude(track.getAltitude(i));
+        return l;
+    }
+}
@@ -29,13 +29,17 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
+import org.runnerup.R;
 import org.runnerup.common.tracker.TrackerState;
 import org.runnerup.common.util.Constants;
+import org.runnerup.common.util.Geodesic;
 import org.runnerup.common.util.ValueModel;
 import org.runnerup.db.DBHelper;
 import org.runnerup.export.SyncManager;
+import org.runnerup.hr.HRData;
 import org.runnerup.hr.HRProvider;
 import org.runnerup.notification.ForegroundNotificationDisplayStrategy;
 import org.runnerup.notification.NotificationState;
@@ -49,11 +53,16 @@ import org.runnerup.tracker.component.TrackerPebble;
 import org.runnerup.tracker.component.TrackerReceiver;
 import org.runnerup.tracker.component.TrackerTTS;
 import org.runnerup.tracker.component.TrackerWear;
+import org.runnerup.tracker.filter.DecimatingLocationFilter;
+import org.runnerup.tracker.filter.LocationFilter;
 import org.runnerup.tracker.filter.PersistentGpsLoggerListener;
+import org.runnerup.tracker.filter.PersistentSensorSampleWriter;
 import org.runnerup.util.Formatter;
 import org.runnerup.util.HRZones;
+import org.runnerup.util.TickListener;
 import org.runnerup.workout.Scope;
 import org.runnerup.workout.Workout;
+import org.runnerup.workout.WorkoutSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -72,8 +81,15 @@ import java.util.List;
 public class Tracker extends android.app.Service implements
         LocationListener, Constants {
     public static final int MAX_HR_AGE = 3000; // 3s
+    public static final int LOCATION_BUFFER_SIZE = 20; // locations
+    public static final long LOCATION_BUFFER_AGE = 10000; // 10s
+    public static final int SENSOR_SAMPLE_BUFFER_SIZE = 128; // samples
+    public static final long SENSOR_SAMPLE_BUFFER_AGE = 10000; // 10s
+    public static final long TICK_INTERVAL = 500; // ms
+    public static final long PAUSED_TICK_INTERVAL = 1000; // ms
+    public static final int LIVE_EVENT_SLOTS = 8; // events
 
-    private final Handler handler = new Handler();
+    final Handler handler = new Handler();
 
     TrackerComponentCollection components = new TrackerComponentCollection();
     TrackerGPS trackerGPS = (TrackerGPS) components.addComponent(new TrackerGPS(this));
@@ -94,7 +110,10 @@ public class Tracker extends android.app.Service implements
 	 */
     long mLapId = 0;
     long mActivityId = 0;
-    long mElapsedTimeMillis = 0;
+    /**
+     * Elapsed (not paused) activity time, GPS time is only used to accumulate distance
+     */
+    final ElapsedClock mElapsedTime = new ElapsedClock();
     double mElapsedDistance = 0;
     double mHeartbeats = 0;
     double mHeartbeatMillis = 0; // since we might loose HRM connectivity...
@@ -117,10 +136,29 @@ public class Tracker extends android.app.Service implements
     Location mActivityLastLocation = null;
 
     SQLiteDatabase mDB = null;
-    PersistentGpsLoggerListener mDBWriter = null;
+    LocationFilter mDBWriter = null;
+    private LocationFilter.Factory mLocationFilterFactory = null;
+    PersistentSensorSampleWriter mSampleWriter = null;
+    int mWalAutoCheckpoint = -1; // restored when activity is complete
     PowerManager.WakeLock mWakeLock = null;
     final List<WorkoutObserver> liveLoggers = new ArrayList<WorkoutObserver>();
 
+    /**
+     * Live loggers get snapshots of the workout values on their own thread,
+     *   i.e location handling never waits for them
+     */
+    final LiveEventDispatcher<WorkoutSnapshot> liveEvents = new LiveEventDispatcher<WorkoutSnapshot>(
+            "LiveLogger", LIVE_EVENT_SLOTS);
+
+    /**
+     * Workout tick scheduler, runs on service handler while STARTED or PAUSED
+     *   independently of any UI. Ticks are aligned to location updates when running.
+     */
+    boolean mTicking = false;
+    long mTickInterval = TICK_INTERVAL;
+    long mPausedTickInterval = PAUSED_TICK_INTERVAL;
+    final List<TickListener> tickListeners = new ArrayList<TickListener>();
+
     private Workout workout = null;
 
     private NotificationStateManager notificationStateManager;
@@ -143,6 +181,9 @@ public class Tracker extends android.app.Service implements
             // >= 4.1
             trackerPebble = (TrackerPebble) components.addComponent(new TrackerPebble(this));
         }
+
+        trackerHRM.getHRData().registerChangeListener(hrDataListener, handler, false);
+        liveEvents.start();
     }
 
     @Override
@@ -154,12 +195,26 @@ public class Tracker extends android.app.Service implements
 
     @Override
     public void onDestroy() {
+        stopTicking();
+
+        if (mDBWriter != null) {
+            mDBWriter.close();
+        }
+
+        if (mSampleWriter != null) {
+            mSampleWriter.close();
+            mSampleWriter = null;
+        }
+
         if (mDB != null) {
+            restoreWalAutoCheckpoint();
             DBHelper.closeDB(mDB);
             mDB = null;
         }
 
         reset();
+        liveEvents.stop();
+        trackerHRM.getHRData().unregisterChangeListener(hrDataListener);
     }
 
     public void setup() {
@@ -320,10 +375,82 @@ public class Tracker extends android.app.Service implements
         tmp.clear();
         tmp.put(DB.LOCATION.ACTIVITY, mActivityId);
         tmp.put(DB.LOCATION.LAP, 0); // always start with lap 0
-        mDBWriter = new PersistentGpsLoggerListener(mDB, DB.LOCATION.TABLE, tmp);
+        if (mDBWriter != null) {
+            mDBWriter.close();
+        }
+        mDBWriter = createLocationFilter(new PersistentGpsLoggerListener(mDB,
+                DB.LOCATION.TABLE, tmp, LOCATION_BUFFER_SIZE, LOCATION_BUFFER_AGE));
+        if (mSampleWriter != null) {
+            mSampleWriter.close();
+        }
+        mSampleWriter = new PersistentSensorSampleWriter(mDB, mActivityId,
+                SENSOR_SAMPLE_BUFFER_SIZE, SENSOR_SAMPLE_BUFFER_AGE);
+
+        // checkpoint explicitly when paused/completed instead of when inserting
+        if (mWalAutoCheckpoint == -1) {
+            mWalAutoCheckpoint = DBHelper.setWalAutoCheckpoint(mDB,
+                    DBHelper.RECORDING_WAL_AUTOCHECKPOINT);
+        }
         return mActivityId;
     }
 
+    /**
+     * Replace how locations are filtered before stored, null for default
+     *   Takes effect for next activity
+     */
+    public void setLocationFilterFactory(LocationFilter.Factory factory) {
+        mLocationFilterFactory = factory;
+    }
+
+    /**
+     * Locations are stored as is unless pref_location_tolerance is set,
+     *   as a decimated track gives a shorter distance than the one recorded
+     */
+    private LocationFilter createLocationFilter(PersistentGpsLoggerListener writer) {
+        if (mLocationFilterFactory != null) {
+            return mLocationFilterFactory.create(writer);
+        }
+        double tolerance = 0;
+        try {
+            tolerance = Double.parseDouble(PreferenceManager.getDefaultSharedPreferences(this)
+                    .getString(getString(R.string.pref_location_tolerance), "0"));
+        } catch (NumberFormatException e) {
+            Log.e(getClass().getName(), "createLocationFilter: " + e.toString());
+        }
+        if (tolerance <= 0) {
+            return writer;
+        }
+        return new DecimatingLocationFilter(writer, tolerance);
+    }
+
+    private void restoreWalAutoCheckpoint() {
+        if (mWalAutoCheckpoint != -1) {
+            DBHelper.setWalAutoCheckpoint(mDB, mWalAutoCheckpoint);
+            mWalAutoCheckpoint = -1;
+        }
+    }
+
+    /**
+     * Checkpoint WAL in background. The writer connection is busy until done,
+     *   so only call when locations are not persisted (paused/completed)
+     */
+    private void checkpoint() {
+        if (!DBHelper.isWriteAheadLogging(mDB))
+            return;
+
+        final SQLiteDatabase db = mDB;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DBHelper.checkpoint(db);
+                } catch (RuntimeException e) {
+                    Log.w(Tracker.class.getName(), "WAL checkpoint failed: " + e);
+                }
+            }
+        }, "wal-checkpoint").start();
+    }
+
     public void setWorkout(Workout workout) {
         this.workout = workout;
     }
@@ -342,6 +469,8 @@ public class Tracker extends android.app.Service implements
         if (components.getResultCode(TrackerPebble.NAME) == TrackerComponent.ResultCode.RESULT_OK)
             liveLoggers.add(trackerPebble);
 
+        registerLiveLoggers();
+
         /**
          * create the DB activity
          */
@@ -356,7 +485,7 @@ public class Tracker extends android.app.Service implements
         // Let components know we're starting
         components.onStart();
 
-        mElapsedTimeMillis = 0;
+        mElapsedTime.reset();
         mElapsedDistance = 0;
         mHeartbeats = 0;
         mHeartbeatMillis = 0;
@@ -368,6 +497,7 @@ public class Tracker extends android.app.Service implements
         setNextLocationType(DB.LOCATION.TYPE_START);
 
         state.set(TrackerState.STARTED);
+        mElapsedTime.start();
 
         activityOngoingState = new OngoingState(new Formatter(this), workout, this);
 
@@ -375,6 +505,8 @@ public class Tracker extends android.app.Service implements
          * And finally let workout know that we started
          */
         workout.onStart(Scope.ACTIVITY, this.workout);
+
+        startTicking();
     }
 
     private void doBind() {
@@ -428,6 +560,7 @@ public class Tracker extends android.app.Service implements
                 break;
         }
         state.set(TrackerState.PAUSED);
+        mElapsedTime.stop();
         setNextLocationType(DB.LOCATION.TYPE_PAUSE);
         if (mActivityLastLocation != null) {
             /**
@@ -435,8 +568,11 @@ public class Tracker extends android.app.Service implements
              */
             internalOnLocationChanged(mActivityLastLocation);
         }
+        mDBWriter.flush();
+        mSampleWriter.flush();
 
         saveActivity();
+        checkpoint();
         components.onPause();
     }
 
@@ -456,6 +592,8 @@ public class Tracker extends android.app.Service implements
                 break;
         }
         state.set(TrackerState.STOPPED);
+        mElapsedTime.stop();
+        stopTicking();
         setNextLocationType(DB.LOCATION.TYPE_PAUSE);
         if (mActivityLastLocation != null) {
             /**
@@ -463,6 +601,8 @@ public class Tracker extends android.app.Service implements
              */
             internalOnLocationChanged(mActivityLastLocation);
         }
+        mDBWriter.flush();
+        mSampleWriter.flush();
 
         saveActivity();
         components.onPause(); // TODO add new callback for this
@@ -496,6 +636,8 @@ public class Tracker extends android.app.Service implements
         // TODO: check is mLastLocation is recent enough
         mActivityLastLocation = mLastLocation;
         state.set(TrackerState.STARTED);
+        mElapsedTime.start();
+        startTicking();
         setNextLocationType(DB.LOCATION.TYPE_RESUME);
         if (mActivityLastLocation != null) {
             /**
@@ -530,6 +672,7 @@ public class Tracker extends android.app.Service implements
         }
 
         wakeLock(false);
+        stopTicking();
 
         if (workout != null) {
             workout.setTracker(null);
@@ -564,6 +707,8 @@ public class Tracker extends android.app.Service implements
         if (mActivityLastLocation != null) {
             internalOnLocationChanged(mActivityLastLocation);
         }
+        mDBWriter.flush();
+        mSampleWriter.flush();
 
         if (save) {
             saveActivity();
@@ -577,6 +722,8 @@ public class Tracker extends android.app.Service implements
             mDB.update(DB.ACTIVITY.TABLE, tmp, "_id = ?", key);
             liveLog(DB.LOCATION.TYPE_DISCARD);
         }
+        restoreWalAutoCheckpoint();
+        checkpoint();
         components.onComplete(!save);
         notificationStateManager.cancelNotification();
         reset();
@@ -591,7 +738,7 @@ public class Tracker extends android.app.Service implements
         if (mMaxHR > 0)
             tmp.put(Constants.DB.ACTIVITY.MAX_HR, mMaxHR);
         tmp.put(Constants.DB.ACTIVITY.DISTANCE, mElapsedDistance);
-        tmp.put(Constants.DB.ACTIVITY.TIME, getTime()); // time should be updated last for conditionalRecompute
+        tmp.put(Constants.DB.ACTIVITY.TIME, Math.round(getTime())); // time should be updated last for conditionalRecompute
 
         String key[] = {
                 Long.toString(mActivityId)
@@ -606,8 +753,11 @@ public class Tracker extends android.app.Service implements
         mLocationType = newType;
     }
 
-    public long getTime() {
-        return mElapsedTimeMillis / 1000;
+    /**
+     * @return elapsed activity time in seconds
+     */
+    public double getTime() {
+        return mElapsedTime.getElapsedSeconds();
     }
 
     public double getDistance() {
@@ -646,11 +796,13 @@ public class Tracker extends android.app.Service implements
         }
 
         if (internal || state.get() == TrackerState.STARTED) {
-            Integer hrValue = getCurrentHRValue(now, MAX_HR_AGE);
+            Integer hrValue = getCurrentHRValue();
             if (mActivityLastLocation != null) {
                 double timeDiff = (double) (arg0.getTime() - mActivityLastLocation
                         .getTime());
-                double distDiff = arg0.distanceTo(mActivityLastLocation);
+                double distDiff = Geodesic.distance(mActivityLastLocation.getLatitude(),
+                        mActivityLastLocation.getLongitude(), arg0.getLatitude(),
+                        arg0.getLongitude());
                 if (timeDiff < 0) {
                     // time moved backward ??
                     Log.e(getClass().getName(), "lastTime:       " + mActivityLastLocation.getTime());
@@ -661,7 +813,6 @@ public class Tracker extends android.app.Service implements
                     // in emulator
                     timeDiff = 0;
                 }
-                mElapsedTimeMillis += timeDiff;
                 mElapsedDistance += distDiff;
                 if (hrValue != null) {
                     mHeartbeats += (hrValue * timeDiff) / (60 * 1000);
@@ -693,12 +844,118 @@ public class Tracker extends android.app.Service implements
             notificationStateManager.displayNotificationState(activityOngoingState);
         }
         mLastLocation = arg0;
+
+        if (!internal && mTicking && state.get() == TrackerState.STARTED) {
+            /**
+             * align tick with location update
+             */
+            onTick();
+        }
     }
 
-    private void liveLog(int type) {
-        for (WorkoutObserver l : liveLoggers) {
-            l.workoutEvent(workout, type);
+    private final Runnable onTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
         }
+    };
+
+    private void startTicking() {
+        if (mTicking)
+            return;
+        mTicking = true;
+        handler.post(onTickRunnable);
+    }
+
+    private void stopTicking() {
+        mTicking = false;
+        handler.removeCallbacks(onTickRunnable);
+    }
+
+    void onTick() {
+        handler.removeCallbacks(onTickRunnable);
+        if (!mTicking)
+            return;
+
+        if (workout != null) {
+            workout.onTick();
+        }
+
+        /* workout.onTick() might have stopped tracker (end of workout)
+         * let listeners see final state anyway */
+        for (int i = 0; i < tickListeners.size(); i++) {
+            tickListeners.get(i).onTick();
+        }
+
+        if (mTicking) {
+            long delay = state.get() == TrackerState.STARTED ? mTickInterval : mPausedTickInterval;
+            handler.postDelayed(onTickRunnable, delay);
+        }
+    }
+
+    /**
+     * Every measurement pushed by the hr provider, delivered on handler
+     */
+    private final ValueModel.ChangeListener<HRData> hrDataListener =
+            new ValueModel.ChangeListener<HRData>() {
+                @Override
+                public void onValueChanged(ValueModel<HRData> instance, HRData oldValue,
+                                           HRData newValue) {
+                    if (newValue == null || state.get() != TrackerState.STARTED)
+                        return;
+                    if (mSampleWriter != null) {
+                        mSampleWriter.onHRData(newValue);
+                    }
+                    if (workout != null) {
+                        workout.onHRData();
+                    }
+                }
+            };
+
+    /**
+     * Set tick interval (ms) used when running resp. paused
+     */
+    public void setTickInterval(long running, long paused) {
+        mTickInterval = running;
+        mPausedTickInterval = paused;
+    }
+
+    /**
+     * Restart ticking (at paused interval) of a stopped activity, i.e when
+     *   returning from save dialog without resuming an activity stopped while paused
+     */
+    public void startPausedTicking() {
+        if (state.get() == TrackerState.STOPPED && workout != null) {
+            startTicking();
+        }
+    }
+
+    public boolean isTicking() {
+        return mTicking;
+    }
+
+    public void registerTickListener(TickListener listener) {
+        if (!tickListeners.contains(listener))
+            tickListeners.add(listener);
+    }
+
+    public void unregisterTickListener(TickListener listener) {
+        tickListeners.remove(listener);
+    }
+
+    /**
+     * Loggers of a previous activity are replaced here rather than in reset(),
+     *   events already posted (e.g end) are delivered to the loggers set when posted
+     */
+    private void registerLiveLoggers() {
+        liveEvents.setObservers(liveLoggers);
+    }
+
+    private void liveLog(int type) {
+        if (liveLoggers.isEmpty() || !liveEvents.hasObservers())
+            return;
+
+        liveEvents.post(type, workout.updateSnapshot());
     }
 
     @Override
@@ -799,19 +1056,23 @@ public class Tracker extends android.app.Service implements
         return component.isConnected();
     }
 
-    public Integer getCurrentHRValue(long now, long maxAge) {
+    /**
+     * @return latest hr pushed by the provider, null if not connected
+     *         or if no measurement arrived within MAX_HR_AGE
+     */
+    public Integer getCurrentHRValue() {
         HRProvider hrProvider = trackerHRM.getHrProvider();
-        if (hrProvider == null)
+        if (hrProvider == null || !hrProvider.isConnected())
             return null;
 
-        if (now > hrProvider.getHRValueTimestamp() + maxAge)
+        HRData data = trackerHRM.getHRData().get();
+        if (data == null || !data.hasHeartRate)
             return null;
 
-        return hrProvider.getHRValue();
-    }
+        if (ElapsedClock.currentTimeMillis() - data.timestamp > MAX_HR_AGE)
+            return null;
 
-    public Integer getCurrentHRValue() {
-        return getCurrentHRValue(System.currentTimeMillis(), 3000);
+        return (int) data.hrValue;
     }
 
     public Double getCurrentSpeed() {
@@ -21,5 +21,6 @@ import org.runnerup.workout.WorkoutInfo;
  */
 public interface WorkoutObserver {
     // @note: type is in Constants.DB.LOCATION.TYPE
+    // @note: live loggers are called on their own thread, see LiveEventDispatcher
     public void workoutEvent(WorkoutInfo workoutInfo, int type);
 }
@@ -26,6 +26,8 @@ import android.preference.PreferenceManager;
 import android.widget.Toast;
 
 import org.runnerup.R;
+import org.runnerup.common.util.ValueModel;
+import org.runnerup.hr.HRData;
 import org.runnerup.hr.HRDeviceRef;
 import org.runnerup.hr.HRManager;
 import org.runnerup.hr.HRProvider;
@@ -39,6 +41,17 @@ public class TrackerHRM extends DefaultTrackerComponent {
     private final Handler handler = new Handler();
     private HRProvider hrProvider;
 
+    /**
+     * Latest measurement pushed by provider, null when not connected
+     */
+    private final ValueModel<HRData> hrData = new ValueModel<HRData>();
+    private final HRProvider.HRDataListener hrDataListener = new HRProvider.HRDataListener() {
+        @Override
+        public void onHRData(HRProvider src, HRData data) {
+            hrData.set(data);
+        }
+    };
+
     public static final String NAME = "HRM";
 
     @Override
@@ -62,6 +75,7 @@ public class TrackerHRM extends DefaultTrackerComponent {
 
         hrProvider = HRManager.getHRProvider(context, btProviderName);
         if (hrProvider != null) {
+            hrProvider.registerHRDataListener(hrDataListener);
             hrProvider.open(handler, new HRProvider.HRClient() {
                 @Override
                 public void onOpenResult(boolean ok) {
@@ -101,6 +115,7 @@ public class TrackerHRM extends DefaultTrackerComponent {
 
                 @Override
                 public void onDisconnectResult(boolean disconnectOK) {
+                    hrData.set(null);
                 }
 
                 @Override
@@ -125,14 +140,38 @@ public class TrackerHRM extends DefaultTrackerComponent {
     @Override
     public ResultCode onEnd(Callback callback, Context context) {
         if (hrProvider != null) {
+            hrProvider.unregisterHRDataListener(hrDataListener);
             hrProvider.disconnect();
             hrProvider.close();
             hrProvider = null;
         }
+        hrData.set(null);
         return ResultCode.RESULT_OK;
     }
 
     public HRProvider getHrProvider() {
         return hrProvider;
     }
+
+    /**
+     * Use an already connected provider instead of the configured one,
+     *   e.g when replaying a track. null removes it.
+     */
+    public void setHrProvider(HRProvider provider) {
+        if (hrProvider != null) {
+            hrProvider.unregisterHRDataListener(hrDataListener);
+        }
+        hrProvider = provider;
+        hrData.set(null);
+        if (hrProvider != null) {
+            hrProvider.registerHRDataListener(hrDataListener);
+        }
+    }
+
+    /**
+     * @return model of latest measurement, set on the thread receiving data from device
+     */
+    public ValueModel<HRData> getHRData() {
+        return hrData;
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.filter;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.location.Location;
+import android.os.Build;
+
+import org.runnerup.common.util.Constants;
+import org.runnerup.common.util.Geodesic;
+
+/**
+ * Streaming track simplification in front of a PersistentGpsLoggerListener
+ *
+ * GPS locations are held back in a window starting at the last written location (the anchor).
+ *   A new location extends the window as long as every held location is within tolerance
+ *   meters of where the segment anchor -> new location puts it at that time
+ *   (synchronized euclidean distance, i.e a sliding Douglas-Peucker that also bounds
+ *   the time error). Otherwise the newest held location is written and becomes the anchor.
+ * Stationary stretches hence collapse to their end points (dead-band), straight stretches
+ *   at even pace to one segment.
+ *
+ * Locations of other types than GPS (start, pause, resume, end), locations where
+ *   hr changes more than HR_DEAD_BAND and the first location after a key change
+ *   (e.g new lap) are always written.
+ *
+ * Only stored rows are affected, distance/time is accumulated by Tracker
+ *   before locations get here. Distance recomputed from the stored rows
+ *   (e.g by ActivityCleaner or exporters) hence comes out somewhat shorter,
+ *   which is why Tracker only uses this filter when pref_location_tolerance is set.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class DecimatingLocationFilter implements LocationFilter, Constants {
+
+    public static final int MAX_WINDOW = 64; // locations
+    public static final int HR_DEAD_BAND = 2; // bpm
+
+    private final PersistentGpsLoggerListener mWriter;
+    private final double mTolerance;
+
+    private int mType = -1;
+
+    /** last written location, null if next location shall be written */
+    private boolean mHasAnchor = false;
+    private double mAnchorLat;
+    private double mAnchorLon;
+    private long mAnchorTime;
+    private Integer mAnchorHR;
+
+    /** held (not yet written) locations after the anchor, in local meters */
+    private final double mX[] = new double[MAX_WINDOW];
+    private final double mY[] = new double[MAX_WINDOW];
+    private final long mTime[] = new long[MAX_WINDOW];
+    private int mHeld = 0;
+    private double mCosLat;
+
+    /** newest held location */
+    private Location mPending = null;
+    private Integer mPendingHR = null;
+
+    /**
+     * @param tolerance max deviation in meters of a dropped location, 0 disables filtering
+     */
+    public DecimatingLocationFilter(PersistentGpsLoggerListener writer, double tolerance) {
+        this.mWriter = writer;
+        this.mTolerance = tolerance;
+        updateType();
+    }
+
+    public PersistentGpsLoggerListener getWriter() {
+        return mWriter;
+    }
+
+    public ContentValues getKey() {
+        return mWriter.getKey();
+    }
+
+    /**
+     * Held location is written using old key, first location with new key is always written
+     */
+    public void setKey(ContentValues key) {
+        writePending();
+        mHasAnchor = false;
+        mWriter.setKey(key);
+        updateType();
+    }
+
+    private void updateType() {
+        ContentValues key = mWriter.getKey();
+        Integer type = key == null ? null : key.getAsInteger(DB.LOCATION.TYPE);
+        mType = type == null ? -1 : type;
+    }
+
+    public void onLocationChanged(Location arg0, Integer hrValue) {
+        if (mTolerance <= 0 || mType != DB.LOCATION.TYPE_GPS || !mHasAnchor ||
+                hrChanged(hrValue)) {
+            writePending();
+            write(arg0, hrValue);
+            return;
+        }
+
+        double x = (arg0.getLongitude() - mAnchorLon) * mCosLat;
+        double y = arg0.getLatitude() - mAnchorLat;
+        x = Math.toRadians(x) * Geodesic.EARTH_RADIUS;
+        y = Math.toRadians(y) * Geodesic.EARTH_RADIUS;
+        long t = arg0.getTime();
+
+        if (mHeld == MAX_WINDOW || !withinTolerance(x, y, t)) {
+            /**
+             * newest held location becomes the anchor,
+             *   window restarts with arg0 as its only location
+             */
+            writePending();
+            x = (arg0.getLongitude() - mAnchorLon) * mCosLat;
+            y = arg0.getLatitude() - mAnchorLat;
+            x = Math.toRadians(x) * Geodesic.EARTH_RADIUS;
+            y = Math.toRadians(y) * Geodesic.EARTH_RADIUS;
+        }
+
+        mX[mHeld] = x;
+        mY[mHeld] = y;
+        mTime[mHeld] = t;
+        mHeld++;
+        mPending = arg0;
+        mPendingHR = hrValue;
+    }
+
+    private boolean hrChanged(Integer hrValue) {
+        if (hrValue == null || mAnchorHR == null)
+            return hrValue != mAnchorHR;
+        return Math.abs(hrValue - mAnchorHR) > HR_DEAD_BAND;
+    }
+
+    /**
+     * Check that all held locations are within tolerance of their time interpolated
+     *   position on segment anchor (0,0) -> (x,y)
+     */
+    private boolean withinTolerance(double x, double y, long t) {
+        final double tol2 = mTolerance * mTolerance;
+        final double dt = t - mAnchorTime;
+        for (int i = 0; i < mHeld; i++) {
+            double f = dt > 0 ? (mTime[i] - mAnchorTime) / dt : 1;
+            double ex = mX[i] - f * x;
+            double ey = mY[i] - f * y;
+            if (ex * ex + ey * ey > tol2)
+                return false;
+        }
+        return true;
+    }
+
+    private void writePending() {
+        if (mPending != null) {
+            Location l = mPending;
+            mPending = null;
+            write(l, mPendingHR);
+        }
+    }
+
+    private void write(Location l, Integer hrValue) {
+        mWriter.onLocationChanged(l, hrValue);
+        mHasAnchor = true;
+        mAnchorLat = l.getLatitude();
+        mAnchorLon = l.getLongitude();
+        mAnchorTime = l.getTime();
+        mAnchorHR = hrValue;
+        mCosLat = Math.cos(Math.toRadians(mAnchorLat));
+        mHeld = 0;
+        mPendingHR = null;
+    }
+
+    /**
+     * Write held location and flush writer
+     */
+    public void flush() {
+        writePending();
+        mWriter.flush();
+    }
+
+    public void close() {
+        writePending();
+        mWriter.close();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.filter;
+
+import android.content.ContentValues;
+import android.location.Location;
+
+/**
+ * Stage between Tracker and the location table
+ *
+ * Tracker accumulates distance/time before locations get here,
+ *   so a filter only decides which locations are stored.
+ */
+public interface LocationFilter {
+
+    interface Factory {
+        /**
+         * @param writer persists the locations that pass the filter
+         */
+        LocationFilter create(PersistentGpsLoggerListener writer);
+    }
+
+    ContentValues getKey();
+
+    void setKey(ContentValues key);
+
+    void onLocationChanged(Location arg0, Integer hrValue);
+
+    void flush();
+
+    void close();
+}
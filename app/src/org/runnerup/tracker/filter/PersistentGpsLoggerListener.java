@@ -20,26 +20,107 @@ package org.runnerup.tracker.filter;
 import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import org.runnerup.common.util.Constants;
 import org.runnerup.tracker.LocationListenerBase;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 @TargetApi(Build.VERSION_CODES.FROYO)
-public class PersistentGpsLoggerListener extends LocationListenerBase implements
+public class PersistentGpsLoggerListener extends LocationListenerBase implements LocationFilter,
         Constants {
     private final java.lang.Object mLock;
     private SQLiteDatabase mDB;
     private java.lang.String mTable;
     private ContentValues mKey;
 
+    /**
+     * Write-behind buffer
+     *
+     * When enabled (maxBuffered > 0) locations are kept in a bounded buffer
+     * and written in one transaction using a compiled statement, either when
+     * the buffer is full or when the oldest buffered location is older than
+     * maxBufferAge (checked on each location and by a delayed flush on the
+     * main looper). The loss on process death is hence bounded by
+     * maxBuffered locations / maxBufferAge millis.
+     *
+     * Each location keeps the key (mKey is replaced, never modified) that
+     * was set when it was buffered, and all key columns are written.
+     * The location values take precedence over key columns with the same name.
+     */
+    private static final String LOCATION_COLUMNS[] = {
+            DB.LOCATION.TIME,
+            DB.LOCATION.LATITUDE,
+            DB.LOCATION.LONGITUDE,
+            DB.LOCATION.ALTITUDE,
+            DB.LOCATION.ACCURANCY,
+            DB.LOCATION.SPEED,
+            DB.LOCATION.BEARING,
+            DB.LOCATION.HR
+    };
+
+    private final int mMaxBuffered;
+    private final long mMaxBufferAge;
+    private final Handler mHandler;
+    private int mBuffered = 0;
+    private long mFirstBufferedTime = 0;
+    private SQLiteStatement mInsert = null;
+    private ContentValues mInsertKey = null;       // last key bound to mInsert
+    private List<String> mInsertColumns = null;    // key columns of mInsert
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private ContentValues mKeys[];
+    private long mTime[];
+    private double mLatitude[];
+    private double mLongitude[];
+    private float mAltitude[];
+    private float mAccuracy[];
+    private float mSpeed[];
+    private float mBearing[];
+    private int mHR[];
+
     public PersistentGpsLoggerListener(SQLiteDatabase _db, String _table,
             ContentValues _key) {
+        this(_db, _table, _key, 0, 0);
+    }
+
+    public PersistentGpsLoggerListener(SQLiteDatabase _db, String _table,
+            ContentValues _key, int maxBuffered, long maxBufferAge) {
         this.mLock = new java.lang.Object();
         this.mDB = _db;
         this.mTable = _table;
+        this.mMaxBuffered = maxBuffered;
+        this.mMaxBufferAge = maxBufferAge;
+        if (maxBuffered > 0) {
+            mHandler = new Handler(Looper.getMainLooper());
+            mKeys = new ContentValues[maxBuffered];
+            mTime = new long[maxBuffered];
+            mLatitude = new double[maxBuffered];
+            mLongitude = new double[maxBuffered];
+            mAltitude = new float[maxBuffered];
+            mAccuracy = new float[maxBuffered];
+            mSpeed = new float[maxBuffered];
+            mBearing = new float[maxBuffered];
+            mHR = new int[maxBuffered];
+        } else {
+            mHandler = null;
+        }
         setKey(_key);
     }
 
@@ -48,7 +129,11 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
     }
 
     public void setDB(SQLiteDatabase _db) {
-        mDB = _db;
+        flush();
+        synchronized (mLock) {
+            closeStatement();
+            mDB = _db;
+        }
     }
 
     public String getTable() {
@@ -56,7 +141,11 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
     }
 
     public void setTable(String _tab) {
-        mTable = _tab;
+        flush();
+        synchronized (mLock) {
+            closeStatement();
+            mTable = _tab;
+        }
     }
 
     public ContentValues getKey() {
@@ -76,6 +165,10 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
         }
     }
 
+    public boolean isBuffered() {
+        return mMaxBuffered > 0;
+    }
+
     @Override
     public void onLocationChanged(Location arg0) {
         super.onLocationChanged(arg0);
@@ -83,6 +176,11 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
     }
 
     public void onLocationChanged(Location arg0, Integer hrValue) {
+        if (mMaxBuffered > 0) {
+            bufferLocation(arg0, hrValue);
+            return;
+        }
+
         ContentValues values;
         synchronized (mLock) {
             if (mKey == null)
@@ -118,6 +216,170 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
         }
     }
 
+    private void bufferLocation(Location arg0, Integer hrValue) {
+        boolean full;
+        synchronized (mLock) {
+            final int i = mBuffered;
+            if (i == 0) {
+                mFirstBufferedTime = SystemClock.elapsedRealtime();
+                mHandler.postDelayed(mFlushTask, mMaxBufferAge);
+            }
+            mKeys[i] = mKey;
+            mTime[i] = arg0.getTime();
+            mLatitude[i] = (float) arg0.getLatitude();
+            mLongitude[i] = (float) arg0.getLongitude();
+            mAltitude[i] = arg0.hasAltitude() ? (float) arg0.getAltitude() : Float.NaN;
+            mAccuracy[i] = arg0.hasAccuracy() ? arg0.getAccuracy() : Float.NaN;
+            mSpeed[i] = arg0.hasSpeed() ? arg0.getSpeed() : Float.NaN;
+            mBearing[i] = arg0.hasBearing() ? arg0.getBearing() : Float.NaN;
+            mHR[i] = hrValue != null ? hrValue : -1;
+            mBuffered = i + 1;
+            full = mBuffered == mMaxBuffered ||
+                    SystemClock.elapsedRealtime() - mFirstBufferedTime >= mMaxBufferAge;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all buffered locations to db in one transaction
+     */
+    public void flush() {
+        synchronized (mLock) {
+            if (mBuffered == 0)
+                return;
+            mHandler.removeCallbacks(mFlushTask);
+            if (mDB == null) {
+                clearBuffer();
+                return;
+            }
+
+            mDB.beginTransaction();
+            try {
+                for (int i = 0; i < mBuffered; i++) {
+                    int index = bindKey(mKeys[i]);
+                    mInsert.bindLong(index, mTime[i]);
+                    mInsert.bindDouble(index + 1, mLatitude[i]);
+                    mInsert.bindDouble(index + 2, mLongitude[i]);
+                    bindFloat(index + 3, mAltitude[i]);
+                    bindFloat(index + 4, mAccuracy[i]);
+                    bindFloat(index + 5, mSpeed[i]);
+                    bindFloat(index + 6, mBearing[i]);
+                    if (mHR[i] >= 0)
+                        mInsert.bindLong(index + 7, mHR[i]);
+                    else
+                        mInsert.bindNull(index + 7);
+                    mInsert.executeInsert();
+                }
+                mDB.setTransactionSuccessful();
+            } finally {
+                mDB.endTransaction();
+                clearBuffer();
+            }
+        }
+    }
+
+    private void clearBuffer() {
+        for (int i = 0; i < mBuffered; i++) {
+            mKeys[i] = null;
+        }
+        mBuffered = 0;
+    }
+
+    /**
+     * @return key columns of key, i.e those not written from the location, sorted
+     */
+    private static List<String> getKeyColumns(ContentValues key) {
+        ArrayList<String> columns = new ArrayList<String>();
+        if (key != null) {
+            for (Map.Entry<String, Object> e : key.valueSet()) {
+                columns.add(e.getKey());
+            }
+            for (String column : LOCATION_COLUMNS) {
+                columns.remove(column);
+            }
+            Collections.sort(columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Bind key columns, (re)compile insert statement if key has other columns
+     *   than previous key
+     *
+     * @return index of first location column
+     */
+    private int bindKey(ContentValues key) {
+        if (mInsert == null || key != mInsertKey) {
+            List<String> columns = getKeyColumns(key);
+            if (mInsert == null || !columns.equals(mInsertColumns)) {
+                closeStatement();
+                StringBuilder sql = new StringBuilder("insert into ").append(mTable).append(" (");
+                for (String column : columns) {
+                    sql.append(column).append(", ");
+                }
+                for (int i = 0; i < LOCATION_COLUMNS.length; i++) {
+                    sql.append(i == 0 ? "" : ", ").append(LOCATION_COLUMNS[i]);
+                }
+                sql.append(") values (?");
+                for (int i = 1; i < columns.size() + LOCATION_COLUMNS.length; i++) {
+                    sql.append(", ?");
+                }
+                sql.append(")");
+                mInsert = mDB.compileStatement(sql.toString());
+                mInsertColumns = columns;
+            }
+            mInsertKey = key;
+        }
+        int index = 1;
+        for (String column : mInsertColumns) {
+            bindValue(index++, key.get(column));
+        }
+        return index;
+    }
+
+    /**
+     * Flush buffered locations and release compiled statement
+     */
+    public void close() {
+        flush();
+        synchronized (mLock) {
+            closeStatement();
+        }
+    }
+
+    private void closeStatement() {
+        if (mInsert != null) {
+            mInsert.close();
+            mInsert = null;
+        }
+        mInsertKey = null;
+        mInsertColumns = null;
+    }
+
+    private void bindValue(int index, Object value) {
+        if (value == null)
+            mInsert.bindNull(index);
+        else if (value instanceof Double || value instanceof Float)
+            mInsert.bindDouble(index, ((Number) value).doubleValue());
+        else if (value instanceof Number)
+            mInsert.bindLong(index, ((Number) value).longValue());
+        else if (value instanceof Boolean)
+            mInsert.bindLong(index, (Boolean) value ? 1 : 0);
+        else if (value instanceof byte[])
+            mInsert.bindBlob(index, (byte[]) value);
+        else
+            mInsert.bindString(index, value.toString());
+    }
+
+    private void bindFloat(int index, float value) {
+        if (Float.isNaN(value))
+            mInsert.bindNull(index);
+        else
+            mInsert.bindDouble(index, value);
+    }
+
     @Override
     public void onProviderDisabled(String arg0) {
         super.onProviderDisabled(arg0);
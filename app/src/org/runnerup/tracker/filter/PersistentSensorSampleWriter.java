@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.filter;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.SystemClock;
+
+import org.runnerup.common.util.Constants;
+import org.runnerup.hr.HRData;
+
+/**
+ * Batched writer of sensor samples (hr, RR intervals) of an activity
+ *
+ * Samples are kept in a bounded buffer and written in one transaction using
+ *   a compiled statement, either when the buffer is full or when the oldest
+ *   buffered sample is older than maxBufferAge (see PersistentGpsLoggerListener).
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class PersistentSensorSampleWriter implements Constants {
+    private final Object mLock = new Object();
+    private final SQLiteDatabase mDB;
+    private final long mActivityId;
+
+    private final int mMaxBuffered;
+    private final long mMaxBufferAge;
+    private int mBuffered = 0;
+    private long mFirstBufferedTime = 0;
+    private SQLiteStatement mInsert = null;
+
+    private final long mTime[];
+    private final int mType[];
+    private final int mValue[];
+
+    public PersistentSensorSampleWriter(SQLiteDatabase db, long activityId, int maxBuffered,
+                                        long maxBufferAge) {
+        this.mDB = db;
+        this.mActivityId = activityId;
+        this.mMaxBuffered = maxBuffered;
+        this.mMaxBufferAge = maxBufferAge;
+        mTime = new long[maxBuffered];
+        mType = new int[maxBuffered];
+        mValue = new int[maxBuffered];
+    }
+
+    /**
+     * Add hr and RR intervals of a notification, RR intervals are assumed
+     *   to end at data.timestamp
+     */
+    public void onHRData(HRData data) {
+        synchronized (mLock) {
+            if (data.hasHeartRate) {
+                add(data.timestamp, DB.SENSOR_SAMPLE.TYPE_HR, (int) data.hrValue);
+            }
+            if (data.hasRrIntervals && data.rrIntervals != null) {
+                long end = data.timestamp;
+                for (int i = data.rrIntervals.length - 1; i >= 0; i--) {
+                    end -= data.rrIntervals[i];
+                }
+                for (int i = 0; i < data.rrIntervals.length; i++) {
+                    end += data.rrIntervals[i];
+                    add(end, DB.SENSOR_SAMPLE.TYPE_RR, (int) data.rrIntervals[i]);
+                }
+            }
+        }
+    }
+
+    public void add(long time, int type, int value) {
+        boolean full;
+        synchronized (mLock) {
+            final int i = mBuffered;
+            if (i == 0) {
+                mFirstBufferedTime = SystemClock.elapsedRealtime();
+            }
+            mTime[i] = time;
+            mType[i] = type;
+            mValue[i] = value;
+            mBuffered = i + 1;
+            full = mBuffered == mMaxBuffered ||
+                    SystemClock.elapsedRealtime() - mFirstBufferedTime >= mMaxBufferAge;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all buffered samples to db in one transaction
+     */
+    public void flush() {
+        synchronized (mLock) {
+            if (mBuffered == 0)
+                return;
+            if (mDB == null) {
+                mBuffered = 0;
+                return;
+            }
+            if (mInsert == null) {
+                mInsert = mDB.compileStatement("insert into " + DB.SENSOR_SAMPLE.TABLE + " ("
+                        + DB.SENSOR_SAMPLE.ACTIVITY + ", "
+                        + DB.SENSOR_SAMPLE.TIME + ", "
+                        + DB.SENSOR_SAMPLE.TYPE + ", "
+                        + DB.SENSOR_SAMPLE.VALUE + ") "
+                        + "values (?, ?, ?, ?)");
+            }
+
+            mDB.beginTransaction();
+            try {
+                for (int i = 0; i < mBuffered; i++) {
+                    mInsert.bindLong(1, mActivityId);
+                    mInsert.bindLong(2, mTime[i]);
+                    mInsert.bindLong(3, mType[i]);
+                    mInsert.bindLong(4, mValue[i]);
+                    mInsert.executeInsert();
+                }
+                mDB.setTransactionSuccessful();
+            } finally {
+                mDB.endTransaction();
+                mBuffered = 0;
+            }
+        }
+    }
+
+    /**
+     * Flush buffered samples and release compiled statement
+     */
+    public void close() {
+        flush();
+        synchronized (mLock) {
+            if (mInsert != null) {
+                mInsert.close();
+                mInsert = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.replay;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput and per stage latency of a replay
+ */
+public class ReplayStats {
+
+    public enum Stage {
+        HR,        // push of hr measurement to tracker
+        LOCATION,  // Tracker.onLocationChanged, incl decimation and db buffering
+        TICK,      // Tracker tick, i.e workout/triggers and tick listeners
+        LIFECYCLE, // start, pause, resume, stop and complete (incl flushes)
+    }
+
+    private final long latency[][] = new long[Stage.values().length][];
+    private final int count[] = new int[Stage.values().length];
+    private long wallNanos = 0;
+    private long trackMillis = 0;
+    private long activityId = 0;
+
+    public ReplayStats() {
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new long[1024];
+        }
+    }
+
+    public void add(Stage stage, long nanos) {
+        final int s = stage.ordinal();
+        if (count[s] == latency[s].length) {
+            long tmp[] = new long[2 * count[s]];
+            System.arraycopy(latency[s], 0, tmp, 0, count[s]);
+            latency[s] = tmp;
+        }
+        latency[s][count[s]++] = nanos;
+    }
+
+    public void setResult(long wallNanos, long trackMillis, long activityId) {
+        this.wallNanos = wallNanos;
+        this.trackMillis = trackMillis;
+        this.activityId = activityId;
+    }
+
+    /**
+     * @return id of activity created by replay
+     */
+    public long getActivityId() {
+        return activityId;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return replayed track time per wall clock time
+     */
+    public double getSpeedup() {
+        return wallNanos == 0 ? 0 : (trackMillis * 1e6) / wallNanos;
+    }
+
+    public int getCount(Stage stage) {
+        return count[stage.ordinal()];
+    }
+
+    public long getTotalNanos(Stage stage) {
+        final int s = stage.ordinal();
+        long sum = 0;
+        for (int i = 0; i < count[s]; i++)
+            sum += latency[s][i];
+        return sum;
+    }
+
+    /**
+     * @param p percentile, 0-100
+     */
+    public long getPercentileNanos(Stage stage, double p) {
+        final int s = stage.ordinal();
+        if (count[s] == 0)
+            return 0;
+        long sorted[] = new long[count[s]];
+        System.arraycopy(latency[s], 0, sorted, 0, count[s]);
+        Arrays.sort(sorted);
+        int i = (int) Math.ceil(p / 100 * count[s]) - 1;
+        return sorted[Math.max(0, Math.min(count[s] - 1, i))];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "replayed %d s in %.1f ms (%.0fx)\n",
+                trackMillis / 1000, wallNanos / 1e6, getSpeedup()));
+        for (Stage stage : Stage.values()) {
+            int n = getCount(stage);
+            if (n == 0)
+                continue;
+            sb.append(String.format(Locale.US,
+                    "%-9s n=%6d avg=%7d ns p50=%7d ns p99=%8d ns max=%9d ns\n",
+                    stage, n, getTotalNanos(stage) / n,
+                    getPercentileNanos(stage, 50), getPercentileNanos(stage, 99),
+                    getPercentileNanos(stage, 100)));
+        }
+        return sb.toString();
+    }
+}
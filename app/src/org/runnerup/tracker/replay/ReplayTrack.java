@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.replay;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import org.runnerup.common.util.CompactTrack;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.LocationReader;
+import org.runnerup.db.SensorSampleReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Recorded track to replay, kept in primitive arrays
+ *
+ * Each sample has a location type (DB.LOCATION.TYPE_*), a start/resume sample
+ *   begins a segment and pause/end ends it.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class ReplayTrack {
+
+    private int size = 0;
+    private int type[] = new int[256];
+    private long time[] = new long[256]; // ms since epoch
+    private double latitude[] = new double[256];
+    private double longitude[] = new double[256];
+    private double altitude[] = new double[256]; // NaN if unknown
+    private int hr[] = new int[256]; // 0 if unknown
+    private String sport = null; // TCX Activity Sport attribute, null if unknown
+
+    public int size() {
+        return size;
+    }
+
+    public int getType(int i) {
+        return type[i];
+    }
+
+    public long getTime(int i) {
+        return time[i];
+    }
+
+    public double getLatitude(int i) {
+        return latitude[i];
+    }
+
+    public double getLongitude(int i) {
+        return longitude[i];
+    }
+
+    public double getAltitude(int i) {
+        return altitude[i];
+    }
+
+    public int getHR(int i) {
+        return hr[i];
+    }
+
+    /**
+     * @return duration in ms, pauses included
+     */
+    public long getDuration() {
+        return size == 0 ? 0 : time[size - 1] - time[0];
+    }
+
+    /**
+     * @return Sport attribute of TCX Activity (Running, Biking or Other), null if not present
+     */
+    public String getSport() {
+        return sport;
+    }
+
+    public void add(int t, long ms, double lat, double lon, double alt, int bpm) {
+        if (size == time.length) {
+            int n = 2 * size;
+            type = copyOf(type, n);
+            time = copyOf(time, n);
+            latitude = copyOf(latitude, n);
+            longitude = copyOf(longitude, n);
+            altitude = copyOf(altitude, n);
+            hr = copyOf(hr, n);
+        }
+        type[size] = t;
+        time[size] = ms;
+        latitude[size] = lat;
+        longitude[size] = lon;
+        altitude[size] = alt;
+        hr[size] = bpm;
+        size++;
+    }
+
+    /**
+     * Segments end with a PAUSE, the track with END
+     */
+    private void endSegment(boolean last) {
+        if (size > 0 && type[size - 1] != DB.LOCATION.TYPE_START) {
+            type[size - 1] = last ? DB.LOCATION.TYPE_END : DB.LOCATION.TYPE_PAUSE;
+        }
+    }
+
+    private int nextType() {
+        if (size == 0)
+            return DB.LOCATION.TYPE_START;
+        int prev = type[size - 1];
+        if (prev == DB.LOCATION.TYPE_PAUSE)
+            return DB.LOCATION.TYPE_RESUME;
+        return DB.LOCATION.TYPE_GPS;
+    }
+
+    /**
+     * Load activity from db, hr is taken from sensor samples if present
+     */
+    public static ReplayTrack load(SQLiteDatabase db, long activityId) {
+        ReplayTrack track = new ReplayTrack();
+        LocationReader c = LocationReader.open(db, activityId);
+        SensorSampleReader cHR = SensorSampleReader.open(db, activityId, DB.SENSOR_SAMPLE.TYPE_HR);
+        while (c.moveToNext()) {
+            long ms = c.getTime();
+            int bpm = cHR.getValue(ms, c.isNull(CompactTrack.HR) ? 0 : c.getInt(CompactTrack.HR));
+            double alt = c.isNull(CompactTrack.ALTITUDE) ? Double.NaN :
+                    c.getDouble(CompactTrack.ALTITUDE);
+            track.add(c.getType(), ms, c.getLatitude(), c.getLongitude(), alt, bpm);
+        }
+        c.close();
+        cHR.close();
+        return track;
+    }
+
+    /**
+     * Parse GPX, each trkseg becomes a segment
+     */
+    public static ReplayTrack parseGPX(InputStream in) throws IOException {
+        return parse(in, "trkseg", "trkpt", false);
+    }
+
+    /**
+     * Parse TCX, each Track becomes a segment
+     */
+    public static ReplayTrack parseTCX(InputStream in) throws IOException {
+        return parse(in, "Track", "Trackpoint", true);
+    }
+
+    private static ReplayTrack parse(InputStream in, String segmentTag, String pointTag,
+                                     boolean tcx) throws IOException {
+        ReplayTrack track = new ReplayTrack();
+        try {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XmlPullParser p = factory.newPullParser();
+            p.setInput(in, null);
+
+            boolean inPoint = false;
+            String tag = null;
+            long ms = 0;
+            double lat = Double.NaN, lon = Double.NaN, alt = Double.NaN;
+            int bpm = 0;
+            for (int ev = p.getEventType(); ev != XmlPullParser.END_DOCUMENT; ev = p.next()) {
+                switch (ev) {
+                    case XmlPullParser.START_TAG:
+                        tag = p.getName();
+                        if (tcx && tag.equals("Activity") && track.sport == null) {
+                            track.sport = p.getAttributeValue(null, "Sport");
+                        } else if (tag.equals(pointTag)) {
+                            inPoint = true;
+                            ms = 0;
+                            alt = Double.NaN;
+                            bpm = 0;
+                            lat = lon = Double.NaN;
+                            if (!tcx) {
+                                lat = Double.parseDouble(p.getAttributeValue(null, "lat"));
+                                lon = Double.parseDouble(p.getAttributeValue(null, "lon"));
+                            }
+                        }
+                        break;
+                    case XmlPullParser.TEXT:
+                        if (!inPoint || tag == null)
+                            break;
+                        String text = p.getText().trim();
+                        if (text.length() == 0)
+                            break;
+                        if (tag.equals("time") || tag.equals("Time")) {
+                            ms = parseTime(text);
+                        } else if (tag.equals("ele") || tag.equals("AltitudeMeters")) {
+                            alt = Double.parseDouble(text);
+                        } else if (tag.equals("hr") || tag.equals("Value")) {
+                            bpm = (int) Double.parseDouble(text);
+                        } else if (tag.equals("LatitudeDegrees")) {
+                            lat = Double.parseDouble(text);
+                        } else if (tag.equals("LongitudeDegrees")) {
+                            lon = Double.parseDouble(text);
+                        }
+                        break;
+                    case XmlPullParser.END_TAG:
+                        tag = null;
+                        if (p.getName().equals(pointTag)) {
+                            inPoint = false;
+                            // skip points without position (e.g TCX hr only)
+                            if (!Double.isNaN(lat) && !Double.isNaN(lon) && ms != 0) {
+                                track.add(track.nextType(), ms, lat, lon, alt, bpm);
+                            }
+                        } else if (p.getName().equals(segmentTag)) {
+                            track.endSegment(false);
+                        }
+                        break;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException(e.toString());
+        } catch (NumberFormatException e) {
+            throw new IOException(e.toString());
+        }
+        track.endSegment(true);
+        return track;
+    }
+
+    /**
+     * Parse ISO-8601 time, e.g 2016-01-31T08:15:00Z or 2016-01-31T10:15:00.250+02:00
+     *
+     * @return ms since epoch
+     */
+    static long parseTime(String s) {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(Integer.parseInt(s.substring(0, 4)),
+                Integer.parseInt(s.substring(5, 7)) - 1,
+                Integer.parseInt(s.substring(8, 10)),
+                Integer.parseInt(s.substring(11, 13)),
+                Integer.parseInt(s.substring(14, 16)),
+                Integer.parseInt(s.substring(17, 19)));
+        long ms = cal.getTimeInMillis();
+        int i = 19;
+        if (i < s.length() && s.charAt(i) == '.') {
+            int scale = 100;
+            for (i++; i < s.length() && Character.isDigit(s.charAt(i)); i++) {
+                ms += (s.charAt(i) - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (i < s.length() && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+            int offset = Integer.parseInt(s.substring(i + 1, i + 3)) * 60
+                    + Integer.parseInt(s.substring(i + 4, i + 6));
+            ms -= (s.charAt(i) == '+' ? 1 : -1) * offset * 60 * 1000L;
+        }
+        return ms;
+    }
+
+    private static int[] copyOf(int src[], int n) {
+        int res[] = new int[n];
+        System.arraycopy(src, 0, res, 0, src.length);
+        return res;
+    }
+
+    private static long[] copyOf(long src[], int n) {
+        long res[] = new long[n];
+        System.arraycopy(src, 0, res, 0, src.length);
+        return res;
+    }
+
+    private static double[] copyOf(double src[], int n) {
+        double res[] = new double[n];
+        System.arraycopy(src, 0, res, 0, src.length);
+        return res;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.tracker.replay;
+
+import org.runnerup.tracker.ElapsedClock;
+
+/**
+ * Clock that only moves when told to, time is the (recorded) wall clock
+ *   time in ms of the sample being replayed
+ */
+public class VirtualClock implements ElapsedClock.TimeSource {
+
+    private volatile long mTime;
+
+    public VirtualClock(long time) {
+        mTime = time;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mTime;
+    }
+
+    /**
+     * Move clock forward to time, never backwards
+     */
+    public void advanceTo(long time) {
+        if (time > mTime) {
+            mTime = time;
+        }
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return mTime * 1000000L;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.io.IOException;
+
+/**
+ * Allocation free formatting of timestamps and numbers for exporters
+ *
+ * decimal() writes the same characters as Float.toString()/Double.toString(),
+ *   i.e the shortest decimal that reads back as the same value, for values
+ *   that exporters write (1e-3 <= |v| < 1e7). Other values and doubles that need
+ *   more than ~16 significant digits fall back to toString().
+ *
+ * The result of the last format call is kept in a reused char[] (see chars(),
+ *   start() and length()) and can be handed to FastXmlWriter/JsonWriter
+ *   without creating a String, e.g
+ *
+ *     mXML.element(TIME, fmt.isoTime(time));
+ *     fmt.decimal(lat).value(jsonWriter);
+ *
+ * Not thread safe, use one instance per export.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public final class CharFormatter {
+
+    private static final long MS_PER_DAY = 24 * 3600 * 1000L;
+    private static final int MAX_DECIMALS = 9;
+    private static final long POW10[] = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+            1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L
+    };
+    private static final double EXACT_LONG = 9007199254740992.0; // 2^53
+
+    // numbers are written right aligned, ending at num.length
+    private final char num[] = new char[32];
+
+    // yyyy-MM-ddTHH:mm:ssZ, date part is only rewritten when day changes
+    private final char time[] = "1970-01-01T00:00:00Z".toCharArray();
+    private long timeDay = 0;       // day (since epoch) of date part in time[]
+    private long timeSecond = 0;    // second (since epoch) in time[]
+
+    private char chars[] = num;
+    private int start = num.length;
+    private int length = 0;
+
+    public char[] chars() {
+        return chars;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Format as UTC ISO-8601 with second precision, e.g 2016-01-31T08:15:00Z
+     *
+     * @param ms ms since epoch
+     */
+    public CharFormatter isoTime(long ms) {
+        long second = floorDiv(ms, 1000);
+        if (second != timeSecond) {
+            long day = floorDiv(second, MS_PER_DAY / 1000);
+            if (day != timeDay) {
+                setDate(day);
+                timeDay = day;
+            }
+            int s = (int) (second - day * (MS_PER_DAY / 1000));
+            put2(time, 11, s / 3600);
+            put2(time, 14, (s / 60) % 60);
+            put2(time, 17, s % 60);
+            timeSecond = second;
+        }
+        chars = time;
+        start = 0;
+        length = time.length;
+        return this;
+    }
+
+    public CharFormatter number(long v) {
+        int pos = num.length;
+        if (v == Long.MIN_VALUE) {
+            return fallback(Long.toString(v));
+        }
+        boolean neg = v < 0;
+        if (neg)
+            v = -v;
+        do {
+            num[--pos] = (char) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (neg)
+            num[--pos] = '-';
+        return set(pos);
+    }
+
+    /**
+     * Format with at most decimals fraction digits, trailing zeros are
+     *   removed, e.g fixed(3.50, 2) is "3.5" and fixed(85.0, 1) is "85"
+     */
+    public CharFormatter fixed(double v, int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS)
+            throw new IllegalArgumentException("decimals: " + decimals);
+        final long pow = POW10[decimals];
+        final double abs = Math.abs(v);
+        if (Double.isNaN(v) || abs * pow >= 1e18) {
+            return fallback(Double.toString(v)); // also handles infinity
+        }
+        long scaled = Math.round(abs * pow);
+        long intPart = scaled / pow;
+        long frac = scaled % pow;
+        int fd = decimals;
+        while (fd > 0 && frac % 10 == 0) {
+            frac /= 10;
+            fd--;
+        }
+
+        int pos = num.length;
+        if (fd > 0) {
+            for (int i = 0; i < fd; i++) {
+                num[--pos] = (char) ('0' + (frac % 10));
+                frac /= 10;
+            }
+            num[--pos] = '.';
+        }
+        do {
+            num[--pos] = (char) ('0' + (intPart % 10));
+            intPart /= 10;
+        } while (intPart != 0);
+        if (v < 0 && !(pos == num.length - 1 && num[pos] == '0'))
+            num[--pos] = '-'; // but no -0
+        return set(pos);
+    }
+
+    /**
+     * Same as Float.toString(v), e.g "59.3293", "85.0"
+     */
+    public CharFormatter decimal(float v) {
+        final float abs = Math.abs(v);
+        if (abs == 0) {
+            return decimal(0, 1, Float.floatToRawIntBits(v) < 0);
+        }
+        if (abs >= 1e-3f && abs < 1e7f) {
+            final double x = abs; // exact
+            for (int d = 1; d < POW10.length; d++) {
+                double p = x * POW10[d];
+                if (p >= EXACT_LONG)
+                    break;
+                // nearest (ties to even) d digit decimal, is it the closest float?
+                long scaled = (long) Math.rint(p);
+                if ((float) (scaled / (double) POW10[d]) == abs) {
+                    return decimal(scaled, d, v < 0);
+                }
+            }
+        }
+        return fallback(Float.toString(v));
+    }
+
+    /**
+     * Same as Double.toString(v), e.g "59.3293", "85.0"
+     */
+    public CharFormatter decimal(double v) {
+        final double abs = Math.abs(v);
+        if (abs == 0) {
+            return decimal(0, 1, Double.doubleToRawLongBits(v) < 0);
+        }
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int d = 1; d < POW10.length; d++) {
+                double p = abs * POW10[d];
+                if (p >= EXACT_LONG)
+                    break;
+                // scaled and POW10[d] are exact, so the division is correctly rounded
+                long scaled = (long) Math.rint(p);
+                if (scaled / (double) POW10[d] == abs) {
+                    return decimal(scaled, d, v < 0);
+                }
+            }
+        }
+        return fallback(Double.toString(v));
+    }
+
+    /**
+     * Write scaled / 10^decimals, with all decimals
+     */
+    private CharFormatter decimal(long scaled, int decimals, boolean neg) {
+        int pos = num.length;
+        for (int i = 0; i < decimals; i++) {
+            num[--pos] = (char) ('0' + (scaled % 10));
+            scaled /= 10;
+        }
+        num[--pos] = '.';
+        do {
+            num[--pos] = (char) ('0' + (scaled % 10));
+            scaled /= 10;
+        } while (scaled != 0);
+        if (neg)
+            num[--pos] = '-';
+        return set(pos);
+    }
+
+    /**
+     * JsonWriter value as a literal, i.e a number
+     */
+    public void value(JsonWriter w) throws IOException {
+        w.literalValue(chars, start, length);
+    }
+
+    /**
+     * JsonWriter value as a string
+     */
+    public void stringValue(JsonWriter w) throws IOException {
+        w.value(chars, start, length);
+    }
+
+    public void appendTo(StringBuffer buf) {
+        buf.append(chars, start, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, start, length);
+    }
+
+    private CharFormatter set(int pos) {
+        chars = num;
+        start = pos;
+        length = num.length - pos;
+        return this;
+    }
+
+    private CharFormatter fallback(String s) {
+        int pos = num.length - s.length();
+        s.getChars(0, s.length(), num, pos);
+        return set(pos);
+    }
+
+    /**
+     * Write yyyy-MM-dd of day since epoch into time[]
+     *
+     * http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+     */
+    private void setDate(long day) {
+        long z = day + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int y = (int) (yoe + era * 400 + (m <= 2 ? 1 : 0));
+        put2(time, 0, (y / 100) % 100);
+        put2(time, 2, y % 100);
+        put2(time, 5, m);
+        put2(time, 8, d);
+    }
+
+    private static void put2(char dst[], int pos, int v) {
+        dst[pos] = (char) ('0' + v / 10);
+        dst[pos + 1] = (char) ('0' + v % 10);
+    }
+
+    private static long floorDiv(long a, long b) {
+        long q = a / b;
+        if ((a % b != 0) && ((a < 0) != (b < 0)))
+            q--;
+        return q;
+    }
+}
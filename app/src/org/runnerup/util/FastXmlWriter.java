@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Streaming XML writer for exports with many track points (GPX, TCX)
+ *
+ * Output is identical to {@link KXmlSerializer} used with empty namespace
+ *   (incl indent-output), but namespaces are not supported (names are written
+ *   as is, e.g "gpxtpx:hr"). Tags can be pre-templated with {@link Tag},
+ *   values from {@link CharFormatter} are written without escaping and
+ *   everything goes through a large char[] buffer.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public final class FastXmlWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_TEMPLATE_DEPTH = 32;
+
+    /**
+     * "\r\n" followed by indentation for depth 0..MAX_TEMPLATE_DEPTH
+     */
+    private static final char INDENT[] = new char[2 + 2 * MAX_TEMPLATE_DEPTH];
+
+    static {
+        INDENT[0] = '\r';
+        INDENT[1] = '\n';
+        for (int i = 2; i < INDENT.length; i++)
+            INDENT[i] = ' ';
+    }
+
+    /**
+     * Pre-built start and end tag of an element
+     */
+    public static final class Tag {
+        final String name;
+        final char open[];  // <name
+        final char close[]; // </name>
+
+        public Tag(String name) {
+            this.name = name;
+            this.open = ("<" + name).toCharArray();
+            this.close = ("</" + name + ">").toCharArray();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Writer out;
+    private final char buf[] = new char[BUFFER_SIZE];
+    private int pos = 0;
+
+    private boolean pending;
+    private int depth;
+    private String names[] = new String[12];
+    private boolean indent[] = new boolean[12];
+    private boolean unicode;
+
+    public FastXmlWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Same as KXmlSerializer feature indent-output
+     */
+    public void setIndent(boolean value) {
+        indent[depth] = value;
+    }
+
+    public void startDocument(String encoding, Boolean standalone) throws IOException {
+        write("<?xml version='1.0' ");
+        if (encoding != null) {
+            if (encoding.toLowerCase(Locale.US).startsWith("utf")) {
+                unicode = true;
+            }
+            write("encoding='");
+            write(encoding);
+            write("' ");
+        }
+        if (standalone != null) {
+            write("standalone='");
+            write(standalone ? "yes" : "no");
+            write("' ");
+        }
+        write("?>");
+    }
+
+    public FastXmlWriter startTag(String name) throws IOException {
+        startTag(name, null);
+        return this;
+    }
+
+    public FastXmlWriter startTag(Tag tag) throws IOException {
+        startTag(tag.name, tag.open);
+        return this;
+    }
+
+    private void startTag(String name, char open[]) throws IOException {
+        check(false);
+        if (indent[depth]) {
+            writeIndent(depth);
+        }
+        if (names.length <= depth) {
+            String hlp[] = new String[depth + 12];
+            System.arraycopy(names, 0, hlp, 0, depth);
+            names = hlp;
+        }
+        names[depth] = name;
+        if (open != null) {
+            write(open, 0, open.length);
+        } else {
+            write('<');
+            write(name);
+        }
+        pending = true;
+    }
+
+    public FastXmlWriter attribute(String name, String value) throws IOException {
+        if (!pending)
+            throw new IllegalStateException("illegal position for attribute");
+        write(' ');
+        write(name);
+        write('=');
+        char q = value.indexOf('"') == -1 ? '"' : '\'';
+        write(q);
+        writeEscaped(value, q);
+        write(q);
+        return this;
+    }
+
+    public FastXmlWriter attribute(String name, char text[], int start, int len)
+            throws IOException {
+        if (!isPlain(text, start, len, '"', unicode))
+            return attribute(name, new String(text, start, len));
+        if (!pending)
+            throw new IllegalStateException("illegal position for attribute");
+        write(' ');
+        write(name);
+        write("=\"");
+        write(text, start, len);
+        write('"');
+        return this;
+    }
+
+    /**
+     * attribute() with value from fmt, i.e without escaping
+     */
+    public FastXmlWriter attribute(String name, CharFormatter fmt) throws IOException {
+        if (!pending)
+            throw new IllegalStateException("illegal position for attribute");
+        write(' ');
+        write(name);
+        write('=');
+        write('"');
+        write(fmt.chars(), fmt.start(), fmt.length());
+        write('"');
+        return this;
+    }
+
+    public FastXmlWriter text(String text) throws IOException {
+        check(false);
+        indent[depth] = false;
+        writeEscaped(text, -1);
+        return this;
+    }
+
+    public FastXmlWriter text(char text[], int start, int len) throws IOException {
+        if (!isPlain(text, start, len, -1, unicode))
+            return text(new String(text, start, len));
+        check(false);
+        indent[depth] = false;
+        write(text, start, len);
+        return this;
+    }
+
+    /**
+     * text() with value from fmt, i.e without escaping
+     */
+    public FastXmlWriter text(CharFormatter fmt) throws IOException {
+        check(false);
+        indent[depth] = false;
+        write(fmt.chars(), fmt.start(), fmt.length());
+        return this;
+    }
+
+    /**
+     * Same as startTag(tag).text(fmt).endTag(tag)
+     */
+    public FastXmlWriter element(Tag tag, CharFormatter fmt) throws IOException {
+        startTag(tag.name, tag.open);
+        pending = false;
+        depth++;
+        growIndent();
+        indent[depth] = false; // due to text
+        write('>');
+        write(fmt.chars(), fmt.start(), fmt.length());
+        depth--;
+        write(tag.close, 0, tag.close.length);
+        return this;
+    }
+
+    public FastXmlWriter endTag(String name) throws IOException {
+        endTag(name, null);
+        return this;
+    }
+
+    public FastXmlWriter endTag(Tag tag) throws IOException {
+        endTag(tag.name, tag.close);
+        return this;
+    }
+
+    private void endTag(String name, char close[]) throws IOException {
+        if (!pending)
+            depth--;
+        if (depth < 0 || !names[depth].equals(name))
+            throw new IllegalArgumentException("</" + name + "> does not match start");
+
+        if (pending) {
+            check(true);
+            depth--;
+        } else {
+            if (indent[depth + 1]) {
+                writeIndent(depth);
+            }
+            if (close != null) {
+                write(close, 0, close.length);
+            } else {
+                write("</");
+                write(name);
+                write('>');
+            }
+        }
+    }
+
+    public int getDepth() {
+        return pending ? depth + 1 : depth;
+    }
+
+    public void flush() throws IOException {
+        check(false);
+        flushBuffer();
+        out.flush();
+    }
+
+    public void endDocument() throws IOException {
+        while (getDepth() > 0) {
+            endTag(names[getDepth() - 1]);
+        }
+        flush();
+    }
+
+    private void check(boolean close) throws IOException {
+        if (!pending)
+            return;
+        depth++;
+        pending = false;
+        growIndent();
+        indent[depth] = indent[depth - 1];
+        write(close ? " />" : ">");
+    }
+
+    private void growIndent() {
+        if (indent.length <= depth + 1) {
+            boolean hlp[] = new boolean[depth + 12];
+            System.arraycopy(indent, 0, hlp, 0, indent.length);
+            indent = hlp;
+        }
+    }
+
+    private void writeIndent(int d) throws IOException {
+        if (d <= MAX_TEMPLATE_DEPTH) {
+            write(INDENT, 0, 2 + 2 * d);
+        } else {
+            write(INDENT, 0, 2);
+            for (int i = 0; i < d; i++)
+                write("  ");
+        }
+    }
+
+    /**
+     * Same as KXmlSerializer.writeEscaped(), but with a fast path for
+     *   strings that need no escaping
+     */
+    private void writeEscaped(String s, int quot) throws IOException {
+        final int len = s.length();
+        int i = 0;
+        for (; i < len; i++) {
+            if (!isPlain(s.charAt(i), quot, unicode))
+                break;
+        }
+        if (i == len) {
+            write(s);
+            return;
+        }
+        if (i > 0) {
+            write(s.substring(0, i));
+        }
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\n':
+                case '\r':
+                case '\t':
+                    if (quot == -1)
+                        write(c);
+                    else
+                        write("&#" + ((int) c) + ';');
+                    break;
+                case '&':
+                    write("&amp;");
+                    break;
+                case '>':
+                    write("&gt;");
+                    break;
+                case '<':
+                    write("&lt;");
+                    break;
+                default:
+                    if (c == quot) {
+                        write(c == '"' ? "&quot;" : "&apos;");
+                        break;
+                    }
+                    if (c >= 0xd800 && c <= 0xdbff) {
+                        if (i + 1 < len) {
+                            write(c);
+                            i++;
+                            break;
+                        }
+                        reportInvalidCharacter(c);
+                    }
+                    boolean valid = (c >= 0x20 && c <= 0xd7ff) || (c >= 0xe000 && c <= 0xfffd);
+                    if (!valid) {
+                        reportInvalidCharacter(c);
+                    }
+                    if (unicode || c < 127) {
+                        write(c);
+                    } else {
+                        write("&#" + ((int) c) + ";");
+                    }
+            }
+        }
+    }
+
+    private static boolean isPlain(char c, int quot, boolean unicode) {
+        return c >= 0x20 && c < (unicode ? 0xd800 : 127) &&
+                c != '&' && c != '<' && c != '>' && c != quot;
+    }
+
+    private static boolean isPlain(char text[], int start, int len, int quot, boolean unicode) {
+        for (int i = start; i < start + len; i++) {
+            if (!isPlain(text[i], quot, unicode))
+                return false;
+        }
+        return true;
+    }
+
+    private static void reportInvalidCharacter(char ch) {
+        throw new IllegalArgumentException("Illegal character (" + Integer.toHexString((int) ch) + ")");
+    }
+
+    private void write(char c) throws IOException {
+        if (pos == buf.length)
+            flushBuffer();
+        buf[pos++] = c;
+    }
+
+    private void write(String s) throws IOException {
+        final int len = s.length();
+        if (len > buf.length - pos) {
+            flushBuffer();
+            if (len > buf.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, len, buf, pos);
+        pos += len;
+    }
+
+    private void write(char src[], int start, int len) throws IOException {
+        if (len > buf.length - pos) {
+            flushBuffer();
+            if (len > buf.length) {
+                out.write(src, start, len);
+                return;
+            }
+        }
+        System.arraycopy(src, start, buf, pos, len);
+        pos += len;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
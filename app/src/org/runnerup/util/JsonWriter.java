@@ -195,6 +195,8 @@ public final class JsonWriter {
 
     private boolean lenient;
 
+    private final CharFormatter numbers = new CharFormatter();
+
     /**
      * Creates a new instance that writes a JSON-encoded stream to {@code out}.
      * For best performance, ensure {@link Writer} is buffered; wrapping in
@@ -408,7 +410,39 @@ public final class JsonWriter {
      */
     public JsonWriter value(long value) throws IOException {
         beforeValue(false);
-        out.write(Long.toString(value));
+        numbers.number(value);
+        out.write(numbers.chars(), numbers.start(), numbers.length());
+        return this;
+    }
+
+    /**
+     * Encodes {@code chars[start, start + len)} as a string.
+     * 
+     * @return this writer.
+     */
+    public JsonWriter value(char[] chars, int start, int len) throws IOException {
+        for (int i = start; i < start + len; i++) {
+            char c = chars[i];
+            if (c < 0x20 || c == '"' || c == '\\' || c == '\u2028' || c == '\u2029') {
+                return value(new String(chars, start, len));
+            }
+        }
+        beforeValue(false);
+        out.write('"');
+        out.write(chars, start, len);
+        out.write('"');
+        return this;
+    }
+
+    /**
+     * Encodes {@code chars[start, start + len)} as is, e.g a number
+     * formatted by {@link CharFormatter}.
+     * 
+     * @return this writer.
+     */
+    public JsonWriter literalValue(char[] chars, int start, int len) throws IOException {
+        beforeValue(false);
+        out.write(chars, start, len);
         return this;
     }
 
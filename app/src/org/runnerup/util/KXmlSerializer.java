@@ -154,6 +154,22 @@ public class KXmlSerializer implements XmlSerializer {
         }
     }
 
+    /**
+     * Write chars without creating a String if nothing needs escaping,
+     *   e.g numbers and timestamps from CharFormatter
+     */
+    private final void writeEscaped(char[] text, int start, int len, int quot)
+        throws IOException {
+        for (int i = start; i < start + len; i++) {
+            char c = text[i];
+            if (c < 0x20 || c >= 127 || c == '&' || c == '<' || c == '>' || c == quot) {
+                writeEscaped(new String(text, start, len), quot);
+                return;
+            }
+        }
+        writer.write(text, start, len);
+    }
+
     // BEGIN android-added
     private static void reportInvalidCharacter(char ch) {
         throw new IllegalArgumentException("Illegal character (" + Integer.toHexString((int) ch) + ")");
@@ -483,6 +499,36 @@ public class KXmlSerializer implements XmlSerializer {
         return this;
     }
 
+    /**
+     * attribute() with value in text[start, start + len)
+     */
+    public XmlSerializer attribute(String namespace, String name,
+                                   char[] text, int start, int len)
+        throws IOException {
+        if (!pending)
+            throw new IllegalStateException("illegal position for attribute");
+
+        if (namespace == null)
+            namespace = "";
+
+        String prefix =
+            isEmpty(namespace)
+                ? ""
+                : getPrefix(namespace, false, true);
+
+        writer.write(' ');
+        if (!isEmpty(prefix)) {
+            writer.write(prefix);
+            writer.write(':');
+        }
+        writer.write(name);
+        writer.write("=\"");
+        writeEscaped(text, start, len, '"');
+        writer.write('"');
+
+        return this;
+    }
+
     public void flush() throws IOException {
         check(false);
         writer.flush();
@@ -554,7 +600,9 @@ public class KXmlSerializer implements XmlSerializer {
 
     public XmlSerializer text(char[] text, int start, int len)
         throws IOException {
-        text(new String(text, start, len));
+        check(false);
+        indent[depth] = false;
+        writeEscaped(text, start, len, -1);
         return this;
     }
 
@@ -29,7 +29,6 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
-import android.location.Location;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
@@ -69,12 +68,16 @@ import com.mapbox.mapboxsdk.overlay.PathOverlay;
 import com.mapbox.mapboxsdk.views.MapView;
 
 import org.runnerup.R;
+import org.runnerup.common.util.CompactTrack;
 import org.runnerup.common.util.Constants;
+import org.runnerup.common.util.Geodesic;
+import org.runnerup.common.util.WindowedStatistics;
 import org.runnerup.content.ActivityProvider;
 import org.runnerup.content.WorkoutFileProvider;
 import org.runnerup.db.ActivityCleaner;
 import org.runnerup.db.DBHelper;
-import org.runnerup.db.entities.LocationEntity;
+import org.runnerup.db.LocationReader;
+import org.runnerup.db.SensorSampleReader;
 import org.runnerup.export.SyncManager;
 import org.runnerup.export.Synchronizer;
 import org.runnerup.export.Synchronizer.Feature;
@@ -86,7 +89,6 @@ import org.runnerup.widget.WidgetUtil;
 import org.runnerup.workout.Intensity;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -929,6 +931,9 @@ public class DetailActivity extends AppCompatActivity implements Constants {
 
         class GraphFilter {
 
+            final double SG5[] = { -3, 12, 17, 12, -3 };
+            final double SG7[] = { -2, 3, 6, 7, 6, 3, -2 };
+
             double data[] = null;
             final List<GraphViewData> source;
 
@@ -949,11 +954,6 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                     window[j] = val;
             }
 
-            void shiftLeft(double window[], double newVal) {
-                System.arraycopy(window, 1, window, 0, window.length - 1);
-                window[window.length - 1] = newVal;
-            }
-
             /**
              * Perform in place moving average
              */
@@ -962,20 +962,16 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                 init(window, data[0]);
 
                 final int mid = (window.length - 1) / 2;
-                final int last = window.length - 1;
                 for (int i = 0; i < data.length && i <= mid; i++) {
                     window[i + mid] = data[i];
                 }
 
-                double sum = 0;
-                for (double aWindow : window) sum += aWindow;
+                WindowedStatistics stats = new WindowedStatistics(windowLen);
+                for (double aWindow : window) stats.add(aWindow);
 
                 for (int i = 0; i < data.length; i++) {
-                    double newY = sum / windowLen;
-                    data[i] = newY;
-                    sum -= window[0];
-                    shiftLeft(window, (i + mid) < data.length ? data[i + mid] : avg_pace);
-                    sum += window[last];
+                    data[i] = stats.mean();
+                    stats.add((i + mid) < data.length ? data[i + mid] : avg_pace);
                 }
             }
 
@@ -991,12 +987,12 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                     window[i + mid] = data[i];
                 }
 
-                double sort[] = new double[windowLen];
+                WindowedStatistics stats = new WindowedStatistics(windowLen);
+                for (double aWindow : window) stats.add(aWindow);
+
                 for (int i = 0; i < data.length; i++) {
-                    System.arraycopy(window, 0, sort, 0, windowLen);
-                    Arrays.sort(sort);
-                    data[i] = sort[mid];
-                    shiftLeft(window, (i + mid) < data.length ? data[i + mid] : avg_pace);
+                    data[i] = stats.get(mid);
+                    stats.add((i + mid) < data.length ? data[i + mid] : avg_pace);
                 }
             }
 
@@ -1004,28 +1000,24 @@ public class DetailActivity extends AppCompatActivity implements Constants {
              * Perform in place SavitzkyGolay windowLen = 5
              */
             void SavitzkyGolay5() {
-                final int len = 5;
-                double window[] = new double[len];
-                init(window, data[0]);
-
-                final int mid = (window.length - 1) / 2;
-                for (int i = 0; i < data.length && i <= mid; i++) {
-                    window[i + mid] = data[i];
-                }
-                for (int i = 0; i < data.length; i++) {
-                    double newY = (-3 * window[0] + 12 * window[1] + 17
-                            * window[2] + 12 * window[3] - 3 * window[4]) / 35;
-                    data[i] = newY;
-                    shiftLeft(window,
-                            (i + mid) < data.length ? data[i + mid] : avg_pace);
-                }
+                convolve(SG5, 35);
             }
 
             /**
              * Perform in place SavitzkyGolay windowLen = 7
              */
             void SavitzkyGolay7() {
-                final int len = 7;
+                convolve(SG7, 21);
+            }
+
+            /**
+             * Perform in place weighted moving average
+             *
+             * The weights depend on position, so samples are kept in a ring
+             *   (oldest at head) rather than in a WindowedStatistics that orders by value.
+             */
+            void convolve(final double coeff[], double div) {
+                final int len = coeff.length;
                 double window[] = new double[len];
                 init(window, data[0]);
 
@@ -1033,13 +1025,15 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                 for (int i = 0; i < data.length && i <= mid; i++) {
                     window[i + mid] = data[i];
                 }
+                int head = 0;
                 for (int i = 0; i < data.length; i++) {
-                    double newY = (-2 * window[0] + 3 * window[1] + 6
-                            * window[2] + 7 * window[3] + 6 * window[4] + 3
-                            * window[5] - 2 * window[6]) / 21;
-                    data[i] = newY;
-                    shiftLeft(window,
-                            (i + mid) < data.length ? data[i + mid] : avg_pace);
+                    double newY = 0;
+                    for (int j = 0; j < len; j++) {
+                        newY += coeff[j] * window[(head + j) % len];
+                    }
+                    data[i] = newY / div;
+                    window[head] = (i + mid) < data.length ? data[i + mid] : avg_pace;
+                    head = (head + 1) % len;
                 }
             }
 
@@ -1155,15 +1149,6 @@ public class DetailActivity extends AppCompatActivity implements Constants {
     private void loadRoute() {
         final GraphProducer graphData = new GraphProducer();
 
-        final String[] from = new String[] {
-                DB.LOCATION.LATITUDE,
-                DB.LOCATION.LONGITUDE,
-                DB.LOCATION.TYPE,
-                DB.LOCATION.TIME,
-                DB.LOCATION.LAP,
-                DB.LOCATION.HR
-        };
-
         loadRouteTask = new AsyncTask<String, String, Route>() {
 
             @Override
@@ -1171,9 +1156,10 @@ public class DetailActivity extends AppCompatActivity implements Constants {
 
                 int cnt = 0;
                 Route route = null;
-                Cursor c = mDB.query(DB.LOCATION.TABLE, from, "activity_id == " + mID,
-                        null, null, null, "_id", null);
-                if (c.moveToFirst()) {
+                LocationReader c = LocationReader.open(mDB, mID);
+                SensorSampleReader cHR = SensorSampleReader.open(mDB, mID,
+                        DB.SENSOR_SAMPLE.TYPE_HR);
+                if (c.moveToNext()) {
                     route = new Route();
                     double acc_distance = 0;
                     double tot_distance = 0;
@@ -1184,14 +1170,14 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                     int hr = 0;
                     do {
                         cnt++;
-                        LocationEntity loc = new LocationEntity(c);
-                        LatLng point = new LatLng(loc.getLatitude(), loc.getLongitude());
+                        LatLng point = new LatLng(c.getLatitude(), c.getLongitude());
                         route.path.add(point);
-                        int type = loc.getType();
-                        long time = loc.getTime();
-                        int lap = loc.getLap();
-                        if (loc.getHr() != null)
-                            hr = loc.getHr();
+                        int type = c.getType();
+                        long time = c.getTime();
+                        int lap = (int) c.getLap();
+                        if (!c.isNull(CompactTrack.HR))
+                            hr = c.getInt(CompactTrack.HR);
+                        hr = cHR.getValue(time, hr);
                         Marker m;
                         switch (type) {
                             case DB.LOCATION.TYPE_START:
@@ -1203,13 +1189,10 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                                     if (lap != lastLap) {
                                         graphData.clear(tot_distance);
                                     } else if (lastTime != 0 && lastLocation != null) {
-                                        float res[] = {
-                                            0
-                                        };
-                                        Location.distanceBetween(lastLocation.getLatitude(),
+                                        double d = Geodesic.distance(lastLocation.getLatitude(),
                                                 lastLocation.getLongitude(), point.getLatitude(),
-                                                point.getLongitude(), res);
-                                        graphData.addObservation(time - lastTime, res[0],
+                                                point.getLongitude());
+                                        graphData.addObservation(time - lastTime, d,
                                                 tot_distance, hr);
                                         // hrList.clear();
                                         graphData.clear(tot_distance);
@@ -1248,22 +1231,18 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                                 route.markers.add(m);
                                 break;
                             case DB.LOCATION.TYPE_GPS:
-                                float res[] = {
-                                    0
-                                };
                                 if (lastLocation == null) {
                                     lastLocation = point;
                                 }
-                                Location.distanceBetween(lastLocation.getLatitude(),
-                                        lastLocation.getLongitude(), point.getLatitude(), point.getLongitude(),
-                                        res);
-                                acc_distance += res[0];
-                                tot_distance += res[0];
+                                double d = Geodesic.distance(lastLocation.getLatitude(),
+                                        lastLocation.getLongitude(), point.getLatitude(), point.getLongitude());
+                                acc_distance += d;
+                                tot_distance += d;
 
                                 if (lap != lastLap) {
                                     graphData.clear(tot_distance);
                                 } else if (lastTime != 0) {
-                                    graphData.addObservation(time - lastTime, res[0], tot_distance,
+                                    graphData.addObservation(time - lastTime, d, tot_distance,
                                             hr);
                                 }
                                 lastLap = lap;
@@ -1301,6 +1280,7 @@ public class DetailActivity extends AppCompatActivity implements Constants {
                     Log.e(getClass().getName(), "Finished loading " + cnt + " points");
                 }
                 c.close();
+                cHR.close();
                 return route;
             }
             @Override
@@ -57,6 +57,7 @@ import android.widget.Toast;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants.DB;
 import org.runnerup.db.DBHelper;
+import org.runnerup.export.UploadService;
 import org.runnerup.util.FileUtil;
 import org.runnerup.util.Formatter;
 import org.runnerup.widget.WidgetUtil;
@@ -152,6 +153,11 @@ public class MainLayout extends TabActivity
         //Import workouts/schemes. No permission needed
         handleBundled(getApplicationContext().getAssets(), "bundled", getFilesDir().getPath() + "/..");
 
+        // background uploads queued before a reboot or an app update
+        SQLiteDatabase db = DBHelper.getWritableDatabase(this);
+        UploadService.schedule(this, db);
+        DBHelper.closeDB(db);
+
         // if we were called from an intent-filter because user opened "runnerup.db.export", load it
         final Uri data = getIntent().getData();
         if (data != null) {
@@ -29,7 +29,6 @@ import android.content.res.Configuration;
 import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -52,18 +51,16 @@ import org.runnerup.workout.Intensity;
 import org.runnerup.workout.Scope;
 import org.runnerup.workout.Step;
 import org.runnerup.workout.Workout;
+import org.runnerup.workout.WorkoutInfo;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class RunActivity extends Activity implements TickListener {
     Workout workout = null;
     Tracker mTracker = null;
-    final Handler handler = new Handler();
 
     Button pauseButton = null;
     Button stopButton = null;
@@ -153,9 +150,10 @@ public class RunActivity extends Activity implements TickListener {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (mTracker != null) {
+            mTracker.unregisterTickListener(this);
+        }
         unbindGpsTracker();
-        stopTimer();
-
     }
 
     void onGpsTrackerBound() {
@@ -181,7 +179,10 @@ public class RunActivity extends Activity implements TickListener {
             workout.onBind(workout, bindValues);
         }
 
-        startTimer();
+        /**
+         * Workout is ticked by tracker, we only listen for view updates
+         */
+        mTracker.registerTickListener(this);
 
         populateWorkoutList();
         simpleWorkout = false;
@@ -214,35 +215,12 @@ public class RunActivity extends Activity implements TickListener {
         }
     }
 
-    Timer timer = null;
-
-    void startTimer() {
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                RunActivity.this.handler.post(new Runnable() {
-                    public void run() {
-                        RunActivity.this.onTick();
-                    }
-                });
-            }
-        }, 0, 500);
-    }
-
-    void stopTimer() {
-        if (timer != null) {
-            timer.cancel();
-            timer.purge();
-            timer = null;
-        }
-    }
+    boolean stopped = false;
 
     Location l = null;
 
     public void onTick() {
         if (workout != null) {
-            workout.onTick();
             updateView();
 
             if (mTracker != null) {
@@ -256,9 +234,9 @@ public class RunActivity extends Activity implements TickListener {
 
     final OnClickListener stopButtonClick = new OnClickListener() {
         public void onClick(View v) {
-            if (timer != null) {
-                workout.onStop(workout);
-                stopTimer(); // set timer=null;
+            if (!stopped && mTracker != null) {
+                stopped = true;
+                workout.onStop(workout); // stops tracker ticks
                 mTracker.stopForeground(true); // remove notification
                 Intent intent = new Intent(RunActivity.this, DetailActivity.class);
                 /**
@@ -294,6 +272,8 @@ public class RunActivity extends Activity implements TickListener {
              */
             workout.onComplete(Scope.ACTIVITY, workout);
             workout.onSave();
+            if (mTracker != null)
+                mTracker.unregisterTickListener(this);
             mTracker = null;
             finish();
             return;
@@ -303,15 +283,19 @@ public class RunActivity extends Activity implements TickListener {
              */
             workout.onComplete(Scope.ACTIVITY, workout);
             workout.onDiscard();
+            if (mTracker != null)
+                mTracker.unregisterTickListener(this);
             mTracker = null;
             finish();
             return;
         } else if (resultCode == Activity.RESULT_FIRST_USER) {
-            startTimer();
+            stopped = false;
             if (requestCode == 0) {
                 workout.onResume(workout);
             } else {
                 // we were paused before stopButtonClick...don't resume
+                if (mTracker != null)
+                    mTracker.startPausedTicking();
             }
         } else {
             assert (false);
@@ -354,25 +338,26 @@ public class RunActivity extends Activity implements TickListener {
     };
 
     private void updateView() {
+        WorkoutInfo info = workout.getSnapshot();
         setPauseButtonEnabled(!workout.isPaused());
-        double ad = workout.getDistance(Scope.ACTIVITY);
-        double at = workout.getTime(Scope.ACTIVITY);
-        double ap = workout.getPace(Scope.ACTIVITY);
+        double ad = info.getDistance(Scope.ACTIVITY);
+        double at = info.getTime(Scope.ACTIVITY);
+        double ap = info.getPace(Scope.ACTIVITY);
         activityTime.setText(formatter.formatElapsedTime(Formatter.TXT_LONG, Math.round(at)));
         activityDistance.setText(formatter.formatDistance(Formatter.TXT_SHORT, Math.round(ad)));
         activityPace.setText(formatter.formatPace(Formatter.TXT_SHORT, ap));
 
-        double ahr = workout.getHeartRate(Scope.ACTIVITY);
-        double ld = workout.getDistance(Scope.LAP);
-        double lt = workout.getTime(Scope.LAP);
-        double lp = workout.getPace(Scope.LAP);
+        double ahr = info.getHeartRate(Scope.ACTIVITY);
+        double ld = info.getDistance(Scope.LAP);
+        double lt = info.getTime(Scope.LAP);
+        double lp = info.getPace(Scope.LAP);
         lapTime.setText(formatter.formatElapsedTime(Formatter.TXT_LONG, Math.round(lt)));
         lapDistance.setText(formatter.formatDistance(Formatter.TXT_LONG, Math.round(ld)));
         lapPace.setText(formatter.formatPace(Formatter.TXT_SHORT, lp));
-        double lhr = workout.getHeartRate(Scope.LAP);
-        double id = workout.getDistance(Scope.STEP);
-        double it = workout.getTime(Scope.STEP);
-        double ip = workout.getPace(Scope.STEP);
+        double lhr = info.getHeartRate(Scope.LAP);
+        double id = info.getDistance(Scope.STEP);
+        double it = info.getTime(Scope.STEP);
+        double ip = info.getPace(Scope.STEP);
         if (tableRowInterval != null && this.currentStep != null && !simpleWorkout
                 && this.currentStep.getIntensity() == Intensity.ACTIVE)
             tableRowInterval.setVisibility(View.VISIBLE);
@@ -381,7 +366,7 @@ public class RunActivity extends Activity implements TickListener {
         intervalTime.setText(formatter.formatElapsedTime(Formatter.TXT_LONG, Math.round(it)));
         intervalDistance.setText(formatter.formatDistance(Formatter.TXT_LONG, Math.round(id)));
         intervalPace.setText(formatter.formatPace(Formatter.TXT_SHORT, ip));
-        double ihr = workout.getHeartRate(Scope.STEP);
+        double ihr = info.getHeartRate(Scope.STEP);
         if (mTracker.isComponentConnected(TrackerHRM.NAME)) {
             lapHr.setText(formatter.formatHeartRate(Formatter.TXT_SHORT, lhr));
             intervalHr.setText(formatter.formatHeartRate(Formatter.TXT_SHORT, ihr));
@@ -43,6 +43,7 @@ import android.util.Log;
 
 import org.runnerup.R;
 import org.runnerup.db.DBHelper;
+import org.runnerup.db.TrackArchive;
 import org.runnerup.util.FileUtil;
 
 import java.io.IOException;
@@ -67,6 +68,10 @@ public class SettingsActivity extends PreferenceActivity
             Preference btn = findPreference("prunedb");
             btn.setOnPreferenceClickListener(onPruneClick);
         }
+        {
+            Preference btn = findPreference("compactdb");
+            btn.setOnPreferenceClickListener(onCompactClick);
+        }
 
         //remove google play notices from froyo since we do not use it
         if (android.os.Build.VERSION.SDK_INT <= android.os.Build.VERSION_CODES.FROYO) {
@@ -184,6 +189,8 @@ public class SettingsActivity extends PreferenceActivity
             if(requestWriteStoragePermissions(SettingsActivity.this)) {
                 String from = DBHelper.getDbPath(getApplicationContext());
                 String to = dstdir + "/runnerup.db.export";
+                // copy committed transactions from WAL into runnerup.db
+                DBHelper.checkpoint(DBHelper.getReadableDatabase(getApplicationContext()));
                 try {
                     int cnt = FileUtil.copyFile(to, from);
                     builder.setMessage("Copied " + cnt + " bytes");
@@ -242,4 +249,23 @@ public class SettingsActivity extends PreferenceActivity
             return false;
         }
     };
+
+    final OnPreferenceClickListener onCompactClick = new OnPreferenceClickListener() {
+
+        @Override
+        public boolean onPreferenceClick(Preference preference) {
+            final ProgressDialog dialog = new ProgressDialog(SettingsActivity.this);
+            dialog.setTitle(R.string.Compacting_tracks_of_old_activities);
+            dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            dialog.setCancelable(false);
+            dialog.show();
+            TrackArchive.archiveOldActivities(SettingsActivity.this, dialog, new Runnable() {
+                @Override
+                public void run() {
+                    dialog.dismiss();
+                }
+            });
+            return false;
+        }
+    };
 }
@@ -39,6 +39,11 @@ public class EventTrigger extends Trigger {
         return false;
     }
 
+    @Override
+    double getNextThreshold() {
+        return IDLE;
+    }
+
     @Override
     public void fire(Workout s) {
         if (counter >= skipCounter && (counter < maxCounter)) {
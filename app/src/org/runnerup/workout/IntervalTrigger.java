@@ -64,6 +64,21 @@ public class IntervalTrigger extends Trigger {
         }
     }
 
+    @Override
+    double getNextThreshold() {
+        return next == 0 ? IDLE : next;
+    }
+
+    @Override
+    Scope getThresholdScope() {
+        return scope;
+    }
+
+    @Override
+    Dimension getThresholdDimension() {
+        return dimension;
+    }
+
     @Override
     public void onRepeat(int current, int limit) {
     }
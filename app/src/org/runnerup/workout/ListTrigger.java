@@ -70,6 +70,25 @@ public class ListTrigger extends Trigger {
         }
     }
 
+    @Override
+    double getNextThreshold() {
+        if (pos >= triggerTimes.size())
+            return IDLE;
+        if (remaining)
+            return CONTINUOUS;
+        return triggerTimes.get(pos);
+    }
+
+    @Override
+    Scope getThresholdScope() {
+        return scope;
+    }
+
+    @Override
+    Dimension getThresholdDimension() {
+        return dimension;
+    }
+
     @Override
     public void onRepeat(int current, int limit) {
     }
@@ -111,6 +111,11 @@ public class RepeatStep extends Step {
         return false;
     }
 
+    @Override
+    public void onHRData(Workout w) {
+        steps.get(currentStep).onHRData(w);
+    }
+
     @Override
     public boolean onNextStep(Workout w) {
         if (steps.get(currentStep).onNextStep(w)) {
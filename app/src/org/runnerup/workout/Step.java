@@ -59,6 +59,21 @@ public class Step implements TickComponent {
      */
     final ArrayList<Trigger> triggers = new ArrayList<Trigger>();
 
+    /**
+     * Trigger scheduling
+     *
+     * Triggers with a pending time or distance threshold are kept in one queue per
+     *   dimension, keyed by the activity scope value of the threshold, and are only
+     *   ticked once it has been passed. Other triggers are ticked every tick.
+     * The queues are rebuilt on first tick after any start/stop/pause/resume/repeat/complete,
+     *   as these move scope start values and trigger thresholds.
+     */
+    private final TriggerQueue timeQueue = new TriggerQueue();
+    private final TriggerQueue distanceQueue = new TriggerQueue();
+    private final ArrayList<Trigger> continuousTriggers = new ArrayList<Trigger>();
+    private final ArrayList<Trigger> dueTriggers = new ArrayList<Trigger>();
+    private boolean scheduleDirty = true;
+
     /**
      * @return the name
      */
@@ -156,6 +171,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onInit(Workout s) {
+        scheduleDirty = true;
         for (Trigger t : triggers) {
             t.onInit(s);
         }
@@ -176,6 +192,7 @@ public class Step implements TickComponent {
     }
 
     public void onRepeat(int current, int count) {
+        scheduleDirty = true;
         for (Trigger t : triggers) {
             t.onRepeat(current, count);
         }
@@ -190,6 +207,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onStart(Scope what, Workout s) {
+        scheduleDirty = true;
         double time = s.getTime(Scope.ACTIVITY);
         double dist = s.getDistance(Scope.ACTIVITY);
         double beats = s.getHeartbeats(Scope.ACTIVITY);
@@ -250,6 +268,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onStop(Workout s) {
+        scheduleDirty = true;
         s.tracker.stop();
         for (Trigger t : triggers) {
             t.onStop(s);
@@ -273,6 +292,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onPause(Workout s) {
+        scheduleDirty = true;
         s.tracker.pause();
         for (Trigger t : triggers) {
             t.onPause(s);
@@ -287,9 +307,7 @@ public class Step implements TickComponent {
             return true;
         }
 
-        for (Trigger t : triggers) {
-            t.onTick(s);
-        }
+        tickTriggers(s);
 
         if (this.autolap > 0 && s.getDistance(Scope.LAP) >= this.autolap) {
             s.onNewLap();
@@ -301,6 +319,116 @@ public class Step implements TickComponent {
         return true; // move to next step
     }
 
+    /**
+     * Tick triggers measuring hr, called when a measurement arrives
+     */
+    public void onHRData(Workout s) {
+        if (scheduleDirty) {
+            rebuildSchedule();
+        }
+
+        for (int i = 0; i < continuousTriggers.size(); i++) {
+            Trigger t = continuousTriggers.get(i);
+            if (t.getMeasuredDimension() == Dimension.HR) {
+                t.onTick(s);
+            }
+        }
+    }
+
+    private void tickTriggers(Workout s) {
+        if (scheduleDirty) {
+            rebuildSchedule();
+        }
+
+        dueTriggers.addAll(continuousTriggers);
+        pollDue(timeQueue, s.getTime(Scope.ACTIVITY));
+        pollDue(distanceQueue, s.getDistance(Scope.ACTIVITY));
+        if (dueTriggers.size() > 1) {
+            sortDueTriggers();
+        }
+
+        for (int i = 0; i < dueTriggers.size(); i++) {
+            Trigger t = dueTriggers.get(i);
+            t.onTick(s);
+            if (!scheduleDirty && !t.scheduleContinuous) {
+                schedule(t);
+            }
+        }
+        dueTriggers.clear();
+    }
+
+    private void pollDue(TriggerQueue queue, double now) {
+        while (queue.peekKey() <= now) {
+            dueTriggers.add(queue.poll());
+        }
+    }
+
+    /**
+     * tick due triggers in same order as they are listed, insertion sort as
+     *   typically only a few are due at the same time
+     */
+    private void sortDueTriggers() {
+        for (int i = 1; i < dueTriggers.size(); i++) {
+            Trigger t = dueTriggers.get(i);
+            int j = i - 1;
+            while (j >= 0 && dueTriggers.get(j).scheduleIndex > t.scheduleIndex) {
+                dueTriggers.set(j + 1, dueTriggers.get(j));
+                j--;
+            }
+            dueTriggers.set(j + 1, t);
+        }
+    }
+
+    private void rebuildSchedule() {
+        timeQueue.clear();
+        distanceQueue.clear();
+        continuousTriggers.clear();
+        for (int i = 0; i < triggers.size(); i++) {
+            Trigger t = triggers.get(i);
+            t.scheduleIndex = i;
+            t.scheduleContinuous = Double.isNaN(t.getNextThreshold()) ||
+                    Double.isNaN(getScopeStart(t));
+            if (t.scheduleContinuous) {
+                continuousTriggers.add(t);
+            } else {
+                schedule(t);
+            }
+        }
+        scheduleDirty = false;
+    }
+
+    private void schedule(Trigger t) {
+        double next = t.getNextThreshold();
+        if (next == Trigger.IDLE || Double.isNaN(next))
+            return;
+        if (t.getThresholdDimension() == Dimension.TIME)
+            timeQueue.add(getScopeStart(t) + next, t);
+        else
+            distanceQueue.add(getScopeStart(t) + next, t);
+    }
+
+    /**
+     * @return activity scope value where scope of trigger threshold started,
+     *         NaN if trigger can't be queued
+     */
+    private double getScopeStart(Trigger t) {
+        Dimension d = t.getThresholdDimension();
+        Scope scope = t.getThresholdScope();
+        if (scope == null || (d != Dimension.TIME && d != Dimension.DISTANCE))
+            return Double.NaN;
+        switch (scope) {
+            case ACTIVITY:
+                return 0;
+            case STEP:
+                return d == Dimension.TIME ? stepStartTime : stepStartDistance;
+            case LAP:
+                return d == Dimension.TIME ? lapStartTime : lapStartDistance;
+            case CURRENT:
+                break;
+        }
+        return Double.NaN;
+    }
+
     private boolean checkFinished(Workout s) {
         if (durationType == null)
             return false;
@@ -310,6 +438,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onResume(Workout s) {
+        scheduleDirty = true;
         for (Trigger t : triggers) {
             t.onResume(s);
         }
@@ -318,6 +447,7 @@ public class Step implements TickComponent {
 
     @Override
     public void onComplete(Scope scope, Workout s) {
+        scheduleDirty = true;
         if (scope == Scope.LAP) {
             long distance = Math.round(s.getDistance(scope));
             long time = Math.round(s.getTime(scope));
@@ -21,6 +21,8 @@ import android.annotation.TargetApi;
 import android.os.Build;
 import android.util.Log;
 
+import org.runnerup.common.util.WindowedStatistics;
+
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class TargetTrigger extends Trigger {
 
@@ -37,9 +39,7 @@ public class TargetTrigger extends Trigger {
     Range range = null;
 
     int cntMeasures = 0;
-    double measure[] = null;
-    int skip_values = 1;
-    double sort_measure[] = null;
+    WindowedStatistics measure = null;
     double lastTimestamp = 0;
 
     double measure_time[] = null;
@@ -53,8 +53,7 @@ public class TargetTrigger extends Trigger {
 
     public TargetTrigger(Dimension dim, int movingAverageSeconds, int graceSeconds) {
         dimension = dim;
-        measure = new double[movingAverageSeconds];
-        sort_measure = new double[movingAverageSeconds];
+        measure = new WindowedStatistics(movingAverageSeconds);
 
         if (dimension == Dimension.HRZ)
             dimension = Dimension.HR;
@@ -63,12 +62,15 @@ public class TargetTrigger extends Trigger {
         measure_distance = new double[movingAverageSeconds];
 
         minGraceCount = graceSeconds;
-        skip_values = (5 * movingAverageSeconds) / 100; // ignore 5% lowest and
-                                                        // 5% higest values
 
         reset();
     }
 
+    @Override
+    Dimension getMeasuredDimension() {
+        return dimension;
+    }
+
     @Override
     public boolean onTick(Workout w) {
         if (paused) {
@@ -101,7 +103,8 @@ public class TargetTrigger extends Trigger {
         }
 
         final int elapsed_seconds = (int) (time_now - lastTimestamp);
-        lastTimestamp = time_now;
+        // keep the fraction, so that ticks not on whole seconds are not lost
+        lastTimestamp += elapsed_seconds;
 
         try {
             double val_now = getMeasurement(w, time_now);
@@ -131,8 +134,7 @@ public class TargetTrigger extends Trigger {
     }
 
     private void addObservation(double val_now) {
-        int pos = cntMeasures % measure.length;
-        measure[pos] = val_now;
+        measure.add(val_now);
         cntMeasures++;
     }
 
@@ -140,28 +142,16 @@ public class TargetTrigger extends Trigger {
         if (cntMeasures == lastValCnt)
             return lastVal;
 
-        //not all values in the measure array are meaningful when
-        //cntMeasures is small so we adjust for it.
-        int meaningful_length = Math.min(cntMeasures,measure.length);
+        //ignore 5% lowest and 5% highest values (of those measured so far)
         //should the percentage of values skipped be a variable of the class?
-        int meaningful_skip_values = (5*meaningful_length)/100;
-        System.arraycopy(measure, 0, sort_measure, 0, meaningful_length);
-        java.util.Arrays.sort(sort_measure,0,meaningful_length);
-        double cnt = 0;
-        double val = 0;
-        for (int i = meaningful_skip_values; i < meaningful_length - meaningful_skip_values; i++) {
-            val += sort_measure[i];
-            cnt++;
-        }
-        lastVal = val / cnt;
+        int skip_values = (5 * measure.size()) / 100;
+        lastVal = measure.trimmedMean(skip_values);
         lastValCnt = cntMeasures;
         return lastVal;
     }
 
     private void reset() {
-        for (int i = 0; i < measure.length; i++) {
-            measure[i] = 0;
-        }
+        measure.clear();
         inited = false;
         cntMeasures = 0;
         graceCount = initialGrace;
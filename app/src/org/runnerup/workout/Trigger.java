@@ -30,6 +30,44 @@ public abstract class Trigger implements TickComponent {
     ArrayList<Feedback> triggerAction = new ArrayList<Feedback>();
     final ArrayList<TriggerSuppression> triggerSuppression = new ArrayList<TriggerSuppression>();
 
+    /**
+     * Value of getNextThreshold() for a trigger that has to be ticked every tick
+     */
+    static final double CONTINUOUS = Double.NaN;
+
+    /**
+     * Value of getNextThreshold() for a trigger that has nothing pending,
+     *   i.e needs no ticks until next start/stop/pause/resume/repeat/complete
+     */
+    static final double IDLE = Double.POSITIVE_INFINITY;
+
+    /** position in Step.triggers and if ticked every tick, maintained by Step */
+    int scheduleIndex = 0;
+    boolean scheduleContinuous = true;
+
+    /**
+     * @return value (in getThresholdScope()/getThresholdDimension()) that has to be passed
+     *         before onTick does anything, CONTINUOUS or IDLE
+     */
+    double getNextThreshold() {
+        return CONTINUOUS;
+    }
+
+    Scope getThresholdScope() {
+        return null;
+    }
+
+    Dimension getThresholdDimension() {
+        return null;
+    }
+
+    /**
+     * @return dimension of the measured value, e.g HR to be ticked on each hr measurement
+     */
+    Dimension getMeasuredDimension() {
+        return null;
+    }
+
     @Override
     public void onInit(Workout s) {
         for (Feedback f : triggerAction) {
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.workout;
+
+/**
+ * Binary min-heap of triggers keyed by the (absolute) value of their next threshold
+ */
+class TriggerQueue {
+
+    private double key[] = new double[8];
+    private Trigger trigger[] = new Trigger[8];
+    private int size = 0;
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            trigger[i] = null;
+        }
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return smallest key, Double.POSITIVE_INFINITY if empty
+     */
+    public double peekKey() {
+        return size == 0 ? Double.POSITIVE_INFINITY : key[0];
+    }
+
+    public void add(double k, Trigger t) {
+        if (size == key.length) {
+            double newKey[] = new double[size * 2];
+            Trigger newTrigger[] = new Trigger[size * 2];
+            System.arraycopy(key, 0, newKey, 0, size);
+            System.arraycopy(trigger, 0, newTrigger, 0, size);
+            key = newKey;
+            trigger = newTrigger;
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (key[parent] <= k)
+                break;
+            key[i] = key[parent];
+            trigger[i] = trigger[parent];
+            i = parent;
+        }
+        key[i] = k;
+        trigger[i] = t;
+    }
+
+    /**
+     * Remove and return trigger with smallest key
+     */
+    public Trigger poll() {
+        Trigger res = trigger[0];
+        size--;
+        double k = key[size];
+        Trigger t = trigger[size];
+        trigger[size] = null;
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && key[child + 1] < key[child])
+                child++;
+            if (k <= key[child])
+                break;
+            key[i] = key[child];
+            trigger[i] = trigger[child];
+            i = child;
+        }
+        if (size > 0) {
+            key[i] = k;
+            trigger[i] = t;
+        }
+        return res;
+    }
+}
@@ -90,6 +90,11 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
     final PendingFeedback pendingFeedback = new PendingFeedback();
 
+    /**
+     * Latest snapshot of workout values, read by observers, see WorkoutSnapshot
+     */
+    private volatile WorkoutSnapshot snapshot = null;
+
     Tracker tracker = null;
     SharedPreferences audioCuePrefs;
     HRZones hrZones = null;
@@ -180,6 +185,39 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
             onNextStep();
         }
         emitFeedback();
+        updateSnapshot();
+    }
+
+    /**
+     * Evaluate hr triggers as soon as a measurement arrives instead of on next tick
+     */
+    public void onHRData() {
+        if (currentStep == null)
+            return;
+
+        initFeedback();
+        currentStep.onHRData(this);
+        emitFeedback();
+    }
+
+    /**
+     * Compute and publish a new snapshot of current values
+     */
+    public WorkoutSnapshot updateSnapshot() {
+        WorkoutSnapshot s = new WorkoutSnapshot(this);
+        snapshot = s;
+        return s;
+    }
+
+    /**
+     * @return snapshot of values as of latest tick (or location update)
+     */
+    public WorkoutSnapshot getSnapshot() {
+        WorkoutSnapshot s = snapshot;
+        if (s == null) {
+            s = updateSnapshot();
+        }
+        return s;
     }
 
     public void onNextStep() {
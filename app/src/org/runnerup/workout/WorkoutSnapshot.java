@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.workout;
+
+import android.annotation.TargetApi;
+import android.location.Location;
+import android.os.Build;
+
+/**
+ * Immutable copy of the workout values that observers read, at one point in time
+ *
+ * Created by Workout once per tick (and location update), see Workout.getSnapshot(),
+ *   so that observers (ui, notification, live loggers, wearables) neither recompute
+ *   values on every read nor touch tracker state from other threads. Every scope
+ *   and dimension is copied, a snapshot never changes once handed out.
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public final class WorkoutSnapshot implements WorkoutInfo {
+
+    private static final Scope SCOPES[] = Scope.values();
+    private static final Dimension DIMENSIONS[] = Dimension.values();
+
+    private final long timestamp; // System.currentTimeMillis() when created
+    private final double value[] = new double[SCOPES.length * DIMENSIONS.length];
+    private final double duration[] = new double[SCOPES.length * DIMENSIONS.length];
+    private final boolean enabled[] = new boolean[SCOPES.length * DIMENSIONS.length];
+    private final int sport;
+    private final boolean paused;
+    private final Location lastKnownLocation;
+
+    WorkoutSnapshot(Workout workout) {
+        timestamp = System.currentTimeMillis();
+        for (Scope s : SCOPES) {
+            for (Dimension d : DIMENSIONS) {
+                int i = index(s, d);
+                enabled[i] = workout.isEnabled(d, s);
+                duration[i] = workout.getDuration(s, d);
+                // zone is unknown without (configured) hr zones
+                value[i] = (d == Dimension.HRZ && !enabled[i]) ? 0 : workout.get(s, d);
+            }
+        }
+        sport = workout.getSport();
+        paused = workout.isPaused();
+        Location l = workout.getLastKnownLocation();
+        lastKnownLocation = l == null ? null : new Location(l);
+    }
+
+    private static int index(Scope s, Dimension d) {
+        return s.ordinal() * DIMENSIONS.length + d.ordinal();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public double get(Scope scope, Dimension d) {
+        return value[index(scope, d)];
+    }
+
+    @Override
+    public double getDistance(Scope scope) {
+        return get(scope, Dimension.DISTANCE);
+    }
+
+    @Override
+    public double getTime(Scope scope) {
+        return get(scope, Dimension.TIME);
+    }
+
+    @Override
+    public double getSpeed(Scope scope) {
+        return get(scope, Dimension.SPEED);
+    }
+
+    @Override
+    public double getPace(Scope scope) {
+        return get(scope, Dimension.PACE);
+    }
+
+    @Override
+    public double getDuration(Scope scope, Dimension dimension) {
+        return duration[index(scope, dimension)];
+    }
+
+    @Override
+    public double getRemaining(Scope scope, Dimension dimension) {
+        double curr = get(scope, dimension);
+        double duration = getDuration(scope, dimension);
+        if (duration > curr) {
+            return duration - curr;
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public double getHeartRate(Scope scope) {
+        return get(scope, Dimension.HR);
+    }
+
+    @Override
+    public double getHeartRateZone(Scope scope) {
+        return get(scope, Dimension.HRZ);
+    }
+
+    @Override
+    public int getSport() {
+        return sport;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public boolean isEnabled(Dimension dim, Scope scope) {
+        return enabled[index(scope, dim)];
+    }
+
+    /**
+     * @return copy of last known location (or null), don't modify
+     */
+    @Override
+    public Location getLastKnownLocation() {
+        return lastKnownLocation;
+    }
+}
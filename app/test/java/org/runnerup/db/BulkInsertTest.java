@@ -0,0 +1,130 @@
+package org.runnerup.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.entities.BulkInserter;
+import org.runnerup.db.entities.LapEntity;
+import org.runnerup.db.entities.LocationEntity;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BulkInsertTest {
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL(DBHelper.CREATE_TABLE_LOCATION);
+        db.execSQL(DBHelper.CREATE_TABLE_LAP);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void shouldInsertAllLocations() {
+        List<LocationEntity> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            LocationEntity point = new LocationEntity();
+            point.setActivityId(7L);
+            point.setLap(i / 100);
+            point.setType(DB.LOCATION.TYPE_GPS);
+            point.setTime(1454228100000L + i * 1000);
+            point.setLatitude(59.3 + i * 0.000027);
+            point.setLongitude(18.0);
+            if (i % 2 == 0) {
+                point.setHr(140 + i % 30);
+            }
+            points.add(point);
+        }
+
+        db.beginTransaction();
+        assertEquals(points.size(), DBHelper.bulkInsert(points, db));
+        db.setTransactionSuccessful();
+        db.endTransaction();
+
+        assertNotNull(points.get(999).getId());
+        Cursor c = db.rawQuery("select count(*), count(" + DB.LOCATION.HR + "), max("
+                + DB.LOCATION.LATITUDE + ") from " + DB.LOCATION.TABLE
+                + " where " + DB.LOCATION.ACTIVITY + " = 7", null);
+        assertTrue(c.moveToFirst());
+        assertEquals(1000, c.getInt(0));
+        assertEquals(500, c.getInt(1));
+        assertEquals(59.3 + 999 * 0.000027, c.getDouble(2), 1e-9);
+        c.close();
+    }
+
+    @Test
+    public void shouldKeepDefaultsForAbsentColumns() {
+        LapEntity lap = new LapEntity();
+        lap.setActivityId(7L);
+        lap.setLap(0);
+        lap.setDistance(1000f);
+        List<LapEntity> laps = new ArrayList<>();
+        laps.add(lap);
+
+        assertEquals(1, DBHelper.bulkInsert(laps, db));
+        Cursor c = db.rawQuery("select " + DB.LAP.INTENSITY + ", " + DB.LAP.DISTANCE
+                + " from " + DB.LAP.TABLE + " where _id = " + lap.getId(), null);
+        assertTrue(c.moveToFirst());
+        assertEquals(0, c.getInt(0));
+        assertEquals(1000f, c.getFloat(1), 0);
+        c.close();
+    }
+
+    @Test
+    public void shouldStoreNullForColumnsPutAsNull() {
+        // one entity reused for every row, as a streaming source does
+        LocationEntity point = new LocationEntity();
+        BulkInserter inserter = new BulkInserter(db, point);
+        db.beginTransaction();
+        for (int i = 0; i < 2; i++) {
+            point.clear();
+            point.setActivityId(7L);
+            point.setLap(0);
+            point.setType(DB.LOCATION.TYPE_GPS);
+            point.setTime(1454228100000L + i * 1000);
+            point.setLatitude(59.3);
+            point.setLongitude(18.0);
+            point.setHr(i == 0 ? 140 : null);
+            assertTrue(inserter.add(point) != -1);
+        }
+        inserter.close();
+        db.setTransactionSuccessful();
+        db.endTransaction();
+
+        Cursor c = db.rawQuery("select count(*), count(" + DB.LOCATION.HR + ") from "
+                + DB.LOCATION.TABLE, null);
+        assertTrue(c.moveToFirst());
+        assertEquals(2, c.getInt(0));
+        assertEquals(1, c.getInt(1));
+        c.close();
+
+        // not null column put as null is not replaced by its default
+        LapEntity lap = new LapEntity();
+        lap.setActivityId(7L);
+        lap.setLap(0);
+        lap.setType(null);
+        List<LapEntity> laps = new ArrayList<>();
+        laps.add(lap);
+        assertEquals(0, DBHelper.bulkInsert(laps, db));
+    }
+}
@@ -0,0 +1,108 @@
+package org.runnerup.db;
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.runnerup.common.util.Constants.DB;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Query plan regression test for the location/lap/report lookups,
+ *   run against a plain (jdbc) sqlite using the DDL from DBHelper
+ */
+public class DBHelperIndexTest {
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement stmt = conn.createStatement();
+        stmt.execute(DBHelper.CREATE_TABLE_ACTIVITY);
+        stmt.execute(DBHelper.CREATE_TABLE_LAP);
+        stmt.execute(DBHelper.CREATE_TABLE_LOCATION);
+        stmt.execute(DBHelper.CREATE_TABLE_REPORT);
+        stmt.execute(DBHelper.CREATE_INDEX_LOCATION);
+        stmt.execute(DBHelper.CREATE_INDEX_LAP);
+        stmt.execute(DBHelper.CREATE_INDEX_REPORT);
+        stmt.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    private String queryPlan(String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql);
+        while (rs.next()) {
+            plan.append(rs.getString("detail")).append('\n');
+        }
+        rs.close();
+        stmt.close();
+        return plan.toString();
+    }
+
+    private void assertUsesIndex(String index, String sql) throws SQLException {
+        String plan = queryPlan(sql);
+        assertTrue(sql + " => " + plan, plan.contains(index));
+    }
+
+    @Test
+    public void locationByActivityShouldUseIndex() throws SQLException {
+        // DetailActivity.loadRoute, GPX, TCX, GoogleFitData, GoogleStaticMap
+        assertUsesIndex("LOCATION_ACTIVITY_LAP",
+                "SELECT * FROM " + DB.LOCATION.TABLE + " WHERE "
+                        + DB.LOCATION.ACTIVITY + " = 1 ORDER BY _id");
+    }
+
+    @Test
+    public void locationByActivityAndLapShouldUseIndex() throws SQLException {
+        // ActivityCleaner.recomputeLap/trimLap
+        assertUsesIndex("LOCATION_ACTIVITY_LAP",
+                "SELECT * FROM " + DB.LOCATION.TABLE + " WHERE "
+                        + DB.LOCATION.ACTIVITY + " = 1 and "
+                        + DB.LOCATION.LAP + " = 2 ORDER BY _id");
+    }
+
+    @Test
+    public void lapByActivityShouldUseIndex() throws SQLException {
+        assertUsesIndex("LAP_ACTIVITY_LAP",
+                "SELECT * FROM " + DB.LAP.TABLE + " WHERE "
+                        + DB.LAP.ACTIVITY + " = 1 ORDER BY _id");
+    }
+
+    @Test
+    public void reportByActivityAndAccountShouldUseIndex() throws SQLException {
+        // UploadActivity, DetailActivity
+        assertUsesIndex("REPORT_ACTIVITY_ACCOUNT",
+                "SELECT 1 FROM " + DB.EXPORT.TABLE + " WHERE "
+                        + DB.EXPORT.ACTIVITY + " = 1 AND "
+                        + DB.EXPORT.ACCOUNT + " = 2");
+    }
+}
@@ -0,0 +1,246 @@
+package org.runnerup.export;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.DBHelper;
+import org.runnerup.util.CharFormatter;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FileImporterTest {
+
+    static final long START = 1454228100000L; // 2016-01-31T08:15:00Z
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = DBHelper.getWritableDatabase(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        DBHelper.closeDB(db);
+    }
+
+    /**
+     * 1 Hz track heading north at ~3 m/s
+     */
+    static String gpx(long start, int seconds) {
+        CharFormatter fmt = new CharFormatter();
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>");
+        for (int i = 0; i < seconds; i++) {
+            sb.append("<trkpt lon=\"18.0\" lat=\"").append(fmt.fixed(59.3 + i * 0.000027, 7))
+                    .append("\"><time>").append(fmt.isoTime(start + i * 1000))
+                    .append("</time></trkpt>");
+        }
+        sb.append("</trkseg></trk></gpx>");
+        return sb.toString();
+    }
+
+    /**
+     * Same track as {@link #gpx(long, int)} as a TCX activity of sport
+     */
+    static String tcx(String sport, long start, int seconds) {
+        CharFormatter fmt = new CharFormatter();
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<TrainingCenterDatabase xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\">"
+                + "<Activities><Activity Sport=\"").append(sport).append("\"><Lap><Track>");
+        for (int i = 0; i < seconds; i++) {
+            sb.append("<Trackpoint><Time>").append(fmt.isoTime(start + i * 1000))
+                    .append("</Time><Position><LatitudeDegrees>").append(fmt.fixed(59.3 + i * 0.000027, 7))
+                    .append("</LatitudeDegrees><LongitudeDegrees>18.0</LongitudeDegrees></Position></Trackpoint>");
+        }
+        sb.append("</Track></Lap></Activity></Activities></TrainingCenterDatabase>");
+        return sb.toString();
+    }
+
+    static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes("UTF-8"));
+    }
+
+    int countActivities() {
+        Cursor c = db.rawQuery("select count(*) from " + DB.ACTIVITY.TABLE, null);
+        c.moveToFirst();
+        int n = c.getInt(0);
+        c.close();
+        return n;
+    }
+
+    @Test
+    public void shouldImportDirectoryAndSkipDuplicates() throws IOException {
+        File dir = folder.newFolder("tracks");
+        for (int i = 0; i < 20; i++) {
+            OutputStream out = new FileOutputStream(new File(dir, "run" + i + ".gpx"));
+            write(out, gpx(START + i * 24 * 3600 * 1000L, 600));
+            out.close();
+        }
+        OutputStream out = new FileOutputStream(new File(dir, "broken.gpx"));
+        write(out, "<gpx><trk><trkseg><trkpt lon=\"18.0\">");
+        out.close();
+        out = new FileOutputStream(new File(dir, "notes.txt"));
+        write(out, "not a track");
+        out.close();
+
+        int before = countActivities();
+        final int progress[] = new int[2];
+        FileImporter importer = new FileImporter(db, 3);
+        importer.setProgressListener(new FileImporter.ProgressListener() {
+            @Override
+            public void onProgress(FileImporter importer, int done, int total) {
+                progress[0] = done;
+                progress[1] = total;
+            }
+        });
+        assertThat(importer.importFiles(dir), is(20));
+        assertThat(importer.getFailedCount(), is(1));
+        assertThat(progress[0], is(21));
+        assertThat(progress[1], is(21));
+        assertThat(countActivities(), is(before + 20));
+
+        Cursor c = db.rawQuery("select count(*) from " + DB.LOCATION.TABLE + " l, "
+                + DB.ACTIVITY.TABLE + " a where l." + DB.LOCATION.ACTIVITY + " = a._id and a."
+                + DB.ACTIVITY.START_TIME + " = " + (START / 1000), null);
+        c.moveToFirst();
+        assertThat(c.getInt(0), is(600));
+        c.close();
+
+        // same files again, all duplicates
+        importer = new FileImporter(db, 3);
+        assertThat(importer.importFiles(dir), is(0));
+        assertThat(importer.getDuplicateCount(), is(20));
+        assertThat(countActivities(), is(before + 20));
+    }
+
+    @Test
+    public void shouldRemoveFileThatFailsToWrite() throws IOException {
+        final long day = 24 * 3600 * 1000L;
+        final long start = START + 300 * day;
+        File dir = folder.newFolder("fail");
+        for (int i = 0; i < 3; i++) {
+            OutputStream out = new FileOutputStream(new File(dir, "run" + i + ".gpx"));
+            write(out, gpx(start + i * day, 120));
+            out.close();
+        }
+        // second file fails after its activity, lap and 59 locations are inserted
+        db.execSQL("create temp trigger fail_location before insert on " + DB.LOCATION.TABLE
+                + " when new." + DB.LOCATION.TIME + " = " + (start + day + 59 * 1000)
+                + " begin select raise(abort, 'disk full'); end");
+        int before = countActivities();
+        FileImporter importer = new FileImporter(db, 1);
+        try {
+            assertThat(importer.importFiles(dir), is(2));
+        } finally {
+            db.execSQL("drop trigger fail_location");
+        }
+        assertThat(importer.getFailedCount(), is(1));
+        assertThat(countActivities(), is(before + 2));
+
+        Cursor c = db.rawQuery("select count(*) from " + DB.LOCATION.TABLE + " where "
+                + DB.LOCATION.TIME + " >= " + (start + day) + " and "
+                + DB.LOCATION.TIME + " < " + (start + 2 * day), null);
+        c.moveToFirst();
+        assertThat(c.getInt(0), is(0));
+        c.close();
+        c = db.rawQuery("select count(*) from " + DB.LAP.TABLE + " where "
+                + DB.LAP.ACTIVITY + " not in (select _id from " + DB.ACTIVITY.TABLE + ")", null);
+        c.moveToFirst();
+        assertThat(c.getInt(0), is(0));
+        c.close();
+    }
+
+    @Test
+    public void shouldImportZip() throws IOException {
+        File zip = folder.newFile("tracks.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        for (int i = 0; i < 5; i++) {
+            out.putNextEntry(new ZipEntry("2015/run" + i + ".GPX"));
+            write(out, gpx(START - (i + 1) * 24 * 3600 * 1000L, 300));
+            out.closeEntry();
+        }
+        out.close();
+
+        FileImporter importer = new FileImporter(db, 2);
+        assertThat(importer.importFiles(zip), is(5));
+        assertThat(importer.getFailedCount(), is(0));
+    }
+
+    @Test
+    public void shouldStopWhenCancelled() throws IOException {
+        File dir = folder.newFolder("cancel");
+        for (int i = 0; i < 10; i++) {
+            OutputStream out = new FileOutputStream(new File(dir, "run" + i + ".gpx"));
+            write(out, gpx(START + (i + 100) * 24 * 3600 * 1000L, 60));
+            out.close();
+        }
+        FileImporter importer = new FileImporter(db, 1);
+        importer.cancel();
+        assertThat(importer.importFiles(dir), is(0));
+        assertTrue(importer.isCancelled());
+    }
+
+    @Test
+    public void shouldImportTcxSport() throws IOException {
+        File dir = folder.newFolder("sport");
+        OutputStream out = new FileOutputStream(new File(dir, "ride.tcx"));
+        write(out, tcx("Biking", START - 200 * 24 * 3600 * 1000L, 120));
+        out.close();
+
+        FileImporter importer = new FileImporter(db, 1);
+        importer.setSport(DB.ACTIVITY.SPORT_WALKING);
+        assertThat(importer.importFiles(dir), is(1));
+
+        Cursor c = db.rawQuery("select " + DB.ACTIVITY.SPORT + " from " + DB.ACTIVITY.TABLE
+                + " where " + DB.ACTIVITY.START_TIME + " = " + (START / 1000 - 200 * 24 * 3600), null);
+        assertTrue(c.moveToFirst());
+        assertThat(c.getInt(0), is(DB.ACTIVITY.SPORT_BIKING));
+        c.close();
+    }
+
+    @Test
+    public void shouldDetectDuplicates() {
+        TreeMap<Long, List<Float>> existing = new TreeMap<Long, List<Float>>();
+        FileImporter.addExisting(existing, 1000L, 10000f);
+        assertTrue(FileImporter.isDuplicate(existing, 1000L, 10000f));
+        assertTrue(FileImporter.isDuplicate(existing, 1030L, 10150f));
+        assertFalse(FileImporter.isDuplicate(existing, 1100L, 10000f));
+        assertFalse(FileImporter.isDuplicate(existing, 1000L, 5000f));
+
+        // activities with same start time are all kept
+        FileImporter.addExisting(existing, 1000L, 5000f);
+        assertTrue(FileImporter.isDuplicate(existing, 1000L, 5000f));
+        assertTrue(FileImporter.isDuplicate(existing, 1000L, 10000f));
+    }
+}
@@ -0,0 +1,143 @@
+package org.runnerup.export.format;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.DBHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Exports a fixture activity and compares with files in test/resources that
+ *   were written by GPX and TCX as they were before FastXmlWriter and CharFormatter,
+ *   i.e exports must stay byte identical
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ExportGoldenTest {
+
+    static final long START = 1454228100000L; // 2016-01-31T08:15:00Z
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = DBHelper.getWritableDatabase(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        DBHelper.closeDB(db);
+    }
+
+    /**
+     * Running activity with a rest lap between two active laps, optional values
+     *   missing on some points and a fix (same time and latitude) that is skipped
+     */
+    static long insertActivity(SQLiteDatabase db) {
+        ContentValues tmp = new ContentValues();
+        tmp.put(DB.ACTIVITY.START_TIME, START / 1000);
+        tmp.put(DB.ACTIVITY.DISTANCE, 1812.75);
+        tmp.put(DB.ACTIVITY.TIME, 600L);
+        tmp.put(DB.ACTIVITY.SPORT, DB.ACTIVITY.SPORT_RUNNING);
+        tmp.put(DB.ACTIVITY.COMMENT, "Intervals <3 & \"hills\"");
+        long id = db.insert(DB.ACTIVITY.TABLE, null, tmp);
+
+        final double lapDistance[] = { 1000.5, 0, 812.25 };
+        final long lapTime[] = { 300, 60, 240 };
+        long time = START;
+        double lat = 59.3293;
+        double lon = 18.0686;
+        int n = 0;
+        for (int lap = 0; lap < lapDistance.length; lap++) {
+            tmp.clear();
+            tmp.put(DB.LAP.ACTIVITY, id);
+            tmp.put(DB.LAP.LAP, lap);
+            tmp.put(DB.LAP.INTENSITY, lap == 1 ? DB.INTENSITY.RESTING : DB.INTENSITY.ACTIVE);
+            tmp.put(DB.LAP.TIME, lapTime[lap]);
+            tmp.put(DB.LAP.DISTANCE, lapDistance[lap]);
+            db.insert(DB.LAP.TABLE, null, tmp);
+
+            final int points = lap == 1 ? 3 : 12;
+            for (int i = 0; i < points; i++, n++) {
+                tmp.clear();
+                tmp.put(DB.LOCATION.ACTIVITY, id);
+                tmp.put(DB.LOCATION.LAP, lap);
+                tmp.put(DB.LOCATION.TYPE, i > 0 ? DB.LOCATION.TYPE_GPS :
+                        lap == 0 ? DB.LOCATION.TYPE_START : DB.LOCATION.TYPE_RESUME);
+                tmp.put(DB.LOCATION.TIME, time);
+                tmp.put(DB.LOCATION.LATITUDE, lat);
+                tmp.put(DB.LOCATION.LONGITUDE, lon);
+                if (n % 7 != 3) {
+                    tmp.put(DB.LOCATION.ALTITUDE, 23.4 + n * 0.35);
+                }
+                if (n % 5 != 2) {
+                    tmp.put(DB.LOCATION.ACCURANCY, 3 + (n % 4) * 1.25);
+                    tmp.put(DB.LOCATION.BEARING, (n * 17.3) % 360);
+                    tmp.put(DB.LOCATION.SPEED, 2.85 + n * 0.011);
+                }
+                if (n % 6 != 4) {
+                    tmp.put(DB.LOCATION.HR, 128 + n);
+                }
+                if (n % 4 != 1) {
+                    tmp.put(DB.LOCATION.CADENCE, 84 + n % 3);
+                }
+                db.insert(DB.LOCATION.TABLE, null, tmp);
+                if (lap == 2 && i == 5) {
+                    tmp.put(DB.LOCATION.LONGITUDE, lon + 0.0001);
+                    db.insert(DB.LOCATION.TABLE, null, tmp);
+                }
+                time += 5000;
+                lat += 0.0001371;
+                lon += lap == 1 ? -0.0000893 : 0.0000893;
+            }
+        }
+        return id;
+    }
+
+    String golden(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte buf[] = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void gpxShouldMatchGolden() throws IOException {
+        long id = insertActivity(db);
+        StringWriter out = new StringWriter();
+        new GPX(db).export(id, out);
+        assertEquals(golden("activity.gpx"), out.toString());
+
+        out = new StringWriter();
+        new GPX(db, true).export(id, out);
+        assertEquals(golden("activity-extensions.gpx"), out.toString());
+    }
+
+    @Test
+    public void tcxShouldMatchGolden() throws IOException {
+        long id = insertActivity(db);
+        StringWriter out = new StringWriter();
+        new TCX(db).export(id, out);
+        assertEquals(golden("activity.tcx"), out.toString());
+    }
+}
@@ -0,0 +1,195 @@
+package org.runnerup.tracker;
+
+import android.location.Location;
+
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.common.util.ValueModel;
+import org.runnerup.workout.Dimension;
+import org.runnerup.workout.Scope;
+import org.runnerup.workout.WorkoutInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Posts workout events (a copy of the values each) to a few live loggers through
+ *   a ValueModel (delivered on a single thread executor) and through
+ *   LiveEventDispatcher, and prints the cost per event on the posting thread.
+ *
+ * Run with: java -cp <test classes>:<classes> org.runnerup.tracker.LiveEventBenchmark [events]
+ */
+public class LiveEventBenchmark {
+
+    static final int LOGGERS = 3;
+
+    static class Info implements WorkoutInfo {
+        final double value[] = new double[4];
+        int sport;
+        boolean paused;
+
+        void set(Info o) {
+            System.arraycopy(o.value, 0, value, 0, value.length);
+            sport = o.sport;
+            paused = o.paused;
+        }
+
+        @Override
+        public double get(Scope scope, Dimension d) {
+            return value[d.ordinal() % value.length];
+        }
+
+        @Override
+        public double getDistance(Scope scope) {
+            return get(scope, Dimension.DISTANCE);
+        }
+
+        @Override
+        public double getTime(Scope scope) {
+            return get(scope, Dimension.TIME);
+        }
+
+        @Override
+        public double getSpeed(Scope scope) {
+            return get(scope, Dimension.SPEED);
+        }
+
+        @Override
+        public double getPace(Scope scope) {
+            return get(scope, Dimension.PACE);
+        }
+
+        @Override
+        public double getDuration(Scope scope, Dimension dimension) {
+            return 0;
+        }
+
+        @Override
+        public double getRemaining(Scope scope, Dimension dimension) {
+            return 0;
+        }
+
+        @Override
+        public double getHeartRate(Scope scope) {
+            return get(scope, Dimension.HR);
+        }
+
+        @Override
+        public double getHeartRateZone(Scope scope) {
+            return 0;
+        }
+
+        @Override
+        public int getSport() {
+            return sport;
+        }
+
+        @Override
+        public boolean isPaused() {
+            return paused;
+        }
+
+        @Override
+        public boolean isEnabled(Dimension dim, Scope scope) {
+            return true;
+        }
+
+        @Override
+        public Location getLastKnownLocation() {
+            return null;
+        }
+    }
+
+    static final class Event {
+        final Info info;
+        final int type;
+
+        Event(Info info, int type) {
+            this.info = info;
+            this.type = type;
+        }
+    }
+
+    static class Logger implements WorkoutObserver {
+        final AtomicInteger events = new AtomicInteger();
+        double sum;
+
+        @Override
+        public void workoutEvent(WorkoutInfo workoutInfo, int type) {
+            sum += workoutInfo.getDistance(Scope.ACTIVITY) + workoutInfo.getTime(Scope.ACTIVITY);
+            events.incrementAndGet();
+        }
+    }
+
+    static int delivered(List<Logger> loggers) {
+        int sum = 0;
+        for (Logger l : loggers)
+            sum += l.events.getAndSet(0);
+        return sum;
+    }
+
+    static long valueModel(final Info current, List<Logger> loggers, ExecutorService executor,
+                           int events) {
+        ValueModel<Event> model = new ValueModel<Event>();
+        for (final Logger l : loggers) {
+            model.registerChangeListener(new ValueModel.ChangeListener<Event>() {
+                @Override
+                public void onValueChanged(ValueModel<Event> instance, Event oldValue,
+                                           Event newValue) {
+                    l.workoutEvent(newValue.info, newValue.type);
+                }
+            }, executor, false);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            current.value[1] = i;
+            Info copy = new Info();
+            copy.set(current);
+            model.set(new Event(copy, DB.LOCATION.TYPE_GPS));
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long dispatcher(final Info current, List<Logger> loggers, int events) {
+        LiveEventDispatcher<Info> dispatcher = new LiveEventDispatcher<Info>("bench", 8);
+        dispatcher.setObservers(new ArrayList<WorkoutObserver>(loggers));
+        dispatcher.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            current.value[1] = i;
+            Info copy = new Info();
+            copy.set(current);
+            dispatcher.post(DB.LOCATION.TYPE_GPS, copy);
+        }
+        long elapsed = System.nanoTime() - start;
+        dispatcher.stop();
+        return elapsed;
+    }
+
+    public static void main(String args[]) throws InterruptedException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        List<Logger> loggers = new ArrayList<Logger>();
+        for (int i = 0; i < LOGGERS; i++)
+            loggers.add(new Logger());
+        Info current = new Info();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        for (int round = 0; round < 10; round++) {
+            long model = valueModel(current, loggers, executor, events);
+            Thread.sleep(200);
+            int modelDelivered = delivered(loggers);
+
+            long ring = dispatcher(current, loggers, events);
+            Thread.sleep(200);
+            int ringDelivered = delivered(loggers);
+
+            System.out.println("round " + round + ": " + events + " events, " + LOGGERS
+                    + " loggers, ValueModel " + (model / events) + " ns/event ("
+                    + modelDelivered + " delivered), LiveEventDispatcher " + (ring / events)
+                    + " ns/event (" + ringDelivered + " delivered)");
+        }
+        executor.shutdown();
+    }
+}
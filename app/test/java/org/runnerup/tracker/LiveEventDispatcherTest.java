@@ -0,0 +1,63 @@
+package org.runnerup.tracker;
+
+import org.junit.Test;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.workout.WorkoutInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class LiveEventDispatcherTest {
+
+    static class Recorder implements WorkoutObserver {
+        final List<Integer> types = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch;
+
+        Recorder(int events) {
+            latch = new CountDownLatch(events);
+        }
+
+        @Override
+        public void workoutEvent(WorkoutInfo workoutInfo, int type) {
+            types.add(type);
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void shouldNeverDropLifecycleEvents() throws InterruptedException {
+        WorkoutInfo info = mock(WorkoutInfo.class);
+        Recorder recorder = new Recorder(4);
+        LiveEventDispatcher<WorkoutInfo> dispatcher = new LiveEventDispatcher<WorkoutInfo>("test", 2);
+        dispatcher.setObservers(Collections.<WorkoutObserver>singletonList(recorder));
+
+        // not started, i.e loggers are a full ring behind
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_START, info));
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_GPS, info));
+        assertFalse(dispatcher.post(DB.LOCATION.TYPE_GPS, info));
+        // replaces queued gps
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_PAUSE, info));
+        // no gps to replace, ring grows
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_RESUME, info));
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_GPS, info));
+        // replaces the gps queued after growing
+        assertTrue(dispatcher.post(DB.LOCATION.TYPE_END, info));
+        assertThat(dispatcher.getDroppedCount(), is(3));
+
+        dispatcher.start();
+        assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+        dispatcher.stop();
+        assertThat(recorder.types, is(Arrays.asList(DB.LOCATION.TYPE_START,
+                DB.LOCATION.TYPE_PAUSE, DB.LOCATION.TYPE_RESUME, DB.LOCATION.TYPE_END)));
+    }
+}
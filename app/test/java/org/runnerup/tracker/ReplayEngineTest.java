@@ -0,0 +1,194 @@
+package org.runnerup.tracker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.tracker.replay.ReplayStats;
+import org.runnerup.tracker.replay.ReplayTrack;
+import org.runnerup.workout.Workout;
+import org.runnerup.workout.WorkoutBuilder;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ReplayEngineTest {
+
+    static final long START = 1454228100000L; // 2016-01-31T08:15:00Z
+
+    /**
+     * 1 Hz track heading north at ~3 m/s with a 60s pause every pauseEvery seconds
+     */
+    static ReplayTrack syntheticTrack(int seconds, int pauseEvery) {
+        ReplayTrack track = new ReplayTrack();
+        double lat = 59.3;
+        long time = START;
+        for (int i = 0; i < seconds; i++) {
+            int type = DB.LOCATION.TYPE_GPS;
+            if (i == 0)
+                type = DB.LOCATION.TYPE_START;
+            else if (i == seconds - 1)
+                type = DB.LOCATION.TYPE_END;
+            else if (i % pauseEvery == 0)
+                type = DB.LOCATION.TYPE_PAUSE;
+            else if (i % pauseEvery == 1)
+                type = DB.LOCATION.TYPE_RESUME;
+            track.add(type, time, lat, 18.0, 20 + (i % 50), 140 + (i % 30));
+            lat += 0.000027;
+            time += type == DB.LOCATION.TYPE_PAUSE ? 60000 : 1000;
+        }
+        return track;
+    }
+
+    static Workout createWorkout() {
+        Context ctx = RuntimeEnvironment.application;
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+        return WorkoutBuilder.createDefaultWorkout(ctx.getResources(), prefs, null);
+    }
+
+    static long[] getActivity(Tracker tracker, long id) {
+        Cursor c = tracker.mDB.query(DB.ACTIVITY.TABLE, new String[] {
+                DB.ACTIVITY.TIME, DB.ACTIVITY.DISTANCE, DB.ACTIVITY.AVG_HR
+        }, "_id = " + id, null, null, null, null);
+        c.moveToFirst();
+        long res[] = { c.getLong(0), c.getLong(1), c.getLong(2) };
+        c.close();
+        return res;
+    }
+
+    @Test
+    public void shouldReplayDeterministically() {
+        ReplayTrack track = syntheticTrack(1200, 300);
+        Tracker tracker = Robolectric.setupService(Tracker.class);
+
+        ReplayStats first = new ReplayEngine(tracker, track, 0).run(createWorkout());
+        ReplayStats second = new ReplayEngine(tracker, track, 0).run(createWorkout());
+
+        long a[] = getActivity(tracker, first.getActivityId());
+        long b[] = getActivity(tracker, second.getActivityId());
+        assertEquals(a[0], b[0]);
+        assertEquals(a[1], b[1]);
+        assertEquals(a[2], b[2]);
+
+        // pauses are not counted
+        assertThat(a[0], is((track.getDuration() - 3 * 60000) / 1000));
+        assertThat(first.getCount(ReplayStats.Stage.LOCATION), is(track.size()));
+        assertThat(first.getCount(ReplayStats.Stage.HR), is(track.size()));
+    }
+
+    @Test
+    public void shouldReplayLongTrack() {
+        ReplayTrack track = syntheticTrack(6 * 3600, 1800);
+        Tracker tracker = Robolectric.setupService(Tracker.class);
+        ReplayStats stats = new ReplayEngine(tracker, track, 0).run(createWorkout());
+        assertThat(stats.getCount(ReplayStats.Stage.LOCATION), is(track.size()));
+        assertThat(stats.getCount(ReplayStats.Stage.HR), is(track.size()));
+
+        // 11 pauses of 60s
+        long running = track.getDuration() - 11 * 60000;
+        assertThat(getActivity(tracker, stats.getActivityId())[0], is(running / 1000));
+
+        // ticks every TICK_INTERVAL while running, PAUSED_TICK_INTERVAL while paused,
+        //   give or take one at each pause and resume
+        int ticks = stats.getCount(ReplayStats.Stage.TICK);
+        assertTrue("ticks: " + ticks, ticks >= running / Tracker.TICK_INTERVAL - 2 * 11 - 1);
+        assertTrue("ticks: " + ticks, ticks <= running / Tracker.TICK_INTERVAL
+                + 11 * 60000 / Tracker.PAUSED_TICK_INTERVAL + 2 * 11 + 1);
+
+        assertTrue(stats.getTotalNanos(ReplayStats.Stage.LOCATION) > 0);
+        assertTrue(stats.getPercentileNanos(ReplayStats.Stage.LOCATION, 50) <=
+                stats.getPercentileNanos(ReplayStats.Stage.LOCATION, 99));
+        assertTrue("speedup: " + stats.getSpeedup(), stats.getSpeedup() > 1);
+    }
+
+    @Test
+    public void shouldReplayAtSpeed() {
+        ReplayTrack track = syntheticTrack(120, 60);
+        Tracker tracker = Robolectric.setupService(Tracker.class);
+        ReplayStats expected = new ReplayEngine(tracker, track, 0).run(createWorkout());
+
+        final ReplayStats result[] = { null };
+        new ReplayEngine(tracker, track, 10).start(createWorkout(), new ReplayEngine.Listener() {
+            @Override
+            public void onReplayDone(ReplayStats stats) {
+                result[0] = stats;
+            }
+        });
+        // samples are posted when due, not replayed at once
+        assertNull(result[0]);
+
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        for (int i = 0; result[0] == null && i < 100 * track.size(); i++) {
+            if (!scheduler.advanceToNextPostedRunnable())
+                break;
+        }
+        assertNotNull(result[0]);
+        assertThat(result[0].getCount(ReplayStats.Stage.LOCATION), is(track.size()));
+        assertThat(result[0].getCount(ReplayStats.Stage.HR), is(track.size()));
+
+        long a[] = getActivity(tracker, expected.getActivityId());
+        long b[] = getActivity(tracker, result[0].getActivityId());
+        assertEquals(a[0], b[0]);
+        assertEquals(a[1], b[1]);
+        assertEquals(a[2], b[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotStartWithoutSpeed() {
+        Tracker tracker = Robolectric.setupService(Tracker.class);
+        new ReplayEngine(tracker, syntheticTrack(10, 5), 0).start(createWorkout(),
+                new ReplayEngine.Listener() {
+                    @Override
+                    public void onReplayDone(ReplayStats stats) {
+                    }
+                });
+    }
+
+    @Test
+    public void shouldParseGPX() throws IOException {
+        String gpx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<gpx xmlns=\"http://www.topografix.com/GPX/1/1\""
+                + " xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v1\">"
+                + "<metadata><time>2016-01-31T08:00:00Z</time></metadata><trk>"
+                + "<trkseg>"
+                + "<trkpt lon=\"18.0\" lat=\"59.3\"><ele>20</ele><time>2016-01-31T08:15:00Z</time>"
+                + "<extensions><gpxtpx:TrackPointExtension><gpxtpx:hr>141</gpxtpx:hr>"
+                + "</gpxtpx:TrackPointExtension></extensions></trkpt>"
+                + "<trkpt lon=\"18.0\" lat=\"59.30003\"><time>2016-01-31T08:15:01Z</time></trkpt>"
+                + "</trkseg><trkseg>"
+                + "<trkpt lon=\"18.0\" lat=\"59.30006\"><time>2016-01-31T08:20:00Z</time></trkpt>"
+                + "<trkpt lon=\"18.0\" lat=\"59.30009\"><time>2016-01-31T08:20:01.500Z</time></trkpt>"
+                + "</trkseg></trk></gpx>";
+        ReplayTrack track = ReplayTrack.parseGPX(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+
+        assertThat(track.size(), is(4));
+        assertThat(track.getType(0), is(DB.LOCATION.TYPE_START));
+        assertThat(track.getType(1), is(DB.LOCATION.TYPE_PAUSE));
+        assertThat(track.getType(2), is(DB.LOCATION.TYPE_RESUME));
+        assertThat(track.getType(3), is(DB.LOCATION.TYPE_END));
+        assertThat(track.getTime(0), is(START));
+        assertThat(track.getTime(3), is(START + 301500));
+        assertThat(track.getHR(0), is(141));
+        assertThat(track.getHR(1), is(0));
+        assertThat(track.getAltitude(0), is(20.0));
+    }
+}
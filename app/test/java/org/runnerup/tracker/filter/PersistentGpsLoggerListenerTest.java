@@ -0,0 +1,112 @@
+package org.runnerup.tracker.filter;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.db.DBHelper;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PersistentGpsLoggerListenerTest {
+
+    static final long ACTIVITY = 4711;
+    static final long START = 1454228100000L; // 2016-01-31T08:15:00Z
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = DBHelper.getWritableDatabase(RuntimeEnvironment.application);
+        db.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = " + ACTIVITY, null);
+    }
+
+    @After
+    public void tearDown() {
+        DBHelper.closeDB(db);
+    }
+
+    static Location location(int i) {
+        Location l = new Location("gps");
+        l.setTime(START + i * 1000);
+        l.setLatitude(59.3 + i * 0.000027);
+        l.setLongitude(18.0);
+        return l;
+    }
+
+    static ContentValues key(int lap) {
+        ContentValues key = new ContentValues();
+        key.put(DB.LOCATION.ACTIVITY, ACTIVITY);
+        key.put(DB.LOCATION.LAP, lap);
+        key.put(DB.LOCATION.TYPE, DB.LOCATION.TYPE_GPS);
+        return key;
+    }
+
+    int countLocations() {
+        Cursor c = db.rawQuery("select count(*) from " + DB.LOCATION.TABLE + " where "
+                + DB.LOCATION.ACTIVITY + " = " + ACTIVITY, null);
+        c.moveToFirst();
+        int n = c.getInt(0);
+        c.close();
+        return n;
+    }
+
+    @Test
+    public void shouldWriteKeyOfEachBufferedLocation() {
+        ContentValues key = key(2);
+        key.put(DB.LOCATION.CADENCE, 88);
+        PersistentGpsLoggerListener writer = new PersistentGpsLoggerListener(db,
+                DB.LOCATION.TABLE, key, 10, 60000);
+        writer.onLocationChanged(location(0), 150);
+        writer.setKey(key(3));
+        writer.onLocationChanged(location(1), null);
+        assertThat(countLocations(), is(0));
+        writer.close();
+
+        Cursor c = db.query(DB.LOCATION.TABLE, new String[] {
+                DB.LOCATION.LAP, DB.LOCATION.TYPE, DB.LOCATION.CADENCE, DB.LOCATION.HR
+        }, DB.LOCATION.ACTIVITY + " = " + ACTIVITY, null, null, null, "_id");
+        assertTrue(c.moveToNext());
+        assertThat(c.getInt(0), is(2));
+        assertThat(c.getInt(1), is(DB.LOCATION.TYPE_GPS));
+        assertThat(c.getInt(2), is(88));
+        assertThat(c.getInt(3), is(150));
+        assertTrue(c.moveToNext());
+        assertThat(c.getInt(0), is(3));
+        assertTrue(c.isNull(2));
+        assertTrue(c.isNull(3));
+        assertFalse(c.moveToNext());
+        c.close();
+    }
+
+    @Test
+    public void shouldFlushWhenOldestIsTooOldWithoutNewLocations() {
+        PersistentGpsLoggerListener writer = new PersistentGpsLoggerListener(db,
+                DB.LOCATION.TABLE, key(0), 10, 5000);
+        writer.onLocationChanged(location(0), null);
+        writer.onLocationChanged(location(1), null);
+        ShadowLooper.idleMainLooper(4000, TimeUnit.MILLISECONDS);
+        assertThat(countLocations(), is(0));
+        ShadowLooper.idleMainLooper(1000, TimeUnit.MILLISECONDS);
+        assertThat(countLocations(), is(2));
+        writer.close();
+    }
+}
@@ -0,0 +1,111 @@
+package org.runnerup.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharFormatterTest {
+
+    @Test
+    public void shouldFormatIsoTime() {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        CharFormatter fmt = new CharFormatter();
+
+        // consecutive samples, crossing midnight and month/year ends
+        long times[] = {
+                0, 999, 1000, 1454228100000L, 1454228100500L, 1454228101000L,
+                1454284799000L, 1454284800000L, 951782400000L, 1456704000000L,
+                1483228799999L, 1483228800000L, 4102444800000L, -1000L, 0
+        };
+        for (long t : times) {
+            assertEquals(sdf.format(new Date(t)), fmt.isoTime(t).toString());
+        }
+
+        Random rnd = new Random(4711);
+        long t = 1454228100000L;
+        for (int i = 0; i < 100000; i++) {
+            t += rnd.nextInt(2 * 3600 * 1000);
+            assertEquals(sdf.format(new Date(t)), fmt.isoTime(t).toString());
+        }
+    }
+
+    @Test
+    public void shouldFormatNumbers() {
+        CharFormatter fmt = new CharFormatter();
+        assertEquals("0", fmt.number(0).toString());
+        assertEquals("142", fmt.number(142).toString());
+        assertEquals("-17", fmt.number(-17).toString());
+        assertEquals(Long.toString(Long.MAX_VALUE), fmt.number(Long.MAX_VALUE).toString());
+        assertEquals(Long.toString(Long.MIN_VALUE), fmt.number(Long.MIN_VALUE).toString());
+
+        assertEquals("59.3", fmt.fixed(59.3, 7).toString());
+        assertEquals("18.0654321", fmt.fixed(18.06543214, 7).toString());
+        assertEquals("-0.0000001", fmt.fixed(-0.0000001, 7).toString());
+        assertEquals("0", fmt.fixed(-0.00000001, 7).toString());
+        assertEquals("85", fmt.fixed(85.0, 2).toString());
+        assertEquals("3.5", fmt.fixed(3.499, 2).toString());
+        assertEquals("1000", fmt.fixed(999.999, 2).toString());
+        assertEquals("-12.05", fmt.fixed(-12.05, 2).toString());
+        assertEquals("1235", fmt.fixed(1234.5, 0).toString());
+        assertEquals("NaN", fmt.fixed(Double.NaN, 2).toString());
+        assertEquals("1.0E20", fmt.fixed(1e20, 2).toString());
+    }
+
+    @Test
+    public void shouldFormatDecimalsLikeToString() {
+        CharFormatter fmt = new CharFormatter();
+        float floats[] = {
+                0f, -0f, 85f, 0.47851562f, 59.3293f, -18.0654321f, 0.001f, 9999999f,
+                1e7f, 1e-4f, 123456.7f, Float.NaN, Float.NEGATIVE_INFINITY
+        };
+        for (float v : floats) {
+            assertEquals(Float.toString(v), fmt.decimal(v).toString());
+            assertEquals(Double.toString(v), fmt.decimal((double) v).toString());
+        }
+        double doubles[] = {
+                0.0, 59.3, 18.06543214, 12345.678, 0.1 + 0.2, 1e-3, 1e7, 1e20
+        };
+        for (double v : doubles) {
+            assertEquals(Double.toString(v), fmt.decimal(v).toString());
+            assertEquals(Double.toString(-v), fmt.decimal(-v).toString());
+        }
+
+        Random r = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            float f = Float.intBitsToFloat(r.nextInt());
+            assertEquals(Float.toString(f), fmt.decimal(f).toString());
+            float lat = (float) (r.nextDouble() * 180 - 90);
+            assertEquals(Float.toString(lat), fmt.decimal(lat).toString());
+            double d = Math.round(r.nextDouble() * 1e9) / 1e7;
+            assertEquals(Double.toString(d), fmt.decimal(d).toString());
+        }
+    }
+
+    @Test
+    public void shouldWriteJsonWithoutEscaping() throws IOException {
+        CharFormatter fmt = new CharFormatter();
+        StringWriter out = new StringWriter();
+        JsonWriter w = new JsonWriter(out);
+        w.beginObject();
+        w.name("lat");
+        fmt.fixed(59.3, 7).value(w);
+        w.name("hr");
+        fmt.number(142).stringValue(w);
+        w.name("time");
+        fmt.isoTime(1454228100000L).stringValue(w);
+        w.name("n").value(-42L);
+        w.endObject();
+        w.close();
+        assertEquals("{\"lat\":59.3,\"hr\":\"142\",\"time\":\"2016-01-31T08:15:00Z\",\"n\":-42}",
+                out.toString());
+    }
+}
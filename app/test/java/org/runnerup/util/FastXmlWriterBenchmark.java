@@ -0,0 +1,33 @@
+package org.runnerup.util;
+
+import java.io.IOException;
+
+/**
+ * Writes a GPX like document with many track points through KXmlSerializer
+ *   and FastXmlWriter and prints cost per point.
+ *
+ * Run with: java -cp <test classes>:<classes> org.runnerup.util.FastXmlWriterBenchmark [points]
+ */
+public class FastXmlWriterBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        if (!FastXmlWriterTest.kxml(true, points).equals(FastXmlWriterTest.fast(true, points)))
+            throw new AssertionError("output differs");
+
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            int len = FastXmlWriterTest.kxml(true, points).length();
+            long kxml = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            len += FastXmlWriterTest.fast(true, points).length();
+            long fast = System.nanoTime() - start;
+
+            System.out.println("round " + round + ": " + points + " points, "
+                    + "KXmlSerializer " + (kxml / points) + " ns/point, "
+                    + "FastXmlWriter " + (fast / points) + " ns/point"
+                    + " (" + len / 2 + " chars)");
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.runnerup.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class FastXmlWriterTest {
+
+    static final String NOTES = "Intervals <4x1000m> & \"cool\" 'down'\r\n\tsn\u00f6 \u2603";
+
+    static final FastXmlWriter.Tag TRKPT = new FastXmlWriter.Tag("trkpt");
+    static final FastXmlWriter.Tag TIME = new FastXmlWriter.Tag("time");
+    static final FastXmlWriter.Tag HR = new FastXmlWriter.Tag("gpxtpx:hr");
+
+    /**
+     * GPX like document through KXmlSerializer, as exported before FastXmlWriter
+     */
+    static String kxml(boolean indent, int points) throws IOException {
+        StringWriter out = new StringWriter();
+        KXmlSerializer xml = new KXmlSerializer();
+        xml.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", indent);
+        xml.setOutput(out);
+        xml.startDocument("UTF-8", true);
+        xml.startTag("", "gpx");
+        xml.attribute("", "version", "1.1");
+        xml.attribute("", "xmlns:gpxtpx", "http://www.garmin.com/xmlschemas/TrackPointExtension/v1");
+        xml.attribute("", "quoted", NOTES);
+        xml.startTag("", "trk");
+        xml.startTag("", "desc");
+        xml.text(NOTES);
+        xml.endTag("", "desc");
+        xml.startTag("", "trkseg");
+        xml.endTag("", "trkseg");
+        xml.startTag("", "trkseg");
+        CharFormatter fmt = new CharFormatter();
+        for (int i = 0; i < points; i++) {
+            xml.startTag("", "trkpt");
+            xml.attribute("", "lon", fmt.fixed(18 + i * 0.0000271, 7).toString());
+            xml.attribute("", "lat", fmt.fixed(59.3 - i * 0.0000132, 7).toString());
+            xml.startTag("", "time");
+            xml.text(fmt.isoTime(1454228100000L + i * 1000).toString());
+            xml.endTag("", "time");
+            if (i % 3 != 0) {
+                xml.startTag("", "extensions");
+                xml.startTag("", "gpxtpx:TrackPointExtension");
+                xml.startTag("", "gpxtpx:hr");
+                xml.text(fmt.number(120 + i % 60).toString());
+                xml.endTag("", "gpxtpx:hr");
+                xml.endTag("", "gpxtpx:TrackPointExtension");
+                xml.endTag("", "extensions");
+            }
+            xml.endTag("", "trkpt");
+        }
+        xml.endTag("", "trkseg");
+        xml.endTag("", "trk");
+        xml.endTag("", "gpx");
+        xml.flush();
+        xml.endDocument();
+        return out.toString();
+    }
+
+    static String fast(boolean indent, int points) throws IOException {
+        StringWriter out = new StringWriter();
+        FastXmlWriter xml = new FastXmlWriter(out);
+        xml.setIndent(indent);
+        xml.startDocument("UTF-8", true);
+        xml.startTag("gpx");
+        xml.attribute("version", "1.1");
+        xml.attribute("xmlns:gpxtpx", "http://www.garmin.com/xmlschemas/TrackPointExtension/v1");
+        xml.attribute("quoted", NOTES);
+        xml.startTag("trk");
+        xml.startTag("desc");
+        xml.text(NOTES);
+        xml.endTag("desc");
+        xml.startTag("trkseg");
+        xml.endTag("trkseg");
+        xml.startTag("trkseg");
+        CharFormatter fmt = new CharFormatter();
+        for (int i = 0; i < points; i++) {
+            xml.startTag(TRKPT);
+            xml.attribute("lon", fmt.fixed(18 + i * 0.0000271, 7));
+            xml.attribute("lat", fmt.fixed(59.3 - i * 0.0000132, 7));
+            xml.element(TIME, fmt.isoTime(1454228100000L + i * 1000));
+            if (i % 3 != 0) {
+                xml.startTag("extensions");
+                xml.startTag("gpxtpx:TrackPointExtension");
+                xml.element(HR, fmt.number(120 + i % 60));
+                xml.endTag("gpxtpx:TrackPointExtension");
+                xml.endTag("extensions");
+            }
+            xml.endTag(TRKPT);
+        }
+        xml.endTag("trkseg");
+        xml.endTag("trk");
+        xml.endTag("gpx");
+        xml.flush();
+        xml.endDocument();
+        return out.toString();
+    }
+
+    @Test
+    public void shouldWriteSameAsKXmlSerializer() throws IOException {
+        assertEquals(kxml(true, 10), fast(true, 10));
+        assertEquals(kxml(false, 10), fast(false, 10));
+        // more than buffer size
+        assertEquals(kxml(true, 2000), fast(true, 2000));
+    }
+
+    @Test
+    public void shouldEscapeChars() throws IOException {
+        char text[] = ("x" + NOTES + "x").toCharArray();
+        StringWriter out = new StringWriter();
+        FastXmlWriter xml = new FastXmlWriter(out);
+        xml.startDocument("UTF-8", null);
+        xml.startTag("a");
+        xml.attribute("b", text, 1, text.length - 2);
+        xml.text(text, 1, text.length - 2);
+        xml.endTag("a");
+        xml.endDocument();
+
+        StringWriter expected = new StringWriter();
+        KXmlSerializer kxml = new KXmlSerializer();
+        kxml.setOutput(expected);
+        kxml.startDocument("UTF-8", null);
+        kxml.startTag("", "a");
+        kxml.attribute("", "b", NOTES);
+        kxml.text(NOTES);
+        kxml.endTag("", "a");
+        kxml.endDocument();
+        assertEquals(expected.toString(), out.toString());
+    }
+}
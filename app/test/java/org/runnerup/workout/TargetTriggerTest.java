@@ -0,0 +1,33 @@
+package org.runnerup.workout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.runnerup.BuildConfig;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TargetTriggerTest {
+
+    @Test
+    public void shouldCountEverySecondWhenTicksAreNotOnWholeSeconds() {
+        Workout workout = mock(Workout.class);
+        when(workout.isEnabled(Dimension.HR, Scope.STEP)).thenReturn(true);
+        when(workout.get(Scope.CURRENT, Dimension.HR)).thenReturn(150d);
+
+        TargetTrigger sut = new TargetTrigger(Dimension.HR, 60, 30);
+        sut.range = new Range(140, 160);
+        for (int i = 0; i <= 40; i++) {
+            // 1.5 s between ticks
+            when(workout.get(Scope.STEP, Dimension.TIME)).thenReturn(i * 1.5);
+            sut.onTick(workout);
+        }
+        assertThat(sut.cntMeasures, is(60));
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.runnerup.common.util;
+
+/**
+ * Compact (archival) encoding of a list of locations, typically one lap
+ *
+ * Layout:
+ *   version (1 byte), number of points (varint),
+ *   then one block per column: length in bytes (varint) followed by the column data.
+ *
+ * Columns are stored as scaled integers (see SCALE), delta encoded against previous value
+ *   in same column and written as zigzag varints. Type is written as plain varint.
+ * Nullable columns start with a mode byte: NONE (all null), ALL (no null) or
+ *   BITMAP followed by a presence bitmap (1 bit per point), deltas are only written
+ *   for present values.
+ *
+ * Scaling makes the encoding lossy within: lat/lon 1e-7 degrees (~1cm), altitude 1cm,
+ *   accuracy/speed/bearing 0.01.
+ */
+public final class CompactTrack {
+
+    public static final int VERSION = 1;
+
+    public static final int TYPE = 0;
+    public static final int TIME = 1;
+    public static final int LATITUDE = 2;
+    public static final int LONGITUDE = 3;
+    public static final int ALTITUDE = 4;
+    public static final int ACCURACY = 5;
+    public static final int SPEED = 6;
+    public static final int BEARING = 7;
+    public static final int HR = 8;
+    public static final int CADENCE = 9;
+    public static final int COLUMNS = 10;
+
+    /** value used for null int (hr, cadence) */
+    public static final int NULL_INT = Integer.MIN_VALUE;
+
+    private static final double SCALE[] = {
+            1, 1, 1e7, 1e7, 100, 100, 100, 100, 1, 1
+    };
+
+    private static final int MODE_NONE = 0;
+    private static final int MODE_ALL = 1;
+    private static final int MODE_BITMAP = 2;
+
+    private CompactTrack() {
+    }
+
+    private static boolean isNullable(int col) {
+        return col >= ALTITUDE;
+    }
+
+    static final class Bytes {
+        byte buf[] = new byte[64];
+        int len = 0;
+
+        void put(int b) {
+            if (len == buf.length) {
+                byte tmp[] = new byte[buf.length * 2];
+                System.arraycopy(buf, 0, tmp, 0, len);
+                buf = tmp;
+            }
+            buf[len++] = (byte) b;
+        }
+
+        void putVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                put((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((int) v);
+        }
+
+        void putZigZag(long v) {
+            putVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void put(Bytes src) {
+            for (int i = 0; i < src.len; i++) {
+                put(src.buf[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds the encoded representation, one point at a time
+     */
+    public static final class Encoder {
+        private int count = 0;
+        private final Bytes data[] = new Bytes[COLUMNS];
+        private final Bytes bitmap[] = new Bytes[COLUMNS];
+        private final long last[] = new long[COLUMNS];
+        private final int present[] = new int[COLUMNS];
+
+        public Encoder() {
+            for (int i = 0; i < COLUMNS; i++) {
+                data[i] = new Bytes();
+                if (isNullable(i))
+                    bitmap[i] = new Bytes();
+            }
+        }
+
+        /**
+         * Add a point, use Double.NaN for null altitude/accuracy/speed/bearing
+         *   and NULL_INT for null hr/cadence
+         */
+        public void add(int type, long time, double lat, double lon, double altitude,
+                        double accuracy, double speed, double bearing, int hr, int cadence) {
+            data[TYPE].putVarLong(type);
+            putDelta(TIME, time);
+            putDelta(LATITUDE, Math.round(lat * SCALE[LATITUDE]));
+            putDelta(LONGITUDE, Math.round(lon * SCALE[LONGITUDE]));
+            putNullable(ALTITUDE, !Double.isNaN(altitude), altitude);
+            putNullable(ACCURACY, !Double.isNaN(accuracy), accuracy);
+            putNullable(SPEED, !Double.isNaN(speed), speed);
+            putNullable(BEARING, !Double.isNaN(bearing), bearing);
+            putNullable(HR, hr != NULL_INT, hr);
+            putNullable(CADENCE, cadence != NULL_INT, cadence);
+            count++;
+        }
+
+        private void putDelta(int col, long v) {
+            data[col].putZigZag(v - last[col]);
+            last[col] = v;
+        }
+
+        private void putNullable(int col, boolean isPresent, double v) {
+            Bytes b = bitmap[col];
+            if ((count & 7) == 0)
+                b.put(0);
+            if (isPresent) {
+                b.buf[b.len - 1] |= 1 << (count & 7);
+                present[col]++;
+                putDelta(col, Math.round(v * SCALE[col]));
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public byte[] toByteArray() {
+            Bytes out = new Bytes();
+            Bytes col = new Bytes();
+            out.put(VERSION);
+            out.putVarLong(count);
+            for (int i = 0; i < COLUMNS; i++) {
+                col.len = 0;
+                if (isNullable(i)) {
+                    if (present[i] == 0) {
+                        col.put(MODE_NONE);
+                    } else if (present[i] == count) {
+                        col.put(MODE_ALL);
+                    } else {
+                        col.put(MODE_BITMAP);
+                        col.put(bitmap[i]);
+                    }
+                }
+                col.put(data[i]);
+                out.putVarLong(col.len);
+                out.put(col);
+            }
+            byte res[] = new byte[out.len];
+            System.arraycopy(out.buf, 0, res, 0, out.len);
+            return res;
+        }
+    }
+
+    /**
+     * Sequential (cursor like) reader of an encoded track
+     */
+    public static final class Decoder {
+        private final byte buf[];
+        private final int count;
+        private int row = -1;
+
+        private final int pos[] = new int[COLUMNS];
+        private final int mode[] = new int[COLUMNS];
+        private final int bitmapPos[] = new int[COLUMNS];
+        private final long value[] = new long[COLUMNS];
+        private final boolean isNull[] = new boolean[COLUMNS];
+
+        public Decoder(byte buf[]) {
+            this.buf = buf;
+            if (buf[0] != VERSION) {
+                throw new IllegalArgumentException("Unsupported compact track version: " + buf[0]);
+            }
+            pos[0] = 1;
+            count = (int) getVarLong(0);
+            int p = pos[0];
+            for (int i = 0; i < COLUMNS; i++) {
+                pos[i] = p;
+                int len = (int) getVarLong(i);
+                int start = pos[i];
+                p = start + len;
+                if (isNullable(i)) {
+                    mode[i] = buf[pos[i]++];
+                    if (mode[i] == MODE_BITMAP) {
+                        bitmapPos[i] = pos[i];
+                        pos[i] += (count + 7) / 8;
+                    }
+                }
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean moveToNext() {
+            if (row + 1 >= count)
+                return false;
+            row++;
+            value[TYPE] = getVarLong(TYPE);
+            for (int i = TIME; i < COLUMNS; i++) {
+                boolean present = true;
+                if (isNullable(i)) {
+                    switch (mode[i]) {
+                        case MODE_NONE:
+                            present = false;
+                            break;
+                        case MODE_BITMAP:
+                            present = (buf[bitmapPos[i] + (row >> 3)] & (1 << (row & 7))) != 0;
+                            break;
+                    }
+                }
+                isNull[i] = !present;
+                if (present) {
+                    long v = getVarLong(i);
+                    value[i] += (v >>> 1) ^ -(v & 1);
+                }
+            }
+            return true;
+        }
+
+        private long getVarLong(int col) {
+            long v = 0;
+            int shift = 0;
+            int p = pos[col];
+            byte b;
+            do {
+                b = buf[p++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            pos[col] = p;
+            return v;
+        }
+
+        public boolean isNull(int col) {
+            return isNull[col];
+        }
+
+        public int getType() {
+            return (int) value[TYPE];
+        }
+
+        public long getTime() {
+            return value[TIME];
+        }
+
+        public double getLatitude() {
+            return value[LATITUDE] / SCALE[LATITUDE];
+        }
+
+        public double getLongitude() {
+            return value[LONGITUDE] / SCALE[LONGITUDE];
+        }
+
+        /**
+         * @return scaled back value of column, NaN if null
+         */
+        public double getDouble(int col) {
+            return isNull[col] ? Double.NaN : value[col] / SCALE[col];
+        }
+
+        /**
+         * @return value of column, NULL_INT if null
+         */
+        public int getInt(int col) {
+            return isNull[col] ? NULL_INT : (int) value[col];
+        }
+    }
+}
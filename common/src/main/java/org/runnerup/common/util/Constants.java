@@ -133,6 +133,33 @@ public interface Constants {
             public static final String EXTRA = "extra";
         }
 
+        public interface TRACK {
+            public static final String TABLE = "track";
+            public static final String ACTIVITY = "activity_id";
+            public static final String LAP = "lap";
+            public static final String DATA = "data"; // CompactTrack encoded locations
+        }
+
+        public interface SENSOR_SAMPLE {
+            public static final String TABLE = "sensor_sample";
+            public static final String ACTIVITY = "activity_id";
+            public static final String TIME = "time"; // ms since epoch
+            public static final String TYPE = "type";
+            public static final String VALUE = "value";
+
+            public static final int TYPE_HR = 1;  // bpm
+            public static final int TYPE_RR = 2;  // RR interval in ms, time is end of interval
+        }
+
+        public interface UPLOAD_QUEUE {
+            public static final String TABLE = "upload_queue";
+            public static final String ACTIVITY = "activity_id";
+            public static final String ACCOUNT = "account_id";
+            public static final String ATTEMPTS = "attempts";
+            public static final String NEXT_ATTEMPT = "next_attempt"; // ms since epoch
+            public static final String LAST_ERROR = "last_error";
+        }
+
         public interface AUDIO_SCHEMES {
             public static final String TABLE = "audio_schemes";
             public static final String NAME = "name";
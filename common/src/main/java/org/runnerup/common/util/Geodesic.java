@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.runnerup.common.util;
+
+/**
+ * Distance between two points (latitude/longitude in degrees, result in meters)
+ *
+ * Plain java on primitive doubles, so it can be used in inner loops without allocation
+ *   and tested without android.
+ *
+ * In order of increasing accuracy (and cost):
+ *  equirectangular - flat earth approximation, fine for distances between consecutive fixes
+ *  haversine       - great circle on a sphere, error up to ~0.5%
+ *  vincenty        - WGS84 ellipsoid, same algorithm as android.location.Location.distanceTo
+ *
+ * {@link #distance} (vincenty) is what should be used for anything that is stored or
+ *   displayed, so that tracker and recompute give identical results.
+ */
+public final class Geodesic {
+
+    public static final double EARTH_RADIUS = 6371008.8; // mean radius
+
+    /** WGS84 */
+    private static final double A = 6378137.0;
+    private static final double B = 6356752.3142;
+    private static final double F = (A - B) / A;
+    private static final double A2B2B2 = (A * A - B * B) / (B * B);
+
+    private static final double DEG_TO_RAD = Math.PI / 180.0;
+    private static final int MAX_ITERS = 20;
+    private static final double EPSILON = 1.0e-12;
+
+    private Geodesic() {
+    }
+
+    /**
+     * Default distance function
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        return vincenty(lat1, lon1, lat2, lon2);
+    }
+
+    public static double equirectangular(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLambda = normalize(Math.toRadians(lon2 - lon1));
+        double x = dLambda * Math.cos((phi1 + phi2) / 2);
+        double y = phi2 - phi1;
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDLambda = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double h = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /**
+     * Vincenty's inverse formula on the WGS84 ellipsoid
+     *
+     * Falls back to haversine for (nearly) antipodal points where the iteration
+     *   does not converge.
+     */
+    public static double vincenty(double lat1, double lon1, double lat2, double lon2) {
+        // same operations (and rounding) as Location.distanceBetween
+        double L = lon2 * DEG_TO_RAD - lon1 * DEG_TO_RAD;
+        double U1 = Math.atan((1.0 - F) * Math.tan(lat1 * DEG_TO_RAD));
+        double U2 = Math.atan((1.0 - F) * Math.tan(lat2 * DEG_TO_RAD));
+
+        double sinU1 = Math.sin(U1);
+        double cosU1 = Math.cos(U1);
+        double sinU2 = Math.sin(U2);
+        double cosU2 = Math.cos(U2);
+        double sinU1sinU2 = sinU1 * sinU2;
+        double cosU1cosU2 = cosU1 * cosU2;
+
+        double lambda = L;
+        double sinSigma = 0, cosSigma = 0, sigma = 0;
+        double cosSqAlpha = 0, cos2SM = 0;
+        for (int iter = 0; iter < MAX_ITERS; iter++) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0) {
+                return 0; // coincident points
+            }
+            cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SM = cosSqAlpha == 0 ? 0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha; // equatorial line
+
+            double C = (F / 16.0) * cosSqAlpha * (4.0 + F * (4.0 - 3.0 * cosSqAlpha));
+            double lambdaOrig = lambda;
+            lambda = L + (1.0 - C) * F * sinAlpha *
+                    (sigma + C * sinSigma * (cos2SM + C * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+            // lambda == lambdaOrig also covers 0 / 0 (points on the same meridian)
+            if (Math.abs((lambda - lambdaOrig) / lambda) < EPSILON || lambda == lambdaOrig) {
+                double uSquared = cosSqAlpha * A2B2B2;
+                double bigA = 1 + (uSquared / 16384.0) *
+                        (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+                double bigB = (uSquared / 1024.0) *
+                        (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+                double cos2SMSq = cos2SM * cos2SM;
+                double deltaSigma = bigB * sinSigma *
+                        (cos2SM + (bigB / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SMSq) -
+                                (bigB / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma) *
+                                        (-3.0 + 4.0 * cos2SMSq)));
+                return B * bigA * (sigma - deltaSigma);
+            }
+        }
+        return haversine(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * normalize angle (radians) into [-PI, PI]
+     */
+    private static double normalize(double a) {
+        if (a > Math.PI) {
+            a -= 2 * Math.PI;
+        } else if (a < -Math.PI) {
+            a += 2 * Math.PI;
+        }
+        return a;
+    }
+}
@@ -18,18 +18,35 @@ package org.runnerup.common.util;
 
 import android.annotation.TargetApi;
 import android.os.Build;
+import android.os.Handler;
 
-import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by jonas on 12/29/14.
+ *
+ * Observable value
+ *
+ * Listeners are kept in a copy-on-write array, so set() iterates a snapshot
+ *   of the listeners without allocating and listeners may (un)register from
+ *   onValueChanged().
+ * A listener is either called synchronously from set() or on a chosen
+ *   Handler/Executor. Such an asynchronous listener can be coalescing, i.e
+ *   only gets the latest value (old value being the one it last got) when
+ *   several changes happen before it runs, which also makes delivery allocation free.
+ *
+ * set() may be called from any thread. Synchronous listeners are called on
+ *   the calling thread, concurrent set() calls may hence notify them out of order.
  */
 @TargetApi(Build.VERSION_CODES.FROYO)
 public class ValueModel<T> {
 
-    private T value;
-    final private ArrayList<ChangeListener<T>> listeners =
-            new ArrayList<ChangeListener<T>>();
+    private volatile T value;
+    private final Object lock = new Object();
+
+    @SuppressWarnings("unchecked")
+    private volatile Registration<T> listeners[] = new Registration[0];
 
     public interface ChangeListener<T> {
         void onValueChanged(ValueModel<T> instance, T oldValue, T newValue);
@@ -43,24 +60,28 @@ public class ValueModel<T> {
         this.value = value;
     }
 
+    private static boolean equal(Object a, Object b) {
+        if (a == null)
+            return b == null;
+        return b != null && a.equals(b);
+    }
+
     public void set(T newValue) {
-        if (value == null && newValue == null) {
-            return;
-        } else if (value != null && newValue != null) {
-            if (value.equals(newValue))
+        T oldValue;
+        synchronized (lock) {
+            oldValue = value;
+            if (equal(oldValue, newValue))
                 return;
+            value = newValue;
         }
 
-        T oldValue = value;
-        value = newValue;
-
         /**
-         * iterate over copy so that this can be modified during iteration
+         * iterate over snapshot so that listeners can be modified during iteration
          * (i.e by onValueChanged())
          */
-        ArrayList<ChangeListener<T>> copy = new ArrayList<ChangeListener<T>>(listeners);
-        for (ChangeListener<T> l : copy) {
-            l.onValueChanged(this, oldValue, newValue);
+        final Registration<T> copy[] = listeners;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i].dispatch(oldValue, newValue);
         }
     }
 
@@ -68,17 +89,132 @@ public class ValueModel<T> {
         return value;
     }
 
+    /**
+     * Register listener called synchronously from set()
+     */
     public void registerChangeListener(ChangeListener<T> listener) {
-        if(listener == null) throw new IllegalArgumentException("listener is null");
-        listeners.add(listener);
+        register(listener, null, false);
+    }
+
+    /**
+     * Register listener called on handler
+     *
+     * @param coalesce if true, only latest value is delivered
+     */
+    public void registerChangeListener(ChangeListener<T> listener, final Handler handler,
+                                       boolean coalesce) {
+        if (handler == null) throw new IllegalArgumentException("handler is null");
+        register(listener, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        }, coalesce);
+    }
+
+    /**
+     * Register listener called on executor, the executor should run tasks
+     *   in order (e.g a single thread executor)
+     *
+     * @param coalesce if true, only latest value is delivered
+     */
+    public void registerChangeListener(ChangeListener<T> listener, Executor executor,
+                                       boolean coalesce) {
+        if (executor == null) throw new IllegalArgumentException("executor is null");
+        register(listener, executor, coalesce);
+    }
+
+    private void register(ChangeListener<T> listener, Executor executor, boolean coalesce) {
+        if (listener == null) throw new IllegalArgumentException("listener is null");
+        synchronized (lock) {
+            Registration<T> old[] = listeners;
+            @SuppressWarnings("unchecked")
+            Registration<T> res[] = new Registration[old.length + 1];
+            System.arraycopy(old, 0, res, 0, old.length);
+            res[old.length] = new Registration<T>(this, listener, executor, coalesce, value);
+            listeners = res;
+        }
     }
 
     public void unregisterChangeListener(ChangeListener<T> listener) {
-        if(listener == null) throw new IllegalArgumentException("listener is null");
-        listeners.remove(listener);
+        if (listener == null) throw new IllegalArgumentException("listener is null");
+        synchronized (lock) {
+            Registration<T> old[] = listeners;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i].listener.equals(listener)) {
+                    old[i].active = false;
+                    @SuppressWarnings("unchecked")
+                    Registration<T> res[] = new Registration[old.length - 1];
+                    System.arraycopy(old, 0, res, 0, i);
+                    System.arraycopy(old, i + 1, res, i, old.length - i - 1);
+                    listeners = res;
+                    return;
+                }
+            }
+        }
     }
 
+    @SuppressWarnings("unchecked")
     public void clearListeners() {
-        listeners.clear();
+        synchronized (lock) {
+            for (Registration<T> r : listeners) {
+                r.active = false;
+            }
+            listeners = new Registration[0];
+        }
+    }
+
+    private static final class Registration<T> implements Runnable {
+        final ValueModel<T> model;
+        final ChangeListener<T> listener;
+        final Executor executor; // null if synchronous
+        final boolean coalesce;
+        volatile boolean active = true;
+
+        /** coalescing: if run() is posted, and value last delivered (only used by run()) */
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        T delivered;
+
+        Registration(ValueModel<T> model, ChangeListener<T> listener, Executor executor,
+                     boolean coalesce, T current) {
+            this.model = model;
+            this.listener = listener;
+            this.executor = executor;
+            this.coalesce = coalesce;
+            this.delivered = current;
+        }
+
+        void dispatch(final T oldValue, final T newValue) {
+            if (executor == null) {
+                listener.onValueChanged(model, oldValue, newValue);
+            } else if (coalesce) {
+                if (scheduled.compareAndSet(false, true)) {
+                    executor.execute(this);
+                }
+            } else {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (active)
+                            listener.onValueChanged(model, oldValue, newValue);
+                    }
+                });
+            }
+        }
+
+        /**
+         * coalesced delivery, clear scheduled before reading value so that
+         *   a set() racing with this schedules a new run
+         */
+        @Override
+        public void run() {
+            scheduled.set(false);
+            T current = model.value;
+            T old = delivered;
+            if (!active || equal(old, current))
+                return;
+            delivered = current;
+            listener.onValueChanged(model, old, current);
+        }
     }
 }
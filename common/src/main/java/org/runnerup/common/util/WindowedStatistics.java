@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.runnerup.common.util;
+
+import java.util.Random;
+
+/**
+ * Order statistics (k:th value, median, trimmed mean) over the last capacity values
+ *
+ * Values are kept in a ring (for eviction) and in a treap ordered by value
+ *   where each node also keeps count and sum of its subtree.
+ * add is O(log n), get/median/trimmedMean are O(log n), no allocation after construction.
+ *
+ * Values are ordered as by Double.compare (i.e same as Arrays.sort).
+ */
+public class WindowedStatistics {
+
+    private final double ring[];
+    private int head = 0; // position of oldest value
+    private int size = 0;
+
+    /** treap nodes, index 0 is nil */
+    private final double val[];
+    private final double sum[];
+    private final int pri[];
+    private final int cnt[];
+    private final int left[];
+    private final int right[];
+    private final int free[];
+    private int freeCnt;
+    private int root = 0;
+    private final Random random = new Random();
+
+    /** results of split */
+    private int splitL;
+    private int splitR;
+
+    public WindowedStatistics(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        ring = new double[capacity];
+        val = new double[capacity + 1];
+        sum = new double[capacity + 1];
+        pri = new int[capacity + 1];
+        cnt = new int[capacity + 1];
+        left = new int[capacity + 1];
+        right = new int[capacity + 1];
+        free = new int[capacity];
+        clear();
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        root = 0;
+        freeCnt = 0;
+        for (int i = ring.length; i > 0; i--) {
+            free[freeCnt++] = i;
+        }
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a value, evicting the oldest one if window is full
+     */
+    public void add(double v) {
+        if (size == ring.length) {
+            root = remove(root, ring[head]);
+            ring[head] = v;
+            head = (head + 1) % ring.length;
+        } else {
+            ring[(head + size) % ring.length] = v;
+            size++;
+        }
+
+        int n = free[--freeCnt];
+        val[n] = v;
+        sum[n] = v;
+        cnt[n] = 1;
+        pri[n] = random.nextInt();
+        left[n] = 0;
+        right[n] = 0;
+        split(root, v);
+        root = merge(merge(splitL, n), splitR);
+    }
+
+    /**
+     * @return k:th smallest value (0 based)
+     */
+    public double get(int k) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException("k: " + k + ", size: " + size);
+        int t = root;
+        while (true) {
+            int l = cnt[left[t]];
+            if (k < l) {
+                t = left[t];
+            } else if (k == l) {
+                return val[t];
+            } else {
+                k -= l + 1;
+                t = right[t];
+            }
+        }
+    }
+
+    public double median() {
+        if ((size & 1) == 1)
+            return get(size / 2);
+        return (get(size / 2 - 1) + get(size / 2)) / 2;
+    }
+
+    /**
+     * @return sum of the k smallest values
+     */
+    public double sumSmallest(int k) {
+        double acc = 0;
+        int t = root;
+        while (k > 0 && t != 0) {
+            int l = left[t];
+            if (k <= cnt[l]) {
+                t = l;
+            } else {
+                acc += sum[l] + val[t];
+                k -= cnt[l] + 1;
+                t = right[t];
+            }
+        }
+        return acc;
+    }
+
+    public double mean() {
+        return sum[root] / size;
+    }
+
+    /**
+     * @return mean of values, ignoring the skip lowest and skip highest
+     */
+    public double trimmedMean(int skip) {
+        int n = size - 2 * skip;
+        return (sumSmallest(size - skip) - sumSmallest(skip)) / n;
+    }
+
+    private void update(int t) {
+        int l = left[t];
+        int r = right[t];
+        cnt[t] = 1 + cnt[l] + cnt[r];
+        sum[t] = val[t] + sum[l] + sum[r];
+    }
+
+    /**
+     * split t into splitL (values < v) and splitR (values >= v)
+     */
+    private void split(int t, double v) {
+        if (t == 0) {
+            splitL = 0;
+            splitR = 0;
+        } else if (Double.compare(val[t], v) < 0) {
+            split(right[t], v);
+            right[t] = splitL;
+            update(t);
+            splitL = t;
+        } else {
+            split(left[t], v);
+            left[t] = splitR;
+            update(t);
+            splitR = t;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == 0)
+            return b;
+        if (b == 0)
+            return a;
+        if (pri[a] > pri[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        } else {
+            left[b] = merge(a, left[b]);
+            update(b);
+            return b;
+        }
+    }
+
+    /**
+     * remove one node with value v from t
+     */
+    private int remove(int t, double v) {
+        int c = Double.compare(v, val[t]);
+        if (c == 0) {
+            int res = merge(left[t], right[t]);
+            free[freeCnt++] = t;
+            return res;
+        }
+        if (c < 0) {
+            left[t] = remove(left[t], v);
+        } else {
+            right[t] = remove(right[t], v);
+        }
+        update(t);
+        return t;
+    }
+}
@@ -0,0 +1,71 @@
+package org.runnerup.common.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CompactTrackTest {
+
+    @Test
+    public void emptyTrackShouldRoundTrip() {
+        CompactTrack.Decoder decoder = new CompactTrack.Decoder(new CompactTrack.Encoder().toByteArray());
+
+        assertThat(decoder.getCount(), is(0));
+        assertThat(decoder.moveToNext(), is(false));
+    }
+
+    @Test
+    public void shouldRoundTripWithinPrecision() {
+        final int n = 3600;
+        Random rnd = new Random(1);
+        long time[] = new long[n];
+        double lat[] = new double[n];
+        double lon[] = new double[n];
+        double alt[] = new double[n];
+        int hr[] = new int[n];
+
+        CompactTrack.Encoder encoder = new CompactTrack.Encoder();
+        long t = 1450000000000L;
+        double la = 59.3293, lo = 18.0686, a = 20;
+        for (int i = 0; i < n; i++) {
+            t += 1000 + rnd.nextInt(50);
+            la += rnd.nextGaussian() * 3e-5;
+            lo += rnd.nextGaussian() * 3e-5;
+            a += rnd.nextGaussian() * 0.3;
+            time[i] = t;
+            lat[i] = la;
+            lon[i] = lo;
+            alt[i] = (i % 10) == 0 ? Double.NaN : a;
+            hr[i] = i < 5 ? CompactTrack.NULL_INT : 140 + rnd.nextInt(20);
+            encoder.add(i == 0 ? 1 : 3, time[i], lat[i], lon[i], alt[i], Double.NaN, 3.25,
+                    Double.NaN, hr[i], CompactTrack.NULL_INT);
+        }
+        byte buf[] = encoder.toByteArray();
+        // a location row is typically 60-100 bytes
+        assertTrue("size: " + buf.length, buf.length < 12 * n);
+
+        CompactTrack.Decoder decoder = new CompactTrack.Decoder(buf);
+        assertThat(decoder.getCount(), is(n));
+        for (int i = 0; i < n; i++) {
+            assertThat(decoder.moveToNext(), is(true));
+            assertThat(decoder.getType(), is(i == 0 ? 1 : 3));
+            assertThat(decoder.getTime(), is(time[i]));
+            assertEquals(lat[i], decoder.getLatitude(), 1e-7);
+            assertEquals(lon[i], decoder.getLongitude(), 1e-7);
+            assertThat(decoder.isNull(CompactTrack.ALTITUDE), is(Double.isNaN(alt[i])));
+            if (!Double.isNaN(alt[i])) {
+                assertEquals(alt[i], decoder.getDouble(CompactTrack.ALTITUDE), 0.01);
+            }
+            assertThat(decoder.isNull(CompactTrack.ACCURACY), is(true));
+            assertEquals(3.25, decoder.getDouble(CompactTrack.SPEED), 0.001);
+            assertThat(decoder.getInt(CompactTrack.HR), is(hr[i]));
+            assertThat(decoder.getInt(CompactTrack.CADENCE), is(CompactTrack.NULL_INT));
+        }
+        assertThat(decoder.moveToNext(), is(false));
+    }
+}
@@ -0,0 +1,66 @@
+package org.runnerup.common.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class GeodesicTest {
+
+    /** Flinders Peak -> Buninyong, reference value from Vincenty's paper */
+    private static final double LAT1 = -37.95103342;
+    private static final double LON1 = 144.42486789;
+    private static final double LAT2 = -37.65282114;
+    private static final double LON2 = 143.92649554;
+    private static final double DISTANCE = 54972.271;
+
+    @Test
+    public void vincentyShouldMatchReference() {
+        assertEquals(DISTANCE, Geodesic.vincenty(LAT1, LON1, LAT2, LON2), 0.01);
+        assertEquals(DISTANCE, Geodesic.vincenty(LAT2, LON2, LAT1, LON1), 0.01);
+    }
+
+    @Test
+    public void distanceShouldBeVincenty() {
+        assertThat(Geodesic.distance(LAT1, LON1, LAT2, LON2),
+                is(Geodesic.vincenty(LAT1, LON1, LAT2, LON2)));
+    }
+
+    @Test
+    public void approximationsShouldBeCloseForLongDistance() {
+        assertEquals(DISTANCE, Geodesic.haversine(LAT1, LON1, LAT2, LON2), DISTANCE * 0.005);
+        assertEquals(DISTANCE, Geodesic.equirectangular(LAT1, LON1, LAT2, LON2), DISTANCE * 0.005);
+    }
+
+    @Test
+    public void approximationsShouldBeCloseForConsecutiveFixes() {
+        // ~10m step, typical distance between two gps fixes
+        double lat = 59.3293, lon = 18.0686;
+        double lat2 = lat + 0.00007, lon2 = lon + 0.00009;
+        double d = Geodesic.vincenty(lat, lon, lat2, lon2);
+        assertEquals(d, Geodesic.haversine(lat, lon, lat2, lon2), 0.05);
+        assertEquals(d, Geodesic.equirectangular(lat, lon, lat2, lon2), 0.05);
+    }
+
+    @Test
+    public void shouldHandleSamePoint() {
+        assertThat(Geodesic.vincenty(LAT1, LON1, LAT1, LON1), is(0.0));
+        assertThat(Geodesic.haversine(LAT1, LON1, LAT1, LON1), is(0.0));
+        assertThat(Geodesic.equirectangular(LAT1, LON1, LAT1, LON1), is(0.0));
+    }
+
+    @Test
+    public void shouldHandleDateLine() {
+        double d = Geodesic.vincenty(0, 179.9999, 0, -179.9999);
+        assertEquals(22.26, d, 0.01);
+        assertEquals(d, Geodesic.equirectangular(0, 179.9999, 0, -179.9999), 0.1);
+        assertEquals(d, Geodesic.haversine(0, 179.9999, 0, -179.9999), 0.1);
+    }
+
+    @Test
+    public void shouldFallBackForAntipodalPoints() {
+        double d = Geodesic.vincenty(0, 0, 0.5, 179.7);
+        assertEquals(Math.PI * Geodesic.EARTH_RADIUS, d, Math.PI * Geodesic.EARTH_RADIUS * 0.01);
+    }
+}
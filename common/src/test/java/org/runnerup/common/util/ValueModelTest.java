@@ -3,12 +3,21 @@ package org.runnerup.common.util;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -152,6 +161,184 @@ public class ValueModelTest {
         assertThat(valueModel.get(), is(equalTo(value)));
     }
 
+    @Test
+    public void shouldAllowUnregisterFromListener() {
+        TestObject newValue = new TestObject();
+        final ValueModel.ChangeListener<TestObject> listener2 = mock(ValueModel.ChangeListener.class);
+        ValueModel.ChangeListener<TestObject> listener1 = new ValueModel.ChangeListener<TestObject>() {
+            @Override
+            public void onValueChanged(ValueModel<TestObject> instance, TestObject oldValue, TestObject newValue) {
+                instance.unregisterChangeListener(listener2);
+            }
+        };
+        sut.registerChangeListener(listener1);
+        sut.registerChangeListener(listener2);
+
+        sut.set(newValue);
+        sut.set(new TestObject());
+
+        // listener2 is in snapshot for first set, but not second
+        verify(listener2).onValueChanged(sut, null, newValue);
+        verify(listener2, never()).onValueChanged(eq(sut), eq(newValue), (TestObject) anyObject());
+    }
+
+    @Test
+    public void shouldDeliverEveryChangeOnExecutor() {
+        QueueExecutor executor = new QueueExecutor();
+        TestObject value1 = new TestObject();
+        TestObject value2 = new TestObject();
+        ValueModel.ChangeListener<TestObject> listener = mock(ValueModel.ChangeListener.class);
+        sut.registerChangeListener(listener, executor, false);
+
+        sut.set(value1);
+        sut.set(value2);
+        verify(listener, never()).onValueChanged(eq(sut), (TestObject) anyObject(), (TestObject) anyObject());
+
+        executor.runAll();
+        verify(listener).onValueChanged(sut, null, value1);
+        verify(listener).onValueChanged(sut, value1, value2);
+    }
+
+    @Test
+    public void shouldOnlyDeliverLatestValueWhenCoalescing() {
+        QueueExecutor executor = new QueueExecutor();
+        TestObject value1 = new TestObject();
+        TestObject value2 = new TestObject();
+        TestObject value3 = new TestObject();
+        ValueModel.ChangeListener<TestObject> listener = mock(ValueModel.ChangeListener.class);
+        sut.registerChangeListener(listener, executor, true);
+
+        sut.set(value1);
+        sut.set(value2);
+        assertThat(executor.tasks.size(), is(1));
+        executor.runAll();
+        verify(listener).onValueChanged(sut, null, value2);
+
+        sut.set(value3);
+        executor.runAll();
+        verify(listener).onValueChanged(sut, value2, value3);
+        verify(listener, never()).onValueChanged(eq(sut), (TestObject) anyObject(), eq(value1));
+    }
+
+    @Test
+    public void shouldNotDeliverToCoalescingListenerIfValueIsBack() {
+        QueueExecutor executor = new QueueExecutor();
+        TestObject value1 = new TestObject();
+        ValueModel.ChangeListener<TestObject> listener = mock(ValueModel.ChangeListener.class);
+        sut.registerChangeListener(listener, executor, true);
+
+        sut.set(value1);
+        sut.set(null);
+        executor.runAll();
+
+        verify(listener, never()).onValueChanged(eq(sut), (TestObject) anyObject(), (TestObject) anyObject());
+    }
+
+    @Test
+    public void shouldNotDeliverOnExecutorAfterUnregister() {
+        QueueExecutor executor = new QueueExecutor();
+        ValueModel.ChangeListener<TestObject> listener = mock(ValueModel.ChangeListener.class);
+        sut.registerChangeListener(listener, executor, false);
+
+        sut.set(new TestObject());
+        sut.unregisterChangeListener(listener);
+        executor.runAll();
+
+        verify(listener, never()).onValueChanged(eq(sut), (TestObject) anyObject(), (TestObject) anyObject());
+    }
+
+    @Test
+    public void shouldDeliverConsistentChainUnderConcurrentSetAndRegister() throws Exception {
+        final int writers = 4;
+        final int sets = 20000;
+        final ValueModel<Integer> model = new ValueModel<Integer>(-1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<Integer> delivered = new ArrayList<Integer>();
+        final AtomicInteger chainErrors = new AtomicInteger();
+        final AtomicInteger syncCalls = new AtomicInteger();
+
+        model.registerChangeListener(new ValueModel.ChangeListener<Integer>() {
+            Integer last = -1;
+
+            @Override
+            public void onValueChanged(ValueModel<Integer> instance, Integer oldValue, Integer newValue) {
+                if (!oldValue.equals(last) || oldValue.equals(newValue))
+                    chainErrors.incrementAndGet();
+                last = newValue;
+                delivered.add(newValue);
+            }
+        }, executor, true);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(writers + 1);
+        for (int w = 0; w < writers; w++) {
+            final int id = w;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < sets; i++) {
+                            model.set(id * sets + i);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                ValueModel.ChangeListener<Integer> l = new ValueModel.ChangeListener<Integer>() {
+                    @Override
+                    public void onValueChanged(ValueModel<Integer> instance, Integer oldValue, Integer newValue) {
+                        syncCalls.incrementAndGet();
+                    }
+                };
+                try {
+                    start.await();
+                    for (int i = 0; i < 5000; i++) {
+                        model.registerChangeListener(l);
+                        model.unregisterChangeListener(l);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        }.start();
+
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertThat(chainErrors.get(), is(0));
+        assertTrue(syncCalls.get() <= writers * sets);
+        assertTrue(delivered.size() <= writers * sets);
+        assertThat(delivered.get(delivered.size() - 1), is(model.get()));
+    }
+
+    /**
+     * Executor that runs tasks when told to
+     */
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
     private class TestObject {
         private final UUID random;
 
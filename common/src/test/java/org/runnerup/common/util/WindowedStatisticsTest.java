@@ -0,0 +1,72 @@
+package org.runnerup.common.util;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class WindowedStatisticsTest {
+
+    @Test
+    public void shouldMatchSortedWindow() {
+        Random rnd = new Random(2);
+        for (int w : new int[] { 1, 2, 10, 60, 600 }) {
+            WindowedStatistics sut = new WindowedStatistics(w);
+            ArrayDeque<Double> window = new ArrayDeque<>();
+            for (int i = 0; i < 3 * w + 100; i++) {
+                // mix in small integers to get plenty of duplicates
+                double v = rnd.nextInt(4) == 0 ? rnd.nextInt(5) : rnd.nextGaussian() * 10;
+                sut.add(v);
+                window.add(v);
+                if (window.size() > w)
+                    window.poll();
+
+                double sorted[] = new double[window.size()];
+                int j = 0;
+                for (double d : window)
+                    sorted[j++] = d;
+                Arrays.sort(sorted);
+
+                assertThat(sut.size(), is(sorted.length));
+                int k = rnd.nextInt(sorted.length);
+                assertThat(sut.get(k), is(sorted[k]));
+
+                int skip = (5 * sorted.length) / 100;
+                double sum = 0;
+                for (j = skip; j < sorted.length - skip; j++)
+                    sum += sorted[j];
+                assertEquals(sum / (sorted.length - 2 * skip), sut.trimmedMean(skip), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void shouldComputeMedian() {
+        WindowedStatistics sut = new WindowedStatistics(4);
+        sut.add(5);
+        sut.add(1);
+        sut.add(3);
+        assertThat(sut.median(), is(3.0));
+        sut.add(10);
+        assertThat(sut.median(), is(4.0));
+        sut.add(2); // evicts 5
+        assertThat(sut.median(), is(2.5));
+    }
+
+    @Test
+    public void clearShouldEmptyWindow() {
+        WindowedStatistics sut = new WindowedStatistics(3);
+        for (int i = 0; i < 10; i++)
+            sut.add(i);
+        sut.clear();
+        assertThat(sut.size(), is(0));
+        sut.add(42);
+        assertThat(sut.get(0), is(42.0));
+        assertThat(sut.mean(), is(42.0));
+    }
+}
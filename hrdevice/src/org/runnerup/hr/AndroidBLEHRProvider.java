@@ -82,6 +82,7 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
     private BluetoothDevice btDevice = null;
     private int hrValue = 0;
     private long hrTimestamp = 0;
+    private long rrIntervals[] = null; // ms, of latest measurement
     private int batteryLevel = -1;
     private boolean hasBatteryService = false;
 
@@ -168,12 +169,30 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
                     return;
                 }
 
-                if (isHeartRateInUINT16(arg0.getValue()[0])) {
+                final byte flags = arg0.getValue()[0];
+                int offset;
+                if (isHeartRateInUINT16(flags)) {
                     hrValue = arg0.getIntValue(
                             BluetoothGattCharacteristic.FORMAT_UINT16, 1);
+                    offset = 3;
                 } else {
                     hrValue = arg0.getIntValue(
                             BluetoothGattCharacteristic.FORMAT_UINT8, 1);
+                    offset = 2;
+                }
+                if ((flags & 0x08) != 0) {
+                    // energy expended, not used
+                    offset += 2;
+                }
+                long rr[] = null;
+                if ((flags & 0x10) != 0 && length >= offset + 2) {
+                    rr = new long[(length - offset) / 2];
+                    for (int i = 0; i < rr.length; i++, offset += 2) {
+                        // unit is 1/1024 s
+                        int raw = arg0.getIntValue(
+                                BluetoothGattCharacteristic.FORMAT_UINT16, offset);
+                        rr[i] = (raw * 1000L + 512) / 1024;
+                    }
                 }
 
                 if (hrValue == 0) {
@@ -187,6 +206,13 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
                 }
 
                 hrTimestamp = System.currentTimeMillis();
+                rrIntervals = rr;
+
+                HRData data = new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
+                if (rr != null) {
+                    data.setRrIntervals(rr);
+                }
+                reportHRData(data);
 
                 if (mIsConnecting) {
                     reportConnected(true);
@@ -725,7 +751,12 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
             return null;
         }
 
-        return new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
+        HRData data = new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
+        long rr[] = rrIntervals;
+        if (rr != null) {
+            data.setRrIntervals(rr);
+        }
+        return data;
     }
 
     @Override
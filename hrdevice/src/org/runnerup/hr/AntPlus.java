@@ -282,6 +282,7 @@ public class AntPlus extends BtHRBase {
 
             hrValue = arg2;
             hrTimestamp = System.currentTimeMillis();
+            reportHRData(new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp));
 
             if (mIsConnecting) {
                 reportConnected(true);
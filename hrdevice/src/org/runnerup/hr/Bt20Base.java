@@ -468,30 +468,27 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         private void readHR() {
-            Integer hr[] = new Integer[1];
-            final int frameSize = getFrameSize();
-            byte[] buffer = new byte[2 * frameSize]; // was new byte[2 * frameSize]
-            int bytesInBuffer = 0;
+            final FrameDecoder decoder = new FrameDecoder(getFrameSpec());
 
             // Keep listening to the inputStream while connected
             while (true) {
                 try {
                     // Read from the inputStream
-                    int bytesRead = inputStream.read(buffer, bytesInBuffer, buffer.length
-                            - bytesInBuffer);
+                    int bytesRead = decoder.read(inputStream);
 
                     if (bytesRead == -1) {
                         throw new IOException("EOF reached.");
                     }
 
-                    bytesInBuffer += bytesRead;
-                    int bytesUsed = parseBuffer(buffer, bytesInBuffer, hr);
-                    if (hr[0] != null) {
-                        hrValue = hr[0];
+                    while (decoder.next()) {
+                        hrValue = decoder.getHeartRate();
                         hrTimestamp = System.currentTimeMillis();
+                        if (hrValue > 0) {
+                            reportHRData(new HRData().setHeartRate(hrValue)
+                                    .setTimestampEstimate(hrTimestamp));
+                        }
 
-                         if (hrValue > 0 && mIsConnecting) {
-//                        if (hrValue > 0) {
+                        if (hrValue > 0 && mIsConnecting) {
                             log("hrValue: " + hrValue + " => reportConnected");
                             reportConnected(true);
                         }
@@ -501,24 +498,12 @@ public abstract class Bt20Base extends BtHRBase {
                             closeSocket(bluetoothSocket);
                             if (mIsConnecting) {
                                 reportConnected(false);
-                                return;
                             } else if (mIsConnected) {
                                 reportDisconnected(true);
-                                return;
                             }
-                            break;
+                            return;
                         }
                     }
-
-                    if ((bytesUsed > 0) && (bytesUsed < bytesInBuffer)) {
-                        System.arraycopy(buffer, bytesUsed, buffer, 0, bytesInBuffer - bytesUsed);
-                        bytesInBuffer -= bytesUsed;
-                    } else if (bytesUsed > bytesInBuffer) {
-                        bytesInBuffer = 0;
-                    } else if (bytesUsed == 0 && bytesInBuffer == buffer.length) {
-                        log("reset");
-                        bytesInBuffer = 0;
-                    }
                 } catch (IOException e) {
                     closeStream(inputStream);
                     closeSocket(bluetoothSocket);
@@ -562,50 +547,13 @@ public abstract class Bt20Base extends BtHRBase {
         }
     }
 
-    abstract static class Bt20BaseOld extends Bt20Base {
-
-        public Bt20BaseOld(Context ctx) {
-            super(ctx);
-        }
-
-        @Override
-        public int parseBuffer(byte[] buffer, int bytesInBuffer, Integer[] hr) {
-            hr[0] = null;
-            if (bytesInBuffer < getFrameSize())
-                return 0;
-
-            int hrValue = parseBuffer(buffer);
-            if (hrValue > 0) {
-                hr[0] = hrValue;
-                return bytesInBuffer; // use all of buffer
-            } else {
-                int index = findNextAlignment(buffer);
-                if (index < 0)
-                    return bytesInBuffer;
-                return index;
-            }
-        }
-
-        public abstract int getFrameSize();
-
-        public abstract int parseBuffer(byte[] buffer);
-
-        public abstract int findNextAlignment(byte buffer[]);
-    }
-
-    public abstract int getFrameSize();
-
-    public abstract int parseBuffer(byte[] buffer, int bytesInBuffer, Integer[] hr);
-
-    public static class ZephyrHRM extends Bt20BaseOld {
+    /**
+     * @return format of frames sent by device
+     */
+    public abstract FrameDecoder.Spec getFrameSpec();
 
-        static final byte ZEPHYR_HXM_BYTE_STX = 0;
-        static final byte ZEPHYR_HXM_BYTE_HR = 12;
-        static final byte ZEPHYR_HXM_BYTE_CRC = 58;
-        static final byte ZEPHYR_HXM_BYTE_ETX = 59;
+    public static class ZephyrHRM extends Bt20Base {
 
-        static final byte ZEPHYR_START_BYTE = 0x02;
-        static final byte ZEPHYR_END_BYTE = 0x03;
         public static final String NAME = "Zephyr";
 
         public ZephyrHRM(Context ctx) {
@@ -623,71 +571,13 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         @Override
-        public int getFrameSize() {
-            return ZEPHYR_HXM_BYTE_ETX + 1;
-        }
-
-        @Override
-        public int parseBuffer(byte[] buffer) {
-            // Check STX (Start of Text), ETX (End of Text) and CRC Checksum
-            boolean ok = buffer.length > ZEPHYR_HXM_BYTE_ETX
-                    && getByte(buffer[ZEPHYR_HXM_BYTE_STX]) == ZEPHYR_START_BYTE
-                    && getByte(buffer[ZEPHYR_HXM_BYTE_ETX]) == ZEPHYR_END_BYTE
-                    && calcCrc8(buffer, 3, 55) == getByte(buffer[ZEPHYR_HXM_BYTE_CRC]);
-
-            if (!ok) {
-                log("HxM insanity! "
-                        + (buffer.length > ZEPHYR_HXM_BYTE_ETX) + " "
-                        + getByte(buffer[ZEPHYR_HXM_BYTE_STX]) + "=="
-                        + ZEPHYR_START_BYTE + " "
-                        + getByte(buffer[ZEPHYR_HXM_BYTE_ETX]) + "=="
-                        + ZEPHYR_END_BYTE + " " + "calc="
-                        + calcCrc8(buffer, 3, 55) + " " + "given="
-                        + getByte(buffer[ZEPHYR_HXM_BYTE_CRC]));
-                return -1;
-            }
-
-            return getByte(buffer[ZEPHYR_HXM_BYTE_HR]);
-        }
-
-        @Override
-        public int findNextAlignment(byte[] buffer) {
-            for (int i = 0; i < buffer.length - 1; i++) {
-                if (getByte(buffer[i]) == ZEPHYR_END_BYTE &&
-                        getByte(buffer[i + 1]) == ZEPHYR_START_BYTE) {
-                    return i;
-                }
-            }
-            return -1;
+        public FrameDecoder.Spec getFrameSpec() {
+            return Bt20FrameSpecs.ZEPHYR;
         }
-
-        private static int calcCrc8(byte buffer[], @SuppressWarnings("SameParameterValue") int start, @SuppressWarnings("SameParameterValue") int length) {
-            int crc = 0x0;
-
-            for (int i = start; i < (start + length); i++) {
-                crc ^= getByte(buffer[i]);
-                for (int b = 0; b <= 7; b++) {
-                    if ((crc & 1) != 0) {
-                        crc = ((crc >> 1) ^ 0x8c);
-                    } else {
-                        crc = (crc >> 1);
-                    }
-                }
-            }
-            return crc;
-        }
-
     }
 
-    public static class RawSerialHRMold extends Bt20BaseOld {
-
-        static final byte RAW_SER_HXM_BYTE_STX = 0;
-        static final byte RAW_SER_HXM_BYTE_HR = 1;
-        static final byte RAW_SER_HXM_BYTE_CRC = 2;
-        static final byte RAW_SER_HXM_BYTE_ETX = 3;
+    public static class RawSerialHRMold extends Bt20Base {
 
-        static final byte RAW_SER_START_BYTE = 97;
-        static final byte RAW_SER_END_BYTE = 100;
         public static final String NAME = "Raw Serial";
 
         public RawSerialHRMold(Context ctx) {
@@ -705,61 +595,9 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         @Override
-        public int getFrameSize() {
-            return RAW_SER_HXM_BYTE_ETX; // + 1;
+        public FrameDecoder.Spec getFrameSpec() {
+            return Bt20FrameSpecs.RAW_SERIAL_OLD;
         }
-
-        @Override
-        public int parseBuffer(byte[] buffer) {
-            // Check STX (Start of Text), ETX (End of Text) and CRC Checksum
-
-            boolean ok = buffer.length > RAW_SER_HXM_BYTE_ETX
-                    && getByte(buffer[RAW_SER_HXM_BYTE_STX]) == RAW_SER_START_BYTE
-                    && getByte(buffer[RAW_SER_HXM_BYTE_ETX]) == RAW_SER_END_BYTE;
-            // && calcCrc8(buffer, 3, 55) == getByte(buffer[ZEPHYR_HXM_BYTE_CRC]);
-
-            if (!ok) {
-                log("HxM insanity! "
-                        + (buffer.length > RAW_SER_HXM_BYTE_ETX) + " "
-                        + getByte(buffer[RAW_SER_HXM_BYTE_STX]) + "=="
-                        + RAW_SER_START_BYTE + " "
-                        + getByte(buffer[RAW_SER_HXM_BYTE_ETX]) + "=="
-                        + RAW_SER_END_BYTE + " " + "calc="
-                        // + calcCrc8(buffer, 3, 55) + " " + "given="
-                        + getByte(buffer[RAW_SER_HXM_BYTE_CRC]));
-                return -1;
-            }
-            log("HxM good!!!");
-            return getByte(buffer[RAW_SER_HXM_BYTE_HR]);
-        }
-
-        @Override
-        public int findNextAlignment(byte[] buffer) {
-            for (int i = 0; i < buffer.length - 1; i++) {
-                if (getByte(buffer[i]) == RAW_SER_END_BYTE &&
-                        getByte(buffer[i + 1]) == RAW_SER_START_BYTE) {
-                    return i + 1;
-                }
-            }
-            return -1;
-        }
-
-        private static int calcCrc8(byte buffer[], @SuppressWarnings("SameParameterValue") int start, @SuppressWarnings("SameParameterValue") int length) {
-            int crc = 0x0;
-
-            for (int i = start; i < (start + length); i++) {
-                crc ^= getByte(buffer[i]);
-                for (int b = 0; b <= 7; b++) {
-                    if ((crc & 1) != 0) {
-                        crc = ((crc >> 1) ^ 0x8c);
-                    } else {
-                        crc = (crc >> 1);
-                    }
-                }
-            }
-            return crc;
-        }
-
     }
 
     public static class PolarHRM extends Bt20Base {
@@ -781,56 +619,13 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         @Override
-        public int getFrameSize() {
-            return 16;
-        }
-
-        private boolean startOfMessage(byte buffer[], int bytesInBuffer, int pos) {
-            if (bytesInBuffer < pos + 4)
-                return false;
-
-            //noinspection PointlessArithmeticExpression
-            int b0 = getByte(buffer[pos + 0]);
-            int b1 = getByte(buffer[pos + 1]); // len
-            int b2 = getByte(buffer[pos + 2]);
-            int b3 = getByte(buffer[pos + 3]);
-            if (b0 != 0xFE) {
-                return false;
-            }
-
-            if ((0xFF - b1) != b2) {
-                return false;
-            }
-
-            if (b3 >= 16) {
-                return false;
-            }
-
-            //noinspection RedundantIfStatement
-            if (bytesInBuffer < pos + b1)
-                return false;
-
-            return true;
-        }
-
-        @Override
-        public int parseBuffer(byte[] buffer, int bytesInBuffer, Integer hrVal[]) {
-            hrVal[0] = null;
-            for (int i = 0; i < bytesInBuffer; i++) {
-                if (startOfMessage(buffer, bytesInBuffer, i)) {
-                    int bytesUsed = getByte(buffer[i + 1]);
-                    hrVal[0] = getByte(buffer[i + 5]);
-                    return bytesUsed;
-                }
-            }
-            return 0;
+        public FrameDecoder.Spec getFrameSpec() {
+            return Bt20FrameSpecs.POLAR;
         }
     }
 
     public static class StHRMv1 extends Bt20Base {
 
-        static final int FRAME_SIZE = 17;
-        static final int START_BYTE = 250;
         public static final String NAME = "SportTracker HRM v1";
 
         public StHRMv1(Context ctx) {
@@ -848,46 +643,8 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         @Override
-        public int getFrameSize() {
-            return FRAME_SIZE;
-        }
-
-        private boolean startOfMessage(byte buffer[], int bytesInBuffer, int pos) {
-            if (bytesInBuffer < pos + FRAME_SIZE)
-                return false;
-
-            //noinspection PointlessArithmeticExpression
-            int b0 = getByte(buffer[pos + 0]);
-            int b1 = getByte(buffer[pos + 1]);
-            int b2 = getByte(buffer[pos + 2]);
-            if (b0 != START_BYTE) {
-                return false;
-            }
-
-            if ((0xFF - b1) != b2) {
-                return false;
-            }
-
-            int len = b1 >> 2;
-            //noinspection RedundantIfStatement
-            if (bytesInBuffer < pos + len) {
-                return false;
-            }
-
-            return true;
-        }
-
-        @Override
-        public int parseBuffer(byte[] buffer, int bytesInBuffer, Integer hrVal[]) {
-            hrVal[0] = null;
-            for (int i = 0; i < bytesInBuffer; i++) {
-                if (startOfMessage(buffer, bytesInBuffer, i)) {
-                    int bytesUsed = getByte(buffer[i + 1]) >> 2;
-                    hrVal[0] = getByte(buffer[i + 5]);
-                    return bytesUsed;
-                }
-            }
-            return 0;
+        public FrameDecoder.Spec getFrameSpec() {
+            return Bt20FrameSpecs.ST_HRM_V1;
         }
     }
 
@@ -910,65 +667,11 @@ public abstract class Bt20Base extends BtHRBase {
         }
 
         @Override
-        public int getFrameSize() {
-            return 16;
-        }
-
-        private boolean startOfMessage(byte buffer[], int bytesInBuffer, int pos) {
-            if (bytesInBuffer < pos + 4)
-                return false;
-
-            //noinspection PointlessArithmeticExpression
-            int b0 = getByte(buffer[pos + 0]);
-            int b1 = getByte(buffer[pos + 1]); // len
-            int b2 = getByte(buffer[pos + 2]);
-            int b3 = getByte(buffer[pos + 3]);
-            if (b0 != 0x61) {
-                return false;
-            }else{
-                int a =3;
-            }
-
-//            if ((0xFF - b1) != b2) {
-//                return false;
-//            }
-
-            if (b2 != 0x63) {
-                return false;
-            }
-
-            if (b3 != 0x64) {
-                return false;
-            }
-
-            //noinspection RedundantIfStatement
-            // if (bytesInBuffer < pos + b1)
-            //     return false;
-
-            return true;
-        }
-
-        @Override
-        public int parseBuffer(byte[] buffer, int bytesInBuffer, Integer hrVal[]) {
-            hrVal[0] = null;
-            for (int i = 0; i < bytesInBuffer; i++) {
-                boolean validMessage = startOfMessage(buffer, bytesInBuffer, i);
-                // if (startOfMessage(buffer, bytesInBuffer, i)) {
-                if (validMessage) {
-                    int bytesUsed = getByte(buffer[i + 3]);
-                    hrVal[0] = getByte(buffer[i + 1 ]);
-                    // hrVal[0] = 100;
-                    return bytesUsed;
-                }
-            }
-            return 0;
+        public FrameDecoder.Spec getFrameSpec() {
+            return Bt20FrameSpecs.RAW_SERIAL;
         }
     }
 
-    private static int getByte(byte b) {
-        return b & 0xFF;
-    }
-
     public static HRDeviceRef createDeviceRef(String providerName, BluetoothDevice device) {
         return HRDeviceRef.create(providerName, device.getName(), device.getAddress());
     }
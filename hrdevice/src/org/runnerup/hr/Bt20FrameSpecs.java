@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.hr;
+
+/**
+ * Frame formats of the BT 2.0 HR straps supported by {@link Bt20Base}
+ */
+final class Bt20FrameSpecs {
+
+    private Bt20FrameSpecs() {
+    }
+
+    /**
+     * Zephyr HxM: STX, msg id, len, ..., hr at 12, ..., crc8 of 3..57, ETX
+     */
+    static final FrameDecoder.Spec ZEPHYR = new FrameDecoder.Spec() {
+        static final int BYTE_HR = 12;
+        static final int BYTE_CRC = 58;
+        static final int BYTE_ETX = 59;
+        static final int START_BYTE = 0x02;
+        static final int END_BYTE = 0x03;
+
+        @Override
+        public int getHeaderSize() {
+            return 1;
+        }
+
+        @Override
+        public int getMaxFrameSize() {
+            return BYTE_ETX + 1;
+        }
+
+        @Override
+        public int frameLength(FrameDecoder in) {
+            return in.get(0) == START_BYTE ? BYTE_ETX + 1 : -1;
+        }
+
+        @Override
+        public boolean isValid(FrameDecoder in, int length) {
+            return in.get(BYTE_ETX) == END_BYTE && calcCrc8(in, 3, 55) == in.get(BYTE_CRC);
+        }
+
+        @Override
+        public int getHeartRate(FrameDecoder in, int length) {
+            return in.get(BYTE_HR);
+        }
+    };
+
+    /**
+     * Polar WearLink: 0xFE, len, 0xFF - len, seq (< 16), status, hr, ...
+     */
+    static final FrameDecoder.Spec POLAR = new FrameDecoder.Spec() {
+        @Override
+        public int getHeaderSize() {
+            return 4;
+        }
+
+        @Override
+        public int getMaxFrameSize() {
+            return 0xFF;
+        }
+
+        @Override
+        public int frameLength(FrameDecoder in) {
+            int len = in.get(1);
+            if (in.get(0) != 0xFE || in.get(2) != 0xFF - len || in.get(3) >= 16 || len < 6)
+                return -1;
+            return len;
+        }
+
+        @Override
+        public boolean isValid(FrameDecoder in, int length) {
+            return true;
+        }
+
+        @Override
+        public int getHeartRate(FrameDecoder in, int length) {
+            return in.get(5);
+        }
+    };
+
+    /**
+     * SportTracker HRM v1: 0xFA, len << 2, 0xFF - (len << 2), ..., hr at 5, ...
+     */
+    static final FrameDecoder.Spec ST_HRM_V1 = new FrameDecoder.Spec() {
+        @Override
+        public int getHeaderSize() {
+            return 3;
+        }
+
+        @Override
+        public int getMaxFrameSize() {
+            return 0xFF >> 2;
+        }
+
+        @Override
+        public int frameLength(FrameDecoder in) {
+            int b1 = in.get(1);
+            if (in.get(0) != 0xFA || in.get(2) != 0xFF - b1 || (b1 >> 2) < 6)
+                return -1;
+            return b1 >> 2;
+        }
+
+        @Override
+        public boolean isValid(FrameDecoder in, int length) {
+            return true;
+        }
+
+        @Override
+        public int getHeartRate(FrameDecoder in, int length) {
+            return in.get(5);
+        }
+    };
+
+    /**
+     * Raw serial: 'a', hr, 'c', 'd'
+     */
+    static final FrameDecoder.Spec RAW_SERIAL = new FrameDecoder.Spec() {
+        @Override
+        public int getHeaderSize() {
+            return 1;
+        }
+
+        @Override
+        public int getMaxFrameSize() {
+            return 4;
+        }
+
+        @Override
+        public int frameLength(FrameDecoder in) {
+            return in.get(0) == 0x61 ? 4 : -1;
+        }
+
+        @Override
+        public boolean isValid(FrameDecoder in, int length) {
+            return in.get(2) == 0x63 && in.get(3) == 0x64;
+        }
+
+        @Override
+        public int getHeartRate(FrameDecoder in, int length) {
+            return in.get(1);
+        }
+    };
+
+    /**
+     * Old raw serial: 'a', hr, crc (not checked), 'd'
+     */
+    static final FrameDecoder.Spec RAW_SERIAL_OLD = new FrameDecoder.Spec() {
+        @Override
+        public int getHeaderSize() {
+            return 1;
+        }
+
+        @Override
+        public int getMaxFrameSize() {
+            return 4;
+        }
+
+        @Override
+        public int frameLength(FrameDecoder in) {
+            return in.get(0) == 97 ? 4 : -1;
+        }
+
+        @Override
+        public boolean isValid(FrameDecoder in, int length) {
+            return in.get(3) == 100;
+        }
+
+        @Override
+        public int getHeartRate(FrameDecoder in, int length) {
+            return in.get(1);
+        }
+    };
+
+    static int calcCrc8(FrameDecoder in, int start, int length) {
+        int crc = 0x0;
+
+        for (int i = start; i < (start + length); i++) {
+            crc ^= in.get(i);
+            for (int b = 0; b <= 7; b++) {
+                if ((crc & 1) != 0) {
+                    crc = ((crc >> 1) ^ 0x8c);
+                } else {
+                    crc = (crc >> 1);
+                }
+            }
+        }
+        return crc;
+    }
+}
@@ -45,6 +45,24 @@ public abstract class BtHRBase implements HRProvider {
 
     protected HRProvider.HRClient hrClient;
     protected Handler hrClientHandler;
+    private final HRDataListeners hrDataListeners = new HRDataListeners();
+
+    @Override
+    public void registerHRDataListener(HRDataListener listener) {
+        hrDataListeners.register(listener);
+    }
+
+    @Override
+    public void unregisterHRDataListener(HRDataListener listener) {
+        hrDataListeners.unregister(listener);
+    }
+
+    /**
+     * Push measurement to listeners, called when received from device
+     */
+    protected void reportHRData(HRData data) {
+        hrDataListeners.dispatch(this, data);
+    }
 
     protected void log (final String msg) {
         if (hrClient != null) {
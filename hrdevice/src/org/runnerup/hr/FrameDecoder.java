@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.hr;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Ring buffer decoder of framed byte streams (BT 2.0 HR straps)
+ *
+ * The frame format is given by a {@link Spec} that reads bytes relative to
+ *   the current position using get(). Bytes are read from the stream directly
+ *   into the ring, and the length of a frame whose header has been seen is kept
+ *   so that a partial frame is not parsed again when more bytes arrive.
+ * On a bad header or an invalid frame one byte is skipped and the next
+ *   position is tried, i.e the decoder resyncs on misaligned/corrupt input.
+ *
+ * Nothing is allocated after construction. Not thread safe.
+ */
+public final class FrameDecoder {
+
+    public interface Spec {
+        /**
+         * @return number of bytes needed by frameLength()
+         */
+        int getHeaderSize();
+
+        /**
+         * @return max frame length
+         */
+        int getMaxFrameSize();
+
+        /**
+         * Check sync bytes of header at current position
+         *
+         * @return length of frame, or -1 if no frame starts here
+         */
+        int frameLength(FrameDecoder in);
+
+        /**
+         * Check trailer and checksum of complete frame at current position
+         */
+        boolean isValid(FrameDecoder in, int length);
+
+        /**
+         * @return hr of valid frame at current position
+         */
+        int getHeartRate(FrameDecoder in, int length);
+    }
+
+    private final Spec spec;
+    private final byte buffer[];
+    private final int mask;
+    private int readPos = 0; // positions are not masked, only their difference matters
+    private int writePos = 0;
+    private int pendingLength = -1; // length of frame whose header has been checked
+
+    private int heartRate = 0;
+    private long frameCount = 0;
+    private long skipCount = 0;
+
+    public FrameDecoder(Spec spec) {
+        this.spec = spec;
+        int size = 64;
+        while (size < 2 * spec.getMaxFrameSize())
+            size <<= 1;
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int available() {
+        return writePos - readPos;
+    }
+
+    /**
+     * @return unsigned byte at offset from current position
+     */
+    public int get(int offset) {
+        return buffer[(readPos + offset) & mask] & 0xFF;
+    }
+
+    public void clear() {
+        readPos = writePos = 0;
+        pendingLength = -1;
+    }
+
+    /**
+     * Read (at most until end of ring) from stream into buffer
+     *
+     * @return bytes read, -1 on end of stream
+     */
+    public int read(InputStream in) throws IOException {
+        int pos = writePos & mask;
+        int free = buffer.length - available();
+        int len = Math.min(free, buffer.length - pos);
+        int n = in.read(buffer, pos, len);
+        if (n > 0)
+            writePos += n;
+        return n;
+    }
+
+    /**
+     * Copy bytes into buffer
+     *
+     * @return bytes copied, less than len if buffer is full
+     */
+    public int write(byte src[], int off, int len) {
+        int n = Math.min(len, buffer.length - available());
+        for (int i = 0; i < n; i++) {
+            buffer[(writePos + i) & mask] = src[off + i];
+        }
+        writePos += n;
+        return n;
+    }
+
+    /**
+     * Decode next frame
+     *
+     * @return true if a valid frame was decoded (see getHeartRate()),
+     *   false if more bytes are needed
+     */
+    public boolean next() {
+        final int headerSize = spec.getHeaderSize();
+        while (true) {
+            final int avail = available();
+            int len = pendingLength;
+            if (len < 0) {
+                if (avail < headerSize)
+                    return false;
+                len = spec.frameLength(this);
+                if (len < headerSize || len > buffer.length) {
+                    skip();
+                    continue;
+                }
+                pendingLength = len;
+            }
+            if (avail < len)
+                return false;
+
+            pendingLength = -1;
+            if (spec.isValid(this, len)) {
+                heartRate = spec.getHeartRate(this, len);
+                readPos += len;
+                frameCount++;
+                return true;
+            }
+            skip();
+        }
+    }
+
+    private void skip() {
+        readPos++;
+        skipCount++;
+    }
+
+    /**
+     * @return hr of last decoded frame
+     */
+    public int getHeartRate() {
+        return heartRate;
+    }
+
+    /**
+     * @return number of frames decoded
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return number of bytes skipped while searching for frames
+     */
+    public long getSkipCount() {
+        return skipCount;
+    }
+}
@@ -44,7 +44,7 @@ public class HRData {
     public boolean timeStampIsFromDevice = false;
     public long timestamp = -1;
     public boolean hasRrIntervals = false;
-    public long[] rrIntervals = null;
+    public long[] rrIntervals = null; // ms
 
     @Override
     public String toString() {
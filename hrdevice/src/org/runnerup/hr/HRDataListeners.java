@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.hr;
+
+/**
+ * Copy-on-write list of {@link HRProvider.HRDataListener}s
+ *
+ * dispatch() may be called from any thread and does not allocate.
+ */
+final class HRDataListeners {
+
+    private final Object lock = new Object();
+    private volatile HRProvider.HRDataListener listeners[] = new HRProvider.HRDataListener[0];
+
+    public void register(HRProvider.HRDataListener listener) {
+        if (listener == null) throw new IllegalArgumentException("listener is null");
+        synchronized (lock) {
+            HRProvider.HRDataListener old[] = listeners;
+            for (HRProvider.HRDataListener l : old) {
+                if (l == listener)
+                    return;
+            }
+            HRProvider.HRDataListener res[] = new HRProvider.HRDataListener[old.length + 1];
+            System.arraycopy(old, 0, res, 0, old.length);
+            res[old.length] = listener;
+            listeners = res;
+        }
+    }
+
+    public void unregister(HRProvider.HRDataListener listener) {
+        synchronized (lock) {
+            HRProvider.HRDataListener old[] = listeners;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == listener) {
+                    HRProvider.HRDataListener res[] = new HRProvider.HRDataListener[old.length - 1];
+                    System.arraycopy(old, 0, res, 0, i);
+                    System.arraycopy(old, i + 1, res, i, old.length - i - 1);
+                    listeners = res;
+                    return;
+                }
+            }
+        }
+    }
+
+    public void dispatch(HRProvider src, HRData data) {
+        final HRProvider.HRDataListener copy[] = listeners;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i].onHRData(src, data);
+        }
+    }
+}
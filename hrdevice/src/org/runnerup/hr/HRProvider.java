@@ -51,6 +51,18 @@ public interface HRProvider {
         public void log(HRProvider src, String msg);
     }
 
+    /**
+     * An interface through which subscribers get each heart rate measurement
+     * as it arrives from the device
+     */
+    public interface HRDataListener {
+        /**
+         * Called on the thread receiving data from the device, i.e not
+         * necessarily the thread of the Handler given to open()
+         */
+        public void onHRData(HRProvider src, HRData data);
+    }
+
     /**
      * @return A human readable name for the {@link HRProvider}
      */
@@ -160,6 +172,13 @@ public interface HRProvider {
      */
     public abstract HRData getHRData();
 
+    /**
+     * Subscribe to measurements pushed by the connected device
+     */
+    public abstract void registerHRDataListener(HRDataListener listener);
+
+    public abstract void unregisterHRDataListener(HRDataListener listener);
+
     /**
      * @return The battery level, in percents, of the heart rate monitor device or 0 if
      *          no device has been connected or the device doesn't supply battery information
@@ -116,6 +116,8 @@ public class MockHRProvider implements HRProvider {
         public void run() {
             hrValue = (int) (150 + 40 * Math.random());
             hrTimestamp = System.currentTimeMillis();
+            hrDataListeners.dispatch(MockHRProvider.this,
+                    new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp));
             if (mIsConnected == true) {
                 hrClientHandler.postDelayed(hrUpdate, 750);
             }
@@ -130,6 +132,7 @@ public class MockHRProvider implements HRProvider {
 
     int hrValue = 0;
     long hrTimestamp = 0;
+    private final HRDataListeners hrDataListeners = new HRDataListeners();
 
     @Override
     public int getHRValue() {
@@ -150,6 +153,16 @@ public class MockHRProvider implements HRProvider {
         return new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
     }
 
+    @Override
+    public void registerHRDataListener(HRDataListener listener) {
+        hrDataListeners.register(listener);
+    }
+
+    @Override
+    public void unregisterHRDataListener(HRDataListener listener) {
+        hrDataListeners.unregister(listener);
+    }
+
     @Override
     public int getBatteryLevel() {
         return (int) (100 * Math.random());
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 jonas.oreland@gmail.com
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.runnerup.hr;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+
+/**
+ * Always connected provider pushing recorded measurements given to push(),
+ *   used when replaying a track
+ */
+@TargetApi(Build.VERSION_CODES.FROYO)
+public class ReplayHRProvider implements HRProvider {
+
+    public static final String NAME = "Replay";
+
+    private final HRDataListeners hrDataListeners = new HRDataListeners();
+    private volatile HRData last = null;
+
+    /**
+     * Push measurement to listeners as if received from device
+     */
+    public void push(HRData data) {
+        last = data;
+        hrDataListeners.dispatch(this, data);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getProviderName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean startEnableIntent(Activity activity, int requestCode) {
+        return false;
+    }
+
+    @Override
+    public void open(Handler handler, HRClient hrClient) {
+        hrClient.onOpenResult(true);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean isBondingDevice() {
+        return false;
+    }
+
+    @Override
+    public boolean isScanning() {
+        return false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return false;
+    }
+
+    @Override
+    public void startScan() {
+    }
+
+    @Override
+    public void stopScan() {
+    }
+
+    @Override
+    public void connect(HRDeviceRef ref) {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public int getHRValue() {
+        HRData data = last;
+        return data == null ? 0 : (int) data.hrValue;
+    }
+
+    @Override
+    public long getHRValueTimestamp() {
+        HRData data = last;
+        return data == null ? 0 : data.timestamp;
+    }
+
+    @Override
+    public HRData getHRData() {
+        return last;
+    }
+
+    @Override
+    public void registerHRDataListener(HRDataListener listener) {
+        hrDataListeners.register(listener);
+    }
+
+    @Override
+    public void unregisterHRDataListener(HRDataListener listener) {
+        hrDataListeners.unregister(listener);
+    }
+
+    @Override
+    public int getBatteryLevel() {
+        return 0;
+    }
+}
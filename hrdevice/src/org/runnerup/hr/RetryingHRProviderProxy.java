@@ -95,8 +95,20 @@ public class RetryingHRProviderProxy implements HRProvider, HRProvider.HRClient
         attempt = 0;
     }
 
+    /**
+     * listeners are registered on proxy so that they survive reconnects
+     */
+    private final HRDataListeners hrDataListeners = new HRDataListeners();
+    private final HRDataListener hrDataForwarder = new HRDataListener() {
+        @Override
+        public void onHRData(HRProvider src, HRData data) {
+            hrDataListeners.dispatch(RetryingHRProviderProxy.this, data);
+        }
+    };
+
     public RetryingHRProviderProxy(HRProvider src) {
         this.provider = src;
+        this.provider.registerHRDataListener(hrDataForwarder);
     }
 
     @Override
@@ -276,6 +288,16 @@ public class RetryingHRProviderProxy implements HRProvider, HRProvider.HRClient
         return provider.getHRData();
     }
 
+    @Override
+    public void registerHRDataListener(HRDataListener listener) {
+        hrDataListeners.register(listener);
+    }
+
+    @Override
+    public void unregisterHRDataListener(HRDataListener listener) {
+        hrDataListeners.unregister(listener);
+    }
+
     @Override
     public int getBatteryLevel() {
         return provider.getBatteryLevel();
@@ -233,6 +233,7 @@ public class SamsungBLEHRProvider extends BtHRBase implements HRProvider {
             }
 
             hrTimestamp = System.currentTimeMillis();
+            reportHRData(new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp));
 
             if (mIsConnecting) {
                 reportConnected(true);
@@ -0,0 +1,48 @@
+package org.runnerup.hr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Replays a synthetic Zephyr HxM stream (with corrupt and truncated frames)
+ *   through FrameDecoder and prints decode cost.
+ *
+ * Run with: java -cp <test classes>:<classes> org.runnerup.hr.FrameDecoderBenchmark
+ */
+public class FrameDecoderBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        Random rnd = new Random(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 20000; i++) {
+            byte frame[] = FrameDecoderTest.zephyr(60 + rnd.nextInt(140), rnd);
+            int r = rnd.nextInt(100);
+            if (r == 0)
+                frame[30] ^= 0x5a; // corrupt
+            if (r == 1)
+                out.write(frame, 0, rnd.nextInt(60)); // truncated
+            else
+                out.write(frame);
+        }
+        byte stream[] = out.toByteArray();
+
+        for (int round = 0; round < 10; round++) {
+            FrameDecoder sut = new FrameDecoder(Bt20FrameSpecs.ZEPHYR);
+            FrameDecoderTest.ChunkedInputStream in =
+                    new FrameDecoderTest.ChunkedInputStream(stream, new Random(round));
+            long sum = 0;
+            long start = System.nanoTime();
+            while (sut.read(in) != -1) {
+                while (sut.next()) {
+                    sum += sut.getHeartRate();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("round " + round + ": " + sut.getFrameCount() + " frames, "
+                    + sut.getSkipCount() + " skipped bytes, "
+                    + (elapsed / stream.length) + " ns/byte, "
+                    + (elapsed / sut.getFrameCount()) + " ns/frame (sum " + sum + ")");
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.runnerup.hr;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameDecoderTest {
+
+    static byte[] zephyr(int hr, Random rnd) {
+        byte frame[] = new byte[60];
+        for (int i = 3; i < 58; i++)
+            frame[i] = (byte) (4 + rnd.nextInt(200)); // avoid STX in payload
+        frame[0] = 0x02;
+        frame[1] = 0x26;
+        frame[2] = 55;
+        frame[12] = (byte) hr;
+        int crc = 0;
+        for (int i = 3; i < 58; i++) {
+            crc ^= frame[i] & 0xFF;
+            for (int b = 0; b <= 7; b++) {
+                crc = (crc & 1) != 0 ? (crc >> 1) ^ 0x8c : crc >> 1;
+            }
+        }
+        frame[58] = (byte) crc;
+        frame[59] = 0x03;
+        return frame;
+    }
+
+    static byte[] polar(int hr, int seq) {
+        return new byte[] {
+                (byte) 0xFE, 8, (byte) (0xFF - 8), (byte) seq, (byte) 0xF1, (byte) hr, 3, (byte) 0xE8
+        };
+    }
+
+    static byte[] stHrm(int hr) {
+        byte frame[] = new byte[17];
+        frame[0] = (byte) 0xFA;
+        frame[1] = (byte) (17 << 2);
+        frame[2] = (byte) (0xFF - (17 << 2));
+        frame[5] = (byte) hr;
+        return frame;
+    }
+
+    static byte[] rawSerial(int hr) {
+        return new byte[] { 0x61, (byte) hr, 0x63, 0x64 };
+    }
+
+    /**
+     * Stream returning random sized chunks, like a bluetooth socket
+     */
+    static class ChunkedInputStream extends InputStream {
+        final byte data[];
+        final Random rnd;
+        int pos = 0;
+
+        ChunkedInputStream(byte data[], Random rnd) {
+            this.data = data;
+            this.rnd = rnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            if (pos == data.length)
+                return -1;
+            int n = Math.min(Math.min(len, 1 + rnd.nextInt(40)), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    static List<Integer> decode(FrameDecoder.Spec spec, byte stream[], Random rnd)
+            throws IOException {
+        List<Integer> res = new ArrayList<>();
+        FrameDecoder sut = new FrameDecoder(spec);
+        InputStream in = new ChunkedInputStream(stream, rnd);
+        while (sut.read(in) != -1) {
+            while (sut.next()) {
+                res.add(sut.getHeartRate());
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void shouldDecodeConsecutiveFrames() throws IOException {
+        Random rnd = new Random(1);
+        ByteArrayOutputStream zephyr = new ByteArrayOutputStream();
+        ByteArrayOutputStream polar = new ByteArrayOutputStream();
+        ByteArrayOutputStream st = new ByteArrayOutputStream();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int hr = 60 + rnd.nextInt(140);
+            expected.add(hr);
+            zephyr.write(zephyr(hr, rnd));
+            polar.write(polar(hr, i & 15));
+            st.write(stHrm(hr));
+            raw.write(rawSerial(hr));
+        }
+        assertEquals(expected, decode(Bt20FrameSpecs.ZEPHYR, zephyr.toByteArray(), rnd));
+        assertEquals(expected, decode(Bt20FrameSpecs.POLAR, polar.toByteArray(), rnd));
+        assertEquals(expected, decode(Bt20FrameSpecs.ST_HRM_V1, st.toByteArray(), rnd));
+        assertEquals(expected, decode(Bt20FrameSpecs.RAW_SERIAL, raw.toByteArray(), rnd));
+    }
+
+    @Test
+    public void shouldResyncOnMisalignedStream() throws IOException {
+        Random rnd = new Random(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // garbage (without sync byte) between frames
+            int garbage = rnd.nextInt(10);
+            for (int j = 0; j < garbage; j++)
+                out.write(0x10 + rnd.nextInt(0x40));
+            int hr = 60 + rnd.nextInt(140);
+            expected.add(hr);
+            out.write(polar(hr, i & 15));
+        }
+        assertEquals(expected, decode(Bt20FrameSpecs.POLAR, out.toByteArray(), rnd));
+    }
+
+    @Test
+    public void shouldDropCorruptAndTruncatedFrames() throws IOException {
+        Random rnd = new Random(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int hr = 60 + rnd.nextInt(140);
+            byte frame[] = zephyr(hr, rnd);
+            switch (rnd.nextInt(5)) {
+                case 0: // bad crc
+                    frame[20] ^= 0x11;
+                    out.write(frame);
+                    break;
+                case 1: // truncated
+                    out.write(frame, 0, 1 + rnd.nextInt(58));
+                    break;
+                default:
+                    expected.add(hr);
+                    out.write(frame);
+            }
+        }
+        FrameDecoder sut = new FrameDecoder(Bt20FrameSpecs.ZEPHYR);
+        List<Integer> res = new ArrayList<>();
+        InputStream in = new ChunkedInputStream(out.toByteArray(), rnd);
+        while (sut.read(in) != -1) {
+            while (sut.next()) {
+                res.add(sut.getHeartRate());
+            }
+        }
+        assertEquals(expected, res);
+        assertEquals(expected.size(), sut.getFrameCount());
+    }
+
+    @Test
+    public void shouldKeepPartialFrameUntilComplete() {
+        byte frame[] = zephyr(123, new Random(4));
+        FrameDecoder sut = new FrameDecoder(Bt20FrameSpecs.ZEPHYR);
+        for (int i = 0; i < frame.length - 1; i++) {
+            assertEquals(1, sut.write(frame, i, 1));
+            assertEquals(false, sut.next());
+        }
+        assertEquals(0, sut.getSkipCount());
+        sut.write(frame, frame.length - 1, 1);
+        assertEquals(true, sut.next());
+        assertEquals(123, sut.getHeartRate());
+        assertEquals(0, sut.available());
+    }
+
+    @Test
+    public void shouldNotOverfillBuffer() {
+        FrameDecoder sut = new FrameDecoder(Bt20FrameSpecs.RAW_SERIAL);
+        byte junk[] = new byte[sut.capacity() + 10];
+        assertEquals(sut.capacity(), sut.write(junk, 0, junk.length));
+        assertEquals(false, sut.next());
+        assertEquals(0, sut.available());
+        assertEquals(sut.capacity(), sut.getSkipCount());
+    }
+}
@@ -22,6 +22,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 
 import com.google.android.gms.common.ConnectionResult;
@@ -44,14 +45,13 @@ import com.google.android.gms.wearable.Wearable;
 import org.runnerup.common.tracker.TrackerState;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.ValueModel;
-import org.runnerup.view.MainActivity;
 
 import java.util.HashSet;
 
 import static com.google.android.gms.wearable.PutDataRequest.WEAR_URI_SCHEME;
 
 @TargetApi(Build.VERSION_CODES.KITKAT_WATCH)
-public class StateService extends Service implements NodeApi.NodeListener, MessageApi.MessageListener, DataApi.DataListener, ValueModel.ChangeListener<Boolean> {
+public class StateService extends Service implements NodeApi.NodeListener, MessageApi.MessageListener, DataApi.DataListener {
 
     public static final String UPDATE_TIME = "UPDATE_TIME";
 
@@ -66,7 +66,11 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
     private Bundle headers;
     private final ValueModel<TrackerState> trackerState = new ValueModel<TrackerState>();
     private final ValueModel<Boolean> pauseStep = new ValueModel<Boolean>();
-    private MainActivity pauseStepListener;
+
+    /**
+     * listeners are called on main thread with latest value
+     */
+    private final Handler handler = new Handler();
 
     @Override
     public void onCreate() {
@@ -112,7 +116,6 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
                 .addApi(Wearable.API)
                 .build();
         mGoogleApiClient.connect();
-        this.pauseStep.registerChangeListener(this);
 
         System.err.println("StateService.onCreate()");
     }
@@ -167,6 +170,7 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
     public void onDestroy() {
         System.err.println("StateService.onDestroy()");
         trackerState.clearListeners();
+        pauseStep.clearListeners();
         if (mGoogleApiClient != null) {
             if (mGoogleApiClient.isConnected()) {
                 phoneNode = null;
@@ -189,12 +193,6 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
         return mBinder;
     }
 
-    @Override
-    public void onValueChanged(ValueModel<Boolean> instance, Boolean oldValue, Boolean newValue) {
-        if (pauseStepListener != null)
-            pauseStepListener.onPauseStepChanged(oldValue, newValue);
-    }
-
     public class LocalBinder extends android.os.Binder {
         public StateService getService() {
             return StateService.this;
@@ -324,7 +322,7 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
     }
 
     public void registerTrackerStateListener(ValueModel.ChangeListener<TrackerState> listener) {
-        trackerState.registerChangeListener(listener);
+        trackerState.registerChangeListener(listener, handler, true);
     }
 
     public void unregisterTrackerStateListener(ValueModel.ChangeListener<TrackerState> listener) {
@@ -335,12 +333,12 @@ public class StateService extends Service implements NodeApi.NodeListener, Messa
         return pauseStep.get();
     }
 
-    public void registerPauseStepListener(MainActivity listener) {
-        this.pauseStepListener = listener;
+    public void registerPauseStepListener(ValueModel.ChangeListener<Boolean> listener) {
+        pauseStep.registerChangeListener(listener, handler, true);
     }
 
-    public void unregisterPauseStepListener(MainActivity listener) {
-        this.pauseStepListener = null;
+    public void unregisterPauseStepListener(ValueModel.ChangeListener<Boolean> listener) {
+        pauseStep.unregisterChangeListener(listener);
     }
 
     public void sendStart() {
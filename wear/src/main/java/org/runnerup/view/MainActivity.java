@@ -88,7 +88,7 @@ public class MainActivity extends Activity implements Constants, ValueModel.Chan
         super.onPause();
         if (mStateService != null) {
             mStateService.unregisterTrackerStateListener(this);
-            mStateService.unregisterPauseStepListener(this);
+            mStateService.unregisterPauseStepListener(pauseStepListener);
         }
         getApplicationContext().unbindService(mStateServiceConnection);
         mStateService = null;
@@ -231,7 +231,7 @@ public class MainActivity extends Activity implements Constants, ValueModel.Chan
             if (mStateService == null) {
                 mStateService = ((StateService.LocalBinder) service).getService();
                 mStateService.registerTrackerStateListener(MainActivity.this);
-                mStateService.registerPauseStepListener(MainActivity.this);
+                mStateService.registerPauseStepListener(pauseStepListener);
             }
         }
 
@@ -244,52 +244,39 @@ public class MainActivity extends Activity implements Constants, ValueModel.Chan
     public TrackerState getTrackerState() {
         if (mStateService == null)
             return null;
-        synchronized (trackerState) {
-            return mStateService.getTrackerState();
-        }
+        return mStateService.getTrackerState();
     }
 
+    /**
+     * Called on ui thread (see StateService.registerTrackerStateListener)
+     */
     @Override
     public void onValueChanged(ValueModel<TrackerState> obj,
-                               final TrackerState oldState, final TrackerState newState) {
-        synchronized (trackerState) {
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    synchronized (trackerState) {
-                        trackerState.set(newState);
-                    }
-                }
-            });
-        }
+                               TrackerState oldState, TrackerState newState) {
+        trackerState.set(newState);
     }
 
     public void registerTrackerStateListener(ValueModel.ChangeListener<TrackerState> listener) {
-        synchronized (trackerState) {
-            trackerState.registerChangeListener(listener);
-        }
+        trackerState.registerChangeListener(listener);
     }
 
     public void unregisterTrackerStateListener(ValueModel.ChangeListener<TrackerState> listener) {
-        synchronized (trackerState) {
-            trackerState.unregisterChangeListener(listener);
-        }
+        trackerState.unregisterChangeListener(listener);
     }
 
-    public void onPauseStepChanged(final Boolean oldValue, final Boolean newValue) {
-        synchronized (trackerState) {
-            runOnUiThread(new Runnable() {
+    /**
+     * Called on ui thread (see StateService.registerPauseStepListener)
+     */
+    private final ValueModel.ChangeListener<Boolean> pauseStepListener =
+            new ValueModel.ChangeListener<Boolean>() {
                 @Override
-                public void run() {
-                    synchronized (trackerState) {
-                        if (newValue == null)
-                            pauseStep = false;
-                        else
-                            pauseStep = newValue;
-                        pager.getAdapter().notifyDataSetChanged();
-                    }
+                public void onValueChanged(ValueModel<Boolean> instance,
+                                           Boolean oldValue, Boolean newValue) {
+                    if (newValue == null)
+                        pauseStep = false;
+                    else
+                        pauseStep = newValue;
+                    pager.getAdapter().notifyDataSetChanged();
                 }
-            });
-        }
-    }
+            };
 }